@@ -69,6 +69,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -132,4 +134,10 @@ public class BlockDeviceResource extends StorageResource {
     return Boolean.TRUE;
   }
 
+  @Override
+  public FileChannel getWritableChannel() throws IOException {
+    // Block devices may hold stale data, so zero regions are always written (isZeroFilled is false)
+    return new RandomAccessFile(new File(this.getPath()), "rw").getChannel();
+  }
+
 }
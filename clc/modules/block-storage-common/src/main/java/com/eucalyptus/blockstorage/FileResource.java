@@ -67,6 +67,8 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 public class FileResource extends StorageResource {
 
@@ -93,4 +95,21 @@ public class FileResource extends StorageResource {
   public Boolean isDownloadSynchronous() {
     return Boolean.TRUE;
   }
+
+  @Override
+  public FileChannel getWritableChannel() throws Exception {
+    RandomAccessFile file = new RandomAccessFile(new File(this.getPath()), "rw");
+    try {
+      file.setLength(0);
+    } catch (Exception e) {
+      file.close();
+      throw e;
+    }
+    return file.getChannel();
+  }
+
+  @Override
+  public Boolean isZeroFilled() {
+    return Boolean.TRUE;
+  }
 }
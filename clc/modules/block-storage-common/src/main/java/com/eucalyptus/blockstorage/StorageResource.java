@@ -64,6 +64,7 @@ package com.eucalyptus.blockstorage;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Abstract class for encapsulating a storage device and mechanisms for IO operations
@@ -138,4 +139,25 @@ public abstract class StorageResource {
    * @return true or false
    */
   public abstract Boolean isDownloadSynchronous();
+
+  /**
+   * Returns a {@link java.nio.channels.FileChannel} for positional writes to the storage device, or null if the device does not support
+   * positional writes and must be written sequentially using {@link #getOutputStream()}
+   * 
+   * @return FileChannel or null
+   * @throws Exception
+   */
+  public FileChannel getWritableChannel() throws Exception {
+    return null;
+  }
+
+  /**
+   * If regions of the channel returned by {@link #getWritableChannel()} read as zeros until they are written, this method returns true.
+   * Otherwise it returns false
+   * 
+   * @return true or false
+   */
+  public Boolean isZeroFilled() {
+    return Boolean.FALSE;
+  }
 }
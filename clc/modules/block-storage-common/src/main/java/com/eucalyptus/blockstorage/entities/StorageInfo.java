@@ -112,6 +112,10 @@ public class StorageInfo extends AbstractPersistent {
   private static final Integer DEFAULT_SNAPSHOT_TRANSFER_TIMEOUT = 48;
   private static final Integer DEFAULT_READ_BUFFER_SIZE_IN_MB = 1;
   private static final Integer DEFAULT_WRITE_BUFFER_SIZE_IN_MB = 100;
+  private static final Integer DEFAULT_SNAPSHOT_COMPRESSION_THREADS = 4;
+  private static final Integer DEFAULT_SNAPSHOT_UPLOAD_CONCURRENCY = 4;
+  private static final Integer DEFAULT_SNAPSHOT_UPLOAD_MEMORY_IN_MB = 512;
+  private static final Integer DEFAULT_SNAPSHOT_RESTORE_CONCURRENCY = 4;
   private static final Integer DEFAULT_DELETED_VOL_EXPIRATION_TIME = 1440;// minutes
   private static final Integer DEFAULT_DELETED_SNAP_EXPIRATION_TIME = 60;// minutes
   private static final Integer MIN_RESOURCE_EXPIRATION_TIME = 10;// minutes
@@ -181,6 +185,26 @@ public class StorageInfo extends AbstractPersistent {
   @Column(name = "write_buffer_size_mb")
   private Integer writeBufferSizeInMB;
 
+  @ConfigurableField(description = "Number of threads compressing each snapshot being uploaded to objectstorage gateway",
+      displayName = "Snapshot Compression Threads", initial = "4", changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_compression_threads")
+  private Integer snapshotCompressionThreads;
+
+  @ConfigurableField(description = "Maximum number of parts of a snapshot that are uploaded to objectstorage gateway at a given time",
+      displayName = "Snapshot Upload Concurrency", initial = "4", changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_upload_concurrency")
+  private Integer snapshotUploadConcurrency;
+
+  @ConfigurableField(description = "Maximum memory in MB used for compressed parts of each snapshot being uploaded to objectstorage gateway",
+      displayName = "Snapshot Upload Memory", initial = "512", changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_upload_memory_mb")
+  private Integer snapshotUploadMemoryInMB;
+
+  @ConfigurableField(description = "Maximum number of parts of a snapshot that are downloaded from objectstorage gateway at a given time",
+      displayName = "Snapshot Restore Concurrency", initial = "4", changeListener = PositiveIntegerChangeListener.class)
+  @Column(name = "snapshot_restore_concurrency")
+  private Integer snapshotRestoreConcurrency;
+
   @ConfigurableField(description = "Maximum number of volumes processed on the block storage backend at a given time",
       displayName = "Maximum Concurrent Volumes", initial = DEFAULT_MAX_CONCURRENT_VOLUMES, changeListener = PositiveIntegerChangeListener.class)
   @Column(name = "max_concurrent_volumes_processed")
@@ -301,6 +325,38 @@ public class StorageInfo extends AbstractPersistent {
     this.writeBufferSizeInMB = writeBufferSizeInMB;
   }
 
+  public Integer getSnapshotCompressionThreads() {
+    return snapshotCompressionThreads;
+  }
+
+  public void setSnapshotCompressionThreads(Integer snapshotCompressionThreads) {
+    this.snapshotCompressionThreads = snapshotCompressionThreads;
+  }
+
+  public Integer getSnapshotUploadConcurrency() {
+    return snapshotUploadConcurrency;
+  }
+
+  public void setSnapshotUploadConcurrency(Integer snapshotUploadConcurrency) {
+    this.snapshotUploadConcurrency = snapshotUploadConcurrency;
+  }
+
+  public Integer getSnapshotUploadMemoryInMB() {
+    return snapshotUploadMemoryInMB;
+  }
+
+  public void setSnapshotUploadMemoryInMB(Integer snapshotUploadMemoryInMB) {
+    this.snapshotUploadMemoryInMB = snapshotUploadMemoryInMB;
+  }
+
+  public Integer getSnapshotRestoreConcurrency() {
+    return snapshotRestoreConcurrency;
+  }
+
+  public void setSnapshotRestoreConcurrency(Integer snapshotRestoreConcurrency) {
+    this.snapshotRestoreConcurrency = snapshotRestoreConcurrency;
+  }
+
   public Integer getMaxConcurrentVolumes() {
     return maxConcurrentVolumes;
   }
@@ -391,6 +447,18 @@ public class StorageInfo extends AbstractPersistent {
     if (writeBufferSizeInMB == null) {
       writeBufferSizeInMB = DEFAULT_WRITE_BUFFER_SIZE_IN_MB;
     }
+    if (snapshotCompressionThreads == null) {
+      snapshotCompressionThreads = DEFAULT_SNAPSHOT_COMPRESSION_THREADS;
+    }
+    if (snapshotUploadConcurrency == null) {
+      snapshotUploadConcurrency = DEFAULT_SNAPSHOT_UPLOAD_CONCURRENCY;
+    }
+    if (snapshotUploadMemoryInMB == null) {
+      snapshotUploadMemoryInMB = DEFAULT_SNAPSHOT_UPLOAD_MEMORY_IN_MB;
+    }
+    if (snapshotRestoreConcurrency == null) {
+      snapshotRestoreConcurrency = DEFAULT_SNAPSHOT_RESTORE_CONCURRENCY;
+    }
     if (maxConcurrentVolumes == null) {
       maxConcurrentVolumes = Integer.valueOf(DEFAULT_MAX_CONCURRENT_VOLUMES);
     }
@@ -415,6 +483,10 @@ public class StorageInfo extends AbstractPersistent {
     info.setSnapshotTransferTimeoutInHours(DEFAULT_SNAPSHOT_TRANSFER_TIMEOUT);
     info.setReadBufferSizeInMB(DEFAULT_READ_BUFFER_SIZE_IN_MB);
     info.setWriteBufferSizeInMB(DEFAULT_WRITE_BUFFER_SIZE_IN_MB);
+    info.setSnapshotCompressionThreads(DEFAULT_SNAPSHOT_COMPRESSION_THREADS);
+    info.setSnapshotUploadConcurrency(DEFAULT_SNAPSHOT_UPLOAD_CONCURRENCY);
+    info.setSnapshotUploadMemoryInMB(DEFAULT_SNAPSHOT_UPLOAD_MEMORY_IN_MB);
+    info.setSnapshotRestoreConcurrency(DEFAULT_SNAPSHOT_RESTORE_CONCURRENCY);
     info.setMaxConcurrentVolumes(Integer.valueOf(DEFAULT_MAX_CONCURRENT_VOLUMES));
     info.setMaxConcurrentSnapshots(Integer.valueOf(DEFAULT_MAX_CONCURRENT_SNAPSHOTS));
     info.setMaxSnapshotDeltas(Integer.valueOf(DEFAULT_MAX_SNAP_DELTAS));
@@ -62,14 +62,14 @@
 
 package com.eucalyptus.blockstorage;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -81,10 +81,9 @@ import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -130,8 +129,8 @@ import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.objectstorage.client.EucaS3Client;
 import com.eucalyptus.objectstorage.client.EucaS3ClientFactory;
 import com.eucalyptus.util.EucalyptusCloudException;
-import com.eucalyptus.util.Exceptions;
 import com.google.common.base.Function;
+import com.google.common.io.ByteStreams;
 
 /**
  * S3SnapshotTransfer manages snapshot transfers between SC and S3 API such as objectstorage gateway. An instance of the class must be obtained using
@@ -152,8 +151,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   // For multipart upload
   private String uploadId;
 
-  // Initiate for every request
-  private EucaS3Client eucaS3Client;
+  // Initiate for every request, replaced when credentials are refreshed by concurrent part uploads
+  private volatile EucaS3Client eucaS3Client;
 
   // Instantiate from database for uploads
   private Long partSize;
@@ -161,6 +160,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   private Integer transferTimeout;
   private Integer readBufferSize;
   private Integer writeBufferSize;
+  private Integer compressionThreads;
+  private Integer uploadConcurrency;
+  private Long uploadMemory;
+  private Integer restoreConcurrency;
 
   // Static parameters
   private static BaseRole role;
@@ -168,6 +171,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
   // Constants
   private static final Integer REFRESH_TOKEN_RETRIES = 1;
   private static final String UNCOMPRESSED_SIZE_KEY = "uncompressedsize";
+  private static final String PART_INDEX_SUFFIX = ".index";
 
   public S3SnapshotTransfer() throws SnapshotTransferException {
     initializeEucaS3Client();
@@ -241,6 +245,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
    * {@link StorageInfo}. Bucket name should be configured before invoking this method. It can be looked up and initialized by
    * {@link #prepareForUpload()} or explicitly set using {@link #setBucketName(String)}
    * 
+   * The snapshot is compressed by several threads into parts held in memory, parts are uploaded concurrently as they are created. This method
+   * returns once all parts are created, the returned future completes when the upload is complete.
+   * 
    * @param sourceFileName absolute path to the snapshot on the file system
    */
   @Override
@@ -249,151 +256,50 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     loadTransferConfig(); // Load the transfer configuration parameters from database
 
     Boolean error = Boolean.FALSE;
-    ArrayBlockingQueue<SnapshotPart> partQueue = null;
-    SnapshotPart part = null;
     SnapshotUploadInfo snapUploadInfo = null;
-    Future<List<PartETag>> uploadPartsFuture = null;
+    PartUploader partUploader = null;
     Future<String> completeUploadFuture = null;
 
-    byte[] buffer = new byte[readBufferSize];
-    Long readOffset = 0L;
-    Long bytesRead = 0L;
-    Long bytesWritten = 0L;
-    int len;
-    int partNumber = 1;
-
     try {
       // Get the uncompressed file size for uploading as metadata
       Long uncompressedSize = storageResource.getSize();
       LOG.debug("Uncompressed size of content to be uploaded for " + snapshotId + ": " + uncompressedSize + " bytes");
 
-      // Setup the snapshot and part entities.
+      // Setup the snapshot entity
       snapUploadInfo = SnapshotUploadInfo.create(snapshotId, bucketName, keyName);
-      Path zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf(partNumber));
-      part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
 
-      InputStream inputStream = storageResource.getInputStream();
-      ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      GZIPOutputStream gzipStream = new GZIPOutputStream(baos);
-      FileOutputStream outputStream = new FileOutputStream(zipFilePath.toString());
+      SnapshotPartCompressor compressor =
+          new SnapshotPartCompressor(SnapshotTransferThreadPool.getCompressionPool(), compressionThreads, readBufferSize, partSize, (int) Math.max(
+              1, uploadMemory / partSize));
+      partUploader = new PartUploader(compressor, snapUploadInfo, uncompressedSize, progressCallback);
 
+      InputStream inputStream = storageResource.getInputStream();
       try {
-        LOG.debug("Reading snapshot " + snapshotId + " and compressing it to disk in chunks of size " + partSize + " bytes or greater");
-        while ((len = inputStream.read(buffer)) > 0) {
-          bytesRead += len;
-          gzipStream.write(buffer, 0, len);
-
-          if ((bytesWritten + baos.size()) < partSize) {
-            baos.writeTo(outputStream);
-            bytesWritten += baos.size();
-            baos.reset();
-          } else {
-            gzipStream.close();
-            baos.writeTo(outputStream); // Order is important. Closing the gzip stream flushes stuff
-            bytesWritten += baos.size();
-            baos.reset();
-            outputStream.close();
-
-            if (partNumber > 1) {// Update the part status
-              part = part.updateStateCreated(bytesWritten, bytesRead, Boolean.FALSE);
-            } else {// Initialize multipart upload only once after the first part is created
-              LOG.info("Uploading snapshot " + snapshotId + " to objectstorage using multipart upload");
-              progressCallback.setUploadSize(uncompressedSize);
-              uploadId = initiateMulitpartUpload(uncompressedSize);
-              snapUploadInfo = snapUploadInfo.updateUploadId(uploadId); // update uploadId so its available for future parts
-              part = part.updateStateCreated(uploadId, bytesWritten, bytesRead, Boolean.FALSE);
-              partQueue = new ArrayBlockingQueue<SnapshotPart>(queueSize);
-              uploadPartsFuture = SnapshotTransferThreadPool.add(new UploadPartTask(partQueue, progressCallback));
-            }
-
-            // Check for the future task before adding part to the queue.
-            if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-              // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-              throw new SnapshotUploadPartException(
-                  "Error uploading parts, aborting part creation process. Check previous log messages for the exact error");
-            }
-
-            // Add part to the queue
-            partQueue.put(part);
-
-            // Prep the metadata for the next part
-            readOffset += bytesRead;
-            bytesRead = 0L;
-            bytesWritten = 0L;
-
-            // Setup the part entity for next part
-            zipFilePath = Files.createTempFile(Paths.get("/var/tmp"), keyName + '-', '-' + String.valueOf((++partNumber)));
-            part = SnapshotPart.createPart(snapUploadInfo, zipFilePath.toString(), partNumber, readOffset);
-
-            gzipStream = new GZIPOutputStream(baos);
-            outputStream = new FileOutputStream(zipFilePath.toString());
-          }
-        }
-
-        gzipStream.close();
-        baos.writeTo(outputStream);
-        bytesWritten += baos.size();
-        baos.reset();
-        outputStream.close();
-        inputStream.close();
-
-        // Update the part status
-        part = part.updateStateCreated(bytesWritten, bytesRead, Boolean.TRUE);
-
-        // Update the snapshot upload info status
-        snapUploadInfo = snapUploadInfo.updateStateCreatedParts(partNumber);
+        LOG.debug("Reading snapshot " + snapshotId + " and compressing it in chunks of size " + partSize + " bytes or greater using "
+            + compressionThreads + " threads");
+        compressor.compress(inputStream, partUploader);
+      } catch (SnapshotTransferException e) {
+        throw e;
       } catch (Exception e) {
         LOG.error("Failed to upload " + snapshotId + " due to: ", e);
-        error = Boolean.TRUE;
         throw new SnapshotTransferException("Failed to upload " + snapshotId + " due to: ", e);
       } finally {
-        if (inputStream != null) {
-          try {
-            inputStream.close();
-          } catch (Exception e) {
-
-          }
-        }
-        if (gzipStream != null) {
-          try {
-            gzipStream.close();
-          } catch (Exception e) {
-
-          }
-        }
-        if (outputStream != null) {
-          try {
-            outputStream.close();
-          } catch (Exception e) {
+        try {
+          inputStream.close();
+        } catch (Exception e) {
 
-          }
         }
-        baos.reset();
       }
+      // Update the snapshot upload info status
+      snapUploadInfo = partUploader.snapUploadInfo.updateStateCreatedParts(partUploader.totalParts);
 
-      if (partNumber > 1) {
-        // Check for the future task before adding the last part to the queue.
-        if (uploadPartsFuture != null && uploadPartsFuture.isDone()) {
-          // This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
-          throw new SnapshotUploadPartException(
-              "Error uploading parts, aborting part upload process. Check previous log messages for the exact error");
-        }
-        // Add the last part to the queue
-        partQueue.put(part);
-        // Kick off the completion task
-        completeUploadFuture = SnapshotTransferThreadPool.add(new CompleteMpuTask(uploadPartsFuture, snapUploadInfo, partNumber));
+      if (partUploader.singleObjectFuture != null) {
+        completeUploadFuture = partUploader.singleObjectFuture;
       } else {
-        try {
-          LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + bytesWritten
-              + " bytes) is less than minimum part size (" + partSize + " bytes) for multipart upload");
-          completeUploadFuture =
-              SnapshotTransferThreadPool.add(new UploadObjectTask(part, snapUploadInfo, zipFilePath.toString(), bytesWritten, uncompressedSize,
-                  progressCallback));
-        } catch (Exception e) {
-          error = Boolean.TRUE;
-          LOG.error("Failed to add async task for uploading " + snapshotId + " due to: ", e);
-          throw new SnapshotUploadObjectException("Failed to add async task for uploading " + snapshotId + " due to: ", e);
-        }
+        // Kick off the completion task
+        completeUploadFuture =
+            SnapshotTransferThreadPool.add(new CompleteMpuTask(partUploader.uploadPartFutures, partUploader.partIndex, snapUploadInfo,
+                partUploader.totalParts));
       }
       return completeUploadFuture;
     } catch (SnapshotTransferException e) {
@@ -405,12 +311,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       throw new SnapshotTransferException("Failed to upload snapshot " + snapshotId + " due to: ", e);
     } finally {
       if (error) {
-        abortUpload(snapUploadInfo);
-        if (partQueue != null) {
-          partQueue.clear();
-        }
-        if (uploadPartsFuture != null && !uploadPartsFuture.isDone()) {
-          uploadPartsFuture.cancel(true);
+        abortUpload(partUploader != null ? partUploader.snapUploadInfo : snapUploadInfo);
+        if (partUploader != null) {
+          partUploader.cancel();
         }
         if (completeUploadFuture != null && !completeUploadFuture.isDone()) {
           completeUploadFuture.cancel(true);
@@ -450,20 +353,50 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   /**
    * Downloads the compressed snapshot from objectstorage gateway to the filesystem
+   * 
+   * Snapshots uploaded in parts with a part index are downloaded with concurrent ranged requests and written at their offsets if the storage
+   * resource supports positional writes. Otherwise, or if downloading the parts fails, the snapshot is downloaded and decompressed as a
+   * single stream.
    */
   public void download(StorageResource storageResource) throws SnapshotTransferException {
     validateInput();
     loadTransferConfig();
 
+    List<SnapshotPartRestorer.Part> partIndex = downloadPartIndex();
+    if (partIndex != null) {
+      FileChannel channel = null;
+      try {
+        channel = storageResource.getWritableChannel();
+      } catch (Exception e) {
+        LOG.warn("Unable to write snapshot " + snapshotId + " in parts, it will be downloaded as a single stream", e);
+      }
+      if (channel != null) {
+        try {
+          restore(partIndex, channel, storageResource.isZeroFilled());
+          return;
+        } catch (SnapshotTransferException e) {
+          LOG.warn("Failed to download snapshot " + snapshotId + " in parts, it will be downloaded as a single stream", e);
+        } finally {
+          try {
+            channel.close();
+          } catch (Exception e) {
+
+          }
+        }
+      }
+    }
+
     S3Object snapObj = download();
 
     if (snapObj != null && snapObj.getObjectContent() != null) {
       byte[] buffer = new byte[10 * readBufferSize];
       int len;
-      GZIPInputStream gzipInputStream = null;
+      InputStream gzipInputStream = null;
+      Long expectedSize = uncompressedSize(snapObj.getObjectMetadata());
+      long totalBytes = 0;
 
       try {
-        gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
+        gzipInputStream = SnapshotPartCompressor.decompress(snapObj.getObjectContent(), buffer.length * 3);
 
         if (storageResource.isDownloadSynchronous()) { // Download and unzip snapshot to the storage device directly
           OutputStream outputStream = null;
@@ -472,7 +405,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             while ((len = gzipInputStream.read(buffer)) > 0) {
               // Write to the output stream
               outputStream.write(buffer, 0, len);
+              totalBytes += len;
             }
+            checkRestoredSize(expectedSize, totalBytes);
 
             // Close the streams and free the resources
             gzipInputStream.close();
@@ -503,6 +438,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             part.setIsLast(Boolean.FALSE);
 
             while ((len = gzipInputStream.read(buffer)) > 0) {
+              totalBytes += len;
               if ((bytesWritten + len) < writeBufferSize) {
                 fileOutputStream.write(buffer, 0, len);
                 bytesWritten += len;
@@ -532,6 +468,8 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
               }
             }
 
+            checkRestoredSize(expectedSize, totalBytes);
+
             // Close the streams and free the resources
             gzipInputStream.close();
             fileOutputStream.close();
@@ -617,6 +555,25 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       throw new SnapshotTransferException("Failed to delete snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
           + ", key=" + keyName, e);
     }
+    deletePartIndex();
+  }
+
+  private void deletePartIndex() {
+    try {
+      retryAfterRefresh(new Function<DeleteObjectRequest, String>() {
+
+        @Override
+        @Nullable
+        public String apply(@Nullable DeleteObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          eucaS3Client.deleteObject(arg0);
+          return null;
+        }
+      }, new DeleteObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX), REFRESH_TOKEN_RETRIES);
+    } catch (Exception e) {
+      LOG.debug("Failed to delete snapshot part index from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key="
+          + keyName + PART_INDEX_SUFFIX);
+    }
   }
 
   @Override
@@ -681,6 +638,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     this.transferTimeout = info.getSnapshotTransferTimeoutInHours();
     this.readBufferSize = info.getReadBufferSizeInMB() * 1024 * 1024;
     this.writeBufferSize = info.getWriteBufferSizeInMB() * 1024 * 1024;
+    this.compressionThreads = info.getSnapshotCompressionThreads();
+    this.uploadConcurrency = info.getSnapshotUploadConcurrency();
+    this.uploadMemory = (long) (info.getSnapshotUploadMemoryInMB() * 1024 * 1024);
+    this.restoreConcurrency = info.getSnapshotRestoreConcurrency();
   }
 
   private void validateInput() throws SnapshotTransferException {
@@ -776,8 +737,139 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     }
   }
 
-  private String uploadSnapshotAsSingleObject(final String compressedSnapFileName, Long actualSize, Long uncompressedSize,
-      final SnapshotProgressCallback callback) throws SnapshotUploadObjectException {
+  private S3Object getObject(GetObjectRequest request) throws SnapshotTransferException {
+    S3Object object = retryAfterRefresh(new Function<GetObjectRequest, S3Object>() {
+
+      @Override
+      @Nullable
+      public S3Object apply(@Nullable GetObjectRequest arg0) {
+        eucaS3Client.refreshEndpoint();
+        return eucaS3Client.getObject(arg0);
+      }
+
+    }, request, REFRESH_TOKEN_RETRIES);
+    if (object == null || object.getObjectContent() == null) {
+      throw new SnapshotTransferException("No content available from objectstorage: bucket=" + request.getBucketName() + ", key="
+          + request.getKey());
+    }
+    return object;
+  }
+
+  /**
+   * Uncompressed size of the snapshot from the object metadata, or null if not available.
+   */
+  private static Long uncompressedSize(ObjectMetadata metadata) {
+    Map<String, String> userMetadata;
+    if (metadata != null && (userMetadata = metadata.getUserMetadata()) != null && userMetadata.containsKey(UNCOMPRESSED_SIZE_KEY)) {
+      try {
+        return Long.parseLong(userMetadata.get(UNCOMPRESSED_SIZE_KEY));
+      } catch (NumberFormatException e) {
+        LOG.debug("Invalid uncompressed size in snapshot metadata: " + userMetadata.get(UNCOMPRESSED_SIZE_KEY));
+      }
+    }
+    return null;
+  }
+
+  private void checkRestoredSize(Long expectedSize, long size) throws SnapshotTransferException {
+    if (expectedSize != null && expectedSize != size) {
+      throw new SnapshotTransferException("Restored size " + size + " of snapshot " + snapshotId + " does not match the uncompressed size "
+          + expectedSize + ", bucket=" + bucketName + ", key=" + keyName);
+    }
+  }
+
+  /**
+   * Returns the part index uploaded with the snapshot or null if there is no usable index, in which case the snapshot is downloaded as a
+   * single stream. Snapshots uploaded as a single object and snapshots uploaded before part indexes were introduced do not have an index.
+   */
+  private List<SnapshotPartRestorer.Part> downloadPartIndex() {
+    InputStream indexStream = null;
+    List<SnapshotPartRestorer.Part> parts;
+    try {
+      indexStream = getObject(new GetObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX)).getObjectContent();
+      parts = SnapshotPartRestorer.fromIndex(new String(ByteStreams.toByteArray(indexStream), StandardCharsets.UTF_8));
+    } catch (Exception e) {
+      LOG.debug("No part index available for snapshot " + snapshotId + ", it will be downloaded as a single stream: " + e.getMessage());
+      return null;
+    } finally {
+      if (indexStream != null) {
+        try {
+          indexStream.close();
+        } catch (Exception e) {
+
+        }
+      }
+    }
+
+    try {
+      ObjectMetadata metadata = retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
+
+        @Override
+        @Nullable
+        public ObjectMetadata apply(@Nullable GetObjectMetadataRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          return eucaS3Client.getObjectMetadata(arg0);
+        }
+
+      }, new GetObjectMetadataRequest(bucketName, keyName), REFRESH_TOKEN_RETRIES);
+      SnapshotPartRestorer.validate(parts, metadata.getContentLength(), uncompressedSize(metadata));
+      return parts;
+    } catch (Exception e) {
+      LOG.warn("Part index for snapshot " + snapshotId + " does not match the snapshot, it will be downloaded as a single stream: "
+          + e.getMessage());
+      return null;
+    }
+  }
+
+  private void uploadPartIndex(List<SnapshotPartRestorer.Part> parts) {
+    final byte[] index = SnapshotPartRestorer.toIndex(parts).getBytes(StandardCharsets.UTF_8);
+    ObjectMetadata objectMetadata = new ObjectMetadata();
+    objectMetadata.setContentLength(index.length);
+
+    try {
+      LOG.debug("Uploading part index for snapshot " + snapshotId + " with " + parts.size() + " parts");
+      retryAfterRefresh(new Function<PutObjectRequest, PutObjectResult>() {
+
+        @Override
+        @Nullable
+        public PutObjectResult apply(@Nullable PutObjectRequest arg0) {
+          eucaS3Client.refreshEndpoint();
+          arg0.setInputStream(new ByteArrayInputStream(index));
+          return eucaS3Client.putObject(arg0);
+        }
+
+      }, new PutObjectRequest(bucketName, keyName + PART_INDEX_SUFFIX, null, objectMetadata), REFRESH_TOKEN_RETRIES);
+    } catch (Exception e) {
+      LOG.warn("Failed to upload part index for snapshot " + snapshotId + ", snapshot will be downloaded as a single stream", e);
+      // do not leave an index from an earlier upload of the snapshot
+      deletePartIndex();
+    }
+  }
+
+  /**
+   * Downloads the parts in the index with concurrent ranged requests, decompressing each part and writing it at its offset in the channel
+   */
+  private void restore(List<SnapshotPartRestorer.Part> parts, FileChannel channel, boolean skipZeros) throws SnapshotTransferException {
+    LOG.debug("Downloading snapshot " + snapshotId + " in " + parts.size() + " parts using " + restoreConcurrency + " concurrent requests");
+    try {
+      SnapshotPartRestorer restorer = new SnapshotPartRestorer(SnapshotTransferThreadPool.getRestorePool(), restoreConcurrency);
+      long size = restorer.restore(parts, new SnapshotPartRestorer.RangeFetcher() {
+
+        @Override
+        public InputStream fetch(long start, long end) throws Exception {
+          return getObject(new GetObjectRequest(bucketName, keyName).withRange(start, end)).getObjectContent();
+        }
+      }, channel, skipZeros);
+      LOG.info("Downloaded snapshot " + snapshotId + " (" + size + " bytes) to storage backend");
+    } catch (SnapshotTransferException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new SnapshotTransferException("Failed to download snapshot " + snapshotId + " to storage backend", e);
+    }
+  }
+
+  private String uploadSnapshotAsSingleObject(final byte[] data, Long uncompressedSize, final SnapshotProgressCallback callback)
+      throws SnapshotUploadObjectException {
+    Long actualSize = (long) data.length;
     callback.setUploadSize(actualSize);
     ObjectMetadata objectMetadata = new ObjectMetadata();
     Map<String, String> userMetadataMap = new HashMap<String, String>();
@@ -786,7 +878,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     objectMetadata.setContentLength(actualSize);
 
     try {
-      LOG.debug("Uploading " + compressedSnapFileName);
+      LOG.debug("Uploading snapshot " + snapshotId + " as a single object of " + actualSize + " bytes");
       PutObjectResult putResult = retryAfterRefresh(new Function<PutObjectRequest, PutObjectResult>() {
 
         @Override
@@ -794,24 +886,17 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
         public PutObjectResult apply(@Nullable PutObjectRequest arg0) {
           eucaS3Client.refreshEndpoint();
           // EUCA-10311 Set the input stream in put request. Doing it here to ensure that input stream is set before every attempt to put object
-          try {
-            arg0.setInputStream(new FileInputStreamWithCallback(new File(compressedSnapFileName), callback));
-          } catch (Exception e) {
-            LOG.warn("Failed to upload snapshot to objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName
-                + ", reason: unable to initialize FileInputStreamWithCallback for file " + compressedSnapFileName, e);
-            Exceptions.toUndeclared(e);
-          }
+          arg0.setInputStream(new ByteArrayInputStream(data));
           return eucaS3Client.putObject(arg0);
         }
 
       }, new PutObjectRequest(bucketName, keyName, null, objectMetadata), REFRESH_TOKEN_RETRIES);
 
+      callback.updateUploadProgress(actualSize);
       return putResult.getETag();
     } catch (Exception e) {
-      LOG.warn("Failed to upload object " + compressedSnapFileName, e);
-      throw new SnapshotUploadObjectException("Failed to upload object " + compressedSnapFileName, e);
-    } finally {
-      deleteFile(compressedSnapFileName);
+      LOG.warn("Failed to upload snapshot " + snapshotId + " as a single object", e);
+      throw new SnapshotUploadObjectException("Failed to upload snapshot " + snapshotId + " as a single object", e);
     }
   }
 
@@ -848,7 +933,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return initResponse.getUploadId();
   }
 
-  private PartETag uploadPart(SnapshotPart part) throws SnapshotUploadPartException {
+  private PartETag uploadPart(SnapshotPart part, final byte[] data) throws SnapshotUploadPartException {
     try {
       part = part.updateStateUploading();
     } catch (Exception e) {
@@ -864,18 +949,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
             @Nullable
             public UploadPartResult apply(@Nullable UploadPartRequest arg0) {
               eucaS3Client.refreshEndpoint();
+              // Set the input stream before every attempt as a failed attempt may have consumed it
+              arg0.setInputStream(new ByteArrayInputStream(data));
               return eucaS3Client.uploadPart(arg0);
             }
           },
               new UploadPartRequest().withBucketName(part.getBucketName()).withKey(part.getKeyName()).withUploadId(part.getUploadId())
-                  .withPartNumber(part.getPartNumber()).withPartSize(part.getSize()).withFile(new File(part.getFileName())), REFRESH_TOKEN_RETRIES);
+                  .withPartNumber(part.getPartNumber()).withPartSize(data.length), REFRESH_TOKEN_RETRIES);
 
       return uploadPartResult.getPartETag();
     } catch (Exception e) {
       LOG.warn("Failed to upload part " + part, e);
       throw new SnapshotUploadPartException("Failed to upload part " + part, e);
-    } finally {
-      deleteFile(part.getFileName());
     }
   }
 
@@ -974,87 +1059,144 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     return output;
   }
 
-  public static abstract class UploadPart implements Callable<List<PartETag>> {
+  /**
+   * Creates the part entities for compressed parts and uploads them. The first part decides between a single object upload and a multipart
+   * upload, subsequent parts are uploaded concurrently up to the configured limit.
+   */
+  class PartUploader implements SnapshotPartCompressor.PartHandler {
+
+    private final SnapshotPartCompressor compressor;
+    private final Long uncompressedSize;
+    private final SnapshotProgressCallback progressCallback;
+    private final Semaphore uploadSlots;
+    private final List<Future<PartETag>> uploadPartFutures;
+    private final List<SnapshotPartRestorer.Part> partIndex;
+    private SnapshotUploadInfo snapUploadInfo;
+    private Future<String> singleObjectFuture;
+    private int totalParts;
+    private int checkedParts;
+    private long compressedOffset;
+
+    public PartUploader(SnapshotPartCompressor compressor, SnapshotUploadInfo snapUploadInfo, Long uncompressedSize,
+        SnapshotProgressCallback progressCallback) {
+      this.compressor = compressor;
+      this.snapUploadInfo = snapUploadInfo;
+      this.uncompressedSize = uncompressedSize;
+      this.progressCallback = progressCallback;
+      this.uploadSlots = new Semaphore(uploadConcurrency);
+      this.uploadPartFutures = new ArrayList<Future<PartETag>>();
+      this.partIndex = new ArrayList<SnapshotPartRestorer.Part>();
+    }
+
+    @Override
+    public void handle(SnapshotPartCompressor.Part part) throws Exception {
+      Long size = (long) part.getData().length;
+      SnapshotPart snapPart = SnapshotPart.createPart(snapUploadInfo, null, part.getPartNumber(), part.getReadOffset());
+      totalParts = part.getPartNumber();
+
+      if (part.getPartNumber() == 1 && part.isLast()) {
+        LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + size
+            + " bytes) is less than minimum part size (" + partSize + " bytes) for multipart upload");
+        snapPart = snapPart.updateStateCreated(size, part.getBytesRead(), Boolean.TRUE);
+        try {
+          singleObjectFuture =
+              SnapshotTransferThreadPool.add(new UploadObjectTask(snapPart, snapUploadInfo, part, compressor, uncompressedSize, progressCallback));
+        } catch (Exception e) {
+          LOG.error("Failed to add async task for uploading " + snapshotId + " due to: ", e);
+          throw new SnapshotUploadObjectException("Failed to add async task for uploading " + snapshotId + " due to: ", e);
+        }
+        return;
+      }
+
+      if (part.getPartNumber() > 1) {// Update the part status
+        snapPart = snapPart.updateStateCreated(size, part.getBytesRead(), part.isLast());
+      } else {// Initialize multipart upload only once after the first part is created
+        LOG.info("Uploading snapshot " + snapshotId + " to objectstorage using multipart upload");
+        progressCallback.setUploadSize(uncompressedSize);
+        uploadId = initiateMulitpartUpload(uncompressedSize);
+        snapUploadInfo = snapUploadInfo.updateUploadId(uploadId); // update uploadId so its available for future parts
+        snapPart = snapPart.updateStateCreated(uploadId, size, part.getBytesRead(), part.isLast());
+      }
+      partIndex.add(new SnapshotPartRestorer.Part(compressedOffset, size, part.getReadOffset(), part.getBytesRead()));
+      compressedOffset += size;
+
+      // Check for failed uploads before adding another part
+      checkUploads();
+      uploadSlots.acquire();
+      try {
+        uploadPartFutures.add(SnapshotTransferThreadPool.add(new UploadPartTask(snapPart, part, compressor, uploadSlots, progressCallback)));
+      } catch (Exception e) {
+        uploadSlots.release();
+        throw e;
+      }
+    }
+
+    private void checkUploads() throws SnapshotUploadPartException {
+      while (checkedParts < uploadPartFutures.size() && uploadPartFutures.get(checkedParts).isDone()) {
+        try {
+          uploadPartFutures.get(checkedParts++).get();
+        } catch (Exception e) {
+          throw new SnapshotUploadPartException("Error uploading parts, aborting part creation process. Check previous log messages for the exact error",
+              e);
+        }
+      }
+    }
+
+    public void cancel() {
+      for (Future<PartETag> future : uploadPartFutures) {
+        future.cancel(true);
+      }
+      if (singleObjectFuture != null && !singleObjectFuture.isDone()) {
+        singleObjectFuture.cancel(true);
+      }
+    }
+  }
+
+  public static abstract class UploadPart implements Callable<PartETag> {
   }
 
   class UploadPartTask extends UploadPart {
 
-    private ArrayBlockingQueue<SnapshotPart> partQueue;
+    private SnapshotPart snapPart;
+    private SnapshotPartCompressor.Part part;
+    private SnapshotPartCompressor compressor;
+    private Semaphore uploadSlots;
     private SnapshotProgressCallback progressCallback;
-    private List<PartETag> partETags;
 
-    public UploadPartTask(ArrayBlockingQueue<SnapshotPart> partQueue, SnapshotProgressCallback progressCallback) throws EucalyptusCloudException {
-      if (partQueue == null || progressCallback == null) {
-        throw new EucalyptusCloudException("Invalid constructor parameters. Cannot proceed without part queue and or snapshot progress callback");
-      }
-      this.partQueue = partQueue;
+    public UploadPartTask(SnapshotPart snapPart, SnapshotPartCompressor.Part part, SnapshotPartCompressor compressor, Semaphore uploadSlots,
+        SnapshotProgressCallback progressCallback) {
+      this.snapPart = snapPart;
+      this.part = part;
+      this.compressor = compressor;
+      this.uploadSlots = uploadSlots;
       this.progressCallback = progressCallback;
-      this.partETags = new ArrayList<PartETag>();
     }
 
     @Override
-    public List<PartETag> call() throws Exception {
-      Boolean error = Boolean.FALSE;
-      Boolean isLast = Boolean.FALSE;
-
+    public PartETag call() throws Exception {
       try {
-        do {
-          SnapshotPart part = null;
-
-          try {
-            part = partQueue.take();
-          } catch (InterruptedException ex) { // Should rarely happen
-            error = Boolean.TRUE;
-            LOG.error("Failed to upload snapshot " + snapshotId + " due to an retrieving parts from queue", ex);
-            return null;
-          }
+        PartETag partEtag = uploadPart(snapPart, part.getData());
 
-          if (part != null) {
-            if (part.getState().equals(SnapshotPartState.created) || part.getState().equals(SnapshotPartState.uploading)
-                || part.getState().equals(SnapshotPartState.failed)) {
-              isLast = part.getIsLast();
-              try {
-                PartETag partEtag = uploadPart(part);
-                partETags.add(partEtag);
-
-                progressCallback.updateUploadProgress(part.getInputFileBytesRead());
-                try {
-                  part = part.updateStateUploaded(partEtag.getETag());
-                } catch (Exception e) {
-                  LOG.debug("Failed to update part status in DB. Moving on. " + part);
-                }
-
-                LOG.debug("Uploaded " + part);
-              } catch (Exception e) {
-                error = Boolean.TRUE;
-                // update part status in database
-                try {
-                  part = part.updateStateFailed();
-                } catch (Throwable t) {
-                  LOG.debug("Failed to update part status in DB for " + part, t);
-                }
-                return null;
-              }
-            } else {
-              LOG.warn("Not sure what to do with part in state " + part.getState() + ". Ignoring " + part);
-            }
-          } else {
-            error = Boolean.TRUE;
-            LOG.warn("Null reference snapshot part found in queue for " + snapshotId + ". Aborting snapshot upload");
-            return null;
-          }
-        } while (!isLast);
+        progressCallback.updateUploadProgress(snapPart.getInputFileBytesRead());
+        try {
+          snapPart = snapPart.updateStateUploaded(partEtag.getETag());
+        } catch (Exception e) {
+          LOG.debug("Failed to update part status in DB. Moving on. " + snapPart);
+        }
 
-        return partETags;
-      } catch (Throwable t) {
-        error = Boolean.TRUE;
-        LOG.warn("Failed to process snapshot uplodad for " + snapshotId, t);
-        return null;
-      } finally {
-        if (error && partQueue != null) { // drain the queue so the upload process does not hang
-          LOG.debug("Clearing part queue for " + snapshotId + " due to a previous error uploading");
-          partQueue.clear();
+        LOG.debug("Uploaded " + snapPart);
+        return partEtag;
+      } catch (Exception e) {
+        // update part status in database
+        try {
+          snapPart = snapPart.updateStateFailed();
+        } catch (Throwable t) {
+          LOG.debug("Failed to update part status in DB for " + snapPart, t);
         }
+        throw e;
+      } finally {
+        compressor.release(part);
+        uploadSlots.release();
       }
     }
   }
@@ -1064,12 +1206,15 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   class CompleteMpuTask extends CompleteUpload {
 
-    private Future<List<PartETag>> uploadTaskFuture;
+    private List<Future<PartETag>> uploadPartFutures;
+    private List<SnapshotPartRestorer.Part> partIndex;
     private SnapshotUploadInfo snapUploadInfo;
     private Integer totalParts;
 
-    public CompleteMpuTask(Future<List<PartETag>> uploadTaskFuture, SnapshotUploadInfo snapUploadInfo, Integer totalParts) {
-      this.uploadTaskFuture = uploadTaskFuture;
+    public CompleteMpuTask(List<Future<PartETag>> uploadPartFutures, List<SnapshotPartRestorer.Part> partIndex,
+        SnapshotUploadInfo snapUploadInfo, Integer totalParts) {
+      this.uploadPartFutures = uploadPartFutures;
+      this.partIndex = partIndex;
       this.snapUploadInfo = snapUploadInfo;
       this.totalParts = totalParts;
     }
@@ -1079,10 +1224,15 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
       Boolean error = Boolean.FALSE;
       String etag = null;
       try {
-        List<PartETag> partETags = uploadTaskFuture.get(transferTimeout, TimeUnit.HOURS);
-        if (partETags != null && partETags.size() == totalParts) {
+        long timeout = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(transferTimeout);
+        List<PartETag> partETags = new ArrayList<PartETag>();
+        for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+          partETags.add(uploadPartFuture.get(Math.max(0, timeout - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+        }
+        if (partETags.size() == totalParts) {
           try {
             etag = finalizeMultipartUpload(partETags);
+            uploadPartIndex(partIndex);
             // markSnapshotAvailable();
             try {
               snapUploadInfo = snapUploadInfo.updateStateUploaded(etag);
@@ -1100,13 +1250,16 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
         }
       } catch (TimeoutException tex) {
         error = Boolean.TRUE;
-        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part task after " + transferTimeout
+        LOG.error("Failed to upload " + snapshotId + ". Complete upload task timed out waiting on upload part tasks after " + transferTimeout
             + " hours");
       } catch (Exception ex) {
         error = Boolean.TRUE;
         LOG.error("Failed to upload " + snapshotId, ex);
       } finally {
         if (error) {
+          for (Future<PartETag> uploadPartFuture : uploadPartFutures) {
+            uploadPartFuture.cancel(true);
+          }
           abortUpload(snapUploadInfo);
           etag = null;
         }
@@ -1117,19 +1270,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 
   class UploadObjectTask extends CompleteUpload {
 
-    private SnapshotPart part;
+    private SnapshotPart snapPart;
     private SnapshotUploadInfo snapUploadInfo;
-    private String pathToFile;
-    private Long actualSize;
+    private SnapshotPartCompressor.Part part;
+    private SnapshotPartCompressor compressor;
     private Long uncompressedSize;
     private SnapshotProgressCallback callback;
 
-    public UploadObjectTask(SnapshotPart part, SnapshotUploadInfo snapUploadInfo, String pathToFile, Long actualSize, Long uncompressedSize,
-        SnapshotProgressCallback callback) {
-      this.part = part;
+    public UploadObjectTask(SnapshotPart snapPart, SnapshotUploadInfo snapUploadInfo, SnapshotPartCompressor.Part part,
+        SnapshotPartCompressor compressor, Long uncompressedSize, SnapshotProgressCallback callback) {
+      this.snapPart = snapPart;
       this.snapUploadInfo = snapUploadInfo;
-      this.pathToFile = pathToFile;
-      this.actualSize = actualSize;
+      this.part = part;
+      this.compressor = compressor;
       this.uncompressedSize = uncompressedSize;
       this.callback = callback;
     }
@@ -1138,17 +1291,19 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
     public String call() throws Exception {
       String etag = null;
       try {
-        etag = uploadSnapshotAsSingleObject(pathToFile, actualSize, uncompressedSize, callback);
+        etag = uploadSnapshotAsSingleObject(part.getData(), uncompressedSize, callback);
         try {
-          part = part.updateStateUploaded(etag);
+          snapPart = snapPart.updateStateUploaded(etag);
           snapUploadInfo = snapUploadInfo.updateStateUploaded(etag);
         } catch (Exception e) {
           LOG.debug("Failed to update status in DB for " + snapUploadInfo);
         }
-        LOG.debug("Uploaded " + pathToFile + " to objectstorage");
+        LOG.debug("Uploaded snapshot " + snapshotId + " to objectstorage");
       } catch (Exception e) {
         LOG.warn("Failed to upload " + snapshotId, e);
         abortUpload(snapUploadInfo);
+      } finally {
+        compressor.release(part);
       }
       return etag;
     }
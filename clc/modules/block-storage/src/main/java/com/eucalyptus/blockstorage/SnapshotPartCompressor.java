@@ -0,0 +1,295 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Compresses a stream into gzip parts for a multipart upload using several threads.
+ *
+ * The stream is read in blocks that are compressed concurrently, each as a separate gzip member. Compressed blocks are appended in order to
+ * the current part until it reaches the part size, so every part and the concatenation of all parts is a valid gzip stream. Blocks that are
+ * all zeros (e.g. unallocated regions of a volume) are not compressed, a cached member for a zero block of that length is used instead.
+ *
+ * Parts are held in memory until released by the caller and at most <code>maxParts</code> parts are held at any time, reading stops until a
+ * part is released.
+ */
+public class SnapshotPartCompressor {
+
+  /**
+   * Compressed zero blocks by length, blocks are all the read buffer size other than the last block of a stream.
+   */
+  private static final Cache<Integer, byte[]> ZERO_BLOCKS = CacheBuilder.newBuilder().maximumSize(4).build();
+
+  private final ExecutorService executor;
+  private final int workers;
+  private final int blockSize;
+  private final long partSize;
+  private final Semaphore partPermits;
+
+  public interface PartHandler {
+    /**
+     * Handle a part, called in part order on the compressing thread. The handler must {@link SnapshotPartCompressor#release(Part) release}
+     * the part when it is no longer needed.
+     */
+    void handle(Part part) throws Exception;
+  }
+
+  public static class Part {
+    private final int partNumber;
+    private final byte[] data;
+    private final long readOffset;
+    private final long bytesRead;
+    private final boolean last;
+
+    private Part(int partNumber, byte[] data, long readOffset, long bytesRead, boolean last) {
+      this.partNumber = partNumber;
+      this.data = data;
+      this.readOffset = readOffset;
+      this.bytesRead = bytesRead;
+      this.last = last;
+    }
+
+    public int getPartNumber() {
+      return partNumber;
+    }
+
+    /**
+     * Compressed data for the part
+     */
+    public byte[] getData() {
+      return data;
+    }
+
+    /**
+     * Offset in the uncompressed stream of the data in this part
+     */
+    public long getReadOffset() {
+      return readOffset;
+    }
+
+    /**
+     * Number of uncompressed bytes in this part
+     */
+    public long getBytesRead() {
+      return bytesRead;
+    }
+
+    public boolean isLast() {
+      return last;
+    }
+  }
+
+  /**
+   * @param executor executor for compressing blocks
+   * @param workers maximum number of blocks being compressed concurrently
+   * @param blockSize uncompressed size of each independently compressed block
+   * @param partSize minimum compressed size of all but the last part
+   * @param maxParts maximum number of unreleased parts
+   */
+  public SnapshotPartCompressor(ExecutorService executor, int workers, int blockSize, long partSize, int maxParts) {
+    if (workers < 1 || blockSize < 1 || partSize < 1 || maxParts < 1) {
+      throw new IllegalArgumentException("Invalid compressor configuration: workers=" + workers + ", blockSize=" + blockSize + ", partSize="
+          + partSize + ", maxParts=" + maxParts);
+    }
+    this.executor = executor;
+    this.workers = workers;
+    this.blockSize = blockSize;
+    this.partSize = partSize;
+    this.partPermits = new Semaphore(maxParts);
+  }
+
+  /**
+   * Compress the stream, passing each part to the handler. The stream is not closed.
+   *
+   * @return total number of bytes read from the stream
+   */
+  public long compress(InputStream in, PartHandler handler) throws Exception {
+    Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    Deque<Integer> pendingLengths = new ArrayDeque<>();
+    List<byte[]> blocks = new ArrayList<>();
+    long compressedSize = 0;
+    long readOffset = 0;
+    long bytesRead = 0;
+    int partNumber = 1;
+    boolean eof = false;
+    partPermits.acquire();
+    try {
+      while (true) {
+        while (!eof && pending.size() < workers) {
+          final byte[] buffer = new byte[blockSize];
+          final int length = read(in, buffer);
+          if (length < blockSize) {
+            eof = true;
+          }
+          if (length > 0) {
+            pending.add(executor.submit(new Callable<byte[]>() {
+              @Override
+              public byte[] call() throws Exception {
+                return compressBlock(buffer, length);
+              }
+            }));
+            pendingLengths.add(length);
+          }
+        }
+        Future<byte[]> next = pending.poll();
+        if (next == null) {
+          break;
+        }
+        byte[] block = get(next);
+        if (compressedSize >= partSize) {
+          handler.handle(new Part(partNumber++, concat(blocks, compressedSize), readOffset, bytesRead, false));
+          readOffset += bytesRead;
+          bytesRead = 0;
+          compressedSize = 0;
+          blocks.clear();
+          partPermits.acquire();
+        }
+        blocks.add(block);
+        compressedSize += block.length;
+        bytesRead += pendingLengths.poll();
+      }
+      if (blocks.isEmpty()) {
+        blocks.add(compressBlock(new byte[0], 0));
+        compressedSize = blocks.get(0).length;
+      }
+      handler.handle(new Part(partNumber, concat(blocks, compressedSize), readOffset, bytesRead, true));
+      return readOffset + bytesRead;
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /**
+   * Release a part passed to the handler, allowing another part to be created.
+   */
+  public void release(Part part) {
+    partPermits.release();
+  }
+
+  /**
+   * Read until the buffer is full or the end of the stream.
+   */
+  static int read(InputStream in, byte[] buffer) throws IOException {
+    int total = 0;
+    int len;
+    while (total < buffer.length && (len = in.read(buffer, total, buffer.length - total)) > 0) {
+      total += len;
+    }
+    return total;
+  }
+
+  private static byte[] get(Future<byte[]> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+  }
+
+  private static byte[] concat(List<byte[]> blocks, long size) {
+    byte[] data = new byte[(int) size];
+    int offset = 0;
+    for (byte[] block : blocks) {
+      System.arraycopy(block, 0, data, offset, block.length);
+      offset += block.length;
+    }
+    return data;
+  }
+
+  /**
+   * Compress the data as a single gzip member.
+   */
+  static byte[] compressBlock(byte[] data, int length) throws IOException {
+    if (length > 0 && isZero(data, length)) {
+      byte[] compressed = ZERO_BLOCKS.getIfPresent(length);
+      if (compressed == null) {
+        compressed = gzip(new byte[length], length);
+        ZERO_BLOCKS.put(length, compressed);
+      }
+      return compressed;
+    }
+    return gzip(data, length);
+  }
+
+  private static byte[] gzip(byte[] data, int length) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(Math.max(64, length / 2));
+    try (GZIPOutputStream gzipStream = new GZIPOutputStream(baos, 64 * 1024)) {
+      gzipStream.write(data, 0, length);
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * Decompress a stream of one or more concatenated gzip members, such as a compressed snapshot or part.
+   *
+   * GZIPInputStream only continues with the next member if bytes remain buffered or the source reports bytes available, so it can stop at a
+   * member boundary when reading from the network (JDK-7036144). The source is wrapped so that it only reports no bytes available at the end
+   * of the stream.
+   */
+  public static InputStream decompress(InputStream in, int bufferSize) throws IOException {
+    return new GZIPInputStream(new MemberInputStream(new BufferedInputStream(in, bufferSize)), bufferSize);
+  }
+
+  private static class MemberInputStream extends PushbackInputStream {
+    MemberInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int available() throws IOException {
+      int available = super.available();
+      if (available > 0) {
+        return available;
+      }
+      int next = read();
+      if (next < 0) {
+        return 0;
+      }
+      unread(next);
+      return 1;
+    }
+  }
+
+  static boolean isZero(byte[] data, int length) {
+    for (int i = 0; i < length; i++) {
+      if (data[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,228 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Restores a compressed snapshot by downloading and decompressing its parts concurrently.
+ *
+ * Each part of a snapshot upload is a complete gzip stream (see {@link SnapshotPartCompressor}), so given an index of the compressed and
+ * uncompressed offsets of the parts they can be fetched with ranged requests, decompressed independently and written at their offsets in the
+ * target. Where the target reads as zeros before it is written, zero regions are not written so that sparse targets stay sparse.
+ */
+public class SnapshotPartRestorer {
+
+  private static final int WRITE_SIZE = 64 * 1024;
+
+  private final ExecutorService executor;
+  private final int concurrency;
+
+  public interface RangeFetcher {
+    /**
+     * Open a stream for the inclusive range of the compressed snapshot.
+     */
+    InputStream fetch(long start, long end) throws Exception;
+  }
+
+  public static class Part {
+    private final long compressedOffset;
+    private final long compressedSize;
+    private final long offset;
+    private final long size;
+
+    public Part(long compressedOffset, long compressedSize, long offset, long size) {
+      this.compressedOffset = compressedOffset;
+      this.compressedSize = compressedSize;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    public long getCompressedOffset() {
+      return compressedOffset;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getOffset() {
+      return offset;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+
+  /**
+   * @param executor executor for restoring parts
+   * @param concurrency maximum number of parts restored concurrently
+   */
+  public SnapshotPartRestorer(ExecutorService executor, int concurrency) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Invalid concurrency " + concurrency);
+    }
+    this.executor = executor;
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * Index for parts with the given compressed and uncompressed sizes, one line per part with the compressed offset, compressed size,
+   * offset and size.
+   */
+  public static String toIndex(List<Part> parts) {
+    StringBuilder index = new StringBuilder();
+    for (Part part : parts) {
+      index.append(part.getCompressedOffset()).append(' ').append(part.getCompressedSize()).append(' ').append(part.getOffset()).append(' ')
+          .append(part.getSize()).append('\n');
+    }
+    return index.toString();
+  }
+
+  /**
+   * Parse and validate an index created by {@link #toIndex(List)}
+   */
+  public static List<Part> fromIndex(String index) throws IOException {
+    List<Part> parts = new ArrayList<>();
+    long compressedOffset = 0;
+    long offset = 0;
+    for (String line : index.split("\n")) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      String[] fields = line.trim().split(" ");
+      if (fields.length != 4) {
+        throw new IOException("Invalid snapshot part index entry: " + line);
+      }
+      Part part;
+      try {
+        part = new Part(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+      } catch (NumberFormatException e) {
+        throw new IOException("Invalid snapshot part index entry: " + line, e);
+      }
+      if (part.getCompressedOffset() != compressedOffset || part.getOffset() != offset || part.getCompressedSize() < 1 || part.getSize() < 0) {
+        throw new IOException("Snapshot part index entry not contiguous with previous entry: " + line);
+      }
+      compressedOffset += part.getCompressedSize();
+      offset += part.getSize();
+      parts.add(part);
+    }
+    if (parts.isEmpty()) {
+      throw new IOException("Empty snapshot part index");
+    }
+    return parts;
+  }
+
+  /**
+   * Check that the parts cover exactly the compressed snapshot and, if known, the uncompressed size.
+   *
+   * @param compressedSize size of the compressed snapshot object
+   * @param size uncompressed size of the snapshot or null if not known
+   */
+  public static void validate(List<Part> parts, long compressedSize, Long size) throws IOException {
+    Part last = parts.get(parts.size() - 1);
+    if (last.getCompressedOffset() + last.getCompressedSize() != compressedSize) {
+      throw new IOException("Snapshot part index compressed size " + (last.getCompressedOffset() + last.getCompressedSize())
+          + " does not match snapshot size " + compressedSize);
+    }
+    if (size != null && last.getOffset() + last.getSize() != size) {
+      throw new IOException("Snapshot part index size " + (last.getOffset() + last.getSize()) + " does not match uncompressed size " + size);
+    }
+  }
+
+  /**
+   * Restore all parts to the channel. The channel is not closed.
+   *
+   * @param skipZeros true if the channel reads as zeros where it has not been written
+   * @return total uncompressed size
+   */
+  public long restore(final List<Part> parts, final RangeFetcher fetcher, final FileChannel channel, final boolean skipZeros) throws Exception {
+    final AtomicInteger nextPart = new AtomicInteger();
+    List<Future<Void>> workers = new ArrayList<>();
+    try {
+      for (int i = 0; i < Math.min(concurrency, parts.size()); i++) {
+        workers.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            int index;
+            while ((index = nextPart.getAndIncrement()) < parts.size()) {
+              restorePart(parts.get(index), fetcher, channel, skipZeros);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> worker : workers) {
+        try {
+          worker.get();
+        } catch (ExecutionException e) {
+          nextPart.set(parts.size());
+          throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+      }
+    } finally {
+      for (Future<Void> worker : workers) {
+        worker.cancel(true);
+      }
+    }
+
+    Part last = parts.get(parts.size() - 1);
+    long size = last.getOffset() + last.getSize();
+    if (skipZeros && size > 0 && channel.size() < size) {
+      // trailing zeros were skipped, extend to the full size
+      channel.write(ByteBuffer.allocate(1), size - 1);
+    }
+    return size;
+  }
+
+  private static void restorePart(Part part, RangeFetcher fetcher, FileChannel channel, boolean skipZeros) throws Exception {
+    byte[] buffer = new byte[WRITE_SIZE];
+    long position = part.getOffset();
+    long end = part.getOffset() + part.getSize();
+    try (InputStream in =
+        SnapshotPartCompressor.decompress(fetcher.fetch(part.getCompressedOffset(), part.getCompressedOffset() + part.getCompressedSize() - 1),
+            WRITE_SIZE)) {
+      int length;
+      while ((length = SnapshotPartCompressor.read(in, buffer)) > 0) {
+        if (position + length > end) {
+          throw new IOException("Snapshot part at offset " + part.getOffset() + " larger than expected size " + part.getSize());
+        }
+        if (!skipZeros || !SnapshotPartCompressor.isZero(buffer, length)) {
+          ByteBuffer data = ByteBuffer.wrap(buffer, 0, length);
+          long writePosition = position;
+          while (data.hasRemaining()) {
+            writePosition += channel.write(data, writePosition);
+          }
+        }
+        position += length;
+      }
+    }
+    if (position != end) {
+      throw new IOException("Snapshot part at offset " + part.getOffset() + " smaller than expected size " + part.getSize());
+    }
+  }
+}
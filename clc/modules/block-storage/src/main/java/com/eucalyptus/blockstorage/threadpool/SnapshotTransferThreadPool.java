@@ -63,6 +63,7 @@
 package com.eucalyptus.blockstorage.threadpool;
 
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -75,6 +76,8 @@ import com.amazonaws.services.s3.model.PartETag;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.CompleteUpload;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.StorageWriter;
 import com.eucalyptus.blockstorage.S3SnapshotTransfer.UploadPart;
+import com.eucalyptus.blockstorage.SnapshotPartCompressor;
+import com.eucalyptus.blockstorage.SnapshotPartRestorer;
 import com.eucalyptus.blockstorage.Storage;
 import com.eucalyptus.blockstorage.exceptions.ThreadPoolNotInitializedException;
 import com.eucalyptus.system.Threads;
@@ -84,6 +87,8 @@ public class SnapshotTransferThreadPool {
   private static ThreadPoolExecutor uploadPartPool;
   private static ThreadPoolExecutor completeMpuPool;
   private static ThreadPoolExecutor backendWriterPool;
+  private static ThreadPoolExecutor compressionPool;
+  private static ThreadPoolExecutor restorePool;
 
   private static final ReentrantLock RLOCK = new ReentrantLock();
 
@@ -95,9 +100,17 @@ public class SnapshotTransferThreadPool {
       shutdown();
       LOG.info("Initializing SC thread pool catering to snapshot transfers");
 
+      // part uploads, compression and restores are also limited per snapshot, so the queued tasks are bounded by the number of snapshots
+      // being transferred while the threads are bounded by the pool size
       uploadPartPool =
           new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
               UploadPart.class), new ThreadPoolExecutor.AbortPolicy());
+      compressionPool =
+          new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
+              SnapshotPartCompressor.class), new ThreadPoolExecutor.AbortPolicy());
+      restorePool =
+          new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
+              SnapshotPartRestorer.class), new ThreadPoolExecutor.AbortPolicy());
       completeMpuPool =
           new ThreadPoolExecutor(poolSize, poolSize, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), Threads.lookup(Storage.class,
               CompleteUpload.class), new ThreadPoolExecutor.AbortPolicy());
@@ -109,7 +122,7 @@ public class SnapshotTransferThreadPool {
     }
   }
 
-  public static Future<List<PartETag>> add(UploadPart task) throws ThreadPoolNotInitializedException {
+  public static Future<PartETag> add(UploadPart task) throws ThreadPoolNotInitializedException {
     if (uploadPartPool != null && !uploadPartPool.isShutdown()) {
       return uploadPartPool.submit(task);
     } else {
@@ -129,6 +142,26 @@ public class SnapshotTransferThreadPool {
     }
   }
 
+  public static ExecutorService getCompressionPool() throws ThreadPoolNotInitializedException {
+    if (compressionPool != null && !compressionPool.isShutdown()) {
+      return compressionPool;
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (compression pool) is either not initalized or shut down");
+    }
+  }
+
+  public static ExecutorService getRestorePool() throws ThreadPoolNotInitializedException {
+    if (restorePool != null && !restorePool.isShutdown()) {
+      return restorePool;
+    } else {
+      LOG.warn("SC thread pool catering to snapshot transfers (restore pool) is either not initalized or shut down");
+      throw new ThreadPoolNotInitializedException(
+          "SC thread pool catering to snapshot transfers (restore pool) is either not initalized or shut down");
+    }
+  }
+
   public static Future<String> add(StorageWriter task) throws ThreadPoolNotInitializedException {
     if (backendWriterPool != null && !backendWriterPool.isShutdown()) {
       return backendWriterPool.submit(task);
@@ -151,12 +184,28 @@ public class SnapshotTransferThreadPool {
   public static void updatePoolSize(Integer newSize) {
     if (uploadPartPool != null && !uploadPartPool.isShutdown() && completeMpuPool != null && !completeMpuPool.isShutdown()
         && backendWriterPool != null && !backendWriterPool.isShutdown() && newSize != null && uploadPartPool.getCorePoolSize() != newSize) {
-      uploadPartPool.setCorePoolSize(newSize);
-      uploadPartPool.setMaximumPoolSize(newSize);
-      completeMpuPool.setCorePoolSize(newSize);
-      completeMpuPool.setMaximumPoolSize(newSize);
-      backendWriterPool.setCorePoolSize(newSize);
-      backendWriterPool.setMaximumPoolSize(newSize);
+      resize(uploadPartPool, newSize);
+      if (compressionPool != null && !compressionPool.isShutdown()) {
+        resize(compressionPool, newSize);
+      }
+      if (restorePool != null && !restorePool.isShutdown()) {
+        resize(restorePool, newSize);
+      }
+      resize(completeMpuPool, newSize);
+      resize(backendWriterPool, newSize);
+    }
+  }
+
+  /**
+   * Resize a fixed size pool, the core size must not exceed the maximum size at any point.
+   */
+  private static void resize(ThreadPoolExecutor pool, int size) {
+    if (size > pool.getMaximumPoolSize()) {
+      pool.setMaximumPoolSize(size);
+      pool.setCorePoolSize(size);
+    } else {
+      pool.setCorePoolSize(size);
+      pool.setMaximumPoolSize(size);
     }
   }
 
@@ -177,6 +226,16 @@ public class SnapshotTransferThreadPool {
         LOG.debug("Number of queued snapshots for multipart upload completion: " + awaitingExecution.size());
         completeMpuPool = null;
       }
+      if (compressionPool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (compression pool)");
+        compressionPool.shutdownNow();
+        compressionPool = null;
+      }
+      if (restorePool != null) {
+        LOG.info("Shutting down SC thread pool catering to snapshot transfers (restore pool)");
+        restorePool.shutdownNow();
+        restorePool = null;
+      }
       if (backendWriterPool != null) {
         LOG.info("Shutting down SC thread pool catering to snapshot transfers (backend writer pool)");
         LOG.debug("Number of snapshots in progress for download: " + backendWriterPool.getActiveCount());
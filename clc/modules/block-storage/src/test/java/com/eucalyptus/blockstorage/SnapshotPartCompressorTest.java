@@ -0,0 +1,201 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class SnapshotPartCompressorTest {
+
+  private static final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Random data with some all zero blocks
+   */
+  private static byte[] data(int size, int blockSize) {
+    byte[] data = new byte[size];
+    Random random = new Random(size);
+    random.nextBytes(data);
+    for (int offset = blockSize; offset < size; offset += 3 * blockSize) {
+      for (int i = offset; i < Math.min(size, offset + blockSize); i++) {
+        data[i] = 0;
+      }
+    }
+    return data;
+  }
+
+  private static byte[] gunzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      byte[] buffer = new byte[8192];
+      int len;
+      while ((len = in.read(buffer)) > 0) {
+        out.write(buffer, 0, len);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static class CollectingHandler implements SnapshotPartCompressor.PartHandler {
+    private final SnapshotPartCompressor compressor;
+    private final List<SnapshotPartCompressor.Part> parts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger held = new AtomicInteger();
+    private volatile int maxHeld;
+
+    CollectingHandler(SnapshotPartCompressor compressor) {
+      this.compressor = compressor;
+    }
+
+    @Override
+    public void handle(final SnapshotPartCompressor.Part part) throws Exception {
+      parts.add(part);
+      maxHeld = Math.max(maxHeld, held.incrementAndGet());
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            TimeUnit.MILLISECONDS.sleep(5);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          held.decrementAndGet();
+          compressor.release(part);
+        }
+      });
+    }
+
+    byte[] concatenated() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (SnapshotPartCompressor.Part part : parts) {
+        out.write(part.getData(), 0, part.getData().length);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  @Test
+  public void testPartsFormGzipStream() throws Exception {
+    byte[] data = data(1000 * 1000, 10 * 1000);
+    SnapshotPartCompressor compressor = new SnapshotPartCompressor(executor, 3, 10 * 1000, 50 * 1000, 2);
+    CollectingHandler handler = new CollectingHandler(compressor);
+    assertEquals(data.length, compressor.compress(new ByteArrayInputStream(data), handler));
+
+    assertTrue("Expected multiple parts", handler.parts.size() > 1);
+    assertTrue("Too many parts held: " + handler.maxHeld, handler.maxHeld <= 2);
+    long offset = 0;
+    for (int i = 0; i < handler.parts.size(); i++) {
+      SnapshotPartCompressor.Part part = handler.parts.get(i);
+      assertEquals(i + 1, part.getPartNumber());
+      assertEquals(offset, part.getReadOffset());
+      offset += part.getBytesRead();
+      assertEquals(i == handler.parts.size() - 1, part.isLast());
+      if (!part.isLast()) {
+        assertTrue("Part smaller than part size", part.getData().length >= 50 * 1000);
+      }
+      assertArrayEquals(Arrays.copyOfRange(data, (int) part.getReadOffset(), (int) (part.getReadOffset() + part.getBytesRead())),
+          gunzip(part.getData()));
+    }
+    assertEquals(data.length, offset);
+    assertArrayEquals(data, gunzip(handler.concatenated()));
+  }
+
+  @Test
+  public void testSinglePart() throws Exception {
+    byte[] data = data(25 * 1000, 10 * 1000);
+    SnapshotPartCompressor compressor = new SnapshotPartCompressor(executor, 2, 10 * 1000, 1000 * 1000, 1);
+    CollectingHandler handler = new CollectingHandler(compressor);
+    compressor.compress(new ByteArrayInputStream(data), handler);
+    assertEquals(1, handler.parts.size());
+    assertTrue(handler.parts.get(0).isLast());
+    assertArrayEquals(data, gunzip(handler.concatenated()));
+  }
+
+  @Test
+  public void testEmptyStream() throws Exception {
+    SnapshotPartCompressor compressor = new SnapshotPartCompressor(executor, 2, 1000, 1000, 1);
+    CollectingHandler handler = new CollectingHandler(compressor);
+    assertEquals(0, compressor.compress(new ByteArrayInputStream(new byte[0]), handler));
+    assertEquals(1, handler.parts.size());
+    assertTrue(handler.parts.get(0).isLast());
+    assertEquals(0, gunzip(handler.concatenated()).length);
+  }
+
+  @Test
+  public void testZeroBlocks() throws Exception {
+    byte[] zeros = new byte[64 * 1024];
+    byte[] compressed = SnapshotPartCompressor.compressBlock(zeros, zeros.length);
+    assertSame(compressed, SnapshotPartCompressor.compressBlock(new byte[zeros.length], zeros.length));
+    assertArrayEquals(zeros, gunzip(compressed));
+    assertTrue(SnapshotPartCompressor.isZero(zeros, zeros.length));
+    zeros[zeros.length - 1] = 1;
+    assertFalse(SnapshotPartCompressor.isZero(zeros, zeros.length));
+    assertTrue(SnapshotPartCompressor.isZero(zeros, zeros.length - 1));
+  }
+
+  @Test
+  public void testDecompressMembers() throws Exception {
+    byte[] data = data(100 * 1000, 10 * 1000);
+    SnapshotPartCompressor compressor = new SnapshotPartCompressor(executor, 2, 10 * 1000, 1000 * 1000, 1);
+    CollectingHandler handler = new CollectingHandler(compressor);
+    compressor.compress(new ByteArrayInputStream(data), handler);
+    // a slow source with nothing available at member boundaries
+    InputStream source = new ByteArrayInputStream(handler.concatenated()) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1));
+      }
+
+      @Override
+      public synchronized int available() {
+        return 0;
+      }
+    };
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (InputStream in = SnapshotPartCompressor.decompress(source, 4096)) {
+      byte[] buffer = new byte[8192];
+      int len;
+      while ((len = in.read(buffer)) > 0) {
+        out.write(buffer, 0, len);
+      }
+    }
+    assertArrayEquals(data, out.toByteArray());
+  }
+}
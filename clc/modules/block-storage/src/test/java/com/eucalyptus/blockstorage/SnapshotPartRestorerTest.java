@@ -0,0 +1,173 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class SnapshotPartRestorerTest {
+
+  private static final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Random data with leading, embedded and trailing zero regions
+   */
+  private static byte[] data(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    Arrays.fill(data, 0, size / 10, (byte) 0);
+    Arrays.fill(data, size / 3, size / 2, (byte) 0);
+    Arrays.fill(data, size - size / 5, size, (byte) 0);
+    return data;
+  }
+
+  /**
+   * Compress the data as a snapshot upload would, returning the concatenated parts and their index
+   */
+  private static byte[] compress(byte[] data, final List<SnapshotPartRestorer.Part> parts) throws Exception {
+    final SnapshotPartCompressor compressor = new SnapshotPartCompressor(executor, 2, 8 * 1024, 40 * 1024, 100);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    compressor.compress(new ByteArrayInputStream(data), new SnapshotPartCompressor.PartHandler() {
+      @Override
+      public void handle(SnapshotPartCompressor.Part part) throws Exception {
+        parts.add(new SnapshotPartRestorer.Part(out.size(), part.getData().length, part.getReadOffset(), part.getBytesRead()));
+        out.write(part.getData());
+        compressor.release(part);
+      }
+    });
+    return out.toByteArray();
+  }
+
+  private static class ArrayFetcher implements SnapshotPartRestorer.RangeFetcher {
+    private final byte[] object;
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    ArrayFetcher(byte[] object) {
+      this.object = object;
+    }
+
+    @Override
+    public InputStream fetch(long start, long end) throws Exception {
+      fetches.incrementAndGet();
+      return new ByteArrayInputStream(object, (int) start, (int) (end - start + 1));
+    }
+  }
+
+  private static byte[] restore(byte[] data, boolean skipZeros) throws Exception {
+    List<SnapshotPartRestorer.Part> parts = new ArrayList<>();
+    byte[] object = compress(data, parts);
+    List<SnapshotPartRestorer.Part> index = SnapshotPartRestorer.fromIndex(SnapshotPartRestorer.toIndex(parts));
+    assertEquals(parts.size(), index.size());
+    assertTrue("Expected multiple parts", index.size() > 1);
+
+    Path file = Files.createTempFile("snapshot-restore", null);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"); FileChannel channel = raf.getChannel()) {
+      ArrayFetcher fetcher = new ArrayFetcher(object);
+      assertEquals(data.length, new SnapshotPartRestorer(executor, 3).restore(index, fetcher, channel, skipZeros));
+      assertEquals(index.size(), fetcher.fetches.get());
+      assertEquals(data.length, channel.size());
+      return Files.readAllBytes(file);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testRestore() throws Exception {
+    byte[] data = data(1000 * 1000);
+    assertArrayEquals(data, restore(data, false));
+  }
+
+  @Test
+  public void testRestoreSkippingZeros() throws Exception {
+    byte[] data = data(1000 * 1000);
+    assertArrayEquals(data, restore(data, true));
+  }
+
+  @Test
+  public void testInvalidIndex() throws Exception {
+    for (String index : Arrays.asList("", "0 10 0", "0 10 0 100\n5 10 100 100", "0 10 0 100\n10 10 50 100", "0 x 0 100")) {
+      try {
+        SnapshotPartRestorer.fromIndex(index);
+        fail("Expected invalid index: " + index);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testPartSizeMismatch() throws Exception {
+    byte[] data = data(100 * 1000);
+    List<SnapshotPartRestorer.Part> parts = new ArrayList<>();
+    byte[] object = compress(data, parts);
+    SnapshotPartRestorer.Part first = parts.get(0);
+    parts.set(0, new SnapshotPartRestorer.Part(first.getCompressedOffset(), first.getCompressedSize(), first.getOffset(), first.getSize() - 1));
+
+    Path file = Files.createTempFile("snapshot-restore", null);
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"); FileChannel channel = raf.getChannel()) {
+      new SnapshotPartRestorer(executor, 2).restore(parts, new ArrayFetcher(object), channel, false);
+      fail("Expected restore to fail for part larger than its index entry");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testValidateIndex() throws Exception {
+    byte[] data = data(100 * 1000);
+    List<SnapshotPartRestorer.Part> parts = new ArrayList<>();
+    byte[] object = compress(data, parts);
+    SnapshotPartRestorer.validate(parts, object.length, (long) data.length);
+    SnapshotPartRestorer.validate(parts, object.length, null);
+    for (long[] sizes : new long[][] {{object.length + 1, data.length}, {object.length - 1, data.length}, {object.length, data.length + 1}}) {
+      try {
+        SnapshotPartRestorer.validate(parts, sizes[0], sizes[1]);
+        fail("Expected index not to match sizes " + Arrays.toString(sizes));
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+}
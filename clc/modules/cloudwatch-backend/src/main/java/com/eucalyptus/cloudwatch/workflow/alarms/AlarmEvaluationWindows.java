@@ -0,0 +1,224 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow.alarms;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricDataAddedEvent;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStatistics;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory metric windows for incremental alarm evaluation.
+ *
+ * Windows are loaded from the metric store when an alarm is first seen, when
+ * its definition changes and periodically thereafter. In between they are
+ * fed from metric data added in this process, so metric data must be added
+ * on this host for windows to stay current.
+ */
+public class AlarmEvaluationWindows {
+  private static final Logger LOG = Logger.getLogger(AlarmEvaluationWindows.class);
+  private static final AlarmEvaluationWindows instance = new AlarmEvaluationWindows();
+
+  private final ConcurrentMap<String, AlarmMetricWindow> windows = Maps.newConcurrentMap();
+  private volatile Map<SeriesKey, List<AlarmMetricWindow>> seriesIndex = Collections.emptyMap();
+
+  public static AlarmEvaluationWindows getInstance() {
+    return instance;
+  }
+
+  /**
+   * Update windows for the given alarms, removing windows for alarms that no
+   * longer exist.
+   *
+   * @return The alarms that need evaluation
+   */
+  public List<AlarmEntity> sync(Collection<AlarmEntity> alarmEntities, Date now) {
+    List<AlarmEntity> alarmsToEvaluate = Lists.newArrayList();
+    Map<SeriesKey, List<AlarmMetricWindow>> newSeriesIndex = Maps.newHashMap();
+    Set<String> naturalIds = Sets.newHashSet();
+    for (AlarmEntity alarmEntity: alarmEntities) {
+      naturalIds.add(alarmEntity.getNaturalId());
+      String dimensionHash = MetricManager.hash(alarmEntity.getDimensionMap());
+      AlarmMetricWindow window = windows.get(alarmEntity.getNaturalId());
+      if (window == null || !window.matches(alarmEntity)) {
+        window = new AlarmMetricWindow(alarmEntity, dimensionHash);
+        windows.put(alarmEntity.getNaturalId(), window);
+      }
+      SeriesKey seriesKey = new SeriesKey(alarmEntity.getAccountId(), alarmEntity.getNamespace(),
+        alarmEntity.getMetricName(), alarmEntity.getMetricType(), dimensionHash);
+      List<AlarmMetricWindow> seriesWindows = newSeriesIndex.get(seriesKey);
+      if (seriesWindows == null) {
+        seriesWindows = Lists.newArrayListWithCapacity(1);
+        newSeriesIndex.put(seriesKey, seriesWindows);
+      }
+      seriesWindows.add(window);
+      if (window.needsEvaluation(alarmEntity.getStateValue(), now.getTime())) {
+        alarmsToEvaluate.add(alarmEntity);
+      }
+    }
+    windows.keySet().retainAll(naturalIds);
+    seriesIndex = newSeriesIndex;
+    return alarmsToEvaluate;
+  }
+
+  /**
+   * Discard all windows.
+   */
+  public void clear() {
+    seriesIndex = Collections.emptyMap();
+    windows.clear();
+  }
+
+  public int size() {
+    return windows.size();
+  }
+
+  /**
+   * Load windows that are new, stale or raced with metric data being added.
+   */
+  void load(Collection<AlarmEntity> alarmEntities, Date now) {
+    List<AlarmMetricWindow> loadWindows = Lists.newArrayList();
+    List<MetricManager.GetMetricStatisticsParams> getMetricStatisticsParamses = Lists.newArrayList();
+    Date endDate = new Date(MetricUtils.stripSeconds(now).getTime() + 60000L);
+    for (AlarmEntity alarmEntity: alarmEntities) {
+      AlarmMetricWindow window = windows.get(alarmEntity.getNaturalId());
+      if (window != null && window.needsLoad(now.getTime())) {
+        window.beginLoad();
+        loadWindows.add(window);
+        getMetricStatisticsParamses.add(new MetricManager.GetMetricStatisticsParams(alarmEntity.getAccountId(), alarmEntity.getMetricName(), alarmEntity.getNamespace(), alarmEntity.getDimensionMap(), alarmEntity.getMetricType(), alarmEntity.getUnit(), window.getStartDate(now), endDate, 60));
+      }
+    }
+    if (loadWindows.isEmpty()) return;
+    boolean loaded = false;
+    try {
+      List<Collection<MetricStatistics>> manyMetricsStatisticsList = MetricManager.getManyMetricStatistics(getMetricStatisticsParamses);
+      long reconcileMillis = 60000L * CloudWatchConfigProperties.ALARM_EVALUATION_RECONCILE_MINUTES;
+      for (int i = 0; i < loadWindows.size(); i++) {
+        // spread reloads so windows loaded together do not all reload together
+        long reloadAt = now.getTime() + reconcileMillis + ThreadLocalRandom.current().nextLong(reconcileMillis / 2 + 1);
+        loadWindows.get(i).completeLoad(manyMetricsStatisticsList.get(i), reloadAt);
+      }
+      loaded = true;
+    } finally {
+      if (!loaded) {
+        for (AlarmMetricWindow window: loadWindows) {
+          window.failLoad();
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the period statistics for evaluation of the given alarm.
+   */
+  Collection<MetricStatistics> evaluate(AlarmEntity alarmEntity, Date bufferStartDate, Date endDate, Date now) {
+    AlarmMetricWindow window = windows.get(alarmEntity.getNaturalId());
+    if (window == null) {
+      return Collections.emptyList();
+    }
+    return window.evaluate(bufferStartDate, endDate, now.getTime());
+  }
+
+  void fold(Collection<SimpleMetricEntity> dataBatch) {
+    Map<SeriesKey, List<AlarmMetricWindow>> seriesIndex = this.seriesIndex;
+    if (seriesIndex.isEmpty()) return;
+    for (SimpleMetricEntity simpleMetricEntity: dataBatch) {
+      SeriesKey seriesKey = new SeriesKey(simpleMetricEntity.getAccountId(), simpleMetricEntity.getNamespace(),
+        simpleMetricEntity.getMetricName(), simpleMetricEntity.getMetricType(), MetricManager.hash(simpleMetricEntity.getDimensionMap()));
+      List<AlarmMetricWindow> seriesWindows = seriesIndex.get(seriesKey);
+      if (seriesWindows != null) {
+        for (AlarmMetricWindow window: seriesWindows) {
+          window.fold(simpleMetricEntity.getTimestamp(), simpleMetricEntity.getUnits(), simpleMetricEntity.getSampleSize(),
+            simpleMetricEntity.getSampleMax(), simpleMetricEntity.getSampleMin(), simpleMetricEntity.getSampleSum());
+        }
+      }
+    }
+  }
+
+  private static final class SeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    private SeriesKey(String accountId, String namespace, String metricName, MetricType metricType, String dimensionHash) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      SeriesKey seriesKey = (SeriesKey) o;
+      return Objects.equals(accountId, seriesKey.accountId) &&
+        Objects.equals(namespace, seriesKey.namespace) &&
+        Objects.equals(metricName, seriesKey.metricName) &&
+        metricType == seriesKey.metricType &&
+        Objects.equals(dimensionHash, seriesKey.dimensionHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(accountId, namespace, metricName, metricType, dimensionHash);
+    }
+  }
+
+  public static class MetricDataAddedEventListener implements EventListener<MetricDataAddedEvent> {
+    public static void register() {
+      Listeners.register(MetricDataAddedEvent.class, new MetricDataAddedEventListener());
+    }
+
+    @Override
+    public void fireEvent(MetricDataAddedEvent event) {
+      if (CloudWatchConfigProperties.ALARM_EVALUATION_INCREMENTAL) {
+        try {
+          getInstance().fold(event.getDataBatch());
+        } catch (Exception ex) {
+          LOG.error("Error updating alarm metric windows", ex);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow.alarms;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity.StateValue;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntityFactory;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStatistics;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Per-alarm window of one minute metric aggregates.
+ *
+ * Aggregates are held per minute (and unit) so that they can be re-bucketed
+ * into the alarm period at evaluation time, the period grid used for alarm
+ * evaluation is anchored at the evaluation minute.
+ */
+class AlarmMetricWindow {
+
+  private final String dimensionHash;
+  private final MetricType metricType;
+  private final Units unit;
+  private final int period;
+  private final int evaluationPeriods;
+  private final long configurationTimestamp;
+  private final long spanMillis;
+  private final TreeMap<Long, EnumMap<Units, Aggregate>> minutes = Maps.newTreeMap( );
+  private StateValue stateValue;
+  private boolean dirty = true;
+  private boolean loaded = false;
+  private boolean loading = false;
+  private boolean raced = false;
+  private long reloadAt = 0;
+  private long lastEvaluated = 0;
+
+  private static final class Aggregate {
+    private double sampleSize;
+    private double sampleMax;
+    private double sampleMin;
+    private double sampleSum;
+
+    private Aggregate( final double sampleSize, final double sampleMax, final double sampleMin, final double sampleSum ) {
+      this.sampleSize = sampleSize;
+      this.sampleMax = sampleMax;
+      this.sampleMin = sampleMin;
+      this.sampleSum = sampleSum;
+    }
+
+    private void add( final double sampleSize, final double sampleMax, final double sampleMin, final double sampleSum ) {
+      this.sampleSize += sampleSize;
+      this.sampleMax = Math.max( this.sampleMax, sampleMax );
+      this.sampleMin = Math.min( this.sampleMin, sampleMin );
+      this.sampleSum += sampleSum;
+    }
+  }
+
+  AlarmMetricWindow( final AlarmEntity alarmEntity, final String dimensionHash ) {
+    this.dimensionHash = dimensionHash;
+    this.metricType = alarmEntity.getMetricType( );
+    this.unit = alarmEntity.getUnit( );
+    this.period = alarmEntity.getPeriod( );
+    this.evaluationPeriods = alarmEntity.getEvaluationPeriods( );
+    this.configurationTimestamp = configurationTimestamp( alarmEntity );
+    this.spanMillis = 1000L * period * ( evaluationPeriods + AlarmStateEvaluationWorker.numBufferPeriods( period ) );
+    this.stateValue = alarmEntity.getStateValue( );
+  }
+
+  /**
+   * True if the window was built for the current definition of the alarm.
+   */
+  boolean matches( final AlarmEntity alarmEntity ) {
+    return configurationTimestamp == configurationTimestamp( alarmEntity ) &&
+        period == alarmEntity.getPeriod( ) &&
+        evaluationPeriods == alarmEntity.getEvaluationPeriods( ) &&
+        unit == alarmEntity.getUnit( );
+  }
+
+  /**
+   * Start of the metric data range the window must cover at the given time.
+   */
+  Date getStartDate( final Date now ) {
+    return new Date( MetricUtils.stripSeconds( now ).getTime( ) - spanMillis );
+  }
+
+  synchronized void fold( final Date timestamp,
+                          final Units units,
+                          final Double sampleSize,
+                          final Double sampleMax,
+                          final Double sampleMin,
+                          final Double sampleSum ) {
+    if ( loading ) {
+      // the load may or may not see this data, reload to be sure
+      raced = true;
+      return;
+    }
+    if ( !loaded || ( unit != null && unit != units ) ) {
+      return;
+    }
+    add( MetricUtils.stripSeconds( timestamp ).getTime( ), units, sampleSize, sampleMax, sampleMin, sampleSum );
+    dirty = true;
+  }
+
+  synchronized boolean needsLoad( final long now ) {
+    return !loading && ( !loaded || raced || now >= reloadAt );
+  }
+
+  synchronized void beginLoad( ) {
+    loading = true;
+    raced = false;
+  }
+
+  /**
+   * Replace the window contents with the given one minute statistics.
+   */
+  synchronized void completeLoad( final Collection<MetricStatistics> minuteStatistics, final long reloadAt ) {
+    minutes.clear( );
+    for ( final MetricStatistics statistics : minuteStatistics ) {
+      add( MetricUtils.stripSeconds( statistics.getTimestamp( ) ).getTime( ), statistics.getUnits( ),
+          statistics.getSampleSize( ), statistics.getSampleMax( ), statistics.getSampleMin( ), statistics.getSampleSum( ) );
+    }
+    this.reloadAt = reloadAt;
+    loading = false;
+    loaded = true;
+    dirty = true;
+  }
+
+  synchronized void failLoad( ) {
+    loading = false;
+  }
+
+  /**
+   * True if the window has new data, the alarm state was changed elsewhere or
+   * a period has passed since the last evaluation.
+   */
+  synchronized boolean needsEvaluation( final StateValue currentStateValue, final long now ) {
+    if ( currentStateValue != stateValue ) {
+      stateValue = currentStateValue;
+      dirty = true;
+    }
+    return dirty || !loaded || now - lastEvaluated >= 1000L * period;
+  }
+
+  /**
+   * Get statistics for the alarm period buckets in the given range and mark
+   * the window as evaluated.
+   */
+  synchronized Collection<MetricStatistics> evaluate( final Date bufferStartDate, final Date endDate, final long now ) {
+    minutes.headMap( bufferStartDate.getTime( ) ).clear( );
+    final Map<Long, EnumMap<Units, Aggregate>> buckets = Maps.newTreeMap( );
+    for ( final Map.Entry<Long, EnumMap<Units, Aggregate>> minute : minutes.subMap( bufferStartDate.getTime( ), endDate.getTime( ) ).entrySet( ) ) {
+      final long bucket = MetricUtils.getPeriodStart( new Date( minute.getKey( ) ), bufferStartDate, period ).getTime( );
+      EnumMap<Units, Aggregate> bucketAggregates = buckets.get( bucket );
+      if ( bucketAggregates == null ) {
+        bucketAggregates = new EnumMap<>( Units.class );
+        buckets.put( bucket, bucketAggregates );
+      }
+      for ( final Map.Entry<Units, Aggregate> entry : minute.getValue( ).entrySet( ) ) {
+        final Aggregate aggregate = entry.getValue( );
+        final Aggregate bucketAggregate = bucketAggregates.get( entry.getKey( ) );
+        if ( bucketAggregate == null ) {
+          bucketAggregates.put( entry.getKey( ),
+              new Aggregate( aggregate.sampleSize, aggregate.sampleMax, aggregate.sampleMin, aggregate.sampleSum ) );
+        } else {
+          bucketAggregate.add( aggregate.sampleSize, aggregate.sampleMax, aggregate.sampleMin, aggregate.sampleSum );
+        }
+      }
+    }
+    final List<MetricStatistics> statisticsList = Lists.newArrayList( );
+    for ( final Map.Entry<Long, EnumMap<Units, Aggregate>> bucket : buckets.entrySet( ) ) {
+      for ( final Map.Entry<Units, Aggregate> entry : bucket.getValue( ).entrySet( ) ) {
+        final MetricEntity metricEntity = MetricEntityFactory.getNewMetricEntity( metricType, dimensionHash );
+        metricEntity.setMetricType( metricType );
+        metricEntity.setUnits( entry.getKey( ) );
+        metricEntity.setTimestamp( new Date( bucket.getKey( ) ) );
+        metricEntity.setSampleSize( entry.getValue( ).sampleSize );
+        metricEntity.setSampleMax( entry.getValue( ).sampleMax );
+        metricEntity.setSampleMin( entry.getValue( ).sampleMin );
+        metricEntity.setSampleSum( entry.getValue( ).sampleSum );
+        statisticsList.add( new MetricStatistics( metricEntity, bufferStartDate, period, null ) );
+      }
+    }
+    dirty = false;
+    lastEvaluated = now;
+    return statisticsList;
+  }
+
+  synchronized int size( ) {
+    return minutes.size( );
+  }
+
+  private void add( final long minute,
+                    final Units units,
+                    final Double sampleSize,
+                    final Double sampleMax,
+                    final Double sampleMin,
+                    final Double sampleSum ) {
+    if ( !minutes.isEmpty( ) && minute < minutes.lastKey( ) - spanMillis ) {
+      return; // too old to be evaluated
+    }
+    EnumMap<Units, Aggregate> aggregates = minutes.get( minute );
+    if ( aggregates == null ) {
+      aggregates = new EnumMap<>( Units.class );
+      minutes.put( minute, aggregates );
+    }
+    final Units aggregateUnits = units == null ? Units.None : units;
+    final Aggregate aggregate = aggregates.get( aggregateUnits );
+    if ( aggregate == null ) {
+      aggregates.put( aggregateUnits, new Aggregate( sampleSize, sampleMax, sampleMin, sampleSum ) );
+    } else {
+      aggregate.add( sampleSize, sampleMax, sampleMin, sampleSum );
+    }
+  }
+
+  private static long configurationTimestamp( final AlarmEntity alarmEntity ) {
+    final Date timestamp = alarmEntity.getAlarmConfigurationUpdatedTimestamp( );
+    return timestamp == null ? 0 : timestamp.getTime( );
+  }
+}
@@ -37,6 +37,7 @@
 
 package com.eucalyptus.cloudwatch.workflow.alarms;
 
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -82,9 +83,18 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
       int size = 0;
       long before = 0;
       List<List<AlarmEntity>> resultsList = null;
+      final AlarmEvaluationWindows windows = CloudWatchConfigProperties.ALARM_EVALUATION_INCREMENTAL ?
+        AlarmEvaluationWindows.getInstance() :
+        null;
       try (final TransactionResource db = Entities.transactionFor(AlarmEntity.class)) {
         Criteria criteria = Entities.createCriteria(AlarmEntity.class);
         List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
+        if (windows != null) {
+          // only evaluate alarms with new data or a period boundary passed
+          results = windows.sync(results, new Date());
+        } else {
+          AlarmEvaluationWindows.getInstance().clear();
+        }
         resultsList = makeResultsList(results);
         before = System.currentTimeMillis();
         size = results.size();
@@ -94,7 +104,7 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
           ExecutorCompletionService executorCompletionService = new ExecutorCompletionService(executorService);
           Set<Future> futures = Sets.newHashSet();
           for (List<AlarmEntity> alarmEntityList: resultsList) {
-            futures.add(executorCompletionService.submit(new AlarmStateEvaluationWorker(alarmEntityList), new Object()));
+            futures.add(executorCompletionService.submit(new AlarmStateEvaluationWorker(alarmEntityList, windows), new Object()));
           }
           Future completedFuture;
           while (futures.size() > 0) {
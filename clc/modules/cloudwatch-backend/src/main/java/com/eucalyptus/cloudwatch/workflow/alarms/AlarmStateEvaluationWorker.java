@@ -65,10 +65,20 @@ import com.eucalyptus.component.Topology;
 
 public class AlarmStateEvaluationWorker implements Runnable {
   private Collection<AlarmEntity> alarmEntities;
+  private AlarmEvaluationWindows windows;
   private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationWorker.class);
   public AlarmStateEvaluationWorker(Collection<AlarmEntity> alarmEntities) {
+    this(alarmEntities, null);
+  }
+
+  /**
+   * Worker that evaluates using in-memory metric windows rather than querying
+   * metric data for each alarm.
+   */
+  public AlarmStateEvaluationWorker(Collection<AlarmEntity> alarmEntities, AlarmEvaluationWindows windows) {
     super();
     this.alarmEntities = alarmEntities;
+    this.windows = windows;
   }
   @Override
   public void run() {
@@ -107,14 +117,24 @@ public class AlarmStateEvaluationWorker implements Runnable {
     Date queryDate = new Date();
     Date endDate = MetricUtils.stripSeconds(queryDate);
     List<MetricManager.GetMetricStatisticsParams> getMetricStatisticsParamses = Lists.newArrayList();
+    List<Collection<MetricStatistics>> manyMetricsStatisticsList = Lists.newArrayList();
+    if (windows != null) {
+      windows.load(alarmEntities, queryDate);
+    }
     for (AlarmEntity alarmEntity: alarmEntities) {
       Date startDate = new Date(endDate.getTime() - 1000L * alarmEntity.getPeriod() * alarmEntity.getEvaluationPeriods());
       // We put in a slight buffer in addition to the regular window time (two additional periods or 5 minutes, whichever is greater) to delay
       // insufficient data from going down...
       Date bufferStartDate = new Date(startDate.getTime() - 1000L * alarmEntity.getPeriod() * numBufferPeriods(alarmEntity.getPeriod()));
-      getMetricStatisticsParamses.add(new MetricManager.GetMetricStatisticsParams(alarmEntity.getAccountId(), alarmEntity.getMetricName(), alarmEntity.getNamespace(), alarmEntity.getDimensionMap(), alarmEntity.getMetricType(), alarmEntity.getUnit(), bufferStartDate, endDate, alarmEntity.getPeriod()));
+      if (windows != null) {
+        manyMetricsStatisticsList.add(windows.evaluate(alarmEntity, bufferStartDate, endDate, queryDate));
+      } else {
+        getMetricStatisticsParamses.add(new MetricManager.GetMetricStatisticsParams(alarmEntity.getAccountId(), alarmEntity.getMetricName(), alarmEntity.getNamespace(), alarmEntity.getDimensionMap(), alarmEntity.getMetricType(), alarmEntity.getUnit(), bufferStartDate, endDate, alarmEntity.getPeriod()));
+      }
+    }
+    if (windows == null) {
+      manyMetricsStatisticsList = MetricManager.getManyMetricStatistics(getMetricStatisticsParamses);
     }
-    List<Collection<MetricStatistics>> manyMetricsStatisticsList = MetricManager.getManyMetricStatistics(getMetricStatisticsParamses);
     int count = 0;
     for (AlarmEntity alarmEntity: alarmEntities) {
       Date startDate = new Date(endDate.getTime() - 1000L * alarmEntity.getPeriod() * alarmEntity.getEvaluationPeriods());
@@ -227,7 +247,7 @@ public class AlarmStateEvaluationWorker implements Runnable {
       return metricValue;
     }
   }
-  private Integer numBufferPeriods(Integer period) {
+  static Integer numBufferPeriods(Integer period) {
     // it is the greater of 5 minutes or two periods, but it should be a whole number of periods.
     Integer periodMinutes = period / 60;
     if (periodMinutes == 1) return 5;
@@ -0,0 +1,113 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStore;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.PostgresqlMetricStore;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar.ColumnarMetricStore;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares GetMetricStatistics over two weeks of minute data for the
+ * postgres and columnar metric stores.
+ *
+ * Requires a database, as for MetricTest.
+ */
+@Ignore("Manual benchmark")
+public class MetricStoreBenchmark {
+  private static final Logger LOG = Logger.getLogger(MetricStoreBenchmark.class);
+
+  private static final int SERIES = 20;
+  private static final int DAYS = 14;
+  private static final int QUERIES = 50;
+
+  private static Map<String, String> dimensionMap(int series) {
+    Map<String, String> dimensionMap = Maps.newTreeMap();
+    dimensionMap.put("InstanceId", "i-" + series);
+    return dimensionMap;
+  }
+
+  private static void load(MetricStore store, long end) {
+    long start = end - TimeUnit.DAYS.toMillis(DAYS);
+    for (long hour = start; hour < end; hour += TimeUnit.HOURS.toMillis(1)) {
+      List<SimpleMetricEntity> batch = Lists.newArrayList();
+      for (int series = 0; series < SERIES; series++) {
+        for (long minute = hour; minute < hour + TimeUnit.HOURS.toMillis(1); minute += TimeUnit.MINUTES.toMillis(1)) {
+          SimpleMetricEntity entity = new SimpleMetricEntity();
+          entity.setAccountId("000000000000");
+          entity.setNamespace("AWS/EC2");
+          entity.setMetricName("CPUUtilization");
+          entity.setMetricType(MetricType.System);
+          entity.setDimensionMap(dimensionMap(series));
+          entity.setUnits(Units.Percent);
+          entity.setTimestamp(new Date(minute));
+          double value = (minute / 60000) % 100;
+          entity.setSampleSize(1.0);
+          entity.setSampleMax(value);
+          entity.setSampleMin(value);
+          entity.setSampleSum(value);
+          batch.add(entity);
+        }
+      }
+      store.addMetricBatch(batch);
+    }
+  }
+
+  private static long query(MetricStore store, long end) {
+    long before = System.nanoTime();
+    for (int i = 0; i < QUERIES; i++) {
+      GetMetricStatisticsParams params = new GetMetricStatisticsParams("000000000000", "CPUUtilization", "AWS/EC2",
+          dimensionMap(i % SERIES), MetricType.System, null, new Date(end - TimeUnit.DAYS.toMillis(DAYS)), new Date(end), 3600);
+      params.validate(new Date(end));
+      store.getMetricStatistics(params);
+    }
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - before) / QUERIES;
+  }
+
+  @Test
+  public void benchmark() {
+    long end = System.currentTimeMillis();
+    end = end - end % TimeUnit.HOURS.toMillis(1);
+    MetricStore postgres = new PostgresqlMetricStore();
+    MetricStore columnar = new ColumnarMetricStore(Files.createTempDir());
+    load(postgres, end);
+    load(columnar, end);
+    query(postgres, end); // warm up
+    query(columnar, end);
+    LOG.info("postgres two week hourly statistics: " + query(postgres, end) + "ms");
+    LOG.info("columnar two week hourly statistics: " + query(columnar, end) + "ms");
+    postgres.deleteMetrics(new Date(end + 1));
+    columnar.deleteMetrics(new Date(end + TimeUnit.DAYS.toMillis(1)));
+  }
+}
@@ -0,0 +1,130 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.workflow.alarms;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity.StateValue;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStatistics;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AlarmMetricWindowTest {
+
+  private static final double TOLERANCE = 0.000000001;
+
+  private static AlarmEntity alarm(int period, int evaluationPeriods) {
+    AlarmEntity alarmEntity = new AlarmEntity();
+    alarmEntity.setMetricType(MetricType.Custom);
+    alarmEntity.setPeriod(period);
+    alarmEntity.setEvaluationPeriods(evaluationPeriods);
+    alarmEntity.setStateValue(StateValue.INSUFFICIENT_DATA);
+    alarmEntity.setAlarmConfigurationUpdatedTimestamp(new Date(0));
+    return alarmEntity;
+  }
+
+  private static AlarmMetricWindow loadedWindow(AlarmEntity alarmEntity, long now) {
+    AlarmMetricWindow window = new AlarmMetricWindow(alarmEntity, "hash");
+    window.beginLoad();
+    window.completeLoad(Collections.<MetricStatistics>emptyList(), now + 60000L);
+    return window;
+  }
+
+  @Test
+  public void testRebucketToPeriod() {
+    long now = MetricUtils.stripSeconds(new Date()).getTime();
+    AlarmMetricWindow window = loadedWindow(alarm(300, 1), now);
+    Date endDate = new Date(now);
+    Date bufferStartDate = new Date(now - 3 * 300000L);
+    // two minutes in the most recent period, one in the period before
+    window.fold(new Date(now - 60000L), Units.None, 1.0, 5.0, 5.0, 5.0);
+    window.fold(new Date(now - 120000L), Units.None, 2.0, 9.0, 1.0, 10.0);
+    window.fold(new Date(now - 360000L), Units.None, 1.0, 3.0, 3.0, 3.0);
+    Collection<MetricStatistics> statistics = window.evaluate(bufferStartDate, endDate, now);
+    assertEquals(2, statistics.size());
+    List<MetricStatistics> statisticsList = Lists.newArrayList(statistics);
+    MetricStatistics older = statisticsList.get(0);
+    MetricStatistics newer = statisticsList.get(1);
+    assertEquals(now - 600000L, older.getTimestamp().getTime());
+    assertEquals(1.0, older.getSampleSize(), TOLERANCE);
+    assertEquals(now - 300000L, newer.getTimestamp().getTime());
+    assertEquals(3.0, newer.getSampleSize(), TOLERANCE);
+    assertEquals(9.0, newer.getSampleMax(), TOLERANCE);
+    assertEquals(1.0, newer.getSampleMin(), TOLERANCE);
+    assertEquals(15.0, newer.getSampleSum(), TOLERANCE);
+  }
+
+  @Test
+  public void testNeedsEvaluation() {
+    long now = MetricUtils.stripSeconds(new Date()).getTime();
+    AlarmMetricWindow window = loadedWindow(alarm(300, 1), now);
+    assertTrue(window.needsEvaluation(StateValue.INSUFFICIENT_DATA, now));
+    window.evaluate(new Date(now - 900000L), new Date(now), now);
+    assertFalse(window.needsEvaluation(StateValue.INSUFFICIENT_DATA, now + 60000L));
+    window.fold(new Date(now), Units.None, 1.0, 1.0, 1.0, 1.0);
+    assertTrue(window.needsEvaluation(StateValue.INSUFFICIENT_DATA, now + 60000L));
+    window.evaluate(new Date(now - 840000L), new Date(now + 60000L), now + 60000L);
+    assertFalse(window.needsEvaluation(StateValue.INSUFFICIENT_DATA, now + 120000L));
+    assertTrue(window.needsEvaluation(StateValue.INSUFFICIENT_DATA, now + 360000L));
+    // state changed outside of evaluation
+    window.evaluate(new Date(now - 840000L), new Date(now + 60000L), now + 60000L);
+    assertTrue(window.needsEvaluation(StateValue.ALARM, now + 120000L));
+  }
+
+  @Test
+  public void testFoldDuringLoad() {
+    long now = MetricUtils.stripSeconds(new Date()).getTime();
+    AlarmMetricWindow window = new AlarmMetricWindow(alarm(60, 1), "hash");
+    assertTrue(window.needsLoad(now));
+    window.beginLoad();
+    assertFalse(window.needsLoad(now));
+    window.fold(new Date(now), Units.None, 1.0, 1.0, 1.0, 1.0);
+    window.completeLoad(Collections.<MetricStatistics>emptyList(), now + 60000L);
+    assertEquals(0, window.size());
+    assertTrue(window.needsLoad(now));
+    window.beginLoad();
+    window.completeLoad(Collections.<MetricStatistics>emptyList(), now + 60000L);
+    assertFalse(window.needsLoad(now));
+    assertTrue(window.needsLoad(now + 60000L));
+  }
+
+  @Test
+  public void testUnitFilter() {
+    long now = MetricUtils.stripSeconds(new Date()).getTime();
+    AlarmEntity alarmEntity = alarm(60, 1);
+    alarmEntity.setUnit(Units.Percent);
+    AlarmMetricWindow window = loadedWindow(alarmEntity, now);
+    window.fold(new Date(now), Units.None, 1.0, 1.0, 1.0, 1.0);
+    assertEquals(0, window.size());
+    window.fold(new Date(now), Units.Percent, 1.0, 1.0, 1.0, 1.0);
+    assertEquals(1, window.size());
+  }
+}
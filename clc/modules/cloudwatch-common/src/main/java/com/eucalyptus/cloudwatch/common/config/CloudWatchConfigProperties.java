@@ -21,6 +21,9 @@ package com.eucalyptus.cloudwatch.common.config;
 
 import com.eucalyptus.configurable.ConfigurableClass;
 import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.configurable.ConfigurableProperty;
+import com.eucalyptus.configurable.ConfigurablePropertyException;
+import com.eucalyptus.configurable.PropertyChangeListener;
 import com.eucalyptus.configurable.PropertyChangeListeners;
 
 @ConfigurableClass( root = "cloudwatch", description = "Parameters controlling cloud watch and reporting")
@@ -31,7 +34,44 @@ public class CloudWatchConfigProperties {
   @ConfigurableField(initial = "1000", description = "Size of the reporting data set that stores cloud watch queues performance info (debug only prop)")
   public static volatile int CLOUDWATCH_MONITORING_HISTORY_SIZE = 1000;
 
+  @ConfigurableField(initial = "500000", description = "Maximum number of pre-aggregated metric data points held between flushes, new metric data is rejected when exceeded")
+  public static volatile int CLOUDWATCH_PUT_DATA_MAX_PENDING_POINTS = 500000;
+
+  @ConfigurableField(initial = "postgres", description = "Metric data store, one of postgres, columnar or dual (write both, read postgres)", changeListener = MetricDataStoreChangeListener.class)
+  public static volatile String METRIC_DATA_STORE = "postgres";
+
+  @ConfigurableField(initial = "false", description = "Set this to true to evaluate alarms from in-memory metric windows fed by metric data ingestion, requires the cloudwatch service and backend on the same host", changeListener = PropertyChangeListeners.IsBoolean.class)
+  public static volatile Boolean ALARM_EVALUATION_INCREMENTAL = false;
+
+  @ConfigurableField(initial = "15", description = "Interval in minutes after which in-memory alarm metric windows are reloaded from the metric store", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int ALARM_EVALUATION_RECONCILE_MINUTES = 15;
+
+  @ConfigurableField(initial = "60", description = "Interval in minutes at which the last update time of a listed metric is refreshed, must be well under the two week metric retention", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int LIST_METRIC_UPDATE_GRANULARITY_MINUTES = 60;
+
+  @ConfigurableField(initial = "1000000", description = "Expected number of listed metrics, used to size the index of known metrics", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int LIST_METRIC_INDEX_EXPECTED_METRICS = 1000000;
+
+  @ConfigurableField(initial = "1000", description = "Maximum number of expired rows deleted per transaction by the retention purge", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int RETENTION_PURGE_CHUNK_SIZE = 1000;
+
+  @ConfigurableField(initial = "10", description = "Maximum number of retention purge chunks deleted per second", changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile int RETENTION_PURGE_CHUNKS_PER_SECOND = 10;
+
+  @ConfigurableField(initial = "100000", description = "Maximum number of closed metric statistics period buckets cached, 0 to disable caching", changeListener = PropertyChangeListeners.IsNonNegativeInteger.class)
+  public static volatile int METRIC_STATISTICS_CACHE_BUCKETS = 100000;
+
   public static Boolean isDisabledCloudWatchService() {
     return !ENABLE_CLOUDWATCH_SERVICE;
   }
+
+  public static class MetricDataStoreChangeListener implements PropertyChangeListener {
+    @Override
+    public void fireChange( final ConfigurableProperty t, final Object newValue ) throws ConfigurablePropertyException {
+      final String value = String.valueOf( newValue );
+      if ( !"postgres".equalsIgnoreCase( value ) && !"columnar".equalsIgnoreCase( value ) && !"dual".equalsIgnoreCase( value ) ) {
+        throw new ConfigurablePropertyException( "Value must be 'postgres', 'columnar' or 'dual'" );
+      }
+    }
+  }
 }
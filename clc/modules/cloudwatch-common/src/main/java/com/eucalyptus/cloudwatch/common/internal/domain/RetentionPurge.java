@@ -0,0 +1,115 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.util.metrics.MonitoredAction;
+import com.eucalyptus.util.metrics.ThruputMetrics;
+import com.google.common.collect.Maps;
+
+/**
+ * Deletes expired rows in bounded chunks.
+ *
+ * Each chunk selects the ids of up to the chunk size expired rows, in id
+ * order after the last id deleted, and deletes them in its own transaction.
+ * This keeps transactions short and avoids rescanning rows deleted by earlier
+ * chunks. Chunks are paced to the configured rate.
+ *
+ * The last id deleted is checkpointed per table so an interrupted purge
+ * resumes where it stopped, the next purge after reaching the end of a table
+ * starts from the beginning. Checkpoints are only held in memory, after a
+ * restart the first purge of each table starts from the beginning.
+ */
+public class RetentionPurge {
+  private static final Logger LOG = Logger.getLogger(RetentionPurge.class);
+  private static final ConcurrentMap<String, String> checkpoints = Maps.newConcurrentMap();
+
+  private RetentionPurge() {
+  }
+
+  /**
+   * Delete rows with a timestamp before the given date.
+   *
+   * @param entityClass the entity (table) to purge
+   * @param timestampProperty the timestamp property to compare
+   * @param before the date to delete before (exclusive)
+   * @param chunkAction the action to record chunk timings against
+   * @return the number of rows deleted
+   */
+  public static long purge(Class<?> entityClass, String timestampProperty, Date before, MonitoredAction chunkAction) {
+    final int chunkSize = Math.max(1, CloudWatchConfigProperties.RETENTION_PURGE_CHUNK_SIZE);
+    final long chunkIntervalMillis = 1000L / Math.max(1, CloudWatchConfigProperties.RETENTION_PURGE_CHUNKS_PER_SECOND);
+    final String checkpointKey = entityClass.getName();
+    String lastId = checkpoints.get(checkpointKey);
+    long deleted = 0;
+    long purgeStart = System.currentTimeMillis();
+    while (true) {
+      long chunkStart = System.currentTimeMillis();
+      List<String> ids;
+      try (final TransactionResource db = Entities.transactionFor(entityClass)) {
+        Criteria criteria = Entities.createCriteria(entityClass)
+          .add(Restrictions.lt(timestampProperty, before))
+          .setProjection(Projections.id())
+          .addOrder(Order.asc("id"))
+          .setMaxResults(chunkSize);
+        if (lastId != null) {
+          criteria = criteria.add(Restrictions.gt("id", lastId));
+        }
+        ids = (List<String>) criteria.list();
+        if (!ids.isEmpty()) {
+          Entities.deleteAllMatching(entityClass, "WHERE id IN (:ids)", Collections.singletonMap("ids", ids));
+        }
+        db.commit();
+      }
+      ThruputMetrics.addDataPoint(chunkAction, System.currentTimeMillis() - chunkStart);
+      deleted += ids.size();
+      if (ids.size() < chunkSize) {
+        checkpoints.remove(checkpointKey);
+        break;
+      }
+      lastId = ids.get(ids.size() - 1);
+      checkpoints.put(checkpointKey, lastId);
+      long sleepMillis = chunkStart + chunkIntervalMillis - System.currentTimeMillis();
+      if (sleepMillis > 0) {
+        try {
+          Thread.sleep(sleepMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    LOG.debug("Purged " + deleted + " rows from " + entityClass.getSimpleName() + ", time = " + (System.currentTimeMillis() - purgeStart) + " ms");
+    return deleted;
+  }
+}
@@ -71,6 +71,7 @@ import com.eucalyptus.cloudwatch.common.CloudWatchMetadata;
 import com.eucalyptus.cloudwatch.common.CloudWatchResourceName;
 import com.eucalyptus.cloudwatch.common.internal.domain.DimensionEntity;
 import com.eucalyptus.cloudwatch.common.internal.domain.NextTokenUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.RetentionPurge;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity.ComparisonOperator;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity.StateValue;
 import com.eucalyptus.cloudwatch.common.internal.domain.alarms.AlarmEntity.Statistic;
@@ -86,6 +87,7 @@ import com.eucalyptus.entities.Entities;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.util.Callback;
 import com.eucalyptus.util.DispatchingClient;
+import com.eucalyptus.util.metrics.MonitoredAction;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.HashMultimap;
@@ -582,12 +584,7 @@ public class AlarmManager {
    * @param before the date to delete before (inclusive)
    */
   public static void deleteAlarmHistory(Date before) {
-    try (final TransactionResource db = Entities.transactionFor(AlarmHistory.class)) {
-      Map<String, Date> criteria = Maps.newHashMap();
-      criteria.put("before", before);
-      Entities.deleteAllMatching(AlarmHistory.class, "WHERE timestamp < :before", criteria);
-      db.commit();
-    }
+    RetentionPurge.purge(AlarmHistory.class, "timestamp", before, MonitoredAction.RETENTION_PURGE_ALARM_HISTORY_CHUNK);
   }
 
 
@@ -42,16 +42,22 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import org.apache.log4j.Logger;
+import org.hibernate.CacheMode;
 import org.hibernate.Criteria;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.cloudwatch.common.internal.domain.DimensionEntity;
 import com.eucalyptus.cloudwatch.common.internal.domain.NextTokenUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.RetentionPurge;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Callback;
+import com.eucalyptus.util.metrics.MonitoredAction;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -130,14 +136,33 @@ public class ListMetricManager {
    * @param before the date to delete before (inclusive)
    */
   public static void deleteMetrics(Date before) {
+    RetentionPurge.purge(ListMetric.class, "lastUpdateTimestamp", before, MonitoredAction.RETENTION_PURGE_LIST_METRICS_CHUNK);
+  }
+   
+  /**
+   * Visit all metrics updated after a certain date
+   * @param after the time after which metrics must have been updated.  If null, this filter will not be used.
+   * @param callback called for each metric, the metric is detached after the callback
+   */
+  public static void scanMetrics(Date after, Callback<ListMetric> callback) {
     try (final TransactionResource db = Entities.transactionFor(ListMetric.class)) {
-      Map<String, Date> criteria = new HashMap<String, Date>();
-      criteria.put("before", before);
-      Entities.deleteAllMatching(ListMetric.class, "WHERE lastUpdateTimestamp < :before", criteria);
+      Criteria criteria = Entities.createCriteria(ListMetric.class);
+      if (after != null) {
+        criteria = criteria.add(Restrictions.ge("lastUpdateTimestamp", after));
+      }
+      ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).setReadOnly(true).scroll(ScrollMode.FORWARD_ONLY);
+      int numResults = 0;
+      while (results.next()) {
+        callback.fire((ListMetric) results.get(0));
+        numResults++;
+        if (numResults % LIST_METRIC_NUM_DB_OPERATIONS_UNTIL_SESSION_FLUSH == 0) {
+          Entities.clearSession(ListMetric.class);
+        }
+      }
       db.commit();
     }
   }
-   
+
   /**
    * Returns the metrics that are associated with the applied parameters
    * @param accountId the account Id.  If null, this filter will not be used.
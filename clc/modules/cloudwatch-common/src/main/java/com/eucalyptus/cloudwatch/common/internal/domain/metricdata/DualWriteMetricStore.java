@@ -0,0 +1,77 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+
+/**
+ * Metric store that writes to two stores and reads from the primary.
+ *
+ * Used when migrating between stores, once dual writes have been enabled for
+ * the retention period the secondary store holds all metric data and can be
+ * switched to. Failures writing to the secondary store are logged only.
+ */
+public class DualWriteMetricStore implements MetricStore {
+  private static final Logger LOG = Logger.getLogger(DualWriteMetricStore.class);
+
+  private final MetricStore primary;
+  private final MetricStore secondary;
+
+  public DualWriteMetricStore(MetricStore primary, MetricStore secondary) {
+    this.primary = primary;
+    this.secondary = secondary;
+  }
+
+  @Override
+  public void addMetricBatch(List<SimpleMetricEntity> dataBatch) {
+    primary.addMetricBatch(dataBatch);
+    try {
+      secondary.addMetricBatch(dataBatch);
+    } catch (Exception ex) {
+      LOG.error("Error writing metric data to secondary store", ex);
+    }
+  }
+
+  @Override
+  public Collection<MetricStatistics> getMetricStatistics(GetMetricStatisticsParams getMetricStatisticsParams) {
+    return primary.getMetricStatistics(getMetricStatisticsParams);
+  }
+
+  @Override
+  public List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
+    return primary.getManyMetricStatistics(getMetricStatisticsParamses);
+  }
+
+  @Override
+  public void deleteMetrics(Date before) {
+    primary.deleteMetrics(before);
+    try {
+      secondary.deleteMetrics(before);
+    } catch (Exception ex) {
+      LOG.error("Error deleting metric data from secondary store", ex);
+    }
+  }
+}
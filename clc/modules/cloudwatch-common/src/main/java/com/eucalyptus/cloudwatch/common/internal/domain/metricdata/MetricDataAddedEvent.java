@@ -0,0 +1,47 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.List;
+import com.eucalyptus.event.Event;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Event fired in-process after a batch of metric data is written to the
+ * metric store.
+ */
+public class MetricDataAddedEvent implements Event {
+  private static final long serialVersionUID = 1L;
+
+  private final List<SimpleMetricEntity> dataBatch;
+
+  public MetricDataAddedEvent( final List<SimpleMetricEntity> dataBatch ) {
+    this.dataBatch = ImmutableList.copyOf( dataBatch );
+  }
+
+  public List<SimpleMetricEntity> getDataBatch( ) {
+    return dataBatch;
+  }
+
+  @Override
+  public String toString( ) {
+    return "MetricDataAddedEvent [size=" + dataBatch.size( ) + "]";
+  }
+}
@@ -52,10 +52,13 @@ import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 
 import com.eucalyptus.cloudwatch.common.internal.domain.DimensionEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.RetentionPurge;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.common.internal.hashing.HashUtils;
 import com.eucalyptus.entities.Entities;
+import com.eucalyptus.event.ListenerRegistry;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.metrics.MonitoredAction;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -85,7 +88,7 @@ public class MetricManager {
     simpleMetricEntity.setTimestamp(timestamp);
     simpleMetricEntity.setUnits(units);
     validateMetricQueueItem(simpleMetricEntity);
-    addManyMetrics(makeMetricMap(hash(simpleMetricEntity)));
+    MetricStoreFactory.getMetricStore().addMetricBatch(Lists.newArrayList(simpleMetricEntity));
   }
   
   private static Multimap<Class, MetricEntity> makeMetricMap(Collection<MetricEntity> entities) {
@@ -183,13 +186,12 @@ public class MetricManager {
    *          the date to delete before (inclusive)
    */
   public static void deleteMetrics(Date before) {
-    for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
-      try (final TransactionResource db = Entities.transactionFor(c)) {
-        Map<String, Date> criteria = new HashMap<String, Date>();
-        criteria.put("before", before);
-        Entities.deleteAllMatching(c, "WHERE timestamp < :before", criteria);
-        db.commit();
-      }
+    MetricStoreFactory.getMetricStore().deleteMetrics(before);
+  }
+
+  static void deleteMetricsFromDatabase(Date before) {
+    for (Class<?> c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
+      RetentionPurge.purge(c, "timestamp", before, MonitoredAction.RETENTION_PURGE_METRIC_DATA_CHUNK);
     }
   }
 
@@ -337,11 +339,17 @@ public class MetricManager {
   public static List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
     if (getMetricStatisticsParamses == null) throw new IllegalArgumentException("getMetricStatisticsParamses can not be null");
     Date now = new Date();
-    Map<GetMetricStatisticsParams, Collection<MetricStatistics>> resultMap = Maps.newHashMap();
-    Multimap<Class, GetMetricStatisticsParams> hashGroupMap = LinkedListMultimap.create();
     for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
       if (getMetricStatisticsParams == null) throw new IllegalArgumentException("getMetricStatisticsParams can not be null");
       getMetricStatisticsParams.validate(now);
+    }
+    return MetricStoreFactory.getMetricStore().getManyMetricStatistics(getMetricStatisticsParamses);
+  }
+
+  static List<Collection<MetricStatistics>> getManyMetricStatisticsFromDatabase(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
+    Map<GetMetricStatisticsParams, Collection<MetricStatistics>> resultMap = Maps.newHashMap();
+    Multimap<Class, GetMetricStatisticsParams> hashGroupMap = LinkedListMultimap.create();
+    for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
       Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
       hashGroupMap.put(metricEntityClass, getMetricStatisticsParams);
     }
@@ -444,46 +452,7 @@ public class MetricManager {
     if (getMetricStatisticsParams == null) throw new IllegalArgumentException("getMetricStatisticsParams can not be null");
     Date now = new Date();
     getMetricStatisticsParams.validate(now);
-    Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
-    Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
-    try (final TransactionResource db = Entities.transactionFor(metricEntityClass)) {
-      Criteria criteria = Entities.createCriteria(metricEntityClass);
-      criteria = criteria.add(Restrictions.eq("accountId", getMetricStatisticsParams.getAccountId()));
-      criteria = criteria.add(Restrictions.eq("metricName", getMetricStatisticsParams.getMetricName()));
-      criteria = criteria.add(Restrictions.eq("namespace", getMetricStatisticsParams.getNamespace()));
-      criteria = criteria.add(Restrictions.lt("timestamp", getMetricStatisticsParams.getEndTime()));
-      criteria = criteria.add(Restrictions.ge("timestamp", getMetricStatisticsParams.getStartTime()));
-      criteria = criteria.add(Restrictions.eq("dimensionHash", getMetricStatisticsParams.getDimensionHash()));
-      if (getMetricStatisticsParams.getUnits() != null) {
-        criteria = criteria.add(Restrictions.eq("units", getMetricStatisticsParams.getUnits()));
-      }
-
-      ProjectionList projectionList = Projections.projectionList();
-      projectionList.add(Projections.max("sampleMax"));
-      projectionList.add(Projections.min("sampleMin"));
-      projectionList.add(Projections.sum("sampleSize"));
-      projectionList.add(Projections.sum("sampleSum"));
-      projectionList.add(Projections.groupProperty("units"));
-      projectionList.add(Projections.groupProperty("timestamp"));
-      criteria.setProjection(projectionList);
-      criteria.addOrder(Order.asc("timestamp"));
-      ScrollableResults results = criteria.setCacheMode(CacheMode.IGNORE).scroll(ScrollMode.FORWARD_ONLY);
-      while (results.next()) {
-        MetricEntity me = getMetricEntity(getMetricStatisticsParams.getAccountId(), getMetricStatisticsParams.getMetricName(), getMetricStatisticsParams.getNamespace(), getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash(), results);
-        GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensionHash());
-        MetricStatistics item = new MetricStatistics(me, getMetricStatisticsParams.getStartTime(), getMetricStatisticsParams.getPeriod(), getMetricStatisticsParams.getDimensions());
-        if (!aggregationMap.containsKey(key)) {
-          aggregationMap.put(key, item);
-        } else {
-          MetricStatistics totalSoFar = aggregationMap.get(key);
-          totalSoFar.setSampleMax(Math.max(item.getSampleMax(), totalSoFar.getSampleMax()));
-          totalSoFar.setSampleMin(Math.min(item.getSampleMin(), totalSoFar.getSampleMin()));
-          totalSoFar.setSampleSize(totalSoFar.getSampleSize() + item.getSampleSize());
-          totalSoFar.setSampleSum(totalSoFar.getSampleSum() + item.getSampleSum());
-        }
-      }
-    }
-    return Lists.newArrayList(aggregationMap.values());
+    return MetricStoreFactory.getMetricStore().getMetricStatistics(getMetricStatisticsParams);
   }
 
   private static MetricEntity getMetricEntity(ScrollableResults results) {
@@ -513,28 +482,6 @@ public class MetricManager {
     return me;
   }
 
-  private static MetricEntity getMetricEntity(String accountId, String metricName, String namespace, MetricType metricType, String hash, ScrollableResults results) {
-    Double sampleMax = (Double) results.get(0);
-    Double sampleMin = (Double) results.get(1);
-    Double sampleSize = (Double) results.get(2);
-    Double sampleSum = (Double) results.get(3);
-    Units resultUnits = (Units) results.get(4);
-    Date timestamp = (Date) results.get(5);
-    MetricEntity me = MetricEntityFactory.getNewMetricEntity(metricType, hash);
-    me.setAccountId(accountId);
-    me.setNamespace(namespace);
-    me.setMetricName(metricName);
-    me.setMetricType(metricType);
-    me.setDimensionHash(hash);
-    me.setSampleMax(sampleMax);
-    me.setSampleMin(sampleMin);
-    me.setSampleSize(sampleSize);
-    me.setSampleSum(sampleSum);
-    me.setTimestamp(timestamp);
-    me.setUnits(resultUnits);
-    return me;
-  }
-
   public static Collection<MetricEntity> getAllMetrics() {
     ArrayList<MetricEntity> allResults = new ArrayList<MetricEntity>();
     for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
@@ -553,12 +500,24 @@ public class MetricManager {
   }
 
   public static void addMetricBatch(List<SimpleMetricEntity> dataBatch) {
-    ArrayList<MetricEntity> metricEntities = new ArrayList<MetricEntity>();
     for (SimpleMetricEntity simpleMetricEntity: dataBatch) {
       validateMetricQueueItem(simpleMetricEntity);
+    }
+    MetricStoreFactory.getMetricStore().addMetricBatch(dataBatch);
+    try {
+      ListenerRegistry.getInstance().fireEvent(new MetricDataAddedEvent(dataBatch));
+    } catch (Exception ex) {
+      LOG.error("Error notifying listeners of added metric data", ex);
+    }
+  }
+
+  static void addMetricBatchToDatabase(List<SimpleMetricEntity> dataBatch) {
+    ArrayList<MetricEntity> metricEntities = new ArrayList<MetricEntity>();
+    for (SimpleMetricEntity simpleMetricEntity: dataBatch) {
       metricEntities.addAll(hash(simpleMetricEntity));
     }
     addManyMetrics(makeMetricMap(metricEntities));
+    MetricStatisticsQueryPlanner.getInstance().invalidate(dataBatch);
   }
 
   private static void validateMetricQueueItem(SimpleMetricEntity simpleMetricEntity) {
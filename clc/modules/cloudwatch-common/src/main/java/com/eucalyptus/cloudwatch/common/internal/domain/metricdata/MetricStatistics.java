@@ -19,6 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 
@@ -163,4 +164,18 @@ public class MetricStatistics {
     this.dimensions = dimensions;
   }
 
+  public MetricStatistics(MetricStatistics other) {
+    this.accountId = other.getAccountId();
+    this.namespace = other.getNamespace();
+    this.metricName = other.getMetricName();
+    this.units = other.getUnits();
+    this.metricType = other.getMetricType();
+    this.timestamp = other.getTimestamp() == null ? null : new Date(other.getTimestamp().getTime());
+    this.sampleSize = other.getSampleSize();
+    this.sampleMax = other.getSampleMax();
+    this.sampleMin = other.getSampleMin();
+    this.sampleSum = other.getSampleSum();
+    this.dimensions = other.getDimensions() == null ? null : new ArrayList<DimensionEntity>(other.getDimensions());
+  }
+
 }
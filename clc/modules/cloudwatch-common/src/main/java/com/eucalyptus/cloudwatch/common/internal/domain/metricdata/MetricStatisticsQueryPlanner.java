@@ -0,0 +1,403 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+import com.eucalyptus.util.LockResource;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Plans GetMetricStatistics queries against the metric data tables.
+ *
+ * Period buckets that are closed (ended a few minutes ago) are cached in a
+ * bounded LRU map and requests only query the database from the first bucket
+ * that is not cached. Buckets that receive late data are invalidated when the
+ * data is added. Invalidation only sees data added on this host, so cached
+ * buckets also expire after a few minutes to pick up late data added
+ * elsewhere.
+ *
+ * Each series has an invalidation generation (striped) that is captured
+ * before a query runs, results are not cached if the generation changed
+ * while the query was running. Cached statistics are copied on the way in
+ * and out of the cache as callers modify the statistics they are given.
+ *
+ * Concurrent queries for the same hashed table are coalesced, a caller that
+ * finds a query in progress for the table waits and then runs all queries
+ * queued in the meantime as a single grouped query.
+ */
+public class MetricStatisticsQueryPlanner {
+  private static final Logger LOG = Logger.getLogger(MetricStatisticsQueryPlanner.class);
+  private static final long SETTLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(14);
+  private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private static final int GENERATION_STRIPES = 1024;
+  private static final MetricStatisticsQueryPlanner instance = new MetricStatisticsQueryPlanner(
+      new Function<List<GetMetricStatisticsParams>, List<Collection<MetricStatistics>>>() {
+        @Override
+        public List<Collection<MetricStatistics>> apply(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
+          return MetricManager.getManyMetricStatisticsFromDatabase(getMetricStatisticsParamses);
+        }
+      });
+
+  private final Function<List<GetMetricStatisticsParams>, List<Collection<MetricStatistics>>> query;
+  private final ReentrantLock cacheLock = new ReentrantLock();
+  private final LinkedHashMap<BucketKey, CachedBucket> cache = new LinkedHashMap<>(1024, 0.75f, true);
+  private final long[] generations = new long[GENERATION_STRIPES];
+  private final ConcurrentMap<Class, TableQueue> tableQueues = Maps.newConcurrentMap();
+
+  MetricStatisticsQueryPlanner(Function<List<GetMetricStatisticsParams>, List<Collection<MetricStatistics>>> query) {
+    this.query = query;
+  }
+
+  public static MetricStatisticsQueryPlanner getInstance() {
+    return instance;
+  }
+
+  /**
+   * Get statistics for validated parameters.
+   */
+  public List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
+    return getManyMetricStatistics(getMetricStatisticsParamses, System.currentTimeMillis());
+  }
+
+  List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses, long now) {
+    List<Plan> plans = Lists.newArrayList();
+    Map<Class, List<PendingQuery>> pendingByClass = Maps.newLinkedHashMap();
+    for (GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses) {
+      Plan plan = plan(getMetricStatisticsParams, now);
+      plans.add(plan);
+      if (plan.pending != null) {
+        Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(getMetricStatisticsParams.getMetricType(), getMetricStatisticsParams.getDimensionHash());
+        List<PendingQuery> pending = pendingByClass.get(metricEntityClass);
+        if (pending == null) {
+          pending = Lists.newArrayList();
+          pendingByClass.put(metricEntityClass, pending);
+        }
+        pending.add(plan.pending);
+      }
+    }
+    for (Map.Entry<Class, List<PendingQuery>> entry : pendingByClass.entrySet()) {
+      run(entry.getKey(), entry.getValue());
+    }
+    List<Collection<MetricStatistics>> resultList = Lists.newArrayList();
+    for (Plan plan : plans) {
+      resultList.add(complete(plan, now));
+    }
+    return resultList;
+  }
+
+  /**
+   * Invalidate cached buckets that the given (late) data falls in.
+   */
+  public void invalidate(List<SimpleMetricEntity> dataBatch) {
+    long closedBefore = System.currentTimeMillis() - SETTLE_MILLIS;
+    Set<SeriesKey> lateSeries = null;
+    for (SimpleMetricEntity simpleMetricEntity : dataBatch) {
+      if (simpleMetricEntity.getTimestamp() != null && simpleMetricEntity.getTimestamp().getTime() < closedBefore) {
+        if (lateSeries == null) lateSeries = Sets.newHashSet();
+        lateSeries.add(new SeriesKey(simpleMetricEntity.getAccountId(), simpleMetricEntity.getNamespace(),
+            simpleMetricEntity.getMetricName(), simpleMetricEntity.getMetricType(),
+            MetricManager.hash(simpleMetricEntity.getDimensionMap())));
+      }
+    }
+    if (lateSeries == null) return;
+    try (final LockResource lock = LockResource.lock(cacheLock)) {
+      for (SeriesKey series : lateSeries) {
+        generations[generationStripe(series)]++;
+      }
+      for (Iterator<BucketKey> keyIterator = cache.keySet().iterator(); keyIterator.hasNext(); ) {
+        if (lateSeries.contains(keyIterator.next().series)) {
+          keyIterator.remove();
+        }
+      }
+    }
+  }
+
+  public int size() {
+    try (final LockResource lock = LockResource.lock(cacheLock)) {
+      return cache.size();
+    }
+  }
+
+  private Plan plan(GetMetricStatisticsParams getMetricStatisticsParams, long now) {
+    Plan plan = new Plan(getMetricStatisticsParams);
+    long periodMillis = 1000L * getMetricStatisticsParams.getPeriod();
+    long bucketStart = getMetricStatisticsParams.getStartTime().getTime();
+    long endTime = getMetricStatisticsParams.getEndTime().getTime();
+    if (CloudWatchConfigProperties.METRIC_STATISTICS_CACHE_BUCKETS > 0) {
+      SeriesKey series = SeriesKey.of(getMetricStatisticsParams);
+      try (final LockResource lock = LockResource.lock(cacheLock)) {
+        plan.generation = generations[generationStripe(series)];
+        for (; isCacheable(bucketStart, periodMillis, endTime, now); bucketStart += periodMillis) {
+          BucketKey key = new BucketKey(series, getMetricStatisticsParams.getUnits(), getMetricStatisticsParams.getPeriod(), bucketStart);
+          CachedBucket bucket = cache.get(key);
+          if (bucket == null) break;
+          if (bucket.cachedAt + EXPIRY_MILLIS <= now) {
+            cache.remove(key);
+            break;
+          }
+          plan.cached.addAll(copy(bucket.statistics));
+        }
+      }
+    }
+    if (bucketStart < endTime) {
+      plan.pending = new PendingQuery(new GetMetricStatisticsParams(getMetricStatisticsParams.getAccountId(),
+          getMetricStatisticsParams.getMetricName(), getMetricStatisticsParams.getNamespace(),
+          getMetricStatisticsParams.getDimensionMap(), getMetricStatisticsParams.getMetricType(),
+          getMetricStatisticsParams.getUnits(), new Date(bucketStart), getMetricStatisticsParams.getEndTime(),
+          getMetricStatisticsParams.getPeriod()));
+    }
+    return plan;
+  }
+
+  private Collection<MetricStatistics> complete(Plan plan, long now) {
+    if (plan.pending == null) {
+      return plan.cached;
+    }
+    if (plan.pending.error != null) {
+      throw plan.pending.error;
+    }
+    List<MetricStatistics> result = Lists.newArrayList(plan.cached);
+    result.addAll(plan.pending.result);
+    if (CloudWatchConfigProperties.METRIC_STATISTICS_CACHE_BUCKETS > 0) {
+      cache(plan.pending.params, plan.pending.result, plan.generation, now);
+    }
+    return result;
+  }
+
+  private void cache(GetMetricStatisticsParams getMetricStatisticsParams, Collection<MetricStatistics> statistics, long generation, long now) {
+    long periodMillis = 1000L * getMetricStatisticsParams.getPeriod();
+    long endTime = getMetricStatisticsParams.getEndTime().getTime();
+    Map<Long, List<MetricStatistics>> buckets = Maps.newLinkedHashMap();
+    for (long bucketStart = getMetricStatisticsParams.getStartTime().getTime(); isCacheable(bucketStart, periodMillis, endTime, now); bucketStart += periodMillis) {
+      buckets.put(bucketStart, new ArrayList<MetricStatistics>(1));
+    }
+    if (buckets.isEmpty()) return;
+    for (MetricStatistics metricStatistics : statistics) {
+      List<MetricStatistics> bucket = buckets.get(metricStatistics.getTimestamp().getTime());
+      if (bucket != null) {
+        bucket.add(new MetricStatistics(metricStatistics));
+      }
+    }
+    SeriesKey series = SeriesKey.of(getMetricStatisticsParams);
+    int maxBuckets = CloudWatchConfigProperties.METRIC_STATISTICS_CACHE_BUCKETS;
+    try (final LockResource lock = LockResource.lock(cacheLock)) {
+      if (generations[generationStripe(series)] != generation) {
+        return; // late data added since the query started
+      }
+      for (Map.Entry<Long, List<MetricStatistics>> entry : buckets.entrySet()) {
+        cache.put(new BucketKey(series, getMetricStatisticsParams.getUnits(), getMetricStatisticsParams.getPeriod(), entry.getKey()),
+            new CachedBucket(now, Collections.unmodifiableList(entry.getValue())));
+      }
+      for (Iterator<BucketKey> keyIterator = cache.keySet().iterator(); cache.size() > maxBuckets && keyIterator.hasNext(); ) {
+        keyIterator.next();
+        keyIterator.remove();
+      }
+    }
+  }
+
+  private static List<MetricStatistics> copy(List<MetricStatistics> statistics) {
+    List<MetricStatistics> copies = Lists.newArrayListWithCapacity(statistics.size());
+    for (MetricStatistics metricStatistics : statistics) {
+      copies.add(new MetricStatistics(metricStatistics));
+    }
+    return copies;
+  }
+
+  private static int generationStripe(SeriesKey series) {
+    return (series.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+  }
+
+  /**
+   * A bucket can be cached when it is complete within the request, closed and
+   * not yet subject to retention.
+   */
+  private static boolean isCacheable(long bucketStart, long periodMillis, long endTime, long now) {
+    long bucketEnd = bucketStart + periodMillis;
+    return bucketEnd <= endTime && bucketEnd <= now - SETTLE_MILLIS && bucketStart >= now - RETENTION_MILLIS;
+  }
+
+  private void run(Class metricEntityClass, List<PendingQuery> pendingQueries) {
+    TableQueue tableQueue = tableQueues.get(metricEntityClass);
+    if (tableQueue == null) {
+      TableQueue newTableQueue = new TableQueue();
+      tableQueue = tableQueues.putIfAbsent(metricEntityClass, newTableQueue);
+      if (tableQueue == null) tableQueue = newTableQueue;
+    }
+    tableQueue.queue.addAll(pendingQueries);
+    try (final LockResource lock = LockResource.lock(tableQueue.lock)) {
+      if (pendingQueries.get(pendingQueries.size() - 1).done) {
+        return; // run by another caller
+      }
+      List<PendingQuery> batch = Lists.newArrayList();
+      for (PendingQuery pendingQuery; (pendingQuery = tableQueue.queue.poll()) != null; ) {
+        batch.add(pendingQuery);
+      }
+      List<GetMetricStatisticsParams> getMetricStatisticsParamses = Lists.newArrayListWithCapacity(batch.size());
+      for (PendingQuery pendingQuery : batch) {
+        getMetricStatisticsParamses.add(pendingQuery.params);
+      }
+      try {
+        List<Collection<MetricStatistics>> results = query.apply(getMetricStatisticsParamses);
+        for (int i = 0; i < batch.size(); i++) {
+          batch.get(i).result = results.get(i);
+        }
+      } catch (RuntimeException e) {
+        LOG.debug("Error querying metric statistics for " + batch.size() + " requests", e);
+        for (PendingQuery pendingQuery : batch) {
+          pendingQuery.error = e;
+        }
+      } finally {
+        for (PendingQuery pendingQuery : batch) {
+          pendingQuery.done = true;
+        }
+      }
+    }
+  }
+
+  private static final class TableQueue {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<PendingQuery> queue = new ConcurrentLinkedQueue<>();
+  }
+
+  private static final class PendingQuery {
+    private final GetMetricStatisticsParams params;
+    private Collection<MetricStatistics> result;
+    private RuntimeException error;
+    private boolean done;
+
+    private PendingQuery(GetMetricStatisticsParams params) {
+      this.params = params;
+    }
+  }
+
+  private static final class Plan {
+    private final GetMetricStatisticsParams params;
+    private final List<MetricStatistics> cached = Lists.newArrayList();
+    private PendingQuery pending;
+    private long generation;
+
+    private Plan(GetMetricStatisticsParams params) {
+      this.params = params;
+    }
+  }
+
+  private static final class CachedBucket {
+    private final long cachedAt;
+    private final List<MetricStatistics> statistics;
+
+    private CachedBucket(long cachedAt, List<MetricStatistics> statistics) {
+      this.cachedAt = cachedAt;
+      this.statistics = statistics;
+    }
+  }
+
+  private static final class SeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    private SeriesKey(String accountId, String namespace, String metricName, MetricType metricType, String dimensionHash) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    private static SeriesKey of(GetMetricStatisticsParams getMetricStatisticsParams) {
+      return new SeriesKey(getMetricStatisticsParams.getAccountId(), getMetricStatisticsParams.getNamespace(),
+          getMetricStatisticsParams.getMetricName(), getMetricStatisticsParams.getMetricType(),
+          getMetricStatisticsParams.getDimensionHash());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      SeriesKey that = (SeriesKey) o;
+      return Objects.equals(accountId, that.accountId) &&
+          Objects.equals(namespace, that.namespace) &&
+          Objects.equals(metricName, that.metricName) &&
+          metricType == that.metricType &&
+          Objects.equals(dimensionHash, that.dimensionHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(accountId, namespace, metricName, metricType, dimensionHash);
+    }
+  }
+
+  private static final class BucketKey {
+    private final SeriesKey series;
+    private final Units units;
+    private final int period;
+    private final long bucketStart;
+
+    private BucketKey(SeriesKey series, Units units, int period, long bucketStart) {
+      this.series = series;
+      this.units = units;
+      this.period = period;
+      this.bucketStart = bucketStart;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      BucketKey that = (BucketKey) o;
+      return period == that.period &&
+          bucketStart == that.bucketStart &&
+          units == that.units &&
+          series.equals(that.series);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(series, units, period, bucketStart);
+    }
+  }
+}
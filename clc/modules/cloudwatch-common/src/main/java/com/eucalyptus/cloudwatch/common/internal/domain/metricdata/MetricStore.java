@@ -0,0 +1,49 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+
+/**
+ * Storage for metric data points.
+ *
+ * Callers go through MetricManager which validates items and parameters
+ * before they reach a store.
+ *
+ * @see MetricStoreFactory
+ */
+public interface MetricStore {
+
+  void addMetricBatch(List<SimpleMetricEntity> dataBatch);
+
+  Collection<MetricStatistics> getMetricStatistics(GetMetricStatisticsParams getMetricStatisticsParams);
+
+  List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses);
+
+  /**
+   * Delete metric data before the given date, stores may retain data up to
+   * their storage granularity.
+   */
+  void deleteMetrics(Date before);
+}
@@ -0,0 +1,47 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar.ColumnarMetricStore;
+
+/**
+ * Selects the metric store using the cloudwatch.metric_data_store property.
+ */
+public class MetricStoreFactory {
+  public static final String POSTGRES = "postgres";
+  public static final String COLUMNAR = "columnar";
+  public static final String DUAL = "dual";
+
+  private static final MetricStore postgresqlMetricStore = new PostgresqlMetricStore();
+  private static final MetricStore columnarMetricStore = new ColumnarMetricStore();
+  private static final MetricStore dualWriteMetricStore = new DualWriteMetricStore(postgresqlMetricStore, columnarMetricStore);
+
+  public static MetricStore getMetricStore() {
+    final String store = CloudWatchConfigProperties.METRIC_DATA_STORE;
+    if (COLUMNAR.equalsIgnoreCase(store)) {
+      return columnarMetricStore;
+    } else if (DUAL.equalsIgnoreCase(store)) {
+      return dualWriteMetricStore;
+    } else {
+      return postgresqlMetricStore;
+    }
+  }
+}
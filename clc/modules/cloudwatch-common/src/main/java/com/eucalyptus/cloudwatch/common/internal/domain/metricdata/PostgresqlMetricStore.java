@@ -0,0 +1,56 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+
+/**
+ * Metric store using the hash partitioned metric entity tables.
+ *
+ * Statistics queries are planned by the MetricStatisticsQueryPlanner.
+ */
+public class PostgresqlMetricStore implements MetricStore {
+
+  @Override
+  public void addMetricBatch(List<SimpleMetricEntity> dataBatch) {
+    MetricManager.addMetricBatchToDatabase(dataBatch);
+  }
+
+  @Override
+  public Collection<MetricStatistics> getMetricStatistics(GetMetricStatisticsParams getMetricStatisticsParams) {
+    return MetricStatisticsQueryPlanner.getInstance().getManyMetricStatistics(
+        Collections.singletonList(getMetricStatisticsParams)).get(0);
+  }
+
+  @Override
+  public List<Collection<MetricStatistics>> getManyMetricStatistics(List<GetMetricStatisticsParams> getMetricStatisticsParamses) {
+    return MetricStatisticsQueryPlanner.getInstance().getManyMetricStatistics(getMetricStatisticsParamses);
+  }
+
+  @Override
+  public void deleteMetrics(Date before) {
+    MetricManager.deleteMetricsFromDatabase(before);
+  }
+}
@@ -0,0 +1,533 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.GetMetricStatisticsAggregationKey;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntityFactory;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStatistics;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStore;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.eucalyptus.cloudwatch.common.internal.hashing.HashUtils;
+import com.eucalyptus.system.BaseDirectory;
+import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.LockResource;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Embedded append-only columnar metric store.
+ *
+ * Data is held in per-series, per-day (UTC) files under a directory for each
+ * day. Each series has a tail file of uncompressed fixed size records that
+ * batches are appended to, once the tail holds a block worth of points it is
+ * compressed and appended to the series block file (see SeriesBlockCodec).
+ * Reads memory map the block file and scan sequentially.
+ *
+ * Tail files are kept open between batches, the most recently used handles
+ * are cached for each lock stripe. Units are persisted by name in a unit
+ * dictionary file, data files hold the dictionary index for the unit.
+ *
+ * Retention is by day, a day directory is removed once all of its data is
+ * older than the deletion time.
+ *
+ * The store is local to the host, so services reading and writing metric
+ * data must be co-located when it is in use.
+ */
+public class ColumnarMetricStore implements MetricStore, Closeable {
+  private static final Logger LOG = Logger.getLogger( ColumnarMetricStore.class );
+
+  private static final int BLOCK_POINTS = 120;
+  private static final int LOCK_STRIPES = 64;
+  private static final int TAIL_HANDLES_PER_STRIPE = 8;
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis( 1 );
+  private static final String DAY_FORMAT = "yyyyMMdd";
+  private static final String BLOCK_SUFFIX = ".blk";
+  private static final String TAIL_SUFFIX = ".tail";
+  private static final String UNITS_FILE = "units";
+
+  private final File root;
+  private final Stripe[] stripes = new Stripe[ LOCK_STRIPES ];
+  private final UnitDictionary unitDictionary;
+
+  public ColumnarMetricStore( ) {
+    this( BaseDirectory.VAR.getChildFile( "cloudwatch", "metric-data" ) );
+  }
+
+  public ColumnarMetricStore( final File root ) {
+    this.root = root;
+    this.unitDictionary = new UnitDictionary( new File( root, UNITS_FILE ) );
+    for ( int i = 0; i < stripes.length; i++ ) {
+      stripes[ i ] = new Stripe( );
+    }
+  }
+
+  @Override
+  public void addMetricBatch( final List<SimpleMetricEntity> dataBatch ) {
+    final Multimap<SeriesDay, SimpleMetricEntity> seriesDayMap = ArrayListMultimap.create( );
+    for ( final SimpleMetricEntity item : dataBatch ) {
+      final String seriesId = seriesId(
+          item.getAccountId( ),
+          item.getNamespace( ),
+          item.getMetricType( ),
+          item.getMetricName( ),
+          MetricManager.hash( item.getDimensionMap( ) ) );
+      seriesDayMap.put( new SeriesDay( seriesId, day( item.getTimestamp( ).getTime( ) ) ), item );
+    }
+    try {
+      for ( final SeriesDay seriesDay : seriesDayMap.keySet( ) ) {
+        final Collection<SimpleMetricEntity> items = seriesDayMap.get( seriesDay );
+        final ByteBuffer records = ByteBuffer.allocate( items.size( ) * SeriesBlock.RECORD_SIZE );
+        for ( final SimpleMetricEntity item : items ) {
+          SeriesBlock.putRecord(
+              records,
+              item.getTimestamp( ).getTime( ),
+              unitDictionary.code( item.getUnits( ) ),
+              item.getSampleSize( ),
+              item.getSampleMax( ),
+              item.getSampleMin( ),
+              item.getSampleSum( ) );
+        }
+        records.flip( );
+        final Stripe stripe = stripe( seriesDay.seriesId );
+        try ( final LockResource lock = LockResource.lock( stripe.lock ) ) {
+          append( stripe, seriesDay, records );
+        }
+      }
+    } catch ( final IOException e ) {
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
+  @Override
+  public Collection<MetricStatistics> getMetricStatistics( final GetMetricStatisticsParams getMetricStatisticsParams ) {
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap =
+        new TreeMap<>( GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE );
+    final String seriesId = seriesId(
+        getMetricStatisticsParams.getAccountId( ),
+        getMetricStatisticsParams.getNamespace( ),
+        getMetricStatisticsParams.getMetricType( ),
+        getMetricStatisticsParams.getMetricName( ),
+        getMetricStatisticsParams.getDimensionHash( ) );
+    final long from = getMetricStatisticsParams.getStartTime( ).getTime( );
+    final long to = getMetricStatisticsParams.getEndTime( ).getTime( );
+    final Stripe stripe = stripe( seriesId );
+    for ( long day = day( from ); day <= day( to - 1 ); day++ ) {
+      final List<SeriesBlock> blocks;
+      try ( final LockResource lock = LockResource.lock( stripe.lock ) ) {
+        blocks = read( stripe, new SeriesDay( seriesId, day ), from, to );
+      } catch ( final IOException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
+      for ( final SeriesBlock block : blocks ) {
+        aggregate( getMetricStatisticsParams, block, from, to, aggregationMap );
+      }
+    }
+    return Lists.newArrayList( aggregationMap.values( ) );
+  }
+
+  @Override
+  public List<Collection<MetricStatistics>> getManyMetricStatistics( final List<GetMetricStatisticsParams> getMetricStatisticsParamses ) {
+    final List<Collection<MetricStatistics>> resultList = Lists.newArrayList( );
+    for ( final GetMetricStatisticsParams getMetricStatisticsParams : getMetricStatisticsParamses ) {
+      resultList.add( getMetricStatistics( getMetricStatisticsParams ) );
+    }
+    return resultList;
+  }
+
+  @Override
+  public void deleteMetrics( final Date before ) {
+    final File[] dayDirectories = root.listFiles( );
+    if ( dayDirectories == null ) return;
+    for ( final File dayDirectory : dayDirectories ) {
+      if ( !dayDirectory.isDirectory( ) ) continue;
+      final long dayStart;
+      try {
+        dayStart = dayFormat( ).parse( dayDirectory.getName( ) ).getTime( );
+      } catch ( final ParseException e ) {
+        continue;
+      }
+      if ( dayStart + DAY_MILLIS <= before.getTime( ) ) {
+        closeTails( day( dayStart ) );
+        final File[] files = dayDirectory.listFiles( );
+        if ( files != null ) for ( final File file : files ) {
+          if ( !file.delete( ) ) {
+            LOG.warn( "Unable to delete metric data file " + file );
+          }
+        }
+        if ( !dayDirectory.delete( ) ) {
+          LOG.warn( "Unable to delete metric data directory " + dayDirectory );
+        }
+      }
+    }
+  }
+
+  /**
+   * Close all open tail files.
+   */
+  @Override
+  public void close( ) {
+    for ( final Stripe stripe : stripes ) {
+      try ( final LockResource lock = LockResource.lock( stripe.lock ) ) {
+        for ( final FileChannel tail : stripe.tails.values( ) ) {
+          closeQuietly( tail );
+        }
+        stripe.tails.clear( );
+      }
+    }
+  }
+
+  private void closeTails( final long day ) {
+    for ( final Stripe stripe : stripes ) {
+      try ( final LockResource lock = LockResource.lock( stripe.lock ) ) {
+        final Iterator<Map.Entry<SeriesDay, FileChannel>> iterator = stripe.tails.entrySet( ).iterator( );
+        while ( iterator.hasNext( ) ) {
+          final Map.Entry<SeriesDay, FileChannel> entry = iterator.next( );
+          if ( entry.getKey( ).day == day ) {
+            closeQuietly( entry.getValue( ) );
+            iterator.remove( );
+          }
+        }
+      }
+    }
+  }
+
+  private void append( final Stripe stripe, final SeriesDay seriesDay, final ByteBuffer records ) throws IOException {
+    final File dayDirectory = dayDirectory( seriesDay.day );
+    final FileChannel tail = tail( stripe, seriesDay, dayDirectory );
+    try {
+      long position = tail.size( );
+      while ( records.hasRemaining( ) ) {
+        position += tail.write( records, position );
+      }
+      if ( position >= BLOCK_POINTS * SeriesBlock.RECORD_SIZE ) {
+        seal( new File( dayDirectory, seriesDay.seriesId + BLOCK_SUFFIX ), tail );
+      }
+    } catch ( final IOException e ) {
+      closeQuietly( stripe.tails.remove( seriesDay ) );
+      throw e;
+    }
+  }
+
+  /**
+   * Get the open tail for the series day, opening it if necessary.
+   *
+   * Caller must hold the stripe lock.
+   */
+  private FileChannel tail( final Stripe stripe, final SeriesDay seriesDay, final File dayDirectory ) throws IOException {
+    FileChannel tail = stripe.tails.get( seriesDay );
+    if ( tail == null || !tail.isOpen( ) ) {
+      if ( !dayDirectory.isDirectory( ) && !dayDirectory.mkdirs( ) && !dayDirectory.isDirectory( ) ) {
+        throw new IOException( "Unable to create metric data directory " + dayDirectory );
+      }
+      tail = FileChannel.open( new File( dayDirectory, seriesDay.seriesId + TAIL_SUFFIX ).toPath( ),
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+      stripe.tails.put( seriesDay, tail );
+    }
+    return tail;
+  }
+
+  /**
+   * Compress the tail into a new block and truncate the tail.
+   *
+   * The block is forced to disk before the tail is truncated, a failure
+   * between the two can duplicate the sealed points.
+   */
+  private void seal( final File blockFile, final FileChannel tail ) throws IOException {
+    final ByteBuffer records = readFully( tail );
+    final SeriesBlock block = new SeriesBlock( records.remaining( ) / SeriesBlock.RECORD_SIZE );
+    block.addRecords( records );
+    final ByteBuffer encoded = SeriesBlockCodec.encode( block );
+    try ( final FileChannel blocks = FileChannel.open( blockFile.toPath( ),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND ) ) {
+      while ( encoded.hasRemaining( ) ) {
+        blocks.write( encoded );
+      }
+      blocks.force( false );
+    }
+    tail.truncate( 0 );
+  }
+
+  private List<SeriesBlock> read( final Stripe stripe, final SeriesDay seriesDay, final long from, final long to ) throws IOException {
+    final List<SeriesBlock> blocks = Lists.newArrayList( );
+    final File dayDirectory = dayDirectory( seriesDay.day );
+    final File blockFile = new File( dayDirectory, seriesDay.seriesId + BLOCK_SUFFIX );
+    if ( blockFile.length( ) > 0 ) {
+      try ( final FileChannel channel = FileChannel.open( blockFile.toPath( ), StandardOpenOption.READ ) ) {
+        final MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size( ) );
+        while ( buffer.remaining( ) >= SeriesBlockCodec.HEADER_SIZE ) {
+          final SeriesBlock block = SeriesBlockCodec.decode( buffer, from, to );
+          if ( block != null ) blocks.add( block );
+        }
+      }
+    }
+    final FileChannel openTail = stripe.tails.get( seriesDay );
+    final ByteBuffer records;
+    if ( openTail != null && openTail.isOpen( ) ) {
+      records = readFully( openTail );
+    } else {
+      final File tailFile = new File( dayDirectory, seriesDay.seriesId + TAIL_SUFFIX );
+      if ( tailFile.length( ) > 0 ) {
+        try ( final FileChannel channel = FileChannel.open( tailFile.toPath( ), StandardOpenOption.READ ) ) {
+          records = readFully( channel );
+        }
+      } else {
+        records = null;
+      }
+    }
+    if ( records != null && records.remaining( ) >= SeriesBlock.RECORD_SIZE ) {
+      final SeriesBlock block = new SeriesBlock( records.remaining( ) / SeriesBlock.RECORD_SIZE );
+      block.addRecords( records );
+      blocks.add( block );
+    }
+    return blocks;
+  }
+
+  private void aggregate( final GetMetricStatisticsParams getMetricStatisticsParams,
+                          final SeriesBlock block,
+                          final long from,
+                          final long to,
+                          final Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap ) {
+    for ( int i = 0; i < block.size( ); i++ ) {
+      final long timestamp = block.getTimestamp( i );
+      if ( timestamp < from || timestamp >= to ) continue;
+      final Units pointUnits = unitDictionary.units( block.getUnit( i ) );
+      if ( pointUnits == null ) continue;
+      if ( getMetricStatisticsParams.getUnits( ) != null && getMetricStatisticsParams.getUnits( ) != pointUnits ) continue;
+      final MetricEntity me = MetricEntityFactory.getNewMetricEntity(
+          getMetricStatisticsParams.getMetricType( ), getMetricStatisticsParams.getDimensionHash( ) );
+      me.setAccountId( getMetricStatisticsParams.getAccountId( ) );
+      me.setNamespace( getMetricStatisticsParams.getNamespace( ) );
+      me.setMetricName( getMetricStatisticsParams.getMetricName( ) );
+      me.setMetricType( getMetricStatisticsParams.getMetricType( ) );
+      me.setDimensionHash( getMetricStatisticsParams.getDimensionHash( ) );
+      me.setSampleMax( block.getSampleMax( i ) );
+      me.setSampleMin( block.getSampleMin( i ) );
+      me.setSampleSize( block.getSampleSize( i ) );
+      me.setSampleSum( block.getSampleSum( i ) );
+      me.setTimestamp( new Date( timestamp ) );
+      me.setUnits( pointUnits );
+      final GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey( me,
+          getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensionHash( ) );
+      final MetricStatistics totalSoFar = aggregationMap.get( key );
+      if ( totalSoFar == null ) {
+        aggregationMap.put( key, new MetricStatistics( me,
+            getMetricStatisticsParams.getStartTime( ), getMetricStatisticsParams.getPeriod( ), getMetricStatisticsParams.getDimensions( ) ) );
+      } else {
+        totalSoFar.setSampleMax( Math.max( me.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
+        totalSoFar.setSampleMin( Math.min( me.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
+        totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + me.getSampleSize( ) );
+        totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + me.getSampleSum( ) );
+      }
+    }
+  }
+
+  private Stripe stripe( final String seriesId ) {
+    return stripes[ ( seriesId.hashCode( ) & Integer.MAX_VALUE ) % stripes.length ];
+  }
+
+  private File dayDirectory( final long day ) {
+    return new File( root, dayFormat( ).format( new Date( day * DAY_MILLIS ) ) );
+  }
+
+  private static long day( final long timestamp ) {
+    return Math.floorDiv( timestamp, DAY_MILLIS );
+  }
+
+  private static SimpleDateFormat dayFormat( ) {
+    final SimpleDateFormat format = new SimpleDateFormat( DAY_FORMAT );
+    format.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+    format.setLenient( false );
+    return format;
+  }
+
+  private static String seriesId( final String accountId,
+                                  final String namespace,
+                                  final MetricEntity.MetricType metricType,
+                                  final String metricName,
+                                  final String dimensionHash ) {
+    return HashUtils.hash( accountId + "|" + namespace + "|" + metricType + "|" + metricName + "|" + dimensionHash + "|" );
+  }
+
+  private static ByteBuffer readFully( final FileChannel channel ) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate( (int) channel.size( ) );
+    long position = 0;
+    while ( buffer.hasRemaining( ) ) {
+      final int read = channel.read( buffer, position );
+      if ( read < 0 ) break;
+      position += read;
+    }
+    buffer.flip( );
+    return buffer;
+  }
+
+  private static void closeQuietly( final FileChannel channel ) {
+    if ( channel != null ) try {
+      channel.close( );
+    } catch ( final IOException e ) {
+      LOG.warn( "Error closing metric data file: " + e.getMessage( ) );
+    }
+  }
+
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock( );
+    private final Map<SeriesDay, FileChannel> tails = new LinkedHashMap<SeriesDay, FileChannel>( 16, 0.75f, true ) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry( final Map.Entry<SeriesDay, FileChannel> eldest ) {
+        if ( size( ) > TAIL_HANDLES_PER_STRIPE ) {
+          closeQuietly( eldest.getValue( ) );
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Units by name with the dictionary index used in data files.
+   *
+   * Names are appended to the dictionary file as units are first stored, so
+   * the index for a unit does not depend on the Units declaration order.
+   */
+  private static final class UnitDictionary {
+    private final File file;
+    private final Map<Units, Byte> codes = Maps.newEnumMap( Units.class );
+    private final List<Units> units = Lists.newArrayList( );
+    private boolean loaded;
+
+    private UnitDictionary( final File file ) {
+      this.file = file;
+    }
+
+    synchronized byte code( final Units unit ) throws IOException {
+      load( );
+      Byte code = codes.get( unit );
+      if ( code == null ) {
+        if ( units.size( ) > Byte.MAX_VALUE ) {
+          throw new IOException( "Unit dictionary full for " + unit );
+        }
+        final File parent = file.getParentFile( );
+        if ( !parent.isDirectory( ) && !parent.mkdirs( ) && !parent.isDirectory( ) ) {
+          throw new IOException( "Unable to create metric data directory " + parent );
+        }
+        try ( final FileChannel channel = FileChannel.open( file.toPath( ),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND ) ) {
+          final ByteBuffer name = ByteBuffer.wrap( ( unit.name( ) + "\n" ).getBytes( StandardCharsets.UTF_8 ) );
+          while ( name.hasRemaining( ) ) {
+            channel.write( name );
+          }
+          channel.force( false );
+        }
+        code = (byte) units.size( );
+        units.add( unit );
+        codes.put( unit, code );
+      }
+      return code;
+    }
+
+    /**
+     * @return The units for the code or null if not known
+     */
+    synchronized Units units( final byte code ) {
+      try {
+        load( );
+      } catch ( final IOException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
+      return code >= 0 && code < units.size( ) ? units.get( code ) : null;
+    }
+
+    private void load( ) throws IOException {
+      if ( !loaded ) {
+        final List<String> names = file.isFile( ) ?
+            Files.readAllLines( file.toPath( ), StandardCharsets.UTF_8 ) :
+            Collections.<String>emptyList( );
+        for ( final String name : names ) {
+          if ( name.isEmpty( ) ) continue;
+          Units unit;
+          try {
+            unit = Units.valueOf( name );
+          } catch ( final IllegalArgumentException e ) {
+            LOG.warn( "Unknown unit in metric data unit dictionary " + name );
+            unit = null;
+          }
+          if ( unit != null ) codes.put( unit, (byte) units.size( ) );
+          units.add( unit );
+        }
+        loaded = true;
+      }
+    }
+  }
+
+  private static final class SeriesDay {
+    private final String seriesId;
+    private final long day;
+
+    private SeriesDay( final String seriesId, final long day ) {
+      this.seriesId = seriesId;
+      this.day = day;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SeriesDay that = (SeriesDay) o;
+      return day == that.day && seriesId.equals( that.seriesId );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return 31 * seriesId.hashCode( ) + (int) ( day ^ ( day >>> 32 ) );
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Column arrays for a run of data points in a single series.
+ *
+ * Units are held as an index into the unit dictionary of the store.
+ */
+public class SeriesBlock {
+
+  /**
+   * Size of an uncompressed point as written to a series tail file.
+   */
+  public static final int RECORD_SIZE = 8 + 1 + 8 + 8 + 8 + 8;
+
+  private final long[] timestamps;
+  private final byte[] units;
+  private final double[] sampleSizes;
+  private final double[] sampleMaxes;
+  private final double[] sampleMins;
+  private final double[] sampleSums;
+  private int size;
+
+  public SeriesBlock( final int capacity ) {
+    timestamps = new long[ capacity ];
+    units = new byte[ capacity ];
+    sampleSizes = new double[ capacity ];
+    sampleMaxes = new double[ capacity ];
+    sampleMins = new double[ capacity ];
+    sampleSums = new double[ capacity ];
+  }
+
+  public void add( final long timestamp,
+                   final byte unit,
+                   final double sampleSize,
+                   final double sampleMax,
+                   final double sampleMin,
+                   final double sampleSum ) {
+    timestamps[ size ] = timestamp;
+    units[ size ] = unit;
+    sampleSizes[ size ] = sampleSize;
+    sampleMaxes[ size ] = sampleMax;
+    sampleMins[ size ] = sampleMin;
+    sampleSums[ size ] = sampleSum;
+    size++;
+  }
+
+  /**
+   * Read uncompressed records until the buffer or block is exhausted.
+   */
+  public void addRecords( final ByteBuffer records ) {
+    while ( records.remaining( ) >= RECORD_SIZE && size < timestamps.length ) {
+      add( records.getLong( ), records.get( ), records.getDouble( ), records.getDouble( ), records.getDouble( ), records.getDouble( ) );
+    }
+  }
+
+  public static void putRecord( final ByteBuffer buffer,
+                                final long timestamp,
+                                final byte unit,
+                                final double sampleSize,
+                                final double sampleMax,
+                                final double sampleMin,
+                                final double sampleSum ) {
+    buffer.putLong( timestamp );
+    buffer.put( unit );
+    buffer.putDouble( sampleSize );
+    buffer.putDouble( sampleMax );
+    buffer.putDouble( sampleMin );
+    buffer.putDouble( sampleSum );
+  }
+
+  public int size( ) {
+    return size;
+  }
+
+  public int capacity( ) {
+    return timestamps.length;
+  }
+
+  public long getTimestamp( final int index ) {
+    return timestamps[ index ];
+  }
+
+  public byte getUnit( final int index ) {
+    return units[ index ];
+  }
+
+  public double getSampleSize( final int index ) {
+    return sampleSizes[ index ];
+  }
+
+  public double getSampleMax( final int index ) {
+    return sampleMaxes[ index ];
+  }
+
+  public double getSampleMin( final int index ) {
+    return sampleMins[ index ];
+  }
+
+  public double getSampleSum( final int index ) {
+    return sampleSums[ index ];
+  }
+
+  long minTimestamp( ) {
+    long min = Long.MAX_VALUE;
+    for ( int i = 0; i < size; i++ ) min = Math.min( min, timestamps[ i ] );
+    return min;
+  }
+
+  long maxTimestamp( ) {
+    long max = Long.MIN_VALUE;
+    for ( int i = 0; i < size; i++ ) max = Math.max( max, timestamps[ i ] );
+    return max;
+  }
+
+  long[] timestamps( ) {
+    return timestamps;
+  }
+
+  byte[] units( ) {
+    return units;
+  }
+
+  double[] sampleSizes( ) {
+    return sampleSizes;
+  }
+
+  double[] sampleMaxes( ) {
+    return sampleMaxes;
+  }
+
+  double[] sampleMins( ) {
+    return sampleMins;
+  }
+
+  double[] sampleSums( ) {
+    return sampleSums;
+  }
+
+  void setSize( final int size ) {
+    this.size = size;
+  }
+}
@@ -0,0 +1,309 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compressed, column oriented encoding for a block of series data points.
+ *
+ * A block is a fixed header followed by a bit stream holding each column in
+ * turn:
+ *
+ * <ul>
+ *   <li>timestamps as delta-of-delta with variable width buckets</li>
+ *   <li>units run length encoded</li>
+ *   <li>sample count, maximum, minimum and sum, each XOR encoded against the
+ *   previous value of the column (Gorilla style)</li>
+ * </ul>
+ *
+ * The header holds the point count and the timestamp range so a reader can
+ * skip blocks outside a query without decoding.
+ */
+public class SeriesBlockCodec {
+
+  /**
+   * count (int), minimum timestamp (long), maximum timestamp (long), payload length (int)
+   */
+  public static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+
+  public static ByteBuffer encode( final SeriesBlock block ) {
+    final int count = block.size( );
+    final BitWriter writer = new BitWriter( 64 + count * 8 );
+    encodeTimestamps( writer, block.timestamps( ), count );
+    encodeUnits( writer, block.units( ), count );
+    encodeDoubles( writer, block.sampleSizes( ), count );
+    encodeDoubles( writer, block.sampleMaxes( ), count );
+    encodeDoubles( writer, block.sampleMins( ), count );
+    encodeDoubles( writer, block.sampleSums( ), count );
+    final byte[] payload = writer.toByteArray( );
+    final ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE + payload.length );
+    buffer.putInt( count );
+    buffer.putLong( count == 0 ? 0 : block.minTimestamp( ) );
+    buffer.putLong( count == 0 ? 0 : block.maxTimestamp( ) );
+    buffer.putInt( payload.length );
+    buffer.put( payload );
+    buffer.flip( );
+    return buffer;
+  }
+
+  /**
+   * Decode the block at the buffers position if it has points in the given range.
+   *
+   * The buffer position is advanced past the block in either case.
+   *
+   * @param from The inclusive start time
+   * @param to The exclusive end time
+   * @return The decoded block or null if skipped
+   */
+  public static SeriesBlock decode( final ByteBuffer buffer, final long from, final long to ) {
+    final int count = buffer.getInt( );
+    final long minTimestamp = buffer.getLong( );
+    final long maxTimestamp = buffer.getLong( );
+    final int payloadLength = buffer.getInt( );
+    if ( count == 0 || maxTimestamp < from || minTimestamp >= to ) {
+      buffer.position( buffer.position( ) + payloadLength );
+      return null;
+    }
+    final ByteBuffer payload = buffer.slice( );
+    payload.limit( payloadLength );
+    buffer.position( buffer.position( ) + payloadLength );
+    final BitReader reader = new BitReader( payload );
+    final SeriesBlock block = new SeriesBlock( count );
+    decodeTimestamps( reader, block.timestamps( ), count );
+    decodeUnits( reader, block.units( ), count );
+    decodeDoubles( reader, block.sampleSizes( ), count );
+    decodeDoubles( reader, block.sampleMaxes( ), count );
+    decodeDoubles( reader, block.sampleMins( ), count );
+    decodeDoubles( reader, block.sampleSums( ), count );
+    block.setSize( count );
+    return block;
+  }
+
+  public static SeriesBlock decode( final ByteBuffer buffer ) {
+    return decode( buffer, Long.MIN_VALUE, Long.MAX_VALUE );
+  }
+
+  private static void encodeTimestamps( final BitWriter writer, final long[] timestamps, final int count ) {
+    long previous = 0;
+    long previousDelta = 0;
+    for ( int i = 0; i < count; i++ ) {
+      if ( i == 0 ) {
+        writer.writeBits( timestamps[ i ], 64 );
+      } else {
+        final long delta = timestamps[ i ] - previous;
+        final long deltaOfDelta = zigZag( delta - previousDelta );
+        if ( deltaOfDelta == 0 ) {
+          writer.writeBits( 0, 1 );
+        } else if ( deltaOfDelta < ( 1L << 7 ) ) {
+          writer.writeBits( 0b10, 2 );
+          writer.writeBits( deltaOfDelta, 7 );
+        } else if ( deltaOfDelta < ( 1L << 9 ) ) {
+          writer.writeBits( 0b110, 3 );
+          writer.writeBits( deltaOfDelta, 9 );
+        } else if ( deltaOfDelta < ( 1L << 12 ) ) {
+          writer.writeBits( 0b1110, 4 );
+          writer.writeBits( deltaOfDelta, 12 );
+        } else if ( deltaOfDelta < ( 1L << 32 ) ) {
+          writer.writeBits( 0b11110, 5 );
+          writer.writeBits( deltaOfDelta, 32 );
+        } else {
+          writer.writeBits( 0b11111, 5 );
+          writer.writeBits( deltaOfDelta, 64 );
+        }
+        previousDelta = delta;
+      }
+      previous = timestamps[ i ];
+    }
+  }
+
+  private static void decodeTimestamps( final BitReader reader, final long[] timestamps, final int count ) {
+    long previous = 0;
+    long previousDelta = 0;
+    for ( int i = 0; i < count; i++ ) {
+      if ( i == 0 ) {
+        timestamps[ i ] = reader.readBits( 64 );
+      } else {
+        final int bits;
+        if ( reader.readBit( ) == 0 ) {
+          bits = 0;
+        } else if ( reader.readBit( ) == 0 ) {
+          bits = 7;
+        } else if ( reader.readBit( ) == 0 ) {
+          bits = 9;
+        } else if ( reader.readBit( ) == 0 ) {
+          bits = 12;
+        } else if ( reader.readBit( ) == 0 ) {
+          bits = 32;
+        } else {
+          bits = 64;
+        }
+        final long delta = previousDelta + ( bits == 0 ? 0 : unZigZag( reader.readBits( bits ) ) );
+        timestamps[ i ] = previous + delta;
+        previousDelta = delta;
+      }
+      previous = timestamps[ i ];
+    }
+  }
+
+  private static void encodeUnits( final BitWriter writer, final byte[] units, final int count ) {
+    for ( int i = 0; i < count; i++ ) {
+      if ( i > 0 && units[ i ] == units[ i - 1 ] ) {
+        writer.writeBits( 0, 1 );
+      } else {
+        if ( i > 0 ) writer.writeBits( 1, 1 );
+        writer.writeBits( units[ i ] & 0xFF, 8 );
+      }
+    }
+  }
+
+  private static void decodeUnits( final BitReader reader, final byte[] units, final int count ) {
+    for ( int i = 0; i < count; i++ ) {
+      if ( i > 0 && reader.readBit( ) == 0 ) {
+        units[ i ] = units[ i - 1 ];
+      } else {
+        units[ i ] = (byte) reader.readBits( 8 );
+      }
+    }
+  }
+
+  private static void encodeDoubles( final BitWriter writer, final double[] values, final int count ) {
+    long previous = 0;
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for ( int i = 0; i < count; i++ ) {
+      final long bits = Double.doubleToRawLongBits( values[ i ] );
+      if ( i == 0 ) {
+        writer.writeBits( bits, 64 );
+      } else {
+        final long xor = bits ^ previous;
+        if ( xor == 0 ) {
+          writer.writeBits( 0, 1 );
+        } else {
+          final int leading = Math.min( Long.numberOfLeadingZeros( xor ), 31 );
+          final int trailing = Long.numberOfTrailingZeros( xor );
+          if ( previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing ) {
+            writer.writeBits( 0b10, 2 );
+            writer.writeBits( xor >>> previousTrailing, 64 - previousLeading - previousTrailing );
+          } else {
+            final int meaningful = 64 - leading - trailing;
+            writer.writeBits( 0b11, 2 );
+            writer.writeBits( leading, 5 );
+            writer.writeBits( meaningful - 1, 6 );
+            writer.writeBits( xor >>> trailing, meaningful );
+            previousLeading = leading;
+            previousTrailing = trailing;
+          }
+        }
+      }
+      previous = bits;
+    }
+  }
+
+  private static void decodeDoubles( final BitReader reader, final double[] values, final int count ) {
+    long previous = 0;
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for ( int i = 0; i < count; i++ ) {
+      final long bits;
+      if ( i == 0 ) {
+        bits = reader.readBits( 64 );
+      } else if ( reader.readBit( ) == 0 ) {
+        bits = previous;
+      } else if ( reader.readBit( ) == 0 ) {
+        final long xor = reader.readBits( 64 - previousLeading - previousTrailing ) << previousTrailing;
+        bits = previous ^ xor;
+      } else {
+        previousLeading = (int) reader.readBits( 5 );
+        final int meaningful = (int) reader.readBits( 6 ) + 1;
+        previousTrailing = 64 - previousLeading - meaningful;
+        final long xor = reader.readBits( meaningful ) << previousTrailing;
+        bits = previous ^ xor;
+      }
+      values[ i ] = Double.longBitsToDouble( bits );
+      previous = bits;
+    }
+  }
+
+  private static long zigZag( final long value ) {
+    return ( value << 1 ) ^ ( value >> 63 );
+  }
+
+  private static long unZigZag( final long value ) {
+    return ( value >>> 1 ) ^ -( value & 1 );
+  }
+
+  private static final class BitWriter {
+    private byte[] bytes;
+    private int bitPosition;
+
+    BitWriter( final int initialBytes ) {
+      bytes = new byte[ Math.max( 16, initialBytes ) ];
+    }
+
+    /**
+     * Write the low order bits of the value, most significant first.
+     */
+    void writeBits( final long value, final int count ) {
+      ensureCapacity( count );
+      for ( int i = count - 1; i >= 0; i-- ) {
+        if ( ( ( value >>> i ) & 1L ) != 0 ) {
+          bytes[ bitPosition >>> 3 ] |= (byte) ( 0x80 >>> ( bitPosition & 7 ) );
+        }
+        bitPosition++;
+      }
+    }
+
+    private void ensureCapacity( final int additionalBits ) {
+      final int required = ( bitPosition + additionalBits + 7 ) >>> 3;
+      if ( required > bytes.length ) {
+        bytes = Arrays.copyOf( bytes, Math.max( required, bytes.length * 2 ) );
+      }
+    }
+
+    byte[] toByteArray( ) {
+      return Arrays.copyOf( bytes, ( bitPosition + 7 ) >>> 3 );
+    }
+  }
+
+  private static final class BitReader {
+    private final ByteBuffer buffer;
+    private int bitPosition;
+
+    BitReader( final ByteBuffer buffer ) {
+      this.buffer = buffer;
+    }
+
+    int readBit( ) {
+      final int value = ( buffer.get( bitPosition >>> 3 ) >>> ( 7 - ( bitPosition & 7 ) ) ) & 1;
+      bitPosition++;
+      return value;
+    }
+
+    long readBits( final int count ) {
+      long value = 0;
+      for ( int i = 0; i < count; i++ ) {
+        value = ( value << 1 ) | readBit( );
+      }
+      return value;
+    }
+  }
+}
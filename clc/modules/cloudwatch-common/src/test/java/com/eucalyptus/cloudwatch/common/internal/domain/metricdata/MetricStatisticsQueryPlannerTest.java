@@ -0,0 +1,197 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+
+public class MetricStatisticsQueryPlannerTest {
+
+  private static final long MINUTE = 60000L;
+
+  /**
+   * Query that returns one sample per period and records the queried ranges.
+   */
+  private static final class RecordingQuery implements Function<List<GetMetricStatisticsParams>, List<Collection<MetricStatistics>>> {
+    private final AtomicInteger calls = new AtomicInteger( );
+    private final List<GetMetricStatisticsParams> queried = Lists.newArrayList( );
+
+    @Override
+    public List<Collection<MetricStatistics>> apply( final List<GetMetricStatisticsParams> paramses ) {
+      calls.incrementAndGet( );
+      queried.addAll( paramses );
+      final List<Collection<MetricStatistics>> results = Lists.newArrayList( );
+      for ( final GetMetricStatisticsParams params : paramses ) {
+        final List<MetricStatistics> statistics = Lists.newArrayList( );
+        for ( long time = params.getStartTime( ).getTime( ); time < params.getEndTime( ).getTime( ); time += 1000L * params.getPeriod( ) ) {
+          final MetricEntity metricEntity = MetricEntityFactory.getNewMetricEntity( params.getMetricType( ), params.getDimensionHash( ) );
+          metricEntity.setAccountId( params.getAccountId( ) );
+          metricEntity.setMetricType( params.getMetricType( ) );
+          metricEntity.setUnits( Units.None );
+          metricEntity.setTimestamp( new Date( time ) );
+          metricEntity.setSampleSize( 1.0 );
+          metricEntity.setSampleMax( 1.0 );
+          metricEntity.setSampleMin( 1.0 );
+          metricEntity.setSampleSum( 1.0 );
+          statistics.add( new MetricStatistics( metricEntity, params.getStartTime( ), params.getPeriod( ), null ) );
+        }
+        results.add( statistics );
+      }
+      return results;
+    }
+  }
+
+  private static GetMetricStatisticsParams params( final long start, final long end, final int period ) {
+    return new GetMetricStatisticsParams( "account1", "metric1", "namespace1", Collections.singletonMap( "dim1", "val1" ),
+        MetricType.Custom, null, new Date( start ), new Date( end ), period );
+  }
+
+  @Test
+  public void testClosedBucketsCached( ) {
+    final long now = MetricUtils.stripSeconds( new Date( ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    final long start = now - 60 * MINUTE;
+    final Collection<MetricStatistics> first =
+        planner.getManyMetricStatistics( Lists.newArrayList( params( start, now, 300 ) ), now ).get( 0 );
+    assertEquals( 12, first.size( ) );
+    // buckets ending more than five minutes ago are closed
+    assertEquals( 11, planner.size( ) );
+    final Collection<MetricStatistics> second =
+        planner.getManyMetricStatistics( Lists.newArrayList( params( start, now, 300 ) ), now ).get( 0 );
+    assertEquals( 12, second.size( ) );
+    assertEquals( 2, query.calls.get( ) );
+    assertEquals( now - 5 * MINUTE, query.queried.get( 1 ).getStartTime( ).getTime( ) );
+  }
+
+  @Test
+  public void testFullyCachedSkipsQuery( ) {
+    final long now = MetricUtils.stripSeconds( new Date( ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    final long start = now - 120 * MINUTE;
+    final long end = now - 60 * MINUTE;
+    planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now );
+    final Collection<MetricStatistics> cached =
+        planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now ).get( 0 );
+    assertEquals( 60, cached.size( ) );
+    assertEquals( 1, query.calls.get( ) );
+  }
+
+  @Test
+  public void testLateDataInvalidates( ) {
+    final long now = System.currentTimeMillis( );
+    final long end = MetricUtils.stripSeconds( new Date( now - 60 * MINUTE ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    planner.getManyMetricStatistics( Lists.newArrayList( params( end - 10 * MINUTE, end, 60 ) ), now );
+    assertEquals( 10, planner.size( ) );
+    planner.invalidate( Lists.newArrayList( late( end - MINUTE ) ) );
+    assertEquals( 0, planner.size( ) );
+  }
+
+  @Test
+  public void testLateDataDuringQueryNotCached( ) {
+    final long now = System.currentTimeMillis( );
+    final long end = MetricUtils.stripSeconds( new Date( now - 60 * MINUTE ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner[] planner = new MetricStatisticsQueryPlanner[ 1 ];
+    planner[ 0 ] = new MetricStatisticsQueryPlanner( new Function<List<GetMetricStatisticsParams>, List<Collection<MetricStatistics>>>( ) {
+      @Override
+      public List<Collection<MetricStatistics>> apply( final List<GetMetricStatisticsParams> paramses ) {
+        final List<Collection<MetricStatistics>> results = query.apply( paramses );
+        // data added after the query read but before its results are cached
+        planner[ 0 ].invalidate( Lists.newArrayList( late( end - MINUTE ) ) );
+        return results;
+      }
+    } );
+    planner[ 0 ].getManyMetricStatistics( Lists.newArrayList( params( end - 10 * MINUTE, end, 60 ) ), now );
+    assertEquals( 0, planner[ 0 ].size( ) );
+  }
+
+  @Test
+  public void testCachedStatisticsCopied( ) {
+    final long now = MetricUtils.stripSeconds( new Date( ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    final long start = now - 120 * MINUTE;
+    final long end = now - 60 * MINUTE;
+    for ( int i = 0; i < 3; i++ ) {
+      final Collection<MetricStatistics> statistics =
+          planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now ).get( 0 );
+      assertEquals( 60, statistics.size( ) );
+      for ( final MetricStatistics metricStatistics : statistics ) {
+        assertEquals( 1.0, metricStatistics.getSampleSum( ), 0.0 );
+        metricStatistics.setSampleSum( metricStatistics.getSampleSum( ) * 60 );
+      }
+    }
+    assertEquals( 1, query.calls.get( ) );
+  }
+
+  @Test
+  public void testCachedBucketsExpire( ) {
+    final long now = MetricUtils.stripSeconds( new Date( ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    final long start = now - 120 * MINUTE;
+    final long end = now - 60 * MINUTE;
+    planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now );
+    planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now + 4 * MINUTE );
+    assertEquals( 1, query.calls.get( ) );
+    planner.getManyMetricStatistics( Lists.newArrayList( params( start, end, 60 ) ), now + 5 * MINUTE );
+    assertEquals( 2, query.calls.get( ) );
+    assertEquals( start, query.queried.get( 1 ).getStartTime( ).getTime( ) );
+  }
+
+  private static SimpleMetricEntity late( final long timestamp ) {
+    final SimpleMetricEntity late = new SimpleMetricEntity( );
+    late.setAccountId( "account1" );
+    late.setNamespace( "namespace1" );
+    late.setMetricName( "metric1" );
+    late.setMetricType( MetricType.Custom );
+    late.setDimensionMap( Collections.singletonMap( "dim1", "val1" ) );
+    late.setTimestamp( new Date( timestamp ) );
+    return late;
+  }
+
+  @Test
+  public void testBatchedPerTable( ) {
+    final long now = MetricUtils.stripSeconds( new Date( ) ).getTime( );
+    final RecordingQuery query = new RecordingQuery( );
+    final MetricStatisticsQueryPlanner planner = new MetricStatisticsQueryPlanner( query );
+    final List<Collection<MetricStatistics>> results = planner.getManyMetricStatistics(
+        Lists.newArrayList( params( now - 10 * MINUTE, now, 60 ), params( now - 20 * MINUTE, now, 120 ) ), now );
+    assertEquals( 10, results.get( 0 ).size( ) );
+    assertEquals( 10, results.get( 1 ).size( ) );
+    assertEquals( 1, query.calls.get( ) );
+  }
+}
@@ -0,0 +1,139 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager.GetMetricStatisticsParams;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricStatistics;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+public class ColumnarMetricStoreTest {
+
+  private static final long MINUTE = TimeUnit.MINUTES.toMillis( 1 );
+  private static final long DAY = TimeUnit.DAYS.toMillis( 1 );
+  private static final Map<String, String> DIMENSIONS = Collections.singletonMap( "InstanceId", "i-00000001" );
+
+  private File root;
+
+  @Before
+  public void setUp( ) {
+    root = Files.createTempDir( );
+  }
+
+  @After
+  public void tearDown( ) {
+    final ColumnarMetricStore store = new ColumnarMetricStore( root );
+    store.deleteMetrics( new Date( Long.MAX_VALUE / 2 ) );
+    new File( root, "units" ).delete( );
+    root.delete( );
+  }
+
+  @Test
+  public void testReopen( ) {
+    final long start = 1500000000000L - 1500000000000L % DAY;
+    final ColumnarMetricStore store = new ColumnarMetricStore( root );
+    // more than a block worth of points so the day has both a block and a tail
+    store.addMetricBatch( points( start, 150, Units.Percent, 1.0 ) );
+    store.addMetricBatch( points( start + 150 * MINUTE, 10, Units.Bytes, 2.0 ) );
+    store.close( );
+
+    final ColumnarMetricStore reopened = new ColumnarMetricStore( root );
+    assertTotals( reopened, start, start + DAY, Units.Percent, 150, 150.0 );
+    assertTotals( reopened, start, start + DAY, Units.Bytes, 10, 20.0 );
+    reopened.addMetricBatch( points( start + 160 * MINUTE, 100, Units.Percent, 3.0 ) );
+    assertTotals( reopened, start, start + DAY, Units.Percent, 250, 450.0 );
+    assertTotals( reopened, start, start + DAY, null, 260, 470.0 );
+    reopened.close( );
+  }
+
+  @Test
+  public void testDayRollover( ) {
+    final long midnight = 1500000000000L - 1500000000000L % DAY + DAY;
+    final ColumnarMetricStore store = new ColumnarMetricStore( root );
+    store.addMetricBatch( points( midnight - 30 * MINUTE, 60, Units.Count, 1.0 ) );
+    store.addMetricBatch( points( midnight + 30 * MINUTE, 30, Units.Count, 1.0 ) );
+    assertTotals( store, midnight - DAY, midnight, Units.Count, 30, 30.0 );
+    assertTotals( store, midnight, midnight + DAY, Units.Count, 60, 60.0 );
+    assertTotals( store, midnight - DAY, midnight + DAY, Units.Count, 90, 90.0 );
+
+    store.deleteMetrics( new Date( midnight ) );
+    assertTotals( store, midnight - DAY, midnight + DAY, Units.Count, 60, 60.0 );
+    store.addMetricBatch( points( midnight + 60 * MINUTE, 1, Units.Count, 1.0 ) );
+    assertTotals( store, midnight - DAY, midnight + DAY, Units.Count, 61, 61.0 );
+    store.close( );
+  }
+
+  private static List<SimpleMetricEntity> points( final long start, final int count, final Units units, final double value ) {
+    final List<SimpleMetricEntity> points = Lists.newArrayList( );
+    for ( int i = 0; i < count; i++ ) {
+      final SimpleMetricEntity point = new SimpleMetricEntity( );
+      point.setAccountId( "000000000000" );
+      point.setNamespace( "AWS/EC2" );
+      point.setMetricName( "CPUUtilization" );
+      point.setMetricType( MetricType.System );
+      point.setDimensionMap( DIMENSIONS );
+      point.setUnits( units );
+      point.setTimestamp( new Date( start + i * MINUTE ) );
+      point.setSampleSize( 1.0 );
+      point.setSampleMax( value );
+      point.setSampleMin( value );
+      point.setSampleSum( value );
+      points.add( point );
+    }
+    return points;
+  }
+
+  private static void assertTotals( final ColumnarMetricStore store,
+                                    final long from,
+                                    final long to,
+                                    final Units units,
+                                    final int sampleSize,
+                                    final double sampleSum ) {
+    final Collection<MetricStatistics> statistics = store.getMetricStatistics( new GetMetricStatisticsParams(
+        "000000000000", "CPUUtilization", "AWS/EC2", DIMENSIONS, MetricType.System, units, new Date( from ), new Date( to ), 3600 ) );
+    double size = 0;
+    double sum = 0;
+    for ( final MetricStatistics statistic : statistics ) {
+      assertTrue( units == null || units == statistic.getUnits( ) );
+      size += statistic.getSampleSize( );
+      sum += statistic.getSampleSum( );
+    }
+    assertEquals( sampleSize, size, 0.0 );
+    assertEquals( sampleSum, sum, 0.0 );
+  }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.common.internal.domain.metricdata.columnar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SeriesBlockCodecTest {
+
+  @Test
+  public void testRoundTrip( ) {
+    final Random random = new Random( 1 );
+    for ( int trial = 0; trial < 100; trial++ ) {
+      final int count = 1 + random.nextInt( 200 );
+      final SeriesBlock block = new SeriesBlock( count );
+      long timestamp = 1500000000000L;
+      for ( int i = 0; i < count; i++ ) {
+        // mostly regular minutes with some out of order and irregular points
+        timestamp += random.nextInt( 10 ) == 0 ? -random.nextInt( 100000 ) : random.nextInt( 3 ) == 0 ? 60000 : random.nextInt( 100000000 );
+        final double value = trial % 3 == 0 ? random.nextInt( 100 ) : random.nextDouble( ) * 1e6;
+        block.add( timestamp, (byte) random.nextInt( 3 ), 1 + random.nextInt( 2 ), value, value - random.nextInt( 5 ), value * 2 );
+      }
+      final SeriesBlock decoded = SeriesBlockCodec.decode( SeriesBlockCodec.encode( block ) );
+      assertEquals( count, decoded.size( ) );
+      for ( int i = 0; i < count; i++ ) {
+        assertEquals( block.getTimestamp( i ), decoded.getTimestamp( i ) );
+        assertEquals( block.getUnit( i ), decoded.getUnit( i ) );
+        assertEquals( block.getSampleSize( i ), decoded.getSampleSize( i ), 0.0 );
+        assertEquals( block.getSampleMax( i ), decoded.getSampleMax( i ), 0.0 );
+        assertEquals( block.getSampleMin( i ), decoded.getSampleMin( i ), 0.0 );
+        assertEquals( block.getSampleSum( i ), decoded.getSampleSum( i ), 0.0 );
+      }
+    }
+  }
+
+  @Test
+  public void testCompression( ) {
+    final SeriesBlock block = new SeriesBlock( 60 );
+    for ( int i = 0; i < 60; i++ ) {
+      block.add( 1500000000000L + i * 60000L, (byte) 4, 1, 50 + i % 3, 50 + i % 3, 50 + i % 3 );
+    }
+    final int encoded = SeriesBlockCodec.encode( block ).remaining( );
+    assertTrue( "Expected compression, encoded size " + encoded, encoded * 5 < 60 * SeriesBlock.RECORD_SIZE );
+  }
+
+  @Test
+  public void testSkipOutOfRange( ) {
+    final SeriesBlock first = new SeriesBlock( 2 );
+    first.add( 1000, (byte) 0, 1, 1, 1, 1 );
+    first.add( 2000, (byte) 0, 1, 1, 1, 1 );
+    final SeriesBlock second = new SeriesBlock( 1 );
+    second.add( 5000, (byte) 0, 1, 2, 2, 2 );
+    final ByteBuffer firstEncoded = SeriesBlockCodec.encode( first );
+    final ByteBuffer secondEncoded = SeriesBlockCodec.encode( second );
+    final ByteBuffer buffer = ByteBuffer.allocate( firstEncoded.remaining( ) + secondEncoded.remaining( ) );
+    buffer.put( firstEncoded ).put( secondEncoded ).flip( );
+    assertNull( SeriesBlockCodec.decode( buffer, 3000, 6000 ) );
+    final SeriesBlock decoded = SeriesBlockCodec.decode( buffer, 3000, 6000 );
+    assertEquals( 1, decoded.size( ) );
+    assertEquals( 5000, decoded.getTimestamp( 0 ) );
+    assertEquals( 0, buffer.remaining( ) );
+  }
+}
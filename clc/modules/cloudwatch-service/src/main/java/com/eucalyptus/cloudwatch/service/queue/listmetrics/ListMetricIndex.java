@@ -0,0 +1,246 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.listmetrics;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index of metrics known to be listed.
+ *
+ * Recently updated metrics are held with the time they were last written to
+ * the database (the hot set). Metrics that have not been updated for a while
+ * are moved to a Bloom filter (the cold set) so memory use does not grow with
+ * the number of metrics ever seen. A metric only needs a database update when
+ * it is not in the hot set or its last update is older than the update
+ * granularity.
+ *
+ * The index is not thread safe, it is used from the list metrics flush thread.
+ */
+public class ListMetricIndex {
+
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+  private final int expectedMetrics;
+  private final Map<ListMetricKey, Long> hot = Maps.newHashMap( );
+  private BloomFilter<ListMetricKey> cold;
+  private int coldCount;
+  private boolean warm;
+  private long hitCount;
+  private long missCount;
+  private long newCount;
+
+  public ListMetricIndex( final int expectedMetrics ) {
+    if ( expectedMetrics < 1 ) throw new IllegalArgumentException( "expectedMetrics must be positive" );
+    this.expectedMetrics = expectedMetrics;
+    this.cold = newColdSet( );
+  }
+
+  public boolean isWarm( ) {
+    return warm;
+  }
+
+  public void setWarm( final boolean warm ) {
+    this.warm = warm;
+  }
+
+  /**
+   * Add a metric from the database with its last update time.
+   */
+  public void add( final String accountId,
+                   final String namespace,
+                   final String metricName,
+                   final MetricType metricType,
+                   final Map<String, String> dimensionMap,
+                   final long lastUpdated,
+                   final long now,
+                   final long granularityMillis ) {
+    final ListMetricKey key = new ListMetricKey( accountId, namespace, metricName, metricType, MetricManager.hash( dimensionMap ) );
+    if ( now - lastUpdated < granularityMillis ) {
+      hot.put( key, lastUpdated );
+    } else {
+      addCold( key );
+    }
+  }
+
+  /**
+   * Get the items that need a database update.
+   */
+  public List<ListMetricQueueItem> filter( final List<ListMetricQueueItem> items,
+                                           final long now,
+                                           final long granularityMillis ) {
+    final List<ListMetricQueueItem> updateItems = Lists.newArrayList( );
+    for ( final ListMetricQueueItem item : items ) {
+      final ListMetricKey key = ListMetricKey.of( item );
+      final Long lastUpdated = hot.get( key );
+      if ( lastUpdated != null && now - lastUpdated < granularityMillis ) {
+        hitCount++;
+      } else {
+        missCount++;
+        if ( lastUpdated == null && !cold.mightContain( key ) ) {
+          newCount++;
+        }
+        updateItems.add( item );
+      }
+    }
+    return updateItems;
+  }
+
+  /**
+   * Record the items as updated in the database.
+   */
+  public void updated( final List<ListMetricQueueItem> items, final long now ) {
+    for ( final ListMetricQueueItem item : items ) {
+      hot.put( ListMetricKey.of( item ), now );
+    }
+  }
+
+  /**
+   * Move metrics not updated since the given time to the cold set.
+   *
+   * Metrics that are still being reported are updated once per granularity
+   * so only idle metrics are moved.
+   */
+  public void expire( final long before ) {
+    for ( final Iterator<Map.Entry<ListMetricKey, Long>> entryIterator = hot.entrySet( ).iterator( ); entryIterator.hasNext( ); ) {
+      final Map.Entry<ListMetricKey, Long> entry = entryIterator.next( );
+      if ( entry.getValue( ) < before ) {
+        entryIterator.remove( );
+        addCold( entry.getKey( ) );
+      }
+    }
+  }
+
+  public int getHotSize( ) {
+    return hot.size( );
+  }
+
+  public int getColdSize( ) {
+    return coldCount;
+  }
+
+  /**
+   * Number of items that did not need a database update and reset the count.
+   */
+  public long takeHitCount( ) {
+    final long count = hitCount;
+    hitCount = 0;
+    return count;
+  }
+
+  /**
+   * Number of items that needed a database update and reset the count.
+   */
+  public long takeMissCount( ) {
+    final long count = missCount;
+    missCount = 0;
+    return count;
+  }
+
+  /**
+   * Number of missed items that were not previously known and reset the count.
+   */
+  public long takeNewCount( ) {
+    final long count = newCount;
+    newCount = 0;
+    return count;
+  }
+
+  private void addCold( final ListMetricKey key ) {
+    if ( coldCount >= expectedMetrics ) {
+      // cold membership only classifies misses so starting over is safe
+      cold = newColdSet( );
+      coldCount = 0;
+    }
+    if ( cold.put( key ) ) {
+      coldCount++;
+    }
+  }
+
+  private BloomFilter<ListMetricKey> newColdSet( ) {
+    return BloomFilter.create( ListMetricKeyFunnel.INSTANCE, expectedMetrics, FALSE_POSITIVE_PROBABILITY );
+  }
+
+  private static final class ListMetricKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    private ListMetricKey( final String accountId,
+                           final String namespace,
+                           final String metricName,
+                           final MetricType metricType,
+                           final String dimensionHash ) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    private static ListMetricKey of( final ListMetricQueueItem item ) {
+      return new ListMetricKey( item.getAccountId( ), item.getNamespace( ), item.getMetricName( ), item.getMetricType( ),
+          MetricManager.hash( item.getDimensionMap( ) ) );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final ListMetricKey that = (ListMetricKey) o;
+      return Objects.equals( accountId, that.accountId ) &&
+          Objects.equals( namespace, that.namespace ) &&
+          Objects.equals( metricName, that.metricName ) &&
+          metricType == that.metricType &&
+          Objects.equals( dimensionHash, that.dimensionHash );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accountId, namespace, metricName, metricType, dimensionHash );
+    }
+  }
+
+  private enum ListMetricKeyFunnel implements Funnel<ListMetricKey> {
+    INSTANCE;
+
+    @Override
+    public void funnel( final ListMetricKey key, final PrimitiveSink into ) {
+      into.putString( String.valueOf( key.accountId ), StandardCharsets.UTF_8 ).putByte( (byte) 0 )
+          .putString( String.valueOf( key.namespace ), StandardCharsets.UTF_8 ).putByte( (byte) 0 )
+          .putString( String.valueOf( key.metricName ), StandardCharsets.UTF_8 ).putByte( (byte) 0 )
+          .putString( String.valueOf( key.metricType ), StandardCharsets.UTF_8 ).putByte( (byte) 0 )
+          .putString( String.valueOf( key.dimensionHash ), StandardCharsets.UTF_8 );
+    }
+  }
+}
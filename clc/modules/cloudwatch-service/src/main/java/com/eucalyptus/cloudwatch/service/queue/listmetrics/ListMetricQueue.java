@@ -19,10 +19,12 @@
  ************************************************************************/
 package com.eucalyptus.cloudwatch.service.queue.listmetrics;
 
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetric;
 import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
 import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Callback;
 import com.eucalyptus.util.metrics.MonitoredAction;
 import com.eucalyptus.util.metrics.ThruputMetrics;
 import com.google.common.collect.Lists;
@@ -30,6 +32,7 @@ import com.google.common.collect.Sets;
 
 import org.apache.log4j.Logger;
 
+import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -71,6 +74,8 @@ public class ListMetricQueue {
 
   final static NoDupQueue<ListMetricQueueItem> dataQueue = new NoDupQueue<ListMetricQueueItem>();
 
+  final static ListMetricIndex index = new ListMetricIndex(CloudWatchConfigProperties.LIST_METRIC_INDEX_EXPECTED_METRICS);
+
   private static final ScheduledExecutorService dataFlushTimer = Executors
     .newSingleThreadScheduledExecutor( Threads.threadFactory( "cloudwatch-list-metrics-flush-%d" ) );
 
@@ -93,17 +98,30 @@ public class ListMetricQueue {
     public void run() {
       long before = System.currentTimeMillis();
       try {
+        final long granularityMillis = TimeUnit.MINUTES.toMillis(CloudWatchConfigProperties.LIST_METRIC_UPDATE_GRANULARITY_MINUTES);
+        if (!index.isWarm()) {
+          warm(granularityMillis);
+        }
         List<ListMetricQueueItem> dataBatch = Lists.newArrayList();
         dataQueue.drainTo(dataBatch);
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_SIZE, dataBatch.size( ));
         long t2 = System.currentTimeMillis();
         dataBatch = prune(dataBatch);
+        dataBatch = index.filter(dataBatch, t2, granularityMillis);
         long t3 = System.currentTimeMillis();
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_PRUNE, t3-t2);
+        ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_INDEX_HIT, index.takeHitCount());
+        ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_INDEX_MISS, index.takeMissCount());
+        ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_INDEX_NEW, index.takeNewCount());
         List<ListMetric> listMetrics = convertToListMetrics(dataBatch);
         long t4 = System.currentTimeMillis();
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_CONVERT, t4-t3);
-        ListMetricManager.addMetricBatch(listMetrics);
+        if (!listMetrics.isEmpty()) {
+          ListMetricManager.addMetricBatch(listMetrics);
+        }
+        index.updated(dataBatch, t4);
+        // metrics still being reported are updated every granularity, anything older is idle
+        index.expire(t4 - 2 * granularityMillis);
         long t5 = System.currentTimeMillis();
         ThruputMetrics.addDataPoint(MonitoredAction.LIST_METRIC_MERTIC_ADD_BATCH, t5-t4);
       } catch (Throwable ex) {
@@ -116,6 +134,26 @@ public class ListMetricQueue {
     }
   };
 
+  private static void warm(final long granularityMillis) {
+    final long now = System.currentTimeMillis();
+    try {
+      // metrics not updated in the last two weeks are not listed
+      ListMetricManager.scanMetrics(new Date(now - TimeUnit.DAYS.toMillis(14)), new Callback<ListMetric>() {
+        @Override
+        public void fire(final ListMetric listMetric) {
+          index.add(listMetric.getAccountId(), listMetric.getNamespace(), listMetric.getMetricName(),
+            listMetric.getMetricType(), listMetric.getDimensionMap(), listMetric.getLastUpdateTimestamp().getTime(),
+            now, granularityMillis);
+        }
+      });
+      LOG.info("Loaded list metrics index, hot=" + index.getHotSize() + ", cold=" + index.getColdSize() +
+        ", time = " + (System.currentTimeMillis() - now) + " ms");
+      index.setWarm(true);
+    } catch (Exception ex) {
+      LOG.error("Error loading list metrics index, will retry on next flush", ex);
+    }
+  }
+
   private static List<ListMetric> convertToListMetrics(List<ListMetricQueueItem> dataBatch) {
     if (dataBatch == null) return null;
     List<ListMetric> listMetrics = Lists.newArrayList();
@@ -19,7 +19,7 @@
  ************************************************************************/
 package com.eucalyptus.cloudwatch.service.queue.metricdata;
 
-import com.eucalyptus.cloudwatch.common.internal.domain.listmetrics.ListMetricManager;
+import com.eucalyptus.cloudwatch.common.config.CloudWatchConfigProperties;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricManager;
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
@@ -27,34 +27,40 @@ import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricE
 import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
 import com.eucalyptus.cloudwatch.common.msgs.Dimension;
 import com.eucalyptus.cloudwatch.common.msgs.MetricDatum;
+import com.eucalyptus.cloudwatch.service.LimitExceededException;
 import com.eucalyptus.cloudwatch.service.queue.listmetrics.ListMetricQueue;
 import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.metrics.MonitoredAction;
 import com.eucalyptus.util.metrics.ThruputMetrics;
-import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 import org.apache.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class MetricDataQueue {
   private static final Logger LOG = Logger.getLogger(MetricDataQueue.class);
-  final static LinkedBlockingQueue<MetricQueueItem> dataQueue = new LinkedBlockingQueue<MetricQueueItem>();
+  private static final int ROLLUP_SHARDS = 16;
+  private static final int ROLLUP_FLUSH_THREADS = 4;
+  final static MetricDataRollup rollup = new MetricDataRollup(ROLLUP_SHARDS, CloudWatchConfigProperties.CLOUDWATCH_PUT_DATA_MAX_PENDING_POINTS);
 
   private static final ScheduledExecutorService dataFlushTimer = Executors
       .newSingleThreadScheduledExecutor( Threads.threadFactory( "cloudwatch-metric-data-flush-%d" ) );
 
+  private static final ExecutorService shardFlushPool = Executors
+      .newFixedThreadPool( ROLLUP_FLUSH_THREADS, Threads.threadFactory( "cloudwatch-metric-data-shard-flush-%d" ) );
+
   private static MetricDataQueue singleton = getInstance();
 
   public static MetricDataQueue getInstance() {
@@ -65,32 +71,26 @@ public class MetricDataQueue {
     return singleton;
   }
 
-  private void queue(Supplier<MetricQueueItem> metriMetaDataSupplier) {
-    final MetricQueueItem metricData = metriMetaDataSupplier.get();
-    dataQueue.offer(metricData);
-  }
-
   private static Runnable safeRunner = new Runnable() {
     @Override
     public void run() {
       long before = System.currentTimeMillis();
       try {
-        List<MetricQueueItem> dataBatch = Lists.newArrayList();
-        dataQueue.drainTo(dataBatch);
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, dataBatch.size( ));
-        long t1 = System.currentTimeMillis();
-        List<SimpleMetricEntity> simpleDataBatch = convertToSimpleDataBatch(dataBatch);
-        long t2 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_CONVERT, t2-t1);
-        simpleDataBatch = aggregate(simpleDataBatch);
-        long t3 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_AGGREGATE, t3-t2);
-        MetricManager.addMetricBatch(simpleDataBatch);
-        long t4 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_ADD_BATCH, t4-t3);
-        ListMetricQueue.getInstance().addAll(simpleDataBatch);
-        long t5 = System.currentTimeMillis();
-        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL, t5-t4);
+        rollup.setMaxCells(CloudWatchConfigProperties.CLOUDWATCH_PUT_DATA_MAX_PENDING_POINTS);
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_SIZE, rollup.takeFoldedCount());
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_ROLLUP_SHED, rollup.takeShedCount());
+        ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_ROLLUP_CELLS, rollup.size());
+        final List<Future<?>> shardFlushes = Lists.newArrayList();
+        for (int shard = 0; shard < rollup.getShardCount(); shard++) {
+          shardFlushes.add(shardFlushPool.submit(new ShardFlush(shard)));
+        }
+        for (Future<?> shardFlush: shardFlushes) {
+          try {
+            shardFlush.get();
+          } catch (ExecutionException ex) {
+            LOG.error(ex.getCause(), ex.getCause());
+          }
+        }
       } catch (Throwable ex) {
         LOG.debug("PutMetricDataQueue:error");
         ex.printStackTrace();
@@ -101,6 +101,30 @@ public class MetricDataQueue {
     }
   };
 
+  private static class ShardFlush implements Runnable {
+    private final int shard;
+
+    private ShardFlush(int shard) {
+      this.shard = shard;
+    }
+
+    @Override
+    public void run() {
+      long t1 = System.currentTimeMillis();
+      List<SimpleMetricEntity> simpleDataBatch = rollup.drain(shard);
+      if (simpleDataBatch.isEmpty()) return;
+      long t2 = System.currentTimeMillis();
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_ROLLUP_SHARD_DRAIN, t2-t1);
+      MetricManager.addMetricBatch(simpleDataBatch);
+      long t3 = System.currentTimeMillis();
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_ADD_BATCH, t3-t2);
+      ListMetricQueue.getInstance().addAll(simpleDataBatch);
+      long t4 = System.currentTimeMillis();
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL, t4-t3);
+      ThruputMetrics.addDataPoint(MonitoredAction.PUT_DATA_ROLLUP_SHARD_FLUSH, t4-t1);
+    }
+  }
+
   static {
     dataFlushTimer.scheduleAtFixedRate(safeRunner, 0, 1, TimeUnit.MINUTES);
   }
@@ -123,64 +147,64 @@ public class MetricDataQueue {
     return Lists.newArrayList(aggregationMap.values());
   }
 
-  protected static List<SimpleMetricEntity> convertToSimpleDataBatch(
-      List<MetricQueueItem> stupidDataBatch) {
-    ArrayList<SimpleMetricEntity> returnValue = new ArrayList<SimpleMetricEntity>();
-    for(MetricQueueItem item: stupidDataBatch) {
-      SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
-      metricMetadata.setAccountId(item.getAccountId());
-      MetricDatum datum = item.getMetricDatum();
-      
-      metricMetadata.setMetricName(datum.getMetricName());
-      metricMetadata.setNamespace(item.getNamespace());
-      final List<Dimension> dimensions = datum.getDimensions( ) == null ?
-          Collections.<Dimension>emptyList( ) :
-          datum.getDimensions( ).getMember( );
-      metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
-      metricMetadata.setMetricType(item.getMetricType());
-      metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
-      metricMetadata.setTimestamp(datum.getTimestamp());
-      if (datum.getValue() != null) { // Either or case taken care of in service
-        metricMetadata.setSampleMax(datum.getValue());
-        metricMetadata.setSampleMin(datum.getValue());
-        metricMetadata.setSampleSum(datum.getValue());
-        metricMetadata.setSampleSize(1.0);
-      } else if ((datum.getStatisticValues() != null) &&
-            (datum.getStatisticValues().getMaximum() != null) &&
-            (datum.getStatisticValues().getMinimum() != null) &&
-            (datum.getStatisticValues().getSum() != null) &&
-            (datum.getStatisticValues().getSampleCount() != null)) {
-          metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
-          metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
-          metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
-          metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
-      } else {
-        throw new RuntimeException("Statistics set (all values) or Value must be set"); 
-      }
-      returnValue.add(metricMetadata);
+  protected static SimpleMetricEntity convertToSimpleData(MetricQueueItem item) {
+    SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
+    metricMetadata.setAccountId(item.getAccountId());
+    MetricDatum datum = item.getMetricDatum();
+    
+    metricMetadata.setMetricName(datum.getMetricName());
+    metricMetadata.setNamespace(item.getNamespace());
+    final List<Dimension> dimensions = datum.getDimensions( ) == null ?
+        Collections.<Dimension>emptyList( ) :
+        datum.getDimensions( ).getMember( );
+    metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
+    metricMetadata.setMetricType(item.getMetricType());
+    metricMetadata.setUnits(Units.fromValue(datum.getUnit()));
+    metricMetadata.setTimestamp(datum.getTimestamp());
+    if (datum.getValue() != null) { // Either or case taken care of in service
+      metricMetadata.setSampleMax(datum.getValue());
+      metricMetadata.setSampleMin(datum.getValue());
+      metricMetadata.setSampleSum(datum.getValue());
+      metricMetadata.setSampleSize(1.0);
+    } else if ((datum.getStatisticValues() != null) &&
+          (datum.getStatisticValues().getMaximum() != null) &&
+          (datum.getStatisticValues().getMinimum() != null) &&
+          (datum.getStatisticValues().getSum() != null) &&
+          (datum.getStatisticValues().getSampleCount() != null)) {
+        metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
+        metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
+        metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
+        metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
+    } else {
+      throw new RuntimeException("Statistics set (all values) or Value must be set"); 
     }
-    return returnValue;
+    return metricMetadata;
   }
 
+  /**
+   * Fold the given metric data into the pending rollup.
+   *
+   * @throws LimitExceededException if pending metric data is at capacity, none of the data is accepted
+   */
   public void insertMetricData(final String ownerAccountId, final String nameSpace,
-                               final List<MetricDatum> metricDatum, final MetricType metricType) {
+                               final List<MetricDatum> metricDatum, final MetricType metricType) throws LimitExceededException {
     // Some points do not actually go in.  If a data point represents an absolute value, the first one does not go in.
     // Also, some data points are added while we go through the list (derived metrics)
     Date now = new Date();
 
+    final List<SimpleMetricEntity> dataBatch = Lists.newArrayListWithCapacity(metricDatum.size());
     for (final MetricDatum datum : metricDatum) {
       scrub(datum, now);
-      queue(new Supplier<MetricQueueItem>() {
-        @Override
-        public MetricQueueItem get() {
-          MetricQueueItem metricMetadata = new MetricQueueItem();
-          metricMetadata.setAccountId(ownerAccountId);
-          metricMetadata.setMetricDatum(datum);
-          metricMetadata.setNamespace(nameSpace);
-          metricMetadata.setMetricType(metricType);
-          return metricMetadata;
-        }
-      });
+      MetricQueueItem metricMetadata = new MetricQueueItem();
+      metricMetadata.setAccountId(ownerAccountId);
+      metricMetadata.setMetricDatum(datum);
+      metricMetadata.setNamespace(nameSpace);
+      metricMetadata.setMetricType(metricType);
+      dataBatch.add(convertToSimpleData(metricMetadata));
+    }
+    // all or nothing so a retry of a rejected request does not count data twice
+    if (!rollup.foldAll(dataBatch)) {
+      throw new LimitExceededException("Too many pending metric data points, request not accepted");
     }
   }
 
@@ -0,0 +1,206 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.service.queue.metricdata;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.util.LockResource;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sharded, lock-striped pre-aggregation of metric data.
+ *
+ * Each datum is folded into its per-minute min/max/sum/count cell as it arrives
+ * so that memory is bounded by the number of distinct series per minute rather
+ * than by the number of PutMetricData calls. The total number of cells is
+ * capped; once full, requests with datums that would need a new cell are
+ * rejected as a whole.
+ */
+public class MetricDataRollup {
+
+  private final Shard[] shards;
+  private volatile int maxCells;
+  private final AtomicInteger cells = new AtomicInteger( );
+  private final AtomicLong folded = new AtomicLong( );
+  private final AtomicLong shed = new AtomicLong( );
+
+  private static final class Shard {
+    private final ReentrantLock lock = new ReentrantLock( );
+    private HashMap<PutMetricDataAggregationKey, SimpleMetricEntity> cells = Maps.newHashMap( );
+  }
+
+  public MetricDataRollup( final int shardCount, final int maxCells ) {
+    if ( shardCount < 1 ) throw new IllegalArgumentException( "shardCount must be positive" );
+    if ( maxCells < 1 ) throw new IllegalArgumentException( "maxCells must be positive" );
+    this.shards = new Shard[ shardCount ];
+    for ( int i = 0; i < shardCount; i++ ) {
+      shards[ i ] = new Shard( );
+    }
+    this.maxCells = maxCells;
+  }
+
+  /**
+   * Fold the given item into its cell.
+   *
+   * The item timestamp is truncated to the minute. The item is not retained,
+   * a copy is made when a new cell is required.
+   *
+   * @return false if the item required a new cell and the rollup is full
+   * @see #foldAll(List)
+   */
+  public boolean fold( final SimpleMetricEntity item ) {
+    return foldAll( Collections.singletonList( item ) );
+  }
+
+  /**
+   * Fold all the given items into their cells, or none of them.
+   *
+   * The locks for all shards used by the items are held while the cells
+   * needed for the items are reserved, so either every item is folded or the
+   * rollup is unchanged.
+   *
+   * @return false if the items required more new cells than are available
+   */
+  public boolean foldAll( final List<SimpleMetricEntity> items ) {
+    final PutMetricDataAggregationKey[] keys = new PutMetricDataAggregationKey[ items.size( ) ];
+    final BitSet shardIndexes = new BitSet( shards.length );
+    for ( int i = 0; i < keys.length; i++ ) {
+      final SimpleMetricEntity item = items.get( i );
+      item.setTimestamp( MetricUtils.stripSeconds( item.getTimestamp( ) ) );
+      keys[ i ] = new PutMetricDataAggregationKey( item );
+      shardIndexes.set( shardIndex( keys[ i ] ) );
+    }
+    // locks are acquired in shard order so concurrent folds cannot deadlock
+    final List<ReentrantLock> locked = Lists.newArrayListWithCapacity( shardIndexes.cardinality( ) );
+    try {
+      for ( int index = shardIndexes.nextSetBit( 0 ); index >= 0; index = shardIndexes.nextSetBit( index + 1 ) ) {
+        shards[ index ].lock.lock( );
+        locked.add( shards[ index ].lock );
+      }
+      final Set<PutMetricDataAggregationKey> newKeys = Sets.newHashSet( );
+      for ( final PutMetricDataAggregationKey key : keys ) {
+        if ( !shards[ shardIndex( key ) ].cells.containsKey( key ) ) {
+          newKeys.add( key );
+        }
+      }
+      if ( !reserve( newKeys.size( ) ) ) {
+        shed.addAndGet( keys.length );
+        return false;
+      }
+      for ( int i = 0; i < keys.length; i++ ) {
+        final SimpleMetricEntity item = items.get( i );
+        final Shard shard = shards[ shardIndex( keys[ i ] ) ];
+        final SimpleMetricEntity totalSoFar = shard.cells.get( keys[ i ] );
+        if ( totalSoFar == null ) {
+          shard.cells.put( keys[ i ], new SimpleMetricEntity( item ) );
+        } else {
+          totalSoFar.setSampleMax( Math.max( item.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
+          totalSoFar.setSampleMin( Math.min( item.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
+          totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + item.getSampleSize( ) );
+          totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + item.getSampleSum( ) );
+        }
+      }
+    } finally {
+      for ( final ReentrantLock lock : Lists.reverse( locked ) ) {
+        lock.unlock( );
+      }
+    }
+    folded.addAndGet( keys.length );
+    return true;
+  }
+
+  private int shardIndex( final PutMetricDataAggregationKey key ) {
+    return ( key.hashCode( ) & Integer.MAX_VALUE ) % shards.length;
+  }
+
+  private boolean reserve( final int count ) {
+    while ( true ) {
+      final int current = cells.get( );
+      if ( current + count > maxCells && count > 0 ) {
+        return false;
+      }
+      if ( cells.compareAndSet( current, current + count ) ) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Remove and return all cells for the given shard.
+   *
+   * The shard lock is only held to swap the cell map so folding into the
+   * shard can continue while the drained cells are written.
+   */
+  public List<SimpleMetricEntity> drain( final int shardIndex ) {
+    final Shard shard = shards[ shardIndex ];
+    final HashMap<PutMetricDataAggregationKey, SimpleMetricEntity> drained;
+    try ( final LockResource lock = LockResource.lock( shard.lock ) ) {
+      drained = shard.cells;
+      shard.cells = Maps.newHashMapWithExpectedSize( drained.size( ) );
+    }
+    cells.addAndGet( -drained.size( ) );
+    return Lists.newArrayList( drained.values( ) );
+  }
+
+  public int getShardCount( ) {
+    return shards.length;
+  }
+
+  public int getMaxCells( ) {
+    return maxCells;
+  }
+
+  public void setMaxCells( final int maxCells ) {
+    if ( maxCells < 1 ) throw new IllegalArgumentException( "maxCells must be positive" );
+    this.maxCells = maxCells;
+  }
+
+  /**
+   * Number of cells currently held across all shards.
+   */
+  public int size( ) {
+    return cells.get( );
+  }
+
+  /**
+   * Number of datums folded and reset the count.
+   */
+  public long takeFoldedCount( ) {
+    return folded.getAndSet( 0 );
+  }
+
+  /**
+   * Number of datums rejected because the rollup was full and reset the count.
+   */
+  public long takeShedCount( ) {
+    return shed.getAndSet( 0 );
+  }
+}
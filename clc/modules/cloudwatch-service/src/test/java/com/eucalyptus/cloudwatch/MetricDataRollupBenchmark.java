@@ -0,0 +1,151 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.eucalyptus.cloudwatch.service.queue.metricdata.MetricDataQueue;
+import com.eucalyptus.cloudwatch.service.queue.metricdata.MetricDataRollup;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the drain-then-aggregate path with fold-on-arrival for a minute's
+ * worth of PutMetricData from many producer threads.
+ */
+@Ignore("Manual benchmark")
+public class MetricDataRollupBenchmark {
+
+  private static final int PRODUCERS = 16;
+  private static final int DATUMS_PER_PRODUCER = 100000;
+  private static final int SERIES = 5000;
+  private static final int ITERATIONS = 5;
+
+  private interface Sink {
+    void accept(SimpleMetricEntity entity);
+    int flush();
+  }
+
+  private static SimpleMetricEntity datum(int series, Date timestamp, double value) {
+    Map<String,String> dimensionMap = Maps.newTreeMap();
+    dimensionMap.put("InstanceId", "i-" + series);
+    SimpleMetricEntity mqi = new SimpleMetricEntity();
+    mqi.setAccountId("account" + (series % 10));
+    mqi.setDimensionMap(dimensionMap);
+    mqi.setMetricName("CPUUtilization");
+    mqi.setMetricType(MetricType.System);
+    mqi.setNamespace("AWS/EC2");
+    mqi.setSampleMax(value);
+    mqi.setSampleMin(value);
+    mqi.setSampleSize(1.0);
+    mqi.setSampleSum(value);
+    mqi.setTimestamp(timestamp);
+    mqi.setUnits(Units.Percent);
+    return mqi;
+  }
+
+  private static long run(final Sink sink) throws Exception {
+    final Date now = MetricUtils.stripSeconds(new Date());
+    final CountDownLatch latch = new CountDownLatch(PRODUCERS);
+    ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS);
+    long before = System.nanoTime();
+    for (int p=0; p<PRODUCERS; p++) {
+      final int producer = p;
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i=0; i<DATUMS_PER_PRODUCER; i++) {
+              sink.accept(datum((producer * DATUMS_PER_PRODUCER + i) % SERIES, now, (double) i));
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+    latch.await(10, TimeUnit.MINUTES);
+    executor.shutdown();
+    int cells = sink.flush();
+    long elapsed = System.nanoTime() - before;
+    if (cells != SERIES) throw new IllegalStateException("Unexpected cell count " + cells);
+    return TimeUnit.NANOSECONDS.toMillis(elapsed);
+  }
+
+  private static void report(String name, Sink sink) throws Exception {
+    run(sink); // warm up
+    long total = 0;
+    for (int i=0; i<ITERATIONS; i++) {
+      total += run(sink);
+    }
+    System.out.println(name + ": " + (total / ITERATIONS) + "ms per " + (PRODUCERS * DATUMS_PER_PRODUCER) + " datums");
+  }
+
+  @Test
+  public void benchmarkDrainThenAggregate() throws Exception {
+    final LinkedBlockingQueue<SimpleMetricEntity> queue = new LinkedBlockingQueue<SimpleMetricEntity>();
+    report("drain-then-aggregate", new Sink() {
+      @Override
+      public void accept(SimpleMetricEntity entity) {
+        queue.offer(entity);
+      }
+
+      @Override
+      public int flush() {
+        List<SimpleMetricEntity> batch = Lists.newArrayList();
+        queue.drainTo(batch);
+        return MetricDataQueue.aggregate(batch).size();
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkRollup() throws Exception {
+    final MetricDataRollup rollup = new MetricDataRollup(16, SERIES * 2);
+    report("rollup", new Sink() {
+      @Override
+      public void accept(SimpleMetricEntity entity) {
+        rollup.fold(entity);
+      }
+
+      @Override
+      public int flush() {
+        int cells = 0;
+        for (int i=0; i<rollup.getShardCount(); i++) {
+          cells += rollup.drain(i).size();
+        }
+        return cells;
+      }
+    });
+  }
+}
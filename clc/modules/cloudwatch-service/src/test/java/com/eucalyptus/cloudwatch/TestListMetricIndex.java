@@ -0,0 +1,84 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.service.queue.listmetrics.ListMetricIndex;
+import com.eucalyptus.cloudwatch.service.queue.listmetrics.ListMetricQueueItem;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestListMetricIndex {
+
+  private static final long GRANULARITY = 60 * 60 * 1000L;
+
+  private static ListMetricQueueItem item( String metricName, String instanceId ) {
+    ListMetricQueueItem item = new ListMetricQueueItem();
+    item.setAccountId("account1");
+    item.setNamespace("AWS/EC2");
+    item.setMetricName(metricName);
+    item.setMetricType(MetricType.System);
+    item.setDimensionMap(Collections.singletonMap("InstanceId", instanceId));
+    return item;
+  }
+
+  @Test
+  public void testOnlyNewOrStaleUpdated() {
+    ListMetricIndex index = new ListMetricIndex(1000);
+    long now = System.currentTimeMillis();
+    List<ListMetricQueueItem> batch = Lists.newArrayList(item("CPUUtilization", "i-1"), item("CPUUtilization", "i-2"));
+    assertEquals(2, index.filter(batch, now, GRANULARITY).size());
+    assertEquals(2, index.takeNewCount());
+    index.updated(batch, now);
+    // same metrics reported again within the granularity
+    assertEquals(0, index.filter(batch, now + 60000L, GRANULARITY).size());
+    assertEquals(2, index.takeHitCount());
+    assertEquals(2, index.takeMissCount());
+    // stale last update
+    assertEquals(2, index.filter(batch, now + GRANULARITY, GRANULARITY).size());
+    assertEquals(0, index.takeNewCount());
+  }
+
+  @Test
+  public void testWarmAndExpire() {
+    ListMetricIndex index = new ListMetricIndex(1000);
+    long now = System.currentTimeMillis();
+    Map<String, String> dimensionMap = Collections.singletonMap("InstanceId", "i-1");
+    index.add("account1", "AWS/EC2", "CPUUtilization", MetricType.System, dimensionMap, now - 60000L, now, GRANULARITY);
+    index.add("account1", "AWS/EC2", "NetworkIn", MetricType.System, dimensionMap, now - 2 * GRANULARITY, now, GRANULARITY);
+    assertEquals(1, index.getHotSize());
+    assertEquals(1, index.getColdSize());
+    assertEquals(0, index.filter(Lists.newArrayList(item("CPUUtilization", "i-1")), now, GRANULARITY).size());
+    // cold metric needs an update but is not new
+    assertEquals(1, index.filter(Lists.newArrayList(item("NetworkIn", "i-1")), now, GRANULARITY).size());
+    assertEquals(0, index.takeNewCount());
+    index.expire(now);
+    assertEquals(0, index.getHotSize());
+    assertEquals(2, index.getColdSize());
+    assertEquals(1, index.filter(Lists.newArrayList(item("CPUUtilization", "i-1")), now, GRANULARITY).size());
+    assertEquals(0, index.takeNewCount());
+  }
+}
@@ -0,0 +1,180 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch;
+
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.MetricUtils;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.cloudwatch.common.internal.domain.metricdata.Units;
+import com.eucalyptus.cloudwatch.service.queue.metricdata.MetricDataQueue;
+import com.eucalyptus.cloudwatch.service.queue.metricdata.MetricDataRollup;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestMetricDataRollup {
+
+  private static final double TOLERANCE = 0.000000001;
+
+  private static SimpleMetricEntity datum( String accountId, String metricName, Date timestamp, double value ) {
+    SimpleMetricEntity mqi = new SimpleMetricEntity();
+    mqi.setAccountId(accountId);
+    mqi.setDimensionMap(Collections.singletonMap("dim1", "val1"));
+    mqi.setMetricName(metricName);
+    mqi.setMetricType(MetricType.Custom);
+    mqi.setNamespace("namespace1");
+    mqi.setSampleMax(value);
+    mqi.setSampleMin(value);
+    mqi.setSampleSize(1.0);
+    mqi.setSampleSum(value);
+    mqi.setTimestamp(timestamp);
+    mqi.setUnits(Units.None);
+    return mqi;
+  }
+
+  private static List<SimpleMetricEntity> drainAll(MetricDataRollup rollup) {
+    List<SimpleMetricEntity> drained = Lists.newArrayList();
+    for (int i=0; i<rollup.getShardCount(); i++) {
+      drained.addAll(rollup.drain(i));
+    }
+    return drained;
+  }
+
+  @Test
+  public void testFoldMatchesAggregate() {
+    final Date now = MetricUtils.stripSeconds(new Date());
+    MetricDataRollup rollup = new MetricDataRollup(4, 100);
+    List<SimpleMetricEntity> list = Lists.newArrayList();
+    for (int i=0;i<10;i++) {
+      // vary seconds within the minute, all should land in the same cell
+      Date timestamp = new Date(now.getTime() + i * 1000L);
+      list.add(datum("account" + (i % 2), "metric1", timestamp, (double) i));
+      assertTrue(rollup.fold(datum("account" + (i % 2), "metric1", timestamp, (double) i)));
+    }
+    List<SimpleMetricEntity> aggregateList = MetricDataQueue.aggregate(list);
+    List<SimpleMetricEntity> rollupList = drainAll(rollup);
+    assertEquals(2, rollupList.size());
+    assertEquals(aggregateList.size(), rollupList.size());
+    for (SimpleMetricEntity rolled: rollupList) {
+      SimpleMetricEntity aggregated = aggregateList.get(0).getAccountId().equals(rolled.getAccountId()) ?
+          aggregateList.get(0) : aggregateList.get(1);
+      assertEquals(aggregated.getSampleMax(), rolled.getSampleMax(), TOLERANCE);
+      assertEquals(aggregated.getSampleMin(), rolled.getSampleMin(), TOLERANCE);
+      assertEquals(aggregated.getSampleSize(), rolled.getSampleSize(), TOLERANCE);
+      assertEquals(aggregated.getSampleSum(), rolled.getSampleSum(), TOLERANCE);
+      assertEquals(now, rolled.getTimestamp());
+    }
+    assertEquals(10, rollup.takeFoldedCount());
+    assertEquals(0, rollup.size());
+  }
+
+  @Test
+  public void testShedWhenFull() {
+    final Date now = MetricUtils.stripSeconds(new Date());
+    MetricDataRollup rollup = new MetricDataRollup(2, 2);
+    assertTrue(rollup.fold(datum("account1", "metric1", now, 1.0)));
+    assertTrue(rollup.fold(datum("account1", "metric2", now, 1.0)));
+    assertFalse(rollup.fold(datum("account1", "metric3", now, 1.0)));
+    // existing cells still accept data when full
+    assertTrue(rollup.fold(datum("account1", "metric1", now, 2.0)));
+    assertEquals(2, rollup.size());
+    assertEquals(1, rollup.takeShedCount());
+    assertEquals(0, rollup.takeShedCount());
+    assertEquals(2, drainAll(rollup).size());
+    assertTrue(rollup.fold(datum("account1", "metric3", now, 1.0)));
+  }
+
+  @Test
+  public void testFoldAllOrNothing() {
+    final Date now = MetricUtils.stripSeconds(new Date());
+    MetricDataRollup rollup = new MetricDataRollup(4, 3);
+    assertTrue(rollup.fold(datum("account1", "metric1", now, 1.0)));
+    assertTrue(rollup.fold(datum("account1", "metric2", now, 1.0)));
+    // needs two new cells but only one is available, nothing is folded
+    assertFalse(rollup.foldAll(Lists.newArrayList(
+        datum("account1", "metric1", now, 5.0),
+        datum("account1", "metric3", now, 1.0),
+        datum("account1", "metric4", now, 1.0))));
+    assertEquals(2, rollup.size());
+    assertEquals(3, rollup.takeShedCount());
+    assertEquals(2, rollup.takeFoldedCount());
+    // repeated keys within a request only need one cell
+    assertTrue(rollup.foldAll(Lists.newArrayList(
+        datum("account1", "metric1", now, 2.0),
+        datum("account1", "metric3", now, 1.0),
+        datum("account1", "metric3", now, 3.0))));
+    assertEquals(3, rollup.size());
+    assertEquals(3, rollup.takeFoldedCount());
+    for (SimpleMetricEntity rolled: drainAll(rollup)) {
+      if ("metric1".equals(rolled.getMetricName())) {
+        assertEquals(2.0, rolled.getSampleMax(), TOLERANCE);
+        assertEquals(2.0, rolled.getSampleSize(), TOLERANCE);
+      } else if ("metric3".equals(rolled.getMetricName())) {
+        assertEquals(4.0, rolled.getSampleSum(), TOLERANCE);
+        assertEquals(2.0, rolled.getSampleSize(), TOLERANCE);
+      }
+    }
+    assertEquals(0, rollup.size());
+  }
+
+  @Test
+  public void testConcurrentFold() throws Exception {
+    final Date now = MetricUtils.stripSeconds(new Date());
+    final MetricDataRollup rollup = new MetricDataRollup(8, 1000);
+    final int threads = 8;
+    final int perThread = 1000;
+    final CountDownLatch latch = new CountDownLatch(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    for (int t=0; t<threads; t++) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i=0; i<perThread; i++) {
+              rollup.fold(datum("account1", "metric" + (i % 10), now, (double) i));
+            }
+          } finally {
+            latch.countDown();
+          }
+        }
+      });
+    }
+    assertTrue(latch.await(30, TimeUnit.SECONDS));
+    executor.shutdown();
+    List<SimpleMetricEntity> drained = drainAll(rollup);
+    assertEquals(10, drained.size());
+    double total = 0;
+    for (SimpleMetricEntity entity: drained) {
+      total += entity.getSampleSize();
+    }
+    assertEquals((double) threads * perThread, total, TOLERANCE);
+  }
+}
@@ -49,6 +49,41 @@ class NetworkInfo {
   @XmlElementWrapper @XmlElement(name="securityGroup") List<NISecurityGroup> securityGroups = Lists.newArrayList()
 }
 
+/**
+ * Changes to apply to the network information with version base-version to
+ * obtain the network information with the given version.
+ *
+ * Items are replaced by name, the configuration is only present if changed.
+ */
+@Canonical
+@CompileStatic
+@XmlRootElement(name = "network-data-delta")
+@XmlAccessorType( XmlAccessType.NONE )
+class NetworkInfoDelta {
+  @XmlAttribute String version
+  @XmlAttribute(name="base-version") String baseVersion
+  @XmlAttribute(name="applied-version") String appliedVersion
+  @XmlAttribute(name="applied-time") String appliedTime
+  @XmlElement NIConfiguration configuration
+  @XmlElementWrapper @XmlElement(name="vpc") List<NIVpc> vpcs = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="instance") List<NIInstance> instances = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="dhcpOptionSet") List<NIDhcpOptionSet> dhcpOptionSets = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="internetGateway") List<NIInternetGateway> internetGateways = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="securityGroup") List<NISecurityGroup> securityGroups = Lists.newArrayList()
+  @XmlElement NIRemoved removed = new NIRemoved()
+}
+
+@Canonical
+@CompileStatic
+@XmlAccessorType( XmlAccessType.NONE )
+class NIRemoved {
+  @XmlElementWrapper @XmlElement(name="value") List<String> vpcs = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="value") List<String> instances = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="value") List<String> dhcpOptionSets = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="value") List<String> internetGateways = Lists.newArrayList()
+  @XmlElementWrapper @XmlElement(name="value") List<String> securityGroups = Lists.newArrayList()
+}
+
 @Canonical
 @CompileStatic
 @XmlAccessorType( XmlAccessType.NONE )
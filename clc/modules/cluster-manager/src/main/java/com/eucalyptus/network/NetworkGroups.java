@@ -129,6 +129,10 @@ public class NetworkGroups extends com.eucalyptus.compute.common.internal.networ
   public static volatile Integer      MIN_BROADCAST_INTERVAL        = 5;
   @ConfigurableField( description = "Maximum time to apply network information (seconds).", initial = "120" )
   public static volatile Integer      MAX_BROADCAST_APPLY           = 120;
+  @ConfigurableField( description = "Broadcast only changed network information to partitions that acknowledged the previous version.", initial = "true" )
+  public static volatile Boolean      BROADCAST_DELTAS              = true;
+  @ConfigurableField( description = "Maximum interval between full broadcasts of network information when broadcasting changes (seconds).", initial = "300" )
+  public static volatile Integer      MAX_FULL_BROADCAST_INTERVAL   = 300;
 
   public static NetworkGroup delete( final String groupId ) throws MetadataException {
     try ( final TransactionResource db = Entities.transactionFor( NetworkGroup.class ) ) {
@@ -56,10 +56,10 @@ import com.eucalyptus.network.NetworkInfoBroadcasts.NetworkAclNetworkView;
 import com.eucalyptus.network.NetworkInfoBroadcasts.RouteTableNetworkView;
 import com.eucalyptus.network.NetworkInfoBroadcasts.InternetGatewayNetworkView;
 import com.eucalyptus.network.NetworkInfoBroadcasts.NetworkInterfaceNetworkView;
+import com.eucalyptus.network.NetworkInfoBroadcasts.NetworkInfoDocumentCache;
 import com.eucalyptus.network.NetworkInfoBroadcasts.NetworkInfoSource;
 import com.eucalyptus.network.NetworkInfoBroadcasts.VersionedNetworkView;
 import com.eucalyptus.system.Threads;
-import com.eucalyptus.util.HasName;
 import com.eucalyptus.util.LockResource;
 import com.eucalyptus.util.SemaphoreResource;
 import com.eucalyptus.util.TypeMappers;
@@ -67,15 +67,15 @@ import com.eucalyptus.compute.common.internal.vm.VmInstance;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import com.google.common.hash.Funnel;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
-import com.google.common.hash.PrimitiveSink;
 import com.google.common.io.BaseEncoding;
 import com.google.common.primitives.Ints;
 import org.apache.log4j.Logger;
@@ -131,6 +131,29 @@ public class NetworkInfoBroadcaster {
   private static final EntityCache<NatGateway,NatGatewayNetworkView> natGatewayCache =
       new EntityCache<>( NatGateway.exampleWithOwner( null ), TypeMappers.lookup( NatGateway.class, NatGatewayNetworkView.class )  );
   private static final VpcRouteStateInvalidator vpcRouteStateInvalidator = new EventFiringVpcRouteStateInvalidator( );
+  private static final List<EntityCache<?,?>> caches = ImmutableList.<EntityCache<?,?>>of(
+      instanceCache, securityGroupCache, vpcCache, subnetCache, dhcpOptionsCache, networkAclCache,
+      routeTableCache, internetGatewayCache, networkInterfaceCache, natGatewayCache );
+  private static final long maxBuildReuseMillis = TimeUnit.MINUTES.toMillis( 5 );
+  private static final NetworkInfoDocumentCache documentCache = new NetworkInfoDocumentCache( );
+  private static volatile LastBuild lastBuild;
+
+  /**
+   * Network information from the previous broadcast, used while nothing changes.
+   */
+  private static final class LastBuild {
+    private final int fingerprint;
+    private final long built;
+    private final NetworkInfo info;
+    private final Set<RouteKey> invalidStateRoutes;
+
+    private LastBuild( final int fingerprint, final long built, final NetworkInfo info, final Set<RouteKey> invalidStateRoutes ) {
+      this.fingerprint = fingerprint;
+      this.built = built;
+      this.info = info;
+      this.invalidStateRoutes = invalidStateRoutes;
+    }
+  }
 
   private static NetworkInfoSource cacheSource( ) {
     final Supplier<Iterable<VmInstanceNetworkView>> instanceSupplier = Suppliers.memoize( instanceCache );
@@ -223,31 +246,45 @@ public class NetworkInfoBroadcaster {
       final List<com.eucalyptus.cluster.Cluster> otherClusters = Clusters.getInstance( ).listDisabledValues( );
 
       final NetworkInfoSource source = cacheSource( );
+      source.getView( ); // refresh all caches so fingerprints are current
       final Set<String> dirtyPublicAddresses = PublicAddresses.dirtySnapshot( );
-      final Set<RouteKey> invalidStateRoutes = Sets.newHashSetWithExpectedSize( 50 );
-      final int sourceFingerprint = fingerprint( source, clusters, dirtyPublicAddresses, NetworkGroups.NETWORK_CONFIGURATION );
-      final NetworkInfo info = NetworkInfoBroadcasts.buildNetworkConfiguration(
-              networkConfiguration,
-              source,
-              Suppliers.ofInstance( clusters ),
-              Suppliers.ofInstance( otherClusters ),
-              new Supplier<String>( ) {
-                @Override
-                public String get() {
-                  return Topology.lookup( Eucalyptus.class ).getInetAddress( ).getHostAddress( );
-                }
-              },
-              new Function<List<String>, List<String>>( ) {
-                @Nullable
-                @Override
-                public List<String> apply( final List<String> defaultServers ) {
-                  return NetworkConfigurations.loadSystemNameservers( defaultServers );
-                }
-              },
-              dirtyPublicAddresses,
-              invalidStateRoutes
-          );
-          info.setVersion( BaseEncoding.base16( ).lowerCase( ).encode( Ints.toByteArray( sourceFingerprint ) ) );
+      final int sourceFingerprint = fingerprint( caches, clusters, dirtyPublicAddresses, NetworkGroups.NETWORK_CONFIGURATION );
+      final LastBuild previousBuild = lastBuild;
+      final NetworkInfo info;
+      final Set<RouteKey> invalidStateRoutes;
+      final long now = System.currentTimeMillis( );
+      if ( previousBuild != null &&
+          previousBuild.fingerprint == sourceFingerprint &&
+          previousBuild.built + maxBuildReuseMillis > now ) {
+        info = previousBuild.info;
+        invalidStateRoutes = previousBuild.invalidStateRoutes;
+      } else {
+        invalidStateRoutes = Sets.newHashSetWithExpectedSize( 50 );
+        info = NetworkInfoBroadcasts.buildNetworkConfiguration(
+            networkConfiguration,
+            source,
+            Suppliers.ofInstance( clusters ),
+            Suppliers.ofInstance( otherClusters ),
+            new Supplier<String>( ) {
+              @Override
+              public String get() {
+                return Topology.lookup( Eucalyptus.class ).getInetAddress( ).getHostAddress( );
+              }
+            },
+            new Function<List<String>, List<String>>( ) {
+              @Nullable
+              @Override
+              public List<String> apply( final List<String> defaultServers ) {
+                return NetworkConfigurations.loadSystemNameservers( defaultServers );
+              }
+            },
+            dirtyPublicAddresses,
+            invalidStateRoutes,
+            documentCache
+        );
+        info.setVersion( BaseEncoding.base16( ).lowerCase( ).encode( Ints.toByteArray( sourceFingerprint ) ) );
+        lastBuild = new LastBuild( sourceFingerprint, now, info, invalidStateRoutes );
+      }
 
       if ( !invalidStateRoutes.isEmpty( ) ) {
         vpcRouteStateInvalidator.accept( invalidStateRoutes );
@@ -260,31 +297,29 @@ public class NetworkInfoBroadcaster {
     }
   }
 
-  @SuppressWarnings( "serial" )
+  /**
+   * Fingerprint from the caches incrementally maintained entity fingerprints
+   * and all other state used to build the network information.
+   */
   private static int fingerprint(
-      final NetworkInfoSource source,
+      final List<EntityCache<?,?>> caches,
       final List<com.eucalyptus.cluster.Cluster> clusters,
       final Set<String> dirtyPublicAddresses,
       final String networkConfiguration
   ) {
     final HashFunction hashFunction = goodFastHash( 32 );
     final Hasher hasher = hashFunction.newHasher( );
-    final Funnel<VersionedNetworkView> versionedItemFunnel = new Funnel<VersionedNetworkView>() {
-      @SuppressWarnings( "NullableProblems" )
-      @Override
-      public void funnel( final VersionedNetworkView o, final PrimitiveSink primitiveSink ) {
-        primitiveSink.putString( o.getId( ), StandardCharsets.UTF_8 );
-        primitiveSink.putChar( '=' );
-        primitiveSink.putInt( o.getVersion( ) );
-      }
-    };
-    for ( final Map.Entry<String,Iterable<? extends VersionedNetworkView>> entry : source.getView( ).entrySet( ) ) {
-      hasher.putString( entry.getKey( ), StandardCharsets.UTF_8 );
-      for ( final VersionedNetworkView item : entry.getValue( ) ) {
-        hasher.putObject( item, versionedItemFunnel );
-      }
+    for ( final EntityCache<?,?> cache : caches ) {
+      hasher.putInt( cache.getFingerprint( ) );
+    }
+    for ( final com.eucalyptus.cluster.Cluster cluster : Ordering.<com.eucalyptus.cluster.Cluster>natural( ).sortedCopy( clusters ) ) {
+      hasher.putString( cluster.getName( ), StandardCharsets.UTF_8 );
+      hasher.putChar( '@' );
+      hasher.putString( Strings.nullToEmpty( cluster.getHostName( ) ), StandardCharsets.UTF_8 );
+      hasher.putChar( '=' );
+      hasher.putString( Joiner.on( ',' ).join( Sets.newTreeSet( cluster.getNodeMap( ).keySet( ) ) ), StandardCharsets.UTF_8 );
+      hasher.putChar( ';' );
     }
-    hasher.putString( Joiner.on( ',' ).join( Sets.newTreeSet( Iterables.transform( clusters, HasName.GET_NAME ) ) ), StandardCharsets.UTF_8 );
     hasher.putString( Joiner.on( ',' ).join( Sets.newTreeSet( dirtyPublicAddresses ) ), StandardCharsets.UTF_8 );
     hasher.putInt( networkConfiguration.hashCode( ) );
     return hasher.hash( ).asInt( );
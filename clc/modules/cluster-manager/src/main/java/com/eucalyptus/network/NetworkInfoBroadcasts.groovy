@@ -119,7 +119,9 @@ class NetworkInfoBroadcasts {
                                                 final Supplier<String> clcHostSupplier,
                                                 final Function<List<String>,List<String>> systemNameserverLookup,
                                                 final Set<String> dirtyPublicAddresses,
-                                                final Set<RouteKey> invalidStateRoutes /*out*/ ) {
+                                                final Set<RouteKey> invalidStateRoutes /*out*/,
+                                                final NetworkInfoDocumentCache documentCache = new NetworkInfoDocumentCache( ) ) {
+    documentCache.begin( )
     boolean vpcmido = 'VPCMIDO' == configuration.orNull()?.mode
     boolean managed = ( ( 'MANAGED' == configuration.orNull()?.mode ) || ( 'MANAGED-NOVLAN' == configuration.orNull()?.mode ) )
     Iterable<Cluster> clusters = vpcmido ?
@@ -250,62 +252,91 @@ class NetworkInfoBroadcasts {
     }).asMap( )
     Predicate<RouteNetworkView> activeRoutePredicate =
         activeRoutePredicate( internetGateways, natGateways, instances, networkInterfaces, invalidStateRoutes )
+    ListMultimap<String,SubnetNetworkView> vpcIdToSubnets = indexByVpcId( subnets )
+    ListMultimap<String,NetworkAclNetworkView> vpcIdToNetworkAcls = indexByVpcId( networkAcls )
+    ListMultimap<String,RouteTableNetworkView> vpcIdToRouteTables = indexByVpcId( routeTables )
+    ListMultimap<String,NatGatewayNetworkView> vpcIdToNatGateways = indexByVpcId( natGateways )
+    Map<String,String> subnetIdToRouteTableId = Maps.newHashMapWithExpectedSize( 500 )
+    Map<String,String> vpcIdToMainRouteTableId = Maps.newHashMapWithExpectedSize( 500 )
+    routeTables.each{ RouteTableNetworkView routeTable ->
+      routeTable.subnetIds.each{ String subnetId -> subnetIdToRouteTableId.putIfAbsent( subnetId, routeTable.id ) }
+      if ( routeTable.main ) vpcIdToMainRouteTableId.putIfAbsent( routeTable.vpcId, routeTable.id )
+    }
     info.vpcs.addAll( vpcs.findAll{ VpcNetworkView vpc -> activeVpcs.contains(vpc.id) }.collect{ Object vpcViewObj ->
       final VpcNetworkView vpc = vpcViewObj as VpcNetworkView
-      new NIVpc(
-          vpc.id,
-          vpc.ownerAccountNumber,
-          vpc.cidr,
-          vpc.dhcpOptionSetId,
-          subnets.findAll{ SubnetNetworkView subnet -> subnet.vpcId == vpc.id }.collect{ Object subnetViewObj ->
-            SubnetNetworkView subnet = subnetViewObj as SubnetNetworkView
-            new NIVpcSubnet(
-                name: subnet.id,
-                ownerId: subnet.ownerAccountNumber,
-                cidr: subnet.cidr,
-                cluster: subnet.availabilityZone,
-                networkAcl: subnet.networkAcl,
-                routeTable:
-                    tryFind( routeTables, { RouteTableNetworkView routeTable -> routeTable.subnetIds.contains( subnet.id ) } as Predicate<RouteTableNetworkView>).or(
-                        Iterables.find( routeTables, { RouteTableNetworkView routeTable -> routeTable.main && routeTable.vpcId == vpc.id } as Predicate<RouteTableNetworkView> ) ).id
-            )
-          },
-          networkAcls.findAll{ NetworkAclNetworkView networkAcl -> networkAcl.vpcId == vpc.id }.collect { Object networkAclObj ->
-            NetworkAclNetworkView networkAcl = networkAclObj as NetworkAclNetworkView
-            new NINetworkAcl(
-                name: networkAcl.id,
-                ownerId: networkAcl.ownerAccountNumber,
-                ingressEntries: Lists.transform( networkAcl.ingressRules, TypeMappers.lookup( NetworkAclEntryNetworkView, NINetworkAclEntry ) ) as List<NINetworkAclEntry>,
-                egressEntries: Lists.transform( networkAcl.egressRules, TypeMappers.lookup( NetworkAclEntryNetworkView, NINetworkAclEntry ) ) as List<NINetworkAclEntry>
-            )
-          },
-          routeTables.findAll{ RouteTableNetworkView routeTable -> routeTable.vpcId == vpc.id }.collect { Object routeTableObj ->
-            RouteTableNetworkView routeTable = routeTableObj as RouteTableNetworkView
-            new NIRouteTable(
-                name: routeTable.id,
-                ownerId: routeTable.ownerAccountNumber,
-                routes: Lists.newArrayList( Iterables.transform( Iterables.filter( routeTable.routes, activeRoutePredicate ), TypeMappers.lookup( RouteNetworkView, NIRoute ) ) ) as List<NIRoute>
-            )
-          },
-          natGateways.findAll{ NatGatewayNetworkView natGateway -> natGateway.vpcId == vpc.id && natGateway.state == NatGateway.State.available }.collect{ Object natGatewayObj ->
-            NatGatewayNetworkView natGateway = natGatewayObj as NatGatewayNetworkView
-            new NINatGateway(
-                name: natGateway.id,
-                ownerId: natGateway.ownerAccountNumber,
-                vpc: natGateway.vpcId,
-                subnet: natGateway.subnetId,
-                macAddress: Strings.emptyToNull( natGateway.macAddress ),
-                publicIp: VmNetworkConfig.DEFAULT_IP==natGateway.publicIp||dirtyPublicAddresses.contains(natGateway.publicIp) ? null : natGateway.publicIp,
-                privateIp: natGateway.privateIp,
-            )
-          },
-          vpcIdToInternetGatewayIds.get( vpc.id ) as List<String>?:[] as List<String>
-      )
+      final List<SubnetNetworkView> vpcSubnets = ImmutableList.copyOf( vpcIdToSubnets.get( vpc.id ) )
+      final List<String> vpcSubnetRouteTableIds = vpcSubnets.collect{ SubnetNetworkView subnet ->
+        String routeTableId = subnetIdToRouteTableId.get( subnet.id ) ?: vpcIdToMainRouteTableId.get( vpc.id )
+        if ( routeTableId == null ) throw new NoSuchElementException( "Main route table not found for ${vpc.id}" )
+        routeTableId
+      }
+      final List<NetworkAclNetworkView> vpcNetworkAcls = ImmutableList.copyOf( vpcIdToNetworkAcls.get( vpc.id ) )
+      final List<RouteTableNetworkView> vpcRouteTables = ImmutableList.copyOf( vpcIdToRouteTables.get( vpc.id ) )
+      final List<List<RouteNetworkView>> vpcActiveRoutes = vpcRouteTables.collect{ RouteTableNetworkView routeTable ->
+        Lists.newArrayList( Iterables.filter( routeTable.routes, activeRoutePredicate ) )
+      }
+      final List<NatGatewayNetworkView> vpcNatGateways = vpcIdToNatGateways.get( vpc.id ).findAll{ NatGatewayNetworkView natGateway ->
+        natGateway.state == NatGateway.State.available
+      }
+      final List<String> vpcNatGatewayPublicIps = vpcNatGateways.collect{ NatGatewayNetworkView natGateway ->
+        VmNetworkConfig.DEFAULT_IP==natGateway.publicIp||dirtyPublicAddresses.contains(natGateway.publicIp) ? null : natGateway.publicIp
+      }
+      final List<String> vpcInternetGatewayIds = vpcIdToInternetGatewayIds.get( vpc.id ) as List<String>?:[] as List<String>
+      documentCache.document( "vpc:${vpc.id}" as String, [
+          vpc, vpcSubnets, vpcSubnetRouteTableIds, vpcNetworkAcls, vpcRouteTables,
+          vpcActiveRoutes, vpcNatGateways, vpcNatGatewayPublicIps, vpcInternetGatewayIds
+      ] ){
+        new NIVpc(
+            vpc.id,
+            vpc.ownerAccountNumber,
+            vpc.cidr,
+            vpc.dhcpOptionSetId,
+            [ vpcSubnets, vpcSubnetRouteTableIds ].transpose( ).collect{ List<Object> subnetAndRouteTable ->
+              SubnetNetworkView subnet = subnetAndRouteTable[0] as SubnetNetworkView
+              new NIVpcSubnet(
+                  name: subnet.id,
+                  ownerId: subnet.ownerAccountNumber,
+                  cidr: subnet.cidr,
+                  cluster: subnet.availabilityZone,
+                  networkAcl: subnet.networkAcl,
+                  routeTable: subnetAndRouteTable[1] as String
+              )
+            },
+            vpcNetworkAcls.collect { NetworkAclNetworkView networkAcl ->
+              new NINetworkAcl(
+                  name: networkAcl.id,
+                  ownerId: networkAcl.ownerAccountNumber,
+                  ingressEntries: Lists.transform( networkAcl.ingressRules, TypeMappers.lookup( NetworkAclEntryNetworkView, NINetworkAclEntry ) ) as List<NINetworkAclEntry>,
+                  egressEntries: Lists.transform( networkAcl.egressRules, TypeMappers.lookup( NetworkAclEntryNetworkView, NINetworkAclEntry ) ) as List<NINetworkAclEntry>
+              )
+            },
+            [ vpcRouteTables, vpcActiveRoutes ].transpose( ).collect { List<Object> routeTableAndRoutes ->
+              RouteTableNetworkView routeTable = routeTableAndRoutes[0] as RouteTableNetworkView
+              new NIRouteTable(
+                  name: routeTable.id,
+                  ownerId: routeTable.ownerAccountNumber,
+                  routes: Lists.newArrayList( Iterables.transform( routeTableAndRoutes[1] as List<RouteNetworkView>, TypeMappers.lookup( RouteNetworkView, NIRoute ) ) ) as List<NIRoute>
+              )
+            },
+            [ vpcNatGateways, vpcNatGatewayPublicIps ].transpose( ).collect{ List<Object> natGatewayAndPublicIp ->
+              NatGatewayNetworkView natGateway = natGatewayAndPublicIp[0] as NatGatewayNetworkView
+              new NINatGateway(
+                  name: natGateway.id,
+                  ownerId: natGateway.ownerAccountNumber,
+                  vpc: natGateway.vpcId,
+                  subnet: natGateway.subnetId,
+                  macAddress: Strings.emptyToNull( natGateway.macAddress ),
+                  publicIp: natGatewayAndPublicIp[1] as String,
+                  privateIp: natGateway.privateIp,
+              )
+            },
+            vpcInternetGatewayIds
+        )
+      }
     } )
     vpcs.findAll{ VpcNetworkView vpc -> !activeVpcs.contains(vpc.id) }.each { Object vpcViewObj -> // processing for any inactive vpcs
       final VpcNetworkView vpc = vpcViewObj as VpcNetworkView
-      routeTables.findAll{ RouteTableNetworkView routeTable -> routeTable.vpcId == vpc.id }.each { Object routeTableObj ->
-        RouteTableNetworkView routeTable = routeTableObj as RouteTableNetworkView
+      vpcIdToRouteTables.get( vpc.id ).each { RouteTableNetworkView routeTable ->
         CollectionUtils.each( routeTable.routes, activeRoutePredicate )
       }
     }
@@ -405,7 +436,10 @@ class NetworkInfoBroadcasts {
     }
     info.securityGroups.addAll( groups.findAll{  NetworkGroupNetworkView group -> activeSecurityGroups.contains( group.id ) }.collect{ Object groupObj ->
       NetworkGroupNetworkView group = (NetworkGroupNetworkView) groupObj
-      new NISecurityGroup(
+      final Set<String> activePermissionGroupIds = Sets.newTreeSet( Iterables.concat( group.ingressPermissions, group.egressPermissions )
+          .findAll{ IPPermissionNetworkView ipPermission -> ipPermission.groupId && activeSecurityGroups.contains( ipPermission.groupId ) }
+          .collect{ Object ipPermissionObj -> ((IPPermissionNetworkView) ipPermissionObj).groupId } )
+      documentCache.document( "sg:${group.id}" as String, [ group, activePermissionGroupIds ] ){ new NISecurityGroup(
           name: group.id,
           ownerId: group.ownerAccountNumber,
           ingressRules: group.ingressPermissions
@@ -440,16 +474,25 @@ class NetworkInfoBroadcasts {
                 ipPermission.cidr
             )
           } as List<NISecurityGroupIpPermission>
-      )
+      ) }
     } )
 
     if ( logger.isTraceEnabled( ) ) {
       logger.trace( "Constructed network information for ${Iterables.size( instances )} instance(s), ${Iterables.size( groups )} security group(s)" )
     }
 
+    documentCache.completed( )
+
     info
   }
 
+  private static <V> ListMultimap<String,V> indexByVpcId( final Iterable<V> views ) {
+    (ListMultimap<String,V>) views.inject( ArrayListMultimap.<String,V>create( ) ){ ListMultimap<String,V> map, V view ->
+      map.put( view.vpcId as String, view )
+      map
+    }
+  }
+
   private static Predicate<RouteNetworkView> activeRoutePredicate(
       final Iterable<InternetGatewayNetworkView> internetGateways,
       final Iterable<NatGatewayNetworkView> natGateways,
@@ -673,6 +716,61 @@ class NetworkInfoBroadcasts {
     { Cluster cluster -> partitionNames.add( cluster.partition )  } as Predicate<Cluster>
   }
 
+  /**
+   * Cache of network information documents keyed by the view state they were built from.
+   *
+   * Documents not used in a build are evicted when the build completes. Reused
+   * documents are the same instances as in the previous build so comparison
+   * with previously broadcast information is cheap.
+   *
+   * Not thread safe, builds must not run concurrently.
+   */
+  @PackageScope
+  static class NetworkInfoDocumentCache {
+    private Map<String,List<Object>> documents = Maps.newHashMap( )
+    private Map<String,List<Object>> nextDocuments = Maps.newHashMap( )
+    private int reused
+    private int built
+
+    void begin( ) {
+      nextDocuments.clear( )
+      reused = 0
+      built = 0
+    }
+
+    def <T> T document( final String id, final List<Object> inputs, final Closure<T> builder ) {
+      final List<Object> cached = documents.get( id )
+      final T document
+      if ( cached != null && cached[0] == inputs ) {
+        document = (T) cached[1]
+        reused++
+      } else {
+        document = builder.call( )
+        built++
+      }
+      nextDocuments.put( id, [ inputs, document ] as List<Object> )
+      document
+    }
+
+    void completed( ) {
+      final Map<String,List<Object>> previousDocuments = documents
+      documents = nextDocuments
+      nextDocuments = previousDocuments
+      nextDocuments.clear( )
+      if ( logger.isTraceEnabled( ) ) {
+        logger.trace( "Network information documents reused ${reused}, built ${built}" )
+      }
+    }
+
+    int getReused( ) {
+      reused
+    }
+
+    int getBuilt( ) {
+      built
+    }
+  }
+
   interface VersionedNetworkView {
     String getId( )
     int getVersion( )
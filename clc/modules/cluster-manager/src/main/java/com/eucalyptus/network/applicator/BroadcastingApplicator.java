@@ -22,45 +22,80 @@ package com.eucalyptus.network.applicator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cluster.NetworkInfo;
 import com.eucalyptus.cluster.callback.BroadcastNetworkInfoCallback;
-import com.eucalyptus.crypto.util.B64;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
+import com.eucalyptus.network.NetworkGroups;
+import com.eucalyptus.network.NetworkInfoBroadcaster;
+import com.eucalyptus.util.Callback;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.eucalyptus.util.async.UnconditionalCallback;
-import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 import edu.ucsb.eucalyptus.msgs.BroadcastNetworkInfoResponseType;
 
 /**
+ * Broadcasts network information to clusters.
  *
+ * When delta broadcasts are enabled a partition that acknowledged a previous
+ * version is sent only the changes from that version. A cluster acknowledges a
+ * version once it has been applied to the clusters copy of the network
+ * information and rejects changes against any other base version. A full
+ * broadcast is sent after any failure and at least every
+ * MAX_FULL_BROADCAST_INTERVAL seconds so a cluster that lost or diverged from
+ * its state recovers.
  */
 public class BroadcastingApplicator implements Applicator {
 
   private static final Logger logger = Logger.getLogger( BroadcastingApplicator.class );
 
   private static final ConcurrentMap<String,Long> activeBroadcastMap = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String,NetworkInfo> acknowledgedInfoMap = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<String,Long> fullBroadcastMap = Maps.newConcurrentMap( );
 
   @Override
   public void apply( final ApplicatorContext context, final ApplicatorChain chain ) throws ApplicatorException {
     final NetworkInfo netInfo = context.getNetworkInfo( );
-    final String networkInfo = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context );
-    final String encodedNetworkInfo =
-        new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 );
-
-    final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback(
-        encodedNetworkInfo,
-        netInfo.getVersion( ),
-        netInfo.getAppliedVersion( )
-    );
+    final Map<String,BroadcastNetworkInfoCallback> callbacks = Maps.newHashMap( );
     for ( final com.eucalyptus.cluster.Cluster cluster : context.getClusters( ) ) {
       final Long broadcastTime = System.currentTimeMillis( );
       if ( null == activeBroadcastMap.putIfAbsent( cluster.getPartition( ), broadcastTime ) ) {
         try {
-          AsyncRequests.newRequest( callback.newInstance( ) ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
+          final NetworkInfo base = getDeltaBase( cluster.getPartition( ), broadcastTime );
+          final String baseVersion = base == null ? null : base.getVersion( );
+          BroadcastNetworkInfoCallback callback = callbacks.get( baseVersion );
+          if ( callback == null ) {
+            callback = new BroadcastNetworkInfoCallback(
+                base == null ?
+                    MarshallingApplicatorHelper.getEncodedNetworkInfo( context ) :
+                    MarshallingApplicatorHelper.getEncodedNetworkInfoDelta( context, base ),
+                netInfo.getVersion( ),
+                netInfo.getAppliedVersion( )
+            );
+            callbacks.put( baseVersion, callback );
+          }
+          AsyncRequests.newRequest( callback.newInstance( ) ).then( new Callback.Success<BroadcastNetworkInfoResponseType>() {
+            @Override
+            public void fire( final BroadcastNetworkInfoResponseType response ) {
+              acknowledgedInfoMap.put( cluster.getPartition( ), netInfo );
+              if ( base == null ) {
+                fullBroadcastMap.put( cluster.getPartition( ), broadcastTime );
+              }
+            }
+          } ).then( new Callback.Failure<BroadcastNetworkInfoResponseType>() {
+            @Override
+            public void fireException( final Throwable t ) {
+              // next broadcast will be in full
+              acknowledgedInfoMap.remove( cluster.getPartition( ) );
+              if ( base != null ) { // changes rejected, send in full without waiting for the periodic broadcast
+                activeBroadcastMap.remove( cluster.getPartition( ), broadcastTime );
+                NetworkInfoBroadcaster.requestNetworkInfoBroadcast( );
+              }
+            }
+          } ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
             @Override
             public void fire( ) {
               activeBroadcastMap.remove( cluster.getPartition( ), broadcastTime );
@@ -68,6 +103,7 @@ public class BroadcastingApplicator implements Applicator {
           } ).dispatch( cluster.getConfiguration( ) );
         } catch ( Exception e ) {
           activeBroadcastMap.remove( cluster.getPartition( ), broadcastTime );
+          acknowledgedInfoMap.remove( cluster.getPartition( ) );
           logger.error( "Error broadcasting network information to cluster (" + cluster.getPartition() + ") ("+cluster.getName()+")", e );
         }
       } else {
@@ -78,6 +114,24 @@ public class BroadcastingApplicator implements Applicator {
     chain.applyNext( context );
   }
 
+  /**
+   * Get the acknowledged network information to broadcast changes against.
+   *
+   * @return The base network information or null if a full broadcast is required
+   */
+  @Nullable
+  private static NetworkInfo getDeltaBase( final String partition, final long broadcastTime ) {
+    NetworkInfo base = null;
+    if ( NetworkGroups.BROADCAST_DELTAS ) {
+      final Long lastFullBroadcast = fullBroadcastMap.get( partition );
+      if ( lastFullBroadcast != null &&
+          lastFullBroadcast + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_FULL_BROADCAST_INTERVAL ) > broadcastTime ) {
+        base = acknowledgedInfoMap.get( partition );
+      }
+    }
+    return base;
+  }
+
   public static class BroadcastingApplicatorEventListener implements EventListener<ClockTick> {
     private final int activeBroadcastTimeoutMins = 3;
 
@@ -91,6 +145,7 @@ public class BroadcastingApplicator implements Applicator {
       for ( final Map.Entry<String,Long> entry : BroadcastingApplicator.activeBroadcastMap.entrySet( ) ) {
         if ( entry.getValue() + TimeUnit.MINUTES.toMillis( activeBroadcastTimeoutMins ) < System.currentTimeMillis( ) &&
             BroadcastingApplicator.activeBroadcastMap.remove( entry.getKey( ), entry.getValue( ) ) ) {
+          BroadcastingApplicator.acknowledgedInfoMap.remove( entry.getKey( ) );
           logger.warn( "Timed out active network information broadcast for partition " + entry.getKey( ) );
         }
       }
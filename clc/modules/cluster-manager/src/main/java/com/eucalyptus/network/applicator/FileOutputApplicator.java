@@ -25,7 +25,6 @@ import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import org.apache.log4j.Logger;
 import com.eucalyptus.system.BaseDirectory;
-import com.google.common.base.Charsets;
 
 /**
  *
@@ -36,7 +35,7 @@ public class FileOutputApplicator implements Applicator {
 
   @Override
   public void apply( final ApplicatorContext context, final ApplicatorChain chain ) throws ApplicatorException {
-    final String networkInfo = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context );
+    final byte[] networkInfo = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context );
 
     final File newView = BaseDirectory.RUN.getChildFile( "global_network_info.xml.temp" );
     if ( newView.exists( ) && !newView.delete( ) ) {
@@ -44,7 +43,7 @@ public class FileOutputApplicator implements Applicator {
     }
 
     try {
-      com.google.common.io.Files.write( networkInfo, newView, Charsets.UTF_8 );
+      com.google.common.io.Files.write( networkInfo, newView );
       Files.move(
           newView.toPath( ),
           BaseDirectory.RUN.getChildFile( "global_network_info.xml" ).toPath( ), StandardCopyOption.REPLACE_EXISTING
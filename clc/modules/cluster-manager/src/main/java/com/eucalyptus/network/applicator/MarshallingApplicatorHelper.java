@@ -19,37 +19,70 @@
  ************************************************************************/
 package com.eucalyptus.network.applicator;
 
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cluster.NetworkInfo;
+import com.eucalyptus.cluster.NetworkInfoDelta;
 import com.eucalyptus.util.TypedKey;
+import com.google.common.collect.Maps;
 
 /**
+ * Serialization of network information shared by applicators.
  *
+ * Network information is marshalled at most once per context, the resulting
+ * UTF-8 bytes and base64 encoded form are shared by all applicators and
+ * clusters. The encoded form is marshalled through a base64 encoding stream
+ * so no intermediate copies of the document are created. The JAXB context is
+ * created once and marshallers and their output buffers are pooled across
+ * broadcasts. The pool is bounded and a buffer is resized to the last
+ * document it held, buffers for documents over a limit are not retained.
  */
 class MarshallingApplicatorHelper {
 
   private static final Logger logger = Logger.getLogger( MarshallingApplicatorHelper.class );
 
-  private static final TypedKey<String> MARSHALLED_INFO_KEY = TypedKey.create( "MarshalledNetworkInfo" );
+  private static final TypedKey<byte[]> MARSHALLED_INFO_KEY = TypedKey.create( "MarshalledNetworkInfo" );
+  private static final TypedKey<String> ENCODED_INFO_KEY = TypedKey.create( "EncodedNetworkInfo" );
+  private static final TypedKey<Map<String,String>> ENCODED_DELTA_KEY = TypedKey.create( "EncodedNetworkInfoDeltas" );
+
+  private static final int MAX_POOLED_MARSHALLERS = 4;
+  private static final int INITIAL_BUFFER_SIZE = 8192;
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024 * 1024;
+
+  private static final AtomicReference<JAXBContext> jaxbContext = new AtomicReference<>( );
+  private static final BlockingQueue<PooledMarshaller> marshallerPool = new ArrayBlockingQueue<>( MAX_POOLED_MARSHALLERS );
 
   static void clearMarshalledNetworkInfoCache( final ApplicatorContext context ) {
     context.removeAttribute( MARSHALLED_INFO_KEY );
+    context.removeAttribute( ENCODED_INFO_KEY );
+    context.removeAttribute( ENCODED_DELTA_KEY );
   }
 
-  static String getMarshalledNetworkInfo( final ApplicatorContext context ) throws ApplicatorException {
-    String networkInfo = context.getAttribute( MARSHALLED_INFO_KEY );
+  /**
+   * Get the marshalled network information as UTF-8 bytes.
+   *
+   * The returned array is shared and must not be modified.
+   */
+  static byte[] getMarshalledNetworkInfo( final ApplicatorContext context ) throws ApplicatorException {
+    byte[] networkInfo = context.getAttribute( MARSHALLED_INFO_KEY );
     if ( networkInfo == null ) try {
       final NetworkInfo info = context.getNetworkInfo( );
-      final JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" );
-      final StringWriter writer = new StringWriter( 8192 );
-      jc.createMarshaller().marshal( info, writer );
-
-      networkInfo = writer.toString( );
+      final PooledMarshaller pooled = borrow( );
+      networkInfo = pooled.marshal( info );
+      release( pooled );
       if ( logger.isTraceEnabled( ) ) {
-        logger.trace( "Broadcasting network information:\n${networkInfo}" );
+        logger.trace( "Broadcasting network information:\n" + new String( networkInfo, StandardCharsets.UTF_8 ) );
       }
       context.setAttribute( MARSHALLED_INFO_KEY, networkInfo );
     } catch ( final JAXBException e ) {
@@ -58,4 +91,145 @@ class MarshallingApplicatorHelper {
     return networkInfo;
   }
 
+  /**
+   * Get the base64 encoded marshalled network information.
+   *
+   * Network information is only marshalled again if the UTF-8 bytes are not
+   * already available.
+   */
+  static String getEncodedNetworkInfo( final ApplicatorContext context ) throws ApplicatorException {
+    String encodedNetworkInfo = context.getAttribute( ENCODED_INFO_KEY );
+    if ( encodedNetworkInfo == null ) {
+      final byte[] networkInfo = context.getAttribute( MARSHALLED_INFO_KEY );
+      if ( networkInfo != null ) {
+        encodedNetworkInfo = Base64.getEncoder( ).encodeToString( networkInfo );
+      } else {
+        encodedNetworkInfo = marshalEncoded( context.getNetworkInfo( ), "network information" );
+      }
+      context.setAttribute( ENCODED_INFO_KEY, encodedNetworkInfo );
+    }
+    return encodedNetworkInfo;
+  }
+
+  /**
+   * Get the base64 encoded marshalled changes from the given base to the
+   * contexts network information.
+   */
+  static String getEncodedNetworkInfoDelta(
+      final ApplicatorContext context,
+      final NetworkInfo base
+  ) throws ApplicatorException {
+    Map<String,String> deltas = context.getAttribute( ENCODED_DELTA_KEY );
+    if ( deltas == null ) {
+      deltas = Maps.newHashMap( );
+      context.setAttribute( ENCODED_DELTA_KEY, deltas );
+    }
+    String encodedNetworkInfoDelta = deltas.get( base.getVersion( ) );
+    if ( encodedNetworkInfoDelta == null ) {
+      final NetworkInfoDelta delta = NetworkInfoDeltas.delta( base, context.getNetworkInfo( ) );
+      encodedNetworkInfoDelta = marshalEncoded( delta, "network information changes" );
+      deltas.put( base.getVersion( ), encodedNetworkInfoDelta );
+    }
+    return encodedNetworkInfoDelta;
+  }
+
+  private static String marshalEncoded( final Object info, final String description ) throws ApplicatorException {
+    final String encoded;
+    try {
+      final PooledMarshaller pooled = borrow( );
+      encoded = pooled.marshalEncoded( info );
+      release( pooled );
+    } catch ( final IOException | JAXBException e ) {
+      throw new ApplicatorException( "Error marshalling " + description, e );
+    }
+    if ( logger.isTraceEnabled( ) ) {
+      logger.trace( "Broadcasting " + description + ":\n" +
+          new String( Base64.getDecoder( ).decode( encoded ), StandardCharsets.UTF_8 ) );
+    }
+    return encoded;
+  }
+
+  private static PooledMarshaller borrow( ) throws JAXBException {
+    PooledMarshaller pooled = marshallerPool.poll( );
+    if ( pooled == null ) {
+      pooled = new PooledMarshaller( getJaxbContext( ).createMarshaller( ) );
+    }
+    return pooled;
+  }
+
+  private static void release( final PooledMarshaller pooled ) {
+    marshallerPool.offer( pooled ); // not returned to the pool on failure, dropped if the pool is full
+  }
+
+  private static JAXBContext getJaxbContext( ) throws JAXBException {
+    JAXBContext context = jaxbContext.get( );
+    if ( context == null ) {
+      context = JAXBContext.newInstance( "com.eucalyptus.cluster" );
+      if ( !jaxbContext.compareAndSet( null, context ) ) {
+        context = jaxbContext.get( );
+      }
+    }
+    return context;
+  }
+
+  /**
+   * Marshaller with an output buffer that retains capacity for the last
+   * document between uses, up to MAX_RETAINED_BUFFER_SIZE.
+   */
+  private static final class PooledMarshaller {
+    private final Marshaller marshaller;
+    private MarshallingBuffer buffer = new MarshallingBuffer( INITIAL_BUFFER_SIZE );
+
+    private PooledMarshaller( final Marshaller marshaller ) {
+      this.marshaller = marshaller;
+    }
+
+    private byte[] marshal( final Object info ) throws JAXBException {
+      buffer.reset( );
+      marshaller.marshal( info, buffer );
+      final byte[] data = buffer.toByteArray( );
+      retain( data.length );
+      return data;
+    }
+
+    private String marshalEncoded( final Object info ) throws IOException, JAXBException {
+      buffer.reset( );
+      try ( final OutputStream out = Base64.getEncoder( ).wrap( buffer ) ) {
+        marshaller.marshal( info, out );
+      } // close writes any final encoded bytes, closing the buffer has no effect
+      final String encoded = buffer.toAsciiString( );
+      retain( encoded.length( ) );
+      return encoded;
+    }
+
+    /**
+     * Size the buffer for the last document. Encoded and unencoded documents
+     * share the buffer so it is only reduced when much larger than required.
+     */
+    private void retain( final int size ) {
+      if ( size > MAX_RETAINED_BUFFER_SIZE ) {
+        buffer = new MarshallingBuffer( INITIAL_BUFFER_SIZE );
+      } else if ( buffer.capacity( ) > 4L * Math.max( size, INITIAL_BUFFER_SIZE ) ) {
+        buffer = new MarshallingBuffer( Math.max( size, INITIAL_BUFFER_SIZE ) );
+      }
+    }
+  }
+
+  /**
+   * Output buffer that allows access to its capacity and converts its ASCII
+   * content without an intermediate copy.
+   */
+  private static final class MarshallingBuffer extends ByteArrayOutputStream {
+    private MarshallingBuffer( final int size ) {
+      super( size );
+    }
+
+    private int capacity( ) {
+      return buf.length;
+    }
+
+    private String toAsciiString( ) {
+      return new String( buf, 0, count, StandardCharsets.US_ASCII );
+    }
+  }
 }
@@ -0,0 +1,85 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network.applicator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import com.eucalyptus.cluster.NIDhcpOptionSet;
+import com.eucalyptus.cluster.NIInstance;
+import com.eucalyptus.cluster.NIInternetGateway;
+import com.eucalyptus.cluster.NISecurityGroup;
+import com.eucalyptus.cluster.NIVpc;
+import com.eucalyptus.cluster.NetworkInfo;
+import com.eucalyptus.cluster.NetworkInfoDelta;
+import com.google.common.collect.Maps;
+
+/**
+ * Computes the changes between two versions of network information.
+ *
+ * Top level items are compared by name and value, an item that differs in any
+ * way from the base version (including nested subnets, rules, etc) is sent in
+ * full.
+ */
+class NetworkInfoDeltas {
+
+  static NetworkInfoDelta delta( final NetworkInfo base, final NetworkInfo info ) {
+    final NetworkInfoDelta delta = new NetworkInfoDelta( );
+    delta.setVersion( info.getVersion( ) );
+    delta.setBaseVersion( base.getVersion( ) );
+    delta.setAppliedVersion( info.getAppliedVersion( ) );
+    delta.setAppliedTime( info.getAppliedTime( ) );
+    if ( !Objects.equals( base.getConfiguration( ), info.getConfiguration( ) ) ) {
+      delta.setConfiguration( info.getConfiguration( ) );
+    }
+    diff( base.getVpcs( ), info.getVpcs( ), NIVpc::getName,
+        delta.getVpcs( ), delta.getRemoved( ).getVpcs( ) );
+    diff( base.getInstances( ), info.getInstances( ), NIInstance::getName,
+        delta.getInstances( ), delta.getRemoved( ).getInstances( ) );
+    diff( base.getDhcpOptionSets( ), info.getDhcpOptionSets( ), NIDhcpOptionSet::getName,
+        delta.getDhcpOptionSets( ), delta.getRemoved( ).getDhcpOptionSets( ) );
+    diff( base.getInternetGateways( ), info.getInternetGateways( ), NIInternetGateway::getName,
+        delta.getInternetGateways( ), delta.getRemoved( ).getInternetGateways( ) );
+    diff( base.getSecurityGroups( ), info.getSecurityGroups( ), NISecurityGroup::getName,
+        delta.getSecurityGroups( ), delta.getRemoved( ).getSecurityGroups( ) );
+    return delta;
+  }
+
+  private static <T> void diff(
+      final List<T> baseItems,
+      final List<T> items,
+      final Function<T,String> nameFunction,
+      final List<T> updated,
+      final List<String> removed
+  ) {
+    final Map<String,T> baseItemsByName = Maps.newLinkedHashMap( );
+    for ( final T baseItem : baseItems ) {
+      baseItemsByName.put( nameFunction.apply( baseItem ), baseItem );
+    }
+    for ( final T item : items ) {
+      final T baseItem = baseItemsByName.remove( nameFunction.apply( item ) );
+      if ( !item.equals( baseItem ) ) {
+        updated.add( item );
+      }
+    }
+    removed.addAll( baseItemsByName.keySet( ) );
+  }
+}
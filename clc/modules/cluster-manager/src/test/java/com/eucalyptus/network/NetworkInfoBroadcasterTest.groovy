@@ -868,6 +868,85 @@ class NetworkInfoBroadcasterTest {
     ), info )
   }
 
+  @Test
+  void testBroadcastVpcDocumentReuse( ) {
+    NetworkInfoBroadcasts.NetworkInfoDocumentCache documentCache = new NetworkInfoBroadcasts.NetworkInfoDocumentCache( )
+    Closure<NetworkInfo> build = { String routeCidr ->
+      NetworkInfoBroadcasts.buildNetworkConfiguration(
+          Optional.of( new NetworkConfiguration(
+              mode: 'VPCMIDO',
+              mido: new Midonet(
+                  eucanetdHost: 'a-35.qa1.eucalyptus-systems.com',
+                  gatewayHost: 'a-35.qa1.eucalyptus-systems.com',
+                  gatewayIP: '10.116.133.77',
+                  gatewayInterface: 'em1.116',
+                  publicNetworkCidr: '10.116.0.0/17',
+                  publicGatewayIP: '10.116.133.67'
+              ),
+              publicIps: [ '2.0.0.0-2.0.0.255' ],
+          ) ),
+          new NetworkInfoBroadcasts.NetworkInfoSource( ) {
+            @Override Iterable<NetworkInfoBroadcasts.VmInstanceNetworkView> getInstances() {
+              [ instance( 'i-00000001', 'cluster1', 'node1', '000000000002', '00:00:00:00:00:00', '2.0.0.0', '10.0.0.0', 'vpc-00000001', 'subnet-00000001' ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.NetworkGroupNetworkView> getSecurityGroups() {
+              [ group( 'sg-00000001', '000000000002', 'vpc-00000001', [], [] ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.VpcNetworkView> getVpcs() {
+              [ vpc( 'vpc-00000001', '000000000002' ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.SubnetNetworkView> getSubnets() {
+              [ subnet( 'subnet-00000001', '000000000002', 'cluster1', 'vpc-00000001' ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.DhcpOptionSetNetworkView> getDhcpOptionSets() {
+              []
+            }
+            @Override Iterable<NetworkInfoBroadcasts.NetworkAclNetworkView> getNetworkAcls() {
+              []
+            }
+            @Override Iterable<NetworkInfoBroadcasts.RouteTableNetworkView> getRouteTables() {
+              [ routeTable( 'rtb-00000001', '000000000002', 'vpc-00000001', true, [ 'subnet-00000001' ], [
+                  route( 'rtb-00000001', routeCidr, 'igw-00000001' )
+              ] ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.InternetGatewayNetworkView> getInternetGateways() {
+              [ internetGateway( 'igw-00000001', '000000000002', 'vpc-00000001' ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.NetworkInterfaceNetworkView> getNetworkInterfaces() {
+              [ networkInterface( 'eni-00000001', '000000000002', 'i-00000001', 'eni-attach-00000001', '00:00:00:00:00:00', '2.0.0.0', '10.0.0.0', 'vpc-00000001', 'subnet-00000001' ) ]
+            }
+            @Override Iterable<NetworkInfoBroadcasts.NatGatewayNetworkView> getNatGateways() {
+              []
+            }
+            @Override Map<String,Iterable<? extends NetworkInfoBroadcasts.VmInstanceNetworkView>> getView() {
+              [:]
+            }
+          },
+          { [ cluster('cluster1', '6.6.6.6', [ 'node1' ]) ] } as Supplier<List<Cluster>>,
+          { [ ] } as Supplier<List<Cluster>>,
+          { '1.1.1.1' } as Supplier<String>,
+          { [ '127.0.0.1' ] } as Function<List<String>, List<String>>,
+          [] as Set<String>,
+          [] as Set<RouteKey>,
+          documentCache
+      )
+    }
+
+    NetworkInfo info1 = build( '192.168.0.0/16' )
+    assertEquals( 'built documents', 2, documentCache.built )
+    NetworkInfo info2 = build( '192.168.0.0/16' )
+    assertEquals( 'reused documents', 2, documentCache.reused )
+    assertSame( 'reused vpc', info1.vpcs[0], info2.vpcs[0] )
+    assertSame( 'reused security group', info1.securityGroups[0], info2.securityGroups[0] )
+    assertEquals( 'network information', info1, info2 )
+
+    NetworkInfo info3 = build( '192.168.0.0/24' )
+    assertEquals( 'reused documents after route change', 1, documentCache.reused )
+    assertNotSame( 'rebuilt vpc', info2.vpcs[0], info3.vpcs[0] )
+    assertEquals( 'rebuilt route', '192.168.0.0/24', info3.vpcs[0].routeTables[0].routes[0].destinationCidr )
+    assertSame( 'reused security group after route change', info2.securityGroups[0], info3.securityGroups[0] )
+  }
+
   @Test
   void testBroadcastManaged( ) {
     NetworkInfo info = NetworkInfoBroadcasts.buildNetworkConfiguration(
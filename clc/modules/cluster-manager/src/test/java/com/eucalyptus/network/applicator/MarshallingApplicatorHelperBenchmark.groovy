@@ -0,0 +1,111 @@
+/*************************************************************************
+ * Copyright 2013-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network.applicator
+
+import com.eucalyptus.cluster.NIInstance
+import com.eucalyptus.cluster.NISecurityGroup
+import com.eucalyptus.cluster.NISecurityGroupIpPermission
+import com.eucalyptus.cluster.NetworkInfo
+import com.eucalyptus.crypto.util.B64
+import com.google.common.base.Charsets
+import org.junit.Ignore
+import org.junit.Test
+
+import javax.xml.bind.JAXBContext
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares per broadcast JAXB context creation and string marshalling with
+ * the shared serialization for a 10k instance network information document.
+ */
+@Ignore("Manual benchmark")
+class MarshallingApplicatorHelperBenchmark {
+
+  private static final int INSTANCES = 10000
+  private static final int SECURITY_GROUPS = 1000
+  private static final int ITERATIONS = 20
+  private static final int CLUSTERS = 4
+
+  private static NetworkInfo info( ) {
+    new NetworkInfo(
+        version: '00000001',
+        securityGroups: ( 1..SECURITY_GROUPS ).collect{ int group ->
+          new NISecurityGroup(
+              name: "sg-${group}" as String,
+              ownerId: '000000000001',
+              ingressRules: [
+                  new NISecurityGroupIpPermission( protocol: 6, fromPort: 22, toPort: 22, cidr: '0.0.0.0/0' ),
+                  new NISecurityGroupIpPermission( protocol: 6, fromPort: 80, toPort: 80, groupId: "sg-${group}" as String, groupOwnerId: '000000000001' )
+              ]
+          )
+        },
+        instances: ( 1..INSTANCES ).collect{ int instance ->
+          new NIInstance(
+              name: String.format( 'i-%08x', instance ),
+              ownerId: '000000000001',
+              macAddress: String.format( 'd0:0d:%02x:%02x:%02x:%02x', (instance>>24)&0xff, (instance>>16)&0xff, (instance>>8)&0xff, instance&0xff ),
+              publicIp: "10.111.${(instance>>8)&0xff}.${instance&0xff}" as String,
+              privateIp: "1.0.${(instance>>8)&0xff}.${instance&0xff}" as String,
+              securityGroups: [ "sg-${instance % SECURITY_GROUPS + 1}" as String ]
+          )
+        }
+    )
+  }
+
+  private static long time( Closure<?> closure ) {
+    closure.call( ) // warm up
+    long before = System.nanoTime( )
+    for ( int i=0; i<ITERATIONS; i++ ) {
+      closure.call( )
+    }
+    TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - before ) / ITERATIONS
+  }
+
+  @Test
+  void benchmarkNewContext( ) {
+    NetworkInfo info = info( )
+    long millis = time {
+      JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" )
+      StringWriter writer = new StringWriter( 8192 )
+      jc.createMarshaller( ).marshal( info, writer )
+      String networkInfo = writer.toString( )
+      byte[] file = networkInfo.getBytes( Charsets.UTF_8 )
+      for ( int i=0; i<CLUSTERS; i++ ) {
+        new String( B64.standard.enc( networkInfo.getBytes( Charsets.UTF_8 ) ), Charsets.UTF_8 )
+      }
+      file
+    }
+    println( "new context: ${millis}ms per broadcast" )
+  }
+
+  @Test
+  void benchmarkSharedSerialization( ) {
+    NetworkInfo info = info( )
+    long millis = time {
+      ApplicatorContext context = new ApplicatorContext( [ ], info )
+      byte[] file = MarshallingApplicatorHelper.getMarshalledNetworkInfo( context )
+      for ( int i=0; i<CLUSTERS; i++ ) {
+        MarshallingApplicatorHelper.getEncodedNetworkInfo( context )
+      }
+      file
+    }
+    println( "shared serialization: ${millis}ms per broadcast" )
+  }
+}
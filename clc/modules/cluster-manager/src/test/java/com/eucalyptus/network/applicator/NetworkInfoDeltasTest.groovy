@@ -0,0 +1,131 @@
+/*************************************************************************
+ * Copyright 2013-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network.applicator
+
+import com.eucalyptus.cluster.NIConfiguration
+import com.eucalyptus.cluster.NIInstance
+import com.eucalyptus.cluster.NIProperty
+import com.eucalyptus.cluster.NISecurityGroup
+import com.eucalyptus.cluster.NetworkInfo
+import com.eucalyptus.cluster.NetworkInfoDelta
+import org.junit.Test
+
+import javax.xml.bind.JAXBContext
+import javax.xml.bind.Marshaller
+
+import static org.junit.Assert.*
+
+class NetworkInfoDeltasTest {
+
+  private static NetworkInfo info( String version, String publicIp, List<String> instanceIds ) {
+    new NetworkInfo(
+        version: version,
+        configuration: new NIConfiguration(
+            properties: [
+                new NIProperty( name: 'enabledCLCIp', values: ['10.111.5.11'] )
+            ]
+        ),
+        securityGroups: [
+            new NISecurityGroup( name: 'sg-00000001', ownerId: '000000000001' )
+        ],
+        instances: instanceIds.collect{ String instanceId ->
+          new NIInstance(
+              name: instanceId,
+              ownerId: '000000000001',
+              publicIp: instanceId == 'i-00000001' ? publicIp : '0.0.0.0',
+              securityGroups: [ 'sg-00000001' ]
+          )
+        }
+    )
+  }
+
+  @Test
+  void testDelta( ) {
+    NetworkInfo base = info( '00000001', '10.111.200.1', [ 'i-00000001', 'i-00000002', 'i-00000003' ] )
+    NetworkInfo info = info( '00000002', '10.111.200.2', [ 'i-00000001', 'i-00000003', 'i-00000004' ] )
+
+    NetworkInfoDelta delta = NetworkInfoDeltas.delta( base, info )
+    assertEquals( 'version', '00000002', delta.version )
+    assertEquals( 'base version', '00000001', delta.baseVersion )
+    assertNull( 'configuration unchanged', delta.configuration )
+    assertEquals( 'updated instances', [ 'i-00000001', 'i-00000004' ], delta.instances*.name )
+    assertEquals( 'removed instances', [ 'i-00000002' ], delta.removed.instances )
+    assertTrue( 'security groups unchanged', delta.securityGroups.isEmpty( ) )
+    assertTrue( 'security groups removed', delta.removed.securityGroups.isEmpty( ) )
+  }
+
+  @Test
+  void testConfigurationDelta( ) {
+    NetworkInfo base = info( '00000001', '10.111.200.1', [ ] )
+    NetworkInfo info = info( '00000002', '10.111.200.1', [ ] )
+    info.configuration.properties << new NIProperty( name: 'instanceDNSDomain', values: ['eucalyptus.internal'] )
+    base.securityGroups.clear( )
+
+    NetworkInfoDelta delta = NetworkInfoDeltas.delta( base, info )
+    assertEquals( 'configuration', info.configuration, delta.configuration )
+    assertEquals( 'updated security groups', [ 'sg-00000001' ], delta.securityGroups*.name )
+  }
+
+  @Test
+  void testXml( ) {
+    NetworkInfoDelta delta = NetworkInfoDeltas.delta(
+        info( '00000001', '10.111.200.1', [ 'i-00000001', 'i-00000002' ] ),
+        info( '00000002', '10.111.200.2', [ 'i-00000001' ] ) )
+
+    JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" );
+    Marshaller marshaller = jc.createMarshaller( )
+    marshaller.setProperty( Marshaller.JAXB_FORMATTED_OUTPUT, true )
+    StringWriter writer = new StringWriter();
+    marshaller.marshal( delta, writer )
+    String outputXml = writer.toString( ).trim()
+    println( outputXml )
+
+    String expectedXml =  """
+      <?xml version="1.0" encoding="UTF-8" standalone="yes"?>
+      <network-data-delta version="00000002" base-version="00000001">
+          <vpcs/>
+          <instances>
+              <instance name="i-00000001">
+                  <ownerId>000000000001</ownerId>
+                  <publicIp>10.111.200.2</publicIp>
+                  <networkInterfaces/>
+                  <securityGroups>
+                      <value>sg-00000001</value>
+                  </securityGroups>
+              </instance>
+          </instances>
+          <dhcpOptionSets/>
+          <internetGateways/>
+          <securityGroups/>
+          <removed>
+              <vpcs/>
+              <instances>
+                  <value>i-00000002</value>
+              </instances>
+              <dhcpOptionSets/>
+              <internetGateways/>
+              <securityGroups/>
+          </removed>
+      </network-data-delta>
+      """.stripIndent( ).trim( )
+
+    assertEquals( "Delta xml", expectedXml, outputXml )
+  }
+}
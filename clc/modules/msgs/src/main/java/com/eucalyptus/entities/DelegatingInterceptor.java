@@ -64,14 +64,18 @@ package com.eucalyptus.entities;
 
 import java.io.Serializable;
 import java.util.Iterator;
+import java.util.Objects;
 import org.hibernate.CallbackException;
 import org.hibernate.EntityMode;
 import org.hibernate.Interceptor;
 import org.hibernate.Transaction;
 import org.hibernate.type.Type;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 
 public class DelegatingInterceptor implements Interceptor {
   private final Interceptor interceptor;
+  private Multimap<Class<?>,String> changes;
   
   public DelegatingInterceptor( ) {
     this.interceptor = Interceptors.get( );
@@ -87,14 +91,17 @@ public class DelegatingInterceptor implements Interceptor {
   }
   
   public boolean onFlushDirty( Object entity, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     return this.interceptor.onFlushDirty( entity, id, currentState, previousState, propertyNames, types );
   }
   
   public boolean onSave( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     return this.interceptor.onSave( entity, id, state, propertyNames, types );
   }
   
   public void onDelete( Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types ) throws CallbackException {
+    changed( entity, id );
     this.interceptor.onDelete( entity, id, state, propertyNames, types );
   }
   
@@ -148,10 +155,27 @@ public class DelegatingInterceptor implements Interceptor {
   
   public void afterTransactionCompletion( Transaction tx ) {
     this.interceptor.afterTransactionCompletion( tx );
+    final Multimap<Class<?>,String> committedChanges = this.changes;
+    this.changes = null;
+    if ( committedChanges != null && tx.wasCommitted( ) ) {
+      EntityChanges.committed( committedChanges );
+    }
   }
   
   public String onPrepareStatement( String sql ) {
     return this.interceptor.onPrepareStatement( sql );
   }
-  
+
+  /**
+   * Track changes for notification on commit, sessions are single threaded.
+   */
+  private void changed( final Object entity, final Serializable id ) {
+    if ( entity instanceof AbstractPersistent && id != null && EntityChanges.isTracking( entity.getClass( ) ) ) {
+      if ( this.changes == null ) {
+        this.changes = HashMultimap.create( );
+      }
+      this.changes.put( entity.getClass( ), Objects.toString( id ) );
+    }
+  }
+
 }
@@ -1108,6 +1108,97 @@ public class Entities {
     }
   }
 
+  /**
+   * Update all matching entities for the given class.
+   *
+   * <p>This is a bulk update so does not affect the version of updated
+   * entities or any entities already loaded in the session.</p>
+   *
+   * @param <T> The entity type
+   * @param updateClass The entity class
+   * @param update The update and condition, e.g. "SET x = x + :delta WHERE ..."
+   * @param parameters The parameters for the update
+   * @return The number of updated entities
+   */
+  public static <T> int updateAllMatching( final Class<T> updateClass,
+                                           final String update,
+                                           final Map<String,?> parameters ) {
+    try {
+      final Query query = getTransaction( updateClass ).getTxState().getEntityManager()
+          .createQuery( "UPDATE " + updateClass.getName() + " " + update );
+      for ( final Entry<String,?> entry : parameters.entrySet() ) {
+        query.setParameter( entry.getKey(), entry.getValue() );
+      }
+      return query.executeUpdate();
+    } catch ( Exception e ) {
+      LOG.error( updateClass, e );
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
+  /**
+   * Query entities for the given class using native SQL.
+   *
+   * <p>The query must select all columns for the entity. Table names should
+   * be qualified using the "{h-schema}" placeholder, e.g.
+   * "SELECT * FROM {h-schema}table WHERE ...". Returned entities are managed
+   * by the current transaction.</p>
+   *
+   * <p>Use only for queries that cannot be expressed with the criteria
+   * API, such as row locking clauses not supported by the dialect.</p>
+   *
+   * @param <T> The entity type
+   * @param entityClass The entity class
+   * @param sql The SQL query
+   * @param parameters The parameters for the query
+   * @return The matching entities
+   */
+  @SuppressWarnings( "unchecked" )
+  public static <T> List<T> nativeQuery( final Class<T> entityClass,
+                                         final String sql,
+                                         final Map<String,?> parameters ) {
+    try {
+      final Query query = getTransaction( entityClass ).getTxState().getEntityManager()
+          .createNativeQuery( sql, entityClass );
+      for ( final Entry<String,?> entry : parameters.entrySet() ) {
+        query.setParameter( entry.getKey(), entry.getValue() );
+      }
+      return (List<T>) query.getResultList( );
+    } catch ( Exception e ) {
+      LOG.error( entityClass, e );
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
+  /**
+   * Update or delete using native SQL.
+   *
+   * <p>This is a bulk update so does not affect any entities already loaded
+   * in the session. Table names should be qualified using the "{h-schema}"
+   * placeholder.</p>
+   *
+   * @param <T> The entity type
+   * @param entityClass The entity class, used to select the persistence context
+   * @param sql The SQL update or delete
+   * @param parameters The parameters for the update
+   * @return The number of updated rows
+   */
+  public static <T> int nativeUpdate( final Class<T> entityClass,
+                                      final String sql,
+                                      final Map<String,?> parameters ) {
+    try {
+      final Query query = getTransaction( entityClass ).getTxState().getEntityManager()
+          .createNativeQuery( sql );
+      for ( final Entry<String,?> entry : parameters.entrySet() ) {
+        query.setParameter( entry.getKey(), entry.getValue() );
+      }
+      return query.executeUpdate();
+    } catch ( Exception e ) {
+      LOG.error( entityClass, e );
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
   /**
    * Count the matching entities for the given example.
    * 
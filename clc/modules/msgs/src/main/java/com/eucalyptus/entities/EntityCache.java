@@ -19,19 +19,28 @@
  ************************************************************************/
 package com.eucalyptus.entities;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import com.eucalyptus.util.Callback;
 import com.eucalyptus.util.Pair;
+import com.eucalyptus.util.metrics.MonitoredAction;
+import com.eucalyptus.util.metrics.ThruputMetrics;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Iterables;
@@ -39,19 +48,34 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 
 /**
+ * Cache of transformed entities refreshed by version.
  *
+ * By default each get performs an (id, version) query for all matching
+ * entities and loads any that changed. When change notification is enabled
+ * only entities reported as changed since the last get are loaded, with a
+ * full refresh every reconcile interval or when too many changes are pending.
  */
 public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>> implements Supplier<Iterable<TE>> {
 
+  private static final Logger logger = Logger.getLogger( EntityCache.class );
   private static final int batchSize = 500;
+  private static final int maxChangedIds = batchSize * 20;
+  private static final HashFunction keyHashFunction = Hashing.murmur3_32( );
   private final E example;
   private final Criterion criterion;
   private final Set<String> eagerAssociationPaths;
   private final Set<String> lazyAssociationPaths;
   private final Function<? super E,TE> transformFunction;
   private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final Set<String> changedIds = Sets.newConcurrentHashSet( );
+  private final AtomicBoolean changedIdsOverflow = new AtomicBoolean( false );
+  private final AtomicBoolean changeNotificationRegistered = new AtomicBoolean( false );
+  private volatile long lastFullRefresh = 0L;
+  private final AtomicInteger fingerprint = new AtomicInteger( );
 
   /**
    * Create an entity cache for the given example.
@@ -107,33 +131,145 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
   }
 
   @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
-    final Collection<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
-    currentKeys.removeAll( cache.keySet( ) );
-    for ( final List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
+  private Map<Pair<String,Integer>,TE> load( final Iterable<String> ids ) {
+    final Map<Pair<String,Integer>,TE> loaded = Maps.newHashMap( );
+    for ( final List<String> idBatch : Iterables.partition( ids, batchSize ) ) {
       try ( final TransactionResource db = Entities.readOnlyDistinctTransactionFor( example ) ) {
         final Criteria criteria =  Entities.createCriteria( example.getClass( ) )
             .add( Example.create( example ) )
             .add( criterion )
             .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String, Integer>left( ) ) ) ) );
+            .add( Restrictions.in( "id", Lists.newArrayList( idBatch ) ) );
         for ( final String path : eagerAssociationPaths ) criteria.setFetchMode( path, FetchMode.JOIN );
         for ( final String path : lazyAssociationPaths ) criteria.setFetchMode( path, FetchMode.SELECT );
         final List<E> entities = (List<E> ) criteria.list( );
         for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+          loaded.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
         }
       }
     }
+    return loaded;
+  }
+
+  /**
+   * Refresh all entities, returns the number of rows read.
+   */
+  private int refresh( ) {
+    changedIdsOverflow.set( false );
+    changedIds.clear( ); // changes from now on are re-applied by the next incremental refresh
+    final Collection<Pair<String,Integer>> currentKeys = loadVersionMap( );
+    final int versionRows = currentKeys.size( );
+    for ( final Pair<String,Integer> key : cache.keySet( ) ) {
+      if ( !currentKeys.contains( key ) ) {
+        cacheRemove( key );
+      }
+    }
+    currentKeys.removeAll( cache.keySet( ) );
+    final Map<Pair<String,Integer>,TE> loaded = load( Iterables.transform( currentKeys, Pair.<String, Integer>left( ) ) );
+    cachePutAll( loaded );
+    return versionRows + loaded.size( );
+  }
+
+  /**
+   * Refresh entities notified as changed, returns the number of rows read.
+   */
+  private int refreshChanged( ) {
+    final Set<String> ids = Sets.newHashSet( changedIds );
+    changedIds.removeAll( ids );
+    if ( ids.isEmpty( ) ) {
+      return 0;
+    }
+    final Map<Pair<String,Integer>,TE> loaded = load( ids );
+    cachePutAll( loaded );
+    // remove prior versions and entities that were deleted or no longer match
+    for ( final Pair<String,Integer> key : cache.keySet( ) ) {
+      if ( ids.contains( key.getLeft( ) ) && !loaded.containsKey( key ) ) {
+        cacheRemove( key );
+      }
+    }
+    return loaded.size( );
+  }
+
+  private void cachePutAll( final Map<Pair<String,Integer>,TE> entries ) {
+    for ( final Map.Entry<Pair<String,Integer>,TE> entry : entries.entrySet( ) ) {
+      if ( cache.put( entry.getKey( ), entry.getValue( ) ) == null ) {
+        fingerprint.addAndGet( hash( entry.getKey( ) ) );
+      }
+    }
+  }
+
+  private void cacheRemove( final Pair<String,Integer> key ) {
+    if ( cache.remove( key ) != null ) {
+      fingerprint.addAndGet( -hash( key ) );
+    }
+  }
+
+  private static int hash( final Pair<String,Integer> key ) {
+    return keyHashFunction.newHasher( )
+        .putString( key.getLeft( ), StandardCharsets.UTF_8 )
+        .putInt( key.getRight( ) )
+        .hash( ).asInt( );
+  }
+
+  private boolean isChangeNotificationEnabled( ) {
+    if ( EntityChanges.CHANGE_NOTIFICATION ) {
+      if ( changeNotificationRegistered.compareAndSet( false, true ) ) {
+        EntityChanges.register( example.getClass( ), new Callback<Collection<String>>( ) {
+          @Override
+          public void fire( final Collection<String> ids ) {
+            if ( changedIdsOverflow.get( ) ) {
+              return; // next get is a full refresh
+            }
+            if ( changedIds.size( ) + ids.size( ) > maxChangedIds ) {
+              changedIdsOverflow.set( true );
+              changedIds.clear( );
+            } else {
+              changedIds.addAll( ids );
+            }
+          }
+        } );
+        lastFullRefresh = 0L;
+      }
+      return true;
+    }
+    return false;
   }
 
   @Override
   public Iterable<TE> get( ) {
-    refresh( );
+    final long start = System.currentTimeMillis( );
+    final int rows;
+    final boolean full;
+    if ( isChangeNotificationEnabled( ) &&
+        !changedIdsOverflow.get( ) &&
+        ( lastFullRefresh + TimeUnit.SECONDS.toMillis( EntityChanges.RECONCILE_INTERVAL ) ) > start ) {
+      full = false;
+      rows = refreshChanged( );
+    } else {
+      full = true;
+      rows = refresh( );
+      lastFullRefresh = start;
+    }
+    final long time = System.currentTimeMillis( ) - start;
+    ThruputMetrics.addDataPoint( MonitoredAction.ENTITY_CACHE_REFRESH, time );
+    ThruputMetrics.addDataPoint( MonitoredAction.ENTITY_CACHE_REFRESH_ROWS, rows );
+    if ( logger.isTraceEnabled( ) ) {
+      logger.trace( ( full ? "Refreshed " : "Updated " ) + example.getClass( ).getSimpleName( ) +
+          " cache in " + time + "ms, rows " + rows );
+    }
     return Ordering.natural( ).sortedCopy( cache.values( ) );
   }
 
+  /**
+   * Get a fingerprint for the (id, version) of the cached entities.
+   *
+   * The fingerprint is maintained as entities are added and removed and is
+   * independent of order. It reflects the cache as of the last get.
+   */
+  public int getFingerprint( ) {
+    return fingerprint.get( );
+  }
+
   private String getId( final E entity ) {
     return Objects.toString( Entities.resolvePrimaryKey( entity ) );
   }
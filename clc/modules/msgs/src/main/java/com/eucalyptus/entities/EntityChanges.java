@@ -0,0 +1,111 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.entities;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.configurable.PropertyChangeListeners;
+import com.eucalyptus.util.Callback;
+import com.eucalyptus.util.Pair;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Notification of committed entity changes.
+ *
+ * Inserts, updates and deletes are tracked by the session interceptor and
+ * published once the transaction commits. Bulk (HQL/SQL) updates and changes
+ * made on other hosts are not seen, so listeners must periodically reconcile
+ * with the database.
+ */
+@ConfigurableClass( root = "bootstrap.entity_cache",
+                    description = "Parameters controlling entity caches." )
+public class EntityChanges {
+
+  private static final Logger logger = Logger.getLogger( EntityChanges.class );
+
+  @ConfigurableField( description = "Refresh entity caches from change notifications rather than by version queries.",
+                      initial = "false", changeListener = PropertyChangeListeners.IsBoolean.class )
+  public static volatile Boolean CHANGE_NOTIFICATION = false;
+
+  @ConfigurableField( description = "Interval between full refreshes of entity caches using change notifications (seconds).",
+                      initial = "60", changeListener = PropertyChangeListeners.IsPositiveInteger.class )
+  public static volatile Integer RECONCILE_INTERVAL = 60;
+
+  private static final List<Pair<Class<?>,Callback<Collection<String>>>> listeners = new CopyOnWriteArrayList<>( );
+  private static final ConcurrentMap<Class<?>,Boolean> trackedTypes = Maps.newConcurrentMap( );
+
+  /**
+   * Register for notification of changes to entities of the given type.
+   *
+   * The callback receives the identifiers of changed entities, including
+   * entities that were deleted.
+   */
+  public static void register( final Class<? extends AbstractPersistent> type,
+                               final Callback<Collection<String>> callback ) {
+    listeners.add( Pair.<Class<?>,Callback<Collection<String>>>pair( type, callback ) );
+    trackedTypes.clear( );
+  }
+
+  /**
+   * Are changes to entities of the given type tracked.
+   *
+   * Only types with a registered listener for the type or a supertype are
+   * tracked.
+   */
+  static boolean isTracking( final Class<?> type ) {
+    Boolean tracking = trackedTypes.get( type );
+    if ( tracking == null ) {
+      tracking = false;
+      for ( final Pair<Class<?>,Callback<Collection<String>>> listener : listeners ) {
+        if ( listener.getLeft( ).isAssignableFrom( type ) ) {
+          tracking = true;
+          break;
+        }
+      }
+      trackedTypes.put( type, tracking );
+    }
+    return tracking;
+  }
+
+  static void committed( final Multimap<Class<?>,String> changes ) {
+    for ( final Pair<Class<?>,Callback<Collection<String>>> listener : listeners ) {
+      List<String> ids = null;
+      for ( final Map.Entry<Class<?>,Collection<String>> entry : changes.asMap( ).entrySet( ) ) {
+        if ( listener.getLeft( ).isAssignableFrom( entry.getKey( ) ) ) {
+          if ( ids == null ) ids = Lists.newArrayList( );
+          ids.addAll( entry.getValue( ) );
+        }
+      }
+      if ( ids != null ) try {
+        listener.getRight( ).fire( ids );
+      } catch ( final Exception e ) {
+        logger.error( "Error notifying entity changes for " + listener.getLeft( ).getSimpleName( ), e );
+      }
+    }
+  }
+}
@@ -25,10 +25,14 @@ import com.eucalyptus.configurable.ConfigurableField;
 import org.apache.log4j.Logger;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.channel.Channel;
 
 import java.io.IOException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.Nullable;
 
 @ConfigurableClass(root = "objectstorage", description = "Streaming upload channel configuration.")
 public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream {
@@ -48,6 +52,7 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
   private ChannelBuffer b;
   private LinkedBlockingQueue<ChannelBuffer> buffers;
   private int bytesRead;
+  private final AtomicReference<Channel> suspendedChannel = new AtomicReference<>();
 
   @Override
   public boolean markSupported() {
@@ -68,6 +73,7 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
       do {
         try {
           b = buffers.poll(QUEUE_TIMEOUT, TimeUnit.SECONDS);
+          resumeIfDrained();
           currentlyAvailable += b.readableBytes();
         } catch (InterruptedException e) {
           LOG.error(e, e);
@@ -116,6 +122,7 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
             do {
               b = buffers.poll(QUEUE_TIMEOUT, TimeUnit.SECONDS);
             } while ((b == null) && retries++ < 60);
+            resumeIfDrained();
             if (b == null) {
               LOG.error("No more data in this stream");
               bytesRead += readSoFar;
@@ -183,6 +190,27 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
   }
 
   public void putChunk(ChannelBuffer input) throws InterruptedException, EucalyptusCloudException {
+    putChunk(input, null);
+  }
+
+  /**
+   * Add a chunk of data to the stream.
+   *
+   * When the channel the data is read from is given, reading from the channel
+   * is suspended once half the queue is in use and resumed when the reader
+   * has caught up. The caller (usually an I/O thread) then only blocks if
+   * the queue fills with data that was already read from the channel.
+   */
+  public void putChunk(ChannelBuffer input, @Nullable Channel channel) throws InterruptedException, EucalyptusCloudException {
+    if (channel != null && buffers.size() >= Math.max(1, QUEUE_SIZE / 2) && channel.isReadable()) {
+      // suspend before recording the channel so a resume is never lost
+      channel.setReadable(false);
+      suspendedChannel.set(channel);
+      resumeIfDrained();
+    }
+    if (buffers.offer(input)) {
+      return;
+    }
     boolean success = false;
     int retries = 0;
     while ((!success) && (retries++ < QUEUE_TIMEOUT)) {
@@ -194,9 +222,26 @@ public class ChannelBufferStreamingInputStream extends ChannelBufferInputStream
     }
   }
 
+  /**
+   * Resume reading from a suspended channel if the reader has consumed most of the queue.
+   */
+  private void resumeIfDrained() {
+    if (buffers.size() <= QUEUE_SIZE / 4) {
+      resume();
+    }
+  }
+
+  private void resume() {
+    final Channel channel = suspendedChannel.getAndSet(null);
+    if (channel != null) {
+      channel.setReadable(true);
+    }
+  }
+
   @Override
   public void close() throws IOException {
     LOG.trace("Closing Channel Stream: " + buffers.remainingCapacity() + " " + buffers.size());
+    resume();
     super.close();
   }
 }
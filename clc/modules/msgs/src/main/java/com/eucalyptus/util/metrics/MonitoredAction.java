@@ -29,16 +29,37 @@ public enum MonitoredAction {
   CLUSTER_LIST_METRIC_MANAGER_CALL_PUT_METRIC_DATA("Cluster:Timing:ListMetricManager.callPutMetricData():time"),
   CLUSTER_TIMING("Cluster:Timing:time"),
   PUT_DATA_QUEUE_SIZE("PutMetricDataQueue:Timing:dataBatch.size"),
-  PUT_DATA_QUEUE_CONVERT("PutMetricDataQueue:Timing:dataBatch.convertToSimpleDataBatch():time"),
   PUT_DATA_QUEUE_AGGREGATE("PutMetricDataQueue:Timing:dataBatch.aggregate():time"),
   PUT_DATA_QUEUE_MERTIC_ADD_BATCH("PutMetricDataQueue:Timing:dataBatch.MetricManager.addMetricBatch():time"),
   PUT_DATA_QUEUE_MERTIC_QUEUE_ADDALL("PutMetricDataQueue:Timing:ListMetricQueue.addAll():time"),
   PUT_DATA_TIMING("PutMetricDataQueue:Timing:time"),
+  PUT_DATA_ROLLUP_CELLS("PutMetricDataRollup:Timing:cells.size"),
+  PUT_DATA_ROLLUP_SHED("PutMetricDataRollup:Timing:shed.size"),
+  PUT_DATA_ROLLUP_SHARD_DRAIN("PutMetricDataRollup:Timing:shard.drain():time"),
+  PUT_DATA_ROLLUP_SHARD_FLUSH("PutMetricDataRollup:Timing:shard.flush():time"),
   LIST_METRIC_SIZE("ListMetricQueue:Timing:dataBatch.size"),
   LIST_METRIC_PRUNE("ListMetricQueue:Timing:dataBatch.pruneDuplicates:time"),
   LIST_METRIC_CONVERT("ListMetricQueue:Timing:convertToListMetrics:time"),
   LIST_METRIC_MERTIC_ADD_BATCH("ListMetricQueue:Timing:ListMetricManager.addMetricBatch:time"),
   LIST_METRIC_TIMING("ListMetricQueue:Timing:time"),
+  LIST_METRIC_INDEX_HIT("ListMetricQueue:Timing:index.hit.size"),
+  LIST_METRIC_INDEX_MISS("ListMetricQueue:Timing:index.miss.size"),
+  LIST_METRIC_INDEX_NEW("ListMetricQueue:Timing:index.new.size"),
+  RETENTION_PURGE_METRIC_DATA_CHUNK("CloudWatchRetentionPurge:Timing:metricData.chunk:time"),
+  RETENTION_PURGE_LIST_METRICS_CHUNK("CloudWatchRetentionPurge:Timing:listMetrics.chunk:time"),
+  RETENTION_PURGE_ALARM_HISTORY_CHUNK("CloudWatchRetentionPurge:Timing:alarmHistory.chunk:time"),
+  // Entities
+  ENTITY_CACHE_REFRESH("EntityCache:Timing:refresh():time"),
+  ENTITY_CACHE_REFRESH_ROWS("EntityCache:Timing:refresh.rows.size"),
+  // Object Storage
+  BUCKET_CACHE_HIT("BucketMetadataCache:Timing:hit.size"),
+  BUCKET_CACHE_MISS("BucketMetadataCache:Timing:miss.size"),
+  BUCKET_CACHE_STALE("BucketMetadataCache:Timing:stale.size"),
+  BUCKET_CACHE_STALENESS("BucketMetadataCache:Timing:staleness:time"),
+  BACKEND_CLIENT_CREATED("OsgInternalS3ClientPool:Timing:created.size"),
+  BACKEND_CLIENT_POOL_SIZE("OsgInternalS3ClientPool:Timing:clients.size"),
+  BACKEND_CONNECTIONS_ACTIVE("OsgInternalS3ClientPool:Timing:connections.active.size"),
+  BACKEND_CONNECTIONS_IDLE("OsgInternalS3ClientPool:Timing:connections.idle.size"),
   // Storage
   CREATE_VOLUME("Create Volume"),
   CREATE_VOLUME_FROM_SNAPSHOT("Create Volume from Snapshot"),
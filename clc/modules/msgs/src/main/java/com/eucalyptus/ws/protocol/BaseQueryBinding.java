@@ -63,9 +63,6 @@
 package com.eucalyptus.ws.protocol;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -74,19 +71,16 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import com.eucalyptus.binding.Binding;
 import com.eucalyptus.binding.BindingElementNotFoundException;
 import com.eucalyptus.binding.BindingException;
 import com.eucalyptus.binding.BindingManager;
 import com.eucalyptus.binding.HttpEmbedded;
-import com.eucalyptus.binding.HttpEmbeddeds;
 import com.eucalyptus.binding.HttpParameterMapping;
-import com.eucalyptus.binding.HttpParameterMappings;
-import com.eucalyptus.binding.HttpValue;
 import com.eucalyptus.crypto.util.Timestamps;
 import com.eucalyptus.http.MappingHttpRequest;
 import com.eucalyptus.ws.StackConfiguration;
@@ -100,14 +94,13 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import edu.ucsb.eucalyptus.msgs.BaseData;
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
 import edu.ucsb.eucalyptus.msgs.EucalyptusData;
-import edu.ucsb.eucalyptus.msgs.EucalyptusMessage;
 import groovy.lang.GroovyObject;
 
 public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandler {
   private static Logger LOG = Logger.getLogger( BaseQueryBinding.class );
+  private static final ConcurrentMap<String, ListParameterPatterns> listParameterPatterns = Maps.newConcurrentMap( );
   private final UnknownParameterStrategy unknownParameterStrategy;
   private final T       operationParam;
   private final List<T> altOperationParams;
@@ -207,7 +200,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
         targetType = this.getBinding( ).getElementClass( operationName );
       }
       fieldMap = this.buildFieldMap( targetType );
-      eucaMsg = ( BaseMessage ) targetType.newInstance( );
+      eucaMsg = ( BaseMessage ) QueryBindingPlan.of( targetType ).newInstance( );
     } catch ( final BindingException e ) {
       LOG.debug(
           "Failed to construct message of type: " + operationName,
@@ -270,25 +263,15 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
             unknownParameterStrategy == UnknownParameterStrategy.ERROR );
   }
 
-  private static Field getRecursiveField( Class<?> clazz, final String fieldName ) throws Exception {
-    Exception e = null;
-    while ( !BaseMessage.class.equals( clazz ) && !Object.class.equals( clazz ) ) {
-      try {
-        return clazz.getDeclaredField( fieldName );
-      } catch ( final Exception e1 ) {
-        e = e1;        
-      }
-      clazz = clazz.getSuperclass( );
-    }
-    if ( e == null ) throw new Exception("Class not supported: " + clazz);
-    throw e;
+  private static QueryBindingPlan.Property getProperty( final Object obj, final String fieldName ) throws Exception {
+    return QueryBindingPlan.of( obj.getClass( ) ).getProperty( fieldName );
   }
-  
+
   private List<String> populateObject( final GroovyObject obj, final Map<String, String> paramFieldMap, final Map<String, String> params ) {
     final List<String> failedMappings = new ArrayList<String>( );
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
       try {
-        if ( getRecursiveField( obj.getClass( ), e.getValue( ) ).getType( ).equals( ArrayList.class ) ) {
+        if ( getProperty( obj, e.getValue( ) ).getType( ).equals( ArrayList.class ) ) {
           failedMappings.addAll( this.populateObjectList( obj, e, params, params.size( ) ) );
         }
       } catch ( final Exception e1 ) {
@@ -298,10 +281,10 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     }
     
     for ( final Map.Entry<String, String> e : paramFieldMap.entrySet( ) ) {
-      Field field = null;
+      QueryBindingPlan.Property field = null;
       Class<?> declaredType = null;
       try {
-        field = getRecursiveField( obj.getClass( ), e.getValue( ) );
+        field = getProperty( obj, e.getValue( ) );
         declaredType = field.getType( );
       } catch ( final Exception e2 ) {
         LOG.debug( "Field not found: " + e.getValue(), e2 );
@@ -315,13 +298,11 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
                   && EucalyptusData.class.isAssignableFrom( declaredType ) ) {
         try {
           final Map<String, String> fieldMap = this.buildFieldMap( declaredType );
-          final Object newInstance = declaredType.newInstance( );
+          final Object newInstance = QueryBindingPlan.of( declaredType ).newInstance( );
           Map<String, String> subParams = Maps.newHashMap( );
 
           HttpEmbedded httpEmbedded = null;
-          if ( field != null && (
-              field.isAnnotationPresent( HttpEmbedded.class ) ||
-              field.isAnnotationPresent( HttpEmbeddeds.class ) ) ) {
+          if ( field != null && field.isHttpEmbedded( ) ) {
             httpEmbedded = getHttpEmbeddedAnnotation( field );
           }
           if ( httpEmbedded != null && !httpEmbedded.multiple( ) ) {
@@ -337,7 +318,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
             if ( httpEmbedded == null && subParams.size( ) == 1 && subParams.keySet( ).contains( e.getKey( ) ) ) {
               try {
                 if ( populateValue( declaredType, (GroovyObject) newInstance, Iterables.getOnlyElement( subParams.values( ) ) ).isEmpty( ) ) {
-                  obj.setProperty( e.getValue( ), newInstance );
+                  field.set( obj, newInstance );
                   subParams.clear( );
                 }
               } catch ( final IllegalArgumentException e2 ) { /*param not bound error occurs for this failure*/ }
@@ -346,13 +327,13 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
               }
             } else {
               this.populateObject( (GroovyObject) newInstance, fieldMap, subParams );
-              obj.setProperty( e.getValue( ), newInstance );
+              field.set( obj, newInstance );
               if ( subParams != params ) for ( Map.Entry<String, String> entry : subParams.entrySet( ) ) {
                 params.put( e.getKey( ) + "." + entry.getKey( ), entry.getValue( ) );
               }
             }
           } else if ( params.containsKey( e.getKey( ) ) ) {
-            obj.setProperty( e.getValue(), newInstance );
+            field.set( obj, newInstance );
           }
         } catch ( final Exception e1 ) {
           LOG.debug( "Error binding object", e1 );
@@ -368,16 +349,16 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   @SuppressWarnings( "unchecked" )
   private boolean populateObjectField( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params ) {
     try {
-      final Class<?> declaredType = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) ).getType( );
+      final QueryBindingPlan.Property property = getProperty( obj, paramFieldPair.getValue( ) );
       final Object value = convertToType( new Supplier<String>(){
         @Override
         public String get() {
           return params.remove( paramFieldPair.getKey() );
         }
-      }, declaredType );
+      }, property.getType( ) );
 
       if ( value != null )
-        obj.setProperty( paramFieldPair.getValue( ), value );
+        property.set( obj, value );
       
       return !params.containsKey( paramFieldPair.getKey() );
     } catch ( final Exception e1 ) {
@@ -414,9 +395,13 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   private List<String> populateObjectList( final GroovyObject obj, final Map.Entry<String, String> paramFieldPair, final Map<String, String> params, final int paramSize ) {
     final List<String> failedMappings = new ArrayList<String>( );
     try {
-      final Field declaredField = getRecursiveField( obj.getClass( ), paramFieldPair.getValue( ) );
-      final ArrayList theList = ( ArrayList ) obj.getProperty( paramFieldPair.getValue( ) );
-      final Class genericType = ( Class ) ( ( ParameterizedType ) declaredField.getGenericType( ) ).getActualTypeArguments( )[0];
+      final QueryBindingPlan.Property declaredField = getProperty( obj, paramFieldPair.getValue( ) );
+      final ArrayList theList = ( ArrayList ) declaredField.get( obj );
+      final Class genericType = declaredField.getElementType( );
+      if ( genericType == null ) {
+        throw new BindingException( "Unsupported list type for " + paramFieldPair.getValue( ) );
+      }
+      final ListParameterPatterns patterns = listParameterPatterns( paramFieldPair.getKey( ) );
       // :: simple case: FieldName.# :://
       if ( String.class.equals( genericType ) ||
            Boolean.class.equals( genericType ) ||
@@ -428,18 +413,16 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           theList.add( convertToType( Suppliers.ofInstance(params.remove( paramFieldPair.getKey() )), genericType ) );
         } else {
           final List<String> keys = Lists.newArrayList( params.keySet( ) );
-          final Pattern paramPattern = Pattern.compile( Pattern.quote(paramFieldPair.getKey( )) + "\\.([0-9]{1,7})" );
           final Map<String,Object> indexToValueMap = new TreeMap<String,Object>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {    
-            final Matcher matcher = paramPattern.matcher( k );
+            final Matcher matcher = patterns.indexed.matcher( k );
             if ( matcher.matches() ) {
               indexToValueMap.put( matcher.group(1), convertToType( Suppliers.ofInstance(params.remove( k )), genericType )  );
             }
           }
           theList.addAll( indexToValueMap.values() );
         }
-      } else if ( declaredField.isAnnotationPresent( HttpEmbedded.class ) ||
-                  declaredField.isAnnotationPresent( HttpEmbeddeds.class )) {
+      } else if ( declaredField.isHttpEmbedded( ) ) {
         final HttpEmbedded annoteEmbedded = getHttpEmbeddedAnnotation( declaredField );
         // :: build the parameter map and call populate object recursively :://
         if ( annoteEmbedded.multiple( ) ) {
@@ -447,21 +430,21 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
           final Map<String,Map<String,String>> subParamMaps = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           final Map<String,String> valueMap = new TreeMap<>( Ordering.natural().onResultOf( FunctionToInteger.INSTANCE ) );
           for ( final String k : keys ) {
-            if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}\\..*" ) ) {
+            final Matcher embeddedMatcher = patterns.indexedEmbedded.matcher( k );
+            final Matcher valueMatcher = patterns.indexed.matcher( k );
+            if ( embeddedMatcher.matches( ) ) {
               final String currentValue = params.remove( k );
-              final String setKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})\\..*", "$1" );
-              if ( setKey.length() > 7 ) continue;
-              final String subKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.[0-9]{1,7}\\." , "" );
+              final String setKey = embeddedMatcher.group( 1 );
+              final String subKey = embeddedMatcher.group( 2 );
               Map<String,String> subMap = subParamMaps.get( setKey );
               if ( subMap == null ) {
                 subParamMaps.put( setKey, subMap = Maps.newHashMap() );
               }
 
               subMap.put( subKey, currentValue );
-            } else if ( k.matches( Pattern.quote( paramFieldPair.getKey( ) ) + "\\.[0-9]{1,7}" ) ) {
+            } else if ( valueMatcher.matches( ) ) {
               final String currentValue = params.remove( k );
-              final String orderKey = k.replaceAll( "^"+ paramFieldPair.getKey( ) + "\\.([0-9]{1,7})", "$1" );
-              if ( orderKey.length() > 7 ) continue;
+              final String orderKey = valueMatcher.group( 1 );
               valueMap.put( orderKey, currentValue );
             }
           }
@@ -487,7 +470,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   }
 
   private List<String> populateEmbedded( final Class<?> genericType, final Map<String, String> params, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
+    final GroovyObject embedded = ( GroovyObject ) QueryBindingPlan.of( genericType ).newInstance( );
     final Map<String, String> embeddedFields = this.buildFieldMap( genericType );
     final int startSize = params.size( );
     final List<String> embeddedFailures = this.populateObject( embedded, embeddedFields, params );
@@ -498,7 +481,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   }
 
   private List<String> populateEmbedded( final Class<?> genericType, final String value, @SuppressWarnings( "rawtypes" ) final ArrayList theList ) throws InstantiationException, IllegalAccessException {
-    final GroovyObject embedded = ( GroovyObject ) genericType.newInstance( );
+    final GroovyObject embedded = ( GroovyObject ) QueryBindingPlan.of( genericType ).newInstance( );
     final List<String> embeddedFailures = populateValue( genericType, embedded, value );
     if ( embeddedFailures.isEmpty( ) ) {
       theList.add( embedded );
@@ -507,7 +490,7 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
   }
 
   private List<String> populateValue( final Class<?> genericType, final GroovyObject targetObject, final String value ) throws InstantiationException, IllegalAccessException {
-    final Field valueField = this.findValueField( genericType );
+    final QueryBindingPlan.Property valueField = QueryBindingPlan.of( genericType ).getValueProperty( );
     if ( valueField == null ) {
       throw new IllegalArgumentException( "Simple type cannot be mapped for " + genericType.getSimpleName( ) );
     }
@@ -519,68 +502,32 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     return embeddedFailures;
   }
 
-  @Nullable
-  private Field findValueField( Class<?> targetType ) {
-    while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
-        && !BaseData.class.equals( targetType ) ) {
-      final Field[] fields = targetType.getDeclaredFields( );
-      for ( final Field f : fields ) {
-        if ( Modifier.isStatic( f.getModifiers( ) ) ) {
-          continue;
-        } else if ( f.isAnnotationPresent( HttpValue.class ) ) {
-          return f;
-        }
-      }
-      targetType = targetType.getSuperclass( );
-    }
-    return null;
-  }
-
   private boolean isValueObject( final Class<?> targetType ) {
-    return findValueField( targetType ) != null;
+    return QueryBindingPlan.of( targetType ).getValueProperty( ) != null;
   }
 
-  private Map<String, String> buildFieldMap( Class<?> targetType ) {
-    final Map<String, String> fieldMap = new HashMap<String, String>( );
-    while ( !BaseMessage.class.equals( targetType ) && !EucalyptusMessage.class.equals( targetType ) && !EucalyptusData.class.equals( targetType )
-            && !BaseData.class.equals( targetType ) ) {
-      final Field[] fields = targetType.getDeclaredFields( );
-      for ( final Field f : fields ) {
-        if ( Modifier.isStatic( f.getModifiers( ) ) )
-          continue;
-        else if ( f.isAnnotationPresent( HttpParameterMapping.class ) || f.isAnnotationPresent( HttpParameterMappings.class ) ) {
-          for ( String parameter : getHttpParameterMappingAnnotation( f ).parameter() ) {
-            fieldMap.put( parameter, f.getName( ) );
+  private Map<String, String> buildFieldMap( final Class<?> targetType ) {
+    final QueryBindingPlan plan = QueryBindingPlan.of( targetType );
+    return plan.isVersioned( ) ?
+        plan.buildFieldMap( new Function<QueryBindingPlan.Property, HttpParameterMapping>( ) {
+          @Override
+          public HttpParameterMapping apply( final QueryBindingPlan.Property property ) {
+            return getVersionedAnnotation( property.getHttpParameterMappings( ), HttpParameterMappingVersionExtractor.INSTANCE );
           }
-        } else {
-          fieldMap.put( f.getName( ).substring( 0, 1 ).toUpperCase( ).concat( f.getName( ).substring( 1 ) ), f.getName( ) );
-        }
-      }
-      targetType = targetType.getSuperclass( );
-    }
-    return fieldMap;
+        } ) :
+        plan.getFieldMap( );
   }
 
-  private HttpEmbedded getHttpEmbeddedAnnotation( final Field field ) {
-    if ( field.isAnnotationPresent( HttpEmbedded.class ) ) {
-      return field.getAnnotation( HttpEmbedded.class );
+  private HttpEmbedded getHttpEmbeddedAnnotation( final QueryBindingPlan.Property field ) {
+    if ( field.getHttpEmbedded( ) != null ) {
+      return field.getHttpEmbedded( );
     } else {
       return getVersionedAnnotation(
-          field.getAnnotation( HttpEmbeddeds.class ).value(),
+          field.getHttpEmbeddeds( ),
           HttpEmbeddedVersionExtractor.INSTANCE );
     }
   }
 
-  private HttpParameterMapping getHttpParameterMappingAnnotation( final Field field ) {
-    if ( field.isAnnotationPresent( HttpParameterMapping.class ) ) {
-      return field.getAnnotation( HttpParameterMapping.class );
-    } else {
-      return getVersionedAnnotation(
-          field.getAnnotation( HttpParameterMappings.class ).value(),
-          HttpParameterMappingVersionExtractor.INSTANCE );
-    }
-  }
-
   private <T extends Annotation> T getVersionedAnnotation( final T[] values,
                                                            final Function<T,String> versionExtractor ) {
     for ( final T t : values ) {
@@ -626,6 +573,31 @@ public class BaseQueryBinding<T extends Enum<T>> extends RestfulMarshallingHandl
     }
   }
 
+  private static ListParameterPatterns listParameterPatterns( final String parameter ) {
+    ListParameterPatterns patterns = listParameterPatterns.get( parameter );
+    if ( patterns == null ) {
+      patterns = new ListParameterPatterns( parameter );
+      final ListParameterPatterns existing = listParameterPatterns.putIfAbsent( parameter, patterns );
+      if ( existing != null ) {
+        patterns = existing;
+      }
+    }
+    return patterns;
+  }
+
+  /**
+   * Patterns for the indexed parameters of a list, e.g. Name.1 or Name.1.Value
+   */
+  private static final class ListParameterPatterns {
+    private final Pattern indexed;
+    private final Pattern indexedEmbedded;
+
+    private ListParameterPatterns( final String parameter ) {
+      this.indexed = Pattern.compile( Pattern.quote( parameter ) + "\\.([0-9]{1,7})" );
+      this.indexedEmbedded = Pattern.compile( Pattern.quote( parameter ) + "\\.([0-9]{1,7})\\.(.*)" );
+    }
+  }
+
   public static String replaceStringPrefixIfExists(String target, String oldPrefix, String newPrefix) {
     if (target == null) throw new NullPointerException("target can not be null");
     if (oldPrefix == null) throw new NullPointerException("oldPrefix can not be null");
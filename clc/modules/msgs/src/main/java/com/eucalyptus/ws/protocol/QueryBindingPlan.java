@@ -0,0 +1,378 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.ws.protocol;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import com.eucalyptus.binding.HttpEmbedded;
+import com.eucalyptus.binding.HttpEmbeddeds;
+import com.eucalyptus.binding.HttpParameterMapping;
+import com.eucalyptus.binding.HttpParameterMappings;
+import com.eucalyptus.binding.HttpValue;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import edu.ucsb.eucalyptus.msgs.BaseData;
+import edu.ucsb.eucalyptus.msgs.BaseMessage;
+import edu.ucsb.eucalyptus.msgs.EucalyptusData;
+import edu.ucsb.eucalyptus.msgs.EucalyptusMessage;
+import groovy.lang.GroovyObject;
+
+/**
+ * Query binding plan for a message or data type.
+ *
+ * The plan for a type is built on first use from its fields and binding
+ * annotations and then shared, so binding a request does not inspect the
+ * type. Properties are set and read using method handles for the property
+ * accessors, falling back to the groovy property for a field without
+ * accessible accessors.
+ */
+final class QueryBindingPlan {
+  private static final ClassValue<QueryBindingPlan> plans = new ClassValue<QueryBindingPlan>( ) {
+    @Override
+    protected QueryBindingPlan computeValue( final Class<?> type ) {
+      return new QueryBindingPlan( type );
+    }
+  };
+  private static final MethodType SETTER_TYPE = MethodType.methodType( void.class, Object.class, Object.class );
+  private static final MethodType GETTER_TYPE = MethodType.methodType( Object.class, Object.class );
+  private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType( Object.class );
+
+  private final Class<?> type;
+  @Nullable
+  private final MethodHandle constructor;
+  private final Map<String, Property> properties;
+  private final boolean bindable;
+  private final List<Property> mappedProperties;
+  private final boolean versioned;
+  @Nullable
+  private final Map<String, String> fieldMap;
+  @Nullable
+  private final Property valueProperty;
+
+  private QueryBindingPlan( final Class<?> type ) {
+    this.type = type;
+    this.constructor = constructor( type );
+
+    // properties by name, the first declared walking up from the type
+    final Map<String, Property> properties = Maps.newHashMap( );
+    for ( Class<?> declaringType = type;
+          declaringType != null && !BaseMessage.class.equals( declaringType ) && !Object.class.equals( declaringType );
+          declaringType = declaringType.getSuperclass( ) ) {
+      for ( final Field field : declaringType.getDeclaredFields( ) ) {
+        if ( !properties.containsKey( field.getName( ) ) ) {
+          properties.put( field.getName( ), new Property( type, field ) );
+        }
+      }
+    }
+    this.properties = Collections.unmodifiableMap( properties );
+
+    // bound properties in binding order, from the type up to the base message or data type
+    final ImmutableList.Builder<Property> mappedProperties = ImmutableList.builder( );
+    boolean bindable = true;
+    boolean versioned = false;
+    Property valueProperty = null;
+    Class<?> declaringType = type;
+    while ( !BaseMessage.class.equals( declaringType ) && !EucalyptusMessage.class.equals( declaringType ) &&
+        !EucalyptusData.class.equals( declaringType ) && !BaseData.class.equals( declaringType ) ) {
+      if ( declaringType == null ) {
+        bindable = false;
+        break;
+      }
+      for ( final Field field : declaringType.getDeclaredFields( ) ) {
+        if ( Modifier.isStatic( field.getModifiers( ) ) ) continue;
+        final Property property = properties.containsKey( field.getName( ) ) &&
+            properties.get( field.getName( ) ).field.equals( field ) ?
+                properties.get( field.getName( ) ) :
+                new Property( type, field );
+        mappedProperties.add( property );
+        versioned = versioned || property.httpParameterMappings != null;
+        if ( valueProperty == null && field.isAnnotationPresent( HttpValue.class ) ) {
+          valueProperty = property;
+        }
+      }
+      declaringType = declaringType.getSuperclass( );
+    }
+    this.bindable = bindable;
+    this.mappedProperties = mappedProperties.build( );
+    this.versioned = versioned;
+    this.valueProperty = valueProperty;
+    this.fieldMap = bindable && !versioned ?
+        Collections.unmodifiableMap( buildFieldMap( Property::getHttpParameterMapping ) ) :
+        null;
+  }
+
+  static QueryBindingPlan of( final Class<?> type ) {
+    return plans.get( type );
+  }
+
+  Class<?> getType( ) {
+    return type;
+  }
+
+  Object newInstance( ) throws InstantiationException, IllegalAccessException {
+    if ( constructor == null ) {
+      return type.newInstance( );
+    }
+    try {
+      return constructor.invokeExact( );
+    } catch ( final Throwable e ) {
+      throw Throwables.propagate( e );
+    }
+  }
+
+  /**
+   * Lookup a property as declared on the type or a super type.
+   */
+  Property getProperty( final String name ) throws NoSuchFieldException {
+    final Property property = properties.get( name );
+    if ( property == null ) {
+      throw new NoSuchFieldException( name );
+    }
+    return property;
+  }
+
+  /**
+   * Does the parameter mapping for the type depend on the binding version.
+   */
+  boolean isVersioned( ) {
+    return versioned;
+  }
+
+  /**
+   * The parameter to field name map for an unversioned type.
+   */
+  Map<String, String> getFieldMap( ) {
+    checkBindable( );
+    if ( fieldMap == null ) {
+      throw new IllegalStateException( "Versioned field map for " + type.getName( ) );
+    }
+    return fieldMap;
+  }
+
+  /**
+   * Build the parameter to field name map using the given parameter mapping for versioned properties.
+   */
+  Map<String, String> buildFieldMap( final Function<Property, HttpParameterMapping> versionedMapping ) {
+    checkBindable( );
+    final Map<String, String> fieldMap = new HashMap<String, String>( );
+    for ( final Property property : mappedProperties ) {
+      if ( property.httpParameterMapping != null || property.httpParameterMappings != null ) {
+        final HttpParameterMapping mapping = property.httpParameterMapping != null ?
+            property.httpParameterMapping :
+            versionedMapping.apply( property );
+        for ( final String parameter : mapping.parameter( ) ) {
+          fieldMap.put( parameter, property.getName( ) );
+        }
+      } else {
+        fieldMap.put( property.capitalizedName, property.getName( ) );
+      }
+    }
+    return fieldMap;
+  }
+
+  /**
+   * The property annotated as the value for a simple type.
+   */
+  @Nullable
+  Property getValueProperty( ) {
+    checkBindable( );
+    return valueProperty;
+  }
+
+  private void checkBindable( ) {
+    if ( !bindable ) {
+      throw new IllegalArgumentException( "Type not supported for binding: " + type.getName( ) );
+    }
+  }
+
+  @Nullable
+  private static MethodHandle constructor( final Class<?> type ) {
+    try {
+      return MethodHandles.publicLookup( ).findConstructor( type, MethodType.methodType( void.class ) )
+          .asType( CONSTRUCTOR_TYPE );
+    } catch ( final NoSuchMethodException | IllegalAccessException e ) {
+      return null;
+    }
+  }
+
+  private static String capitalize( final String name ) {
+    return name.substring( 0, 1 ).toUpperCase( ).concat( name.substring( 1 ) );
+  }
+
+  static final class Property {
+    private final Field field;
+    private final String capitalizedName;
+    @Nullable private final Class<?> elementType;
+    @Nullable private final HttpEmbedded httpEmbedded;
+    @Nullable private final HttpEmbedded[] httpEmbeddeds;
+    @Nullable private final HttpParameterMapping httpParameterMapping;
+    @Nullable private final HttpParameterMapping[] httpParameterMappings;
+    @Nullable private final MethodHandle getter;
+    @Nullable private final MethodHandle setter;
+
+    private Property( final Class<?> type, final Field field ) {
+      this.field = field;
+      this.capitalizedName = capitalize( field.getName( ) );
+      final Type genericType = field.getGenericType( );
+      this.elementType = genericType instanceof ParameterizedType &&
+          ( (ParameterizedType) genericType ).getActualTypeArguments( )[ 0 ] instanceof Class ?
+              (Class<?>) ( (ParameterizedType) genericType ).getActualTypeArguments( )[ 0 ] :
+              null;
+      this.httpEmbedded = field.getAnnotation( HttpEmbedded.class );
+      this.httpEmbeddeds = field.isAnnotationPresent( HttpEmbeddeds.class ) ?
+          field.getAnnotation( HttpEmbeddeds.class ).value( ) :
+          null;
+      this.httpParameterMapping = field.getAnnotation( HttpParameterMapping.class );
+      this.httpParameterMappings = field.isAnnotationPresent( HttpParameterMappings.class ) && httpParameterMapping == null ?
+          field.getAnnotation( HttpParameterMappings.class ).value( ) :
+          null;
+      final boolean instanceField = !Modifier.isStatic( field.getModifiers( ) );
+      this.getter = instanceField ? getter( type, field ) : null;
+      this.setter = instanceField ? setter( type, field ) : null;
+    }
+
+    String getName( ) {
+      return field.getName( );
+    }
+
+    Class<?> getType( ) {
+      return field.getType( );
+    }
+
+    /**
+     * The type argument for a parameterized type such as a list.
+     */
+    @Nullable
+    Class<?> getElementType( ) {
+      return elementType;
+    }
+
+    boolean isHttpEmbedded( ) {
+      return httpEmbedded != null || httpEmbeddeds != null;
+    }
+
+    @Nullable
+    HttpEmbedded getHttpEmbedded( ) {
+      return httpEmbedded;
+    }
+
+    @Nullable
+    HttpEmbedded[] getHttpEmbeddeds( ) {
+      return httpEmbeddeds;
+    }
+
+    @Nullable
+    HttpParameterMapping getHttpParameterMapping( ) {
+      return httpParameterMapping;
+    }
+
+    @Nullable
+    HttpParameterMapping[] getHttpParameterMappings( ) {
+      return httpParameterMappings;
+    }
+
+    Object get( final Object target ) {
+      if ( getter == null ) {
+        return ( (GroovyObject) target ).getProperty( getName( ) );
+      }
+      try {
+        return getter.invokeExact( target );
+      } catch ( final Throwable e ) {
+        throw Throwables.propagate( e );
+      }
+    }
+
+    void set( final Object target, final Object value ) {
+      if ( setter == null ) {
+        ( (GroovyObject) target ).setProperty( getName( ), value );
+        return;
+      }
+      try {
+        setter.invokeExact( target, value );
+      } catch ( final Throwable e ) {
+        throw Throwables.propagate( e );
+      }
+    }
+
+    @Nullable
+    private static MethodHandle getter( final Class<?> type, final Field field ) {
+      final String name = capitalize( field.getName( ) );
+      Method getter = method( type, "get" + name, 0 );
+      if ( getter == null && boolean.class.equals( field.getType( ) ) ) {
+        getter = method( type, "is" + name, 0 );
+      }
+      try {
+        if ( getter != null ) {
+          return MethodHandles.publicLookup( ).unreflect( getter ).asType( GETTER_TYPE );
+        }
+        field.setAccessible( true );
+        return MethodHandles.lookup( ).unreflectGetter( field ).asType( GETTER_TYPE );
+      } catch ( final IllegalAccessException | RuntimeException e ) {
+        return null;
+      }
+    }
+
+    @Nullable
+    private static MethodHandle setter( final Class<?> type, final Field field ) {
+      if ( Modifier.isFinal( field.getModifiers( ) ) ) {
+        return null;
+      }
+      final Method setter = method( type, "set" + capitalize( field.getName( ) ), 1 );
+      try {
+        if ( setter != null && setter.getParameterTypes( )[ 0 ].isAssignableFrom( field.getType( ) ) ) {
+          return MethodHandles.publicLookup( ).unreflect( setter ).asType( SETTER_TYPE );
+        }
+        field.setAccessible( true );
+        return MethodHandles.lookup( ).unreflectSetter( field ).asType( SETTER_TYPE );
+      } catch ( final IllegalAccessException | RuntimeException e ) {
+        return null;
+      }
+    }
+
+    /**
+     * Find an accessor by name, accessors for properties such as "aValue" may not capitalize the property name.
+     */
+    @Nullable
+    private static Method method( final Class<?> type, final String name, final int parameterCount ) {
+      Method caseInsensitiveMatch = null;
+      for ( final Method method : type.getMethods( ) ) {
+        if ( method.getName( ).equalsIgnoreCase( name ) &&
+            method.getParameterTypes( ).length == parameterCount &&
+            !Modifier.isStatic( method.getModifiers( ) ) ) {
+          if ( method.getName( ).equals( name ) ) {
+            return method;
+          } else if ( caseInsensitiveMatch == null ) {
+            caseInsensitiveMatch = method;
+          }
+        }
+      }
+      return caseInsensitiveMatch;
+    }
+  }
+}
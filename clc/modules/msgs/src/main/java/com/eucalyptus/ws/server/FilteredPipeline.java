@@ -83,6 +83,7 @@ import com.eucalyptus.system.Ats;
 import com.eucalyptus.util.Filterable;
 import com.eucalyptus.util.HasName;
 import com.eucalyptus.util.dns.DomainNames;
+import com.google.common.base.Optional;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
@@ -113,6 +114,11 @@ public abstract class FilteredPipeline implements HasName<FilteredPipeline>, Fil
     protected Supplier<Set<Name>> getNameSupplier() {
       return internalNameSupplier;
     }
+
+    @Override
+    Set<Name> getHostNames( ) {
+      return new NamesSupplier( componentId ).get( );
+    }
   }
   
   public FilteredPipeline( ) {}
@@ -145,20 +151,107 @@ public abstract class FilteredPipeline implements HasName<FilteredPipeline>, Fil
     return this.getName( ).compareTo( this.getName( ) );
   }
 
+  /**
+   * Route for requests this pipeline can accept, used to index pipelines for dispatch.
+   *
+   * Pipelines without a route are checked for every request.
+   *
+   * @see Route
+   */
+  public Optional<Route> getRoute( ) {
+    return Optional.absent( );
+  }
+
   protected boolean resolvesByHost( @Nullable final String host ) {
-    boolean match = false;
+    final Optional<Name> hostName = hostName( host );
+    return hostName.isPresent( ) && getNameSupplier( ).get( ).contains( hostName.get( ) );
+  }
+
+  protected Supplier<Set<Name>> getNameSupplier( ) {
+    return nameSupplier;
+  }
+
+  /**
+   * Names this pipeline resolves by host, computed for each call.
+   */
+  Set<Name> getHostNames( ) {
+    return new NamesSupplier( getClass( ) ).get( );
+  }
+
+  /**
+   * The absolute name for a host header value, the port is ignored.
+   */
+  static Optional<Name> hostName( @Nullable final String host ) {
+    Optional<Name> hostName = Optional.absent( );
     if ( host != null ) try {
-      final Name hostName =
-          Name.fromString( Iterables.getFirst( hostSplitter.split( host ), host ) );
-      match = getNameSupplier( ).get( ).contains( DomainNames.absolute( hostName ) );
+      hostName = Optional.of( DomainNames.absolute(
+          Name.fromString( Iterables.getFirst( hostSplitter.split( host ), host ) ) ) );
     } catch ( TextParseException e ) {
       Logs.exhaust( ).error( "Invalid host: " + host, e );
     }
-    return match;
+    return hostName;
   }
 
-  protected Supplier<Set<Name>> getNameSupplier( ) {
-    return nameSupplier;
+  /**
+   * Describes the requests a pipeline may accept.
+   *
+   * A pipeline with a route must only accept requests with a SOAPAction header
+   * permitted by the route and either a path matching one of the route path
+   * prefixes or suffixes or a host that resolves for the pipeline. The
+   * pipeline still checks each request routed to it.
+   */
+  public static final class Route {
+    private final boolean soapRequests;
+    private final boolean queryRequests;
+    private final Set<String> pathPrefixes;
+    private final Set<String> pathSuffixes;
+
+    private Route( final boolean soapRequests,
+                   final boolean queryRequests,
+                   final Set<String> pathPrefixes,
+                   final Set<String> pathSuffixes ) {
+      this.soapRequests = soapRequests;
+      this.queryRequests = queryRequests;
+      this.pathPrefixes = ImmutableSet.copyOf( pathPrefixes );
+      this.pathSuffixes = ImmutableSet.copyOf( pathSuffixes );
+    }
+
+    /**
+     * Route for requests with a SOAPAction header and a path ending with one of the given suffixes.
+     */
+    public static Route soap( final Set<String> pathSuffixes ) {
+      return new Route( true, false, Collections.<String>emptySet( ), pathSuffixes );
+    }
+
+    /**
+     * Route for requests without a SOAPAction header and a path starting with one of the given prefixes.
+     */
+    public static Route query( final Set<String> pathPrefixes ) {
+      return new Route( false, true, pathPrefixes, Collections.<String>emptySet( ) );
+    }
+
+    /**
+     * Route for requests with or without a SOAPAction header and a path starting with one of the given prefixes.
+     */
+    public static Route any( final Set<String> pathPrefixes ) {
+      return new Route( true, true, pathPrefixes, Collections.<String>emptySet( ) );
+    }
+
+    public boolean isSoapRequests( ) {
+      return soapRequests;
+    }
+
+    public boolean isQueryRequests( ) {
+      return queryRequests;
+    }
+
+    public Set<String> getPathPrefixes( ) {
+      return pathPrefixes;
+    }
+
+    public Set<String> getPathSuffixes( ) {
+      return pathSuffixes;
+    }
   }
 
   private static class NamesSupplier implements Supplier<Set<Name>> {
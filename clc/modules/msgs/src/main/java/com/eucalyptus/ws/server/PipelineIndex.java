@@ -0,0 +1,156 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.annotation.Nullable;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.xbill.DNS.Name;
+import com.eucalyptus.ws.server.FilteredPipeline.Route;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Index of pipelines by route for request dispatch.
+ *
+ * The candidates for a request are the pipelines without a route and the
+ * pipelines with a route matching the request path or host. Candidates are
+ * checked in the order the pipelines were indexed, so the accepting pipeline
+ * is the one a check of each pipeline in turn would find.
+ */
+class PipelineIndex {
+  private final List<FilteredPipeline> pipelines;
+  private final BitSet unrouted;
+  private final BitSet soapRequests;
+  private final BitSet queryRequests;
+  private final PathIndex prefixes;
+  private final PathIndex suffixes;
+  private final Map<Name,BitSet> hosts;
+
+  PipelineIndex( final Iterable<? extends FilteredPipeline> pipelines ) {
+    this.pipelines = ImmutableList.copyOf( pipelines );
+    this.unrouted = new BitSet( this.pipelines.size( ) );
+    this.soapRequests = new BitSet( this.pipelines.size( ) );
+    this.queryRequests = new BitSet( this.pipelines.size( ) );
+    this.prefixes = new PathIndex( true );
+    this.suffixes = new PathIndex( false );
+    this.hosts = Maps.newHashMap( );
+    for ( int index = 0; index < this.pipelines.size( ); index++ ) {
+      final FilteredPipeline pipeline = this.pipelines.get( index );
+      final Optional<Route> route = pipeline.getRoute( );
+      if ( route.isPresent( ) ) {
+        soapRequests.set( index, route.get( ).isSoapRequests( ) );
+        queryRequests.set( index, route.get( ).isQueryRequests( ) );
+        prefixes.add( route.get( ).getPathPrefixes( ), index );
+        suffixes.add( route.get( ).getPathSuffixes( ), index );
+        for ( final Name name : pipeline.getHostNames( ) ) {
+          bits( hosts, name ).set( index );
+        }
+      } else {
+        unrouted.set( index );
+      }
+    }
+  }
+
+  /**
+   * Find the pipeline accepting the request.
+   *
+   * @return The accepting pipeline or null
+   */
+  @Nullable
+  FilteredPipeline find( final HttpRequest request ) {
+    final String uri = request.getUri( );
+    final BitSet routed = new BitSet( pipelines.size( ) );
+    prefixes.match( uri, routed );
+    suffixes.match( uri, routed );
+    if ( !hosts.isEmpty( ) ) {
+      final Optional<Name> host = FilteredPipeline.hostName( request.getHeader( HttpHeaders.Names.HOST ) );
+      final BitSet hostRouted = host.isPresent( ) ? hosts.get( host.get( ) ) : null;
+      if ( hostRouted != null ) {
+        routed.or( hostRouted );
+      }
+    }
+    routed.and( request.containsHeader( "SOAPAction" ) ? soapRequests : queryRequests );
+    routed.or( unrouted );
+    for ( int index = routed.nextSetBit( 0 ); index >= 0; index = routed.nextSetBit( index + 1 ) ) {
+      final FilteredPipeline pipeline = pipelines.get( index );
+      if ( pipeline.checkAccepts( request ) ) {
+        return pipeline;
+      }
+    }
+    return null;
+  }
+
+  int size( ) {
+    return pipelines.size( );
+  }
+
+  private static <K> BitSet bits( final Map<K,BitSet> bitsMap, final K key ) {
+    BitSet bits = bitsMap.get( key );
+    if ( bits == null ) {
+      bits = new BitSet( );
+      bitsMap.put( key, bits );
+    }
+    return bits;
+  }
+
+  /**
+   * Paths by length so a uri is matched with one lookup for each distinct path length.
+   */
+  private static final class PathIndex {
+    private final boolean prefix;
+    private final Map<String,BitSet> paths = Maps.newHashMap( );
+    private final Set<Integer> lengthSet = new TreeSet<>( );
+    private int[] lengths = new int[ 0 ];
+
+    private PathIndex( final boolean prefix ) {
+      this.prefix = prefix;
+    }
+
+    private void add( final Set<String> routePaths, final int index ) {
+      for ( final String path : routePaths ) {
+        bits( paths, path ).set( index );
+        if ( lengthSet.add( path.length( ) ) ) {
+          lengths = new int[ lengthSet.size( ) ];
+          int lengthIndex = 0;
+          for ( final Integer length : lengthSet ) {
+            lengths[ lengthIndex++ ] = length;
+          }
+        }
+      }
+    }
+
+    private void match( final String uri, final BitSet matched ) {
+      for ( final int length : lengths ) {
+        if ( length > uri.length( ) ) {
+          break;
+        }
+        final BitSet bits = paths.get( prefix ?
+            uri.substring( 0, length ) :
+            uri.substring( uri.length( ) - length ) );
+        if ( bits != null ) {
+          matched.or( bits );
+        }
+      }
+    }
+  }
+}
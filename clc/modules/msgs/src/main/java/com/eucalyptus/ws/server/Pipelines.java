@@ -66,8 +66,11 @@ import static com.eucalyptus.auth.principal.TemporaryAccessKey.TemporaryKeyType;
 import java.lang.reflect.Modifier;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.regex.Pattern;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.log4j.Logger;
@@ -101,7 +104,11 @@ import com.eucalyptus.ws.handlers.HmacHandler;
 import com.eucalyptus.ws.protocol.BaseQueryBinding;
 import com.eucalyptus.ws.protocol.OperationParameter;
 import com.eucalyptus.ws.protocol.SoapHandler;
+import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.cloud.entities.SystemConfiguration;
@@ -116,6 +123,7 @@ public class Pipelines {
   private static final Map<Class<? extends ComponentId>, ChannelPipelineFactory> clientPipelines   = Maps.newHashMap( );
   //GRZE:TODO: this is not happy ==> {@link DomainNames}
   private static final Supplier<String> subDomain = () -> SystemConfiguration.getSystemConfiguration( ).getDnsDomain( );
+  private static volatile Routing routing;
 
   /**
    * Returns the ChannelPipelineFactory for the {@code compId} else {@code null} if none was discovered.
@@ -157,45 +165,109 @@ public class Pipelines {
    * @return an accepting pipeline else {@code null}
    */
   private static FilteredPipeline findAccepting( final HttpRequest request ) {
-    for ( final FilteredPipeline f : pipelines ) {
-      if ( f.checkAccepts( request ) ) {
-        return f;
-      }
+    final Routing routing = routing( );
+    final FilteredPipeline pipeline = routing.pipelines.find( request );
+    if ( pipeline != null ) {
+      return pipeline;
     }
 
     final String hostHeader = request.getHeader( HttpHeaders.Names.HOST );
-    if ( hostHeader != null && ( hostHeader.contains( "amazonaws.com" ) || hostHeader.contains( subDomain.get( ) ) ) ) {
+    if ( hostHeader != null && ( hostHeader.contains( "amazonaws.com" ) || hostHeader.contains( routing.dnsDomain ) ) ) {
       final String host = hostHeader.indexOf( ':' ) > 0 ? hostHeader.substring( 0, hostHeader.indexOf( ':' ) ) : hostHeader;
+      final boolean soap = request.containsHeader( "SOAPAction" );
       LOG.debug( "Trying to intercept request for " + hostHeader );
+      for ( final HostRoute route : routing.hostRoutes ) {
+        if ( route.soap == soap && route.matches( host ) ) {
+          LOG.debug( "Intercepting: " + hostHeader + " using " + route.pipeline.getClass( ) );
+          return route.pipeline;
+        }
+      }
+    }
+
+    return routing.internalPipelines.find( request );
+  }
+
+  /**
+   * The current routing, rebuilt when pipelines are registered or the DNS domain changes.
+   */
+  private static Routing routing( ) {
+    final String dnsDomain = subDomain.get( );
+    Routing current = routing;
+    if ( current == null || !Objects.equals( current.dnsDomain, dnsDomain ) ) {
+      synchronized ( Pipelines.class ) {
+        current = routing;
+        if ( current == null || !Objects.equals( current.dnsDomain, dnsDomain ) ) {
+          routing = current = new Routing( dnsDomain, pipelines, internalPipelines );
+          LOG.debug( "Indexed " + current.pipelines.size( ) + " pipelines and " +
+              current.internalPipelines.size( ) + " internal pipelines for " + dnsDomain );
+        }
+      }
+    }
+    return current;
+  }
+
+  private static void register( final Set<FilteredPipeline> pipelineSet, final FilteredPipeline pipeline ) {
+    synchronized ( Pipelines.class ) {
+      pipelineSet.add( pipeline );
+      routing = null;
+    }
+  }
+
+  private static final class Routing {
+    private final String dnsDomain;
+    private final PipelineIndex pipelines;
+    private final List<HostRoute> hostRoutes;
+    private final PipelineIndex internalPipelines;
+
+    private Routing( final String dnsDomain,
+                     final Set<FilteredPipeline> pipelines,
+                     final Set<FilteredPipeline> internalPipelines ) {
+      this.dnsDomain = dnsDomain;
+      this.pipelines = new PipelineIndex( pipelines );
+      this.internalPipelines = new PipelineIndex( internalPipelines );
+      final List<HostRoute> hostRoutes = Lists.newArrayList( );
       for ( final FilteredPipeline f : pipelines ) {
         if ( Ats.from( f ).has( ComponentPart.class ) ) {
-          Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
-          ComponentId compId = ComponentIds.lookup( compIdClass );
+          final Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
           if ( Ats.from( compIdClass ).has( PublicService.class ) ) {
-            if ( request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) == null ) {
-              continue;//Skip pipeline which doesn't handle SOAP for this SOAP request
-            } else if ( !request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null ) {
-              continue;//Skip pipeline which handles SOAP for this non-SOAP request
-            }
-            LOG.debug( "Maybe intercepting: " + hostHeader + " using " + f.getClass( ) );
-            if ( Ats.from( compIdClass ).has( AwsServiceName.class )
-                && host.matches( "[\\w\\.-_]*" + compId.getAwsServiceName( ) + "(?:\\.[\\w\\-]+)?\\.amazonaws.com" ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${region}.amazonaws.com
-            } else if ( host.matches( "[\\w\\.-_]*" + compId.name( ) + "\\." + subDomain.get( ) ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${system.dns.dnsdomain}
+            try {
+              hostRoutes.add( new HostRoute( f, ComponentIds.lookup( compIdClass ), dnsDomain ) );
+            } catch ( final RuntimeException e ) {
+              LOG.error( "Error routing by host for pipeline " + f.getName( ), e );
             }
           }
         }
       }
+      this.hostRoutes = ImmutableList.copyOf( hostRoutes );
     }
+  }
 
-    for ( final FilteredPipeline f : internalPipelines ) {
-      if ( f.checkAccepts( request ) ) {
-        return f;
-      }
+  /**
+   * Host patterns for a public service pipeline, for requests to ${service}.${region}.amazonaws.com or
+   * ${service}.${system.dns.dnsdomain}
+   */
+  private static final class HostRoute {
+    private final FilteredPipeline pipeline;
+    private final boolean soap;
+    private final Pattern awsHostPattern;
+    private final Pattern hostPattern;
+
+    private HostRoute( final FilteredPipeline pipeline, final ComponentId compId, final String dnsDomain ) {
+      final ChannelPipeline handlers = Channels.pipeline( );
+      pipeline.addHandlers( handlers );
+      this.pipeline = pipeline;
+      this.soap = handlers.get( SoapHandler.class ) != null;
+      this.awsHostPattern = Ats.from( compId.getClass( ) ).has( AwsServiceName.class ) ?
+          Pattern.compile( "[\\w\\.-_]*" + compId.getAwsServiceName( ) + "(?:\\.[\\w\\-]+)?\\.amazonaws.com" ) :
+          null;
+      this.hostPattern = Pattern.compile( "[\\w\\.-_]*" + compId.name( ) + "\\." + dnsDomain );
     }
 
-    return null;
+    private boolean matches( final String host ) {
+      return
+          ( awsHostPattern != null && awsHostPattern.matcher( host ).matches( ) ) ||
+          hostPattern.matcher( host ).matches( );
+    }
   }
 
   /**
@@ -208,8 +280,8 @@ public class Pipelines {
     @Override
     public boolean load( ) throws Exception {
       for ( final ComponentId comp : ComponentIds.list( ) ) {
-        Pipelines.internalPipelines.add( new InternalQueryPipeline( comp ) );
-        Pipelines.internalPipelines.add( new InternalSoapPipeline( comp ) );
+        Pipelines.register( Pipelines.internalPipelines, new InternalQueryPipeline( comp ) );
+        Pipelines.register( Pipelines.internalPipelines, new InternalSoapPipeline( comp ) );
       }
       return true;
     }
@@ -230,7 +302,7 @@ public class Pipelines {
           final ComponentId compId = Ats.from( candidate ).get( ComponentPart.class ).value( ).newInstance( );
           final Class<? extends FilteredPipeline> pipelineClass = candidate;
           final FilteredPipeline pipeline = Classes.newInstance( pipelineClass );
-          Pipelines.pipelines.add( pipeline );
+          Pipelines.register( Pipelines.pipelines, pipeline );
           return true;
         } catch ( final Exception ex ) {
           LOG.trace( ex, ex );
@@ -284,6 +356,11 @@ public class Pipelines {
       return "internal-soap-pipeline-" + this.serviceName.toLowerCase( ) + "-" + this.servicePath;
     }
 
+    @Override
+    public Optional<Route> getRoute( ) {
+      return Optional.of( Route.soap( ImmutableSet.of( this.servicePath, this.internalServicePath ) ) );
+    }
+
     @Override
     public ChannelPipeline addHandlers( final ChannelPipeline pipeline ) {
       pipeline.addLast( "deserialize", Handlers.soapMarshalling( ) );
@@ -369,6 +446,11 @@ public class Pipelines {
       return "internal-query-pipeline-" + this.serviceName.toLowerCase( ) + "-" + this.servicePath;
     }
 
+    @Override
+    public Optional<Route> getRoute( ) {
+      return Optional.of( Route.any( ImmutableSet.of( this.servicePath, this.internalServicePath ) ) );
+    }
+
     @Override
     public ChannelPipeline addHandlers( final ChannelPipeline pipeline ) {
       pipeline.addLast( "hmac-v2-verify",  new HmacHandler( EnumSet.of(TemporaryKeyType.Role, TemporaryKeyType.Access, TemporaryKeyType.Session) ) );
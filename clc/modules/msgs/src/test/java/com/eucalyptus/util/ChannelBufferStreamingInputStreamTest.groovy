@@ -0,0 +1,77 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util
+
+import static org.junit.Assert.*
+import org.jboss.netty.buffer.ChannelBuffers
+import org.jboss.netty.channel.Channel
+import org.junit.Test
+
+/**
+ *
+ */
+class ChannelBufferStreamingInputStreamTest {
+
+  @Test
+  void testReadChunks( ) {
+    ChannelBufferStreamingInputStream stream =
+        new ChannelBufferStreamingInputStream( ChannelBuffers.copiedBuffer( "abc".bytes ) )
+    stream.putChunk( ChannelBuffers.copiedBuffer( "def".bytes ) )
+    stream.putChunk( ChannelBuffers.copiedBuffer( "ghi".bytes ) )
+    byte[] read = new byte[ 9 ]
+    assertEquals( "bytes read", 9, stream.read( read, 0, 9 ) )
+    assertEquals( "content", "abcdefghi", new String( read ) )
+    assertEquals( "total bytes read", 9, stream.readBytes( ) )
+  }
+
+  @Test
+  void testChannelSuspendedAndResumed( ) {
+    boolean readable = true
+    Channel channel = [
+        isReadable: { readable },
+        setReadable: { boolean value -> readable = value; null }
+    ] as Channel
+    ChannelBufferStreamingInputStream stream =
+        new ChannelBufferStreamingInputStream( ChannelBuffers.copiedBuffer( [ 0 ] as byte[] ) )
+    int chunks = ChannelBufferStreamingInputStream.QUEUE_SIZE.intdiv( 2 ) + 1
+    ( 1..chunks ).each { stream.putChunk( ChannelBuffers.copiedBuffer( [ 0 ] as byte[] ), channel ) }
+    assertFalse( "channel suspended", readable )
+
+    byte[] read = new byte[ chunks ]
+    assertEquals( "bytes read", chunks, stream.read( read, 0, chunks ) )
+    assertTrue( "channel resumed", readable )
+  }
+
+  @Test
+  void testChannelResumedOnClose( ) {
+    boolean readable = true
+    Channel channel = [
+        isReadable: { readable },
+        setReadable: { boolean value -> readable = value; null }
+    ] as Channel
+    ChannelBufferStreamingInputStream stream =
+        new ChannelBufferStreamingInputStream( ChannelBuffers.copiedBuffer( [ 0 ] as byte[] ) )
+    int chunks = ChannelBufferStreamingInputStream.QUEUE_SIZE.intdiv( 2 ) + 1
+    ( 1..chunks ).each { stream.putChunk( ChannelBuffers.copiedBuffer( [ 0 ] as byte[] ), channel ) }
+    assertFalse( "channel suspended", readable )
+    stream.close( )
+    assertTrue( "channel resumed", readable )
+  }
+}
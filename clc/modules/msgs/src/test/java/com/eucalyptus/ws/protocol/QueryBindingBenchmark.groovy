@@ -0,0 +1,63 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.ws.protocol
+
+import com.eucalyptus.http.MappingHttpRequest
+import org.jboss.netty.handler.codec.http.HttpMethod
+import org.jboss.netty.handler.codec.http.HttpVersion
+import org.junit.Ignore
+import org.junit.Test
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Binds query requests for simple, list and embedded message types using the
+ * test binding from BaseQueryBindingTest.
+ */
+@Ignore("Manual benchmark")
+class QueryBindingBenchmark {
+
+  private static final int BINDS = 200000
+  private static final int ITERATIONS = 5
+
+  private static final Map<String,String> URLS = [
+      simple: "/service?Action=SingleSimpleTypes&NativeBooleanValue=true&BooleanValue=false&DateValue=2000-01-01T00:00:00.000Z&NativeDoubleValue=13.333&DoubleValue=12.111&NativeIntegerValue=17&IntegerValue=1&NativeLongValue=9999&LongValue=333333333333&StringValue=texthere",
+      list: "/service?Action=MultipleSimpleTypes&BooleanValue.1=false&BooleanValue.2=true&DateValue.1=2000-01-01T00:00:00.000Z&DoubleValue.1=12.111&IntegerValue.1=1&IntegerValue.2=2&IntegerValue.3=3&LongValue.1=333333333333&StringValue.1=a&StringValue.2=b&StringValue.3=c",
+      embedded: "/service?Operation=HttpEmbeddedAnnotated&Data.1.embeddedMember.1=a&Data.1.embeddedMember.2=b&Data.1.embeddedMember.3=c&Data.1.embeddedInts.1=3&Data.1.embeddedInts.2=2&Data.1.embeddedInts.3=1" +
+          "&Data.2.embeddedMember.1=z&Data.2.embeddedMember.2=y&Data.2.embeddedMember.3=x&Data.2.embeddedInts.1=1&Data.2.embeddedInts.2=2&Data.2.embeddedInts.3=3",
+  ]
+
+  private static long run( BaseQueryBinding binding, String url ) {
+    long before = System.nanoTime( )
+    for ( int i = 0; i < BINDS; i++ ) {
+      binding.bind( new MappingHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.GET, url ) )
+    }
+    TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - before )
+  }
+
+  @Test
+  void benchmarkBind( ) {
+    BaseQueryBinding binding = new TestQueryBinding( new BaseQueryBindingTest.TestBinding( ) )
+    URLS.each { String name, String url ->
+      run( binding, url ) // warm up
+      long total = 0
+      for ( int i = 0; i < ITERATIONS; i++ ) {
+        total += run( binding, url )
+      }
+      println "${name}: ${total / ITERATIONS}ms per ${BINDS} binds"
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xbill.DNS.Name;
+import com.eucalyptus.util.Strings;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares dispatch of requests across the pipelines for all services by
+ * checking each pipeline in turn and by the pipeline index.
+ */
+@Ignore("Manual benchmark")
+public class PipelineDispatchBenchmark {
+
+  private static final int SERVICES = 40;
+  private static final int REQUESTS = 10_000;
+  private static final int DISPATCHES = 1_000_000;
+  private static final int ITERATIONS = 5;
+
+  private interface Dispatcher {
+    FilteredPipeline find( HttpRequest request );
+  }
+
+  private static List<FilteredPipeline> pipelines( ) throws Exception {
+    final List<FilteredPipeline> pipelines = Lists.newArrayList( );
+    for ( int i = 0; i < SERVICES; i++ ) {
+      final String service = "service" + i;
+      final Set<String> paths = ImmutableSet.of( "/services/" + service, "/internal/" + service );
+      pipelines.add( new RoutedPipeline( service + "-query", service, FilteredPipeline.Route.query( paths ) ) );
+      pipelines.add( new RoutedPipeline( service + "-soap", service, FilteredPipeline.Route.soap( paths ) ) );
+    }
+    return pipelines;
+  }
+
+  private static List<HttpRequest> requests( ) {
+    final Random random = new Random( 7 );
+    final List<HttpRequest> requests = Lists.newArrayList( );
+    for ( int i = 0; i < REQUESTS; i++ ) {
+      final String service = "service" + random.nextInt( SERVICES );
+      final HttpRequest request;
+      switch ( random.nextInt( 3 ) ) {
+        case 0:
+          request = new DefaultHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, "/services/" + service );
+          request.setHeader( "SOAPAction", "" );
+          break;
+        case 1:
+          request = new DefaultHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.GET, "/services/" + service + "?Action=Describe" );
+          break;
+        default:
+          request = new DefaultHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, "/" );
+          request.setHeader( HttpHeaders.Names.HOST, service + ".localhost:8773" );
+      }
+      requests.add( request );
+    }
+    return requests;
+  }
+
+  private static long run( final Dispatcher dispatcher, final List<HttpRequest> requests ) {
+    final long before = System.nanoTime( );
+    for ( int i = 0; i < DISPATCHES; i++ ) {
+      if ( dispatcher.find( requests.get( i % requests.size( ) ) ) == null ) {
+        throw new IllegalStateException( "No pipeline for request " + requests.get( i % requests.size( ) ).getUri( ) );
+      }
+    }
+    return TimeUnit.NANOSECONDS.toMillis( System.nanoTime( ) - before );
+  }
+
+  private static void report( final String name, final Dispatcher dispatcher ) throws Exception {
+    final List<HttpRequest> requests = requests( );
+    run( dispatcher, requests ); // warm up
+    long total = 0;
+    for ( int i = 0; i < ITERATIONS; i++ ) {
+      total += run( dispatcher, requests );
+    }
+    System.out.println( name + ": " + ( total / ITERATIONS ) + "ms per " + DISPATCHES + " dispatches across " +
+        ( SERVICES * 2 ) + " pipelines" );
+  }
+
+  @Test
+  public void benchmarkLinearScan( ) throws Exception {
+    final List<FilteredPipeline> pipelines = pipelines( );
+    report( "linear-scan", new Dispatcher( ) {
+      @Override
+      public FilteredPipeline find( final HttpRequest request ) {
+        for ( final FilteredPipeline pipeline : pipelines ) {
+          if ( pipeline.checkAccepts( request ) ) {
+            return pipeline;
+          }
+        }
+        return null;
+      }
+    } );
+  }
+
+  @Test
+  public void benchmarkIndex( ) throws Exception {
+    final PipelineIndex index = new PipelineIndex( pipelines( ) );
+    report( "index", new Dispatcher( ) {
+      @Override
+      public FilteredPipeline find( final HttpRequest request ) {
+        return index.find( request );
+      }
+    } );
+  }
+
+  /**
+   * Pipeline with the accept checks of the query and SOAP service pipelines.
+   */
+  private static final class RoutedPipeline extends FilteredPipeline {
+    private final String name;
+    private final Route route;
+    private final Supplier<Set<Name>> names;
+
+    private RoutedPipeline( final String name, final String service, final Route route ) throws Exception {
+      this.name = name;
+      this.route = route;
+      this.names = Suppliers.<Set<Name>>ofInstance( ImmutableSet.of( Name.fromString( service + ".localhost." ) ) );
+    }
+
+    @Override
+    public String getName( ) {
+      return name;
+    }
+
+    @Override
+    public Optional<Route> getRoute( ) {
+      return Optional.of( route );
+    }
+
+    @Override
+    public boolean checkAccepts( final HttpRequest message ) {
+      final boolean usesServicePath =
+          Iterables.any( route.getPathPrefixes( ), Strings.isPrefixOf( message.getUri( ) ) ) ||
+          Iterables.any( route.getPathSuffixes( ), Strings.isSuffixOf( message.getUri( ) ) );
+      final boolean noPath = message.getUri( ).isEmpty( ) || message.getUri( ).equals( "/" ) || message.getUri( ).startsWith( "/?" );
+      return
+          message.getHeaderNames( ).contains( "SOAPAction" ) == route.isSoapRequests( ) &&
+          ( usesServicePath || ( noPath && resolvesByHost( message.getHeader( HttpHeaders.Names.HOST ) ) ) );
+    }
+
+    @Override
+    public ChannelPipeline addHandlers( final ChannelPipeline pipeline ) {
+      return pipeline;
+    }
+
+    @Override
+    protected Supplier<Set<Name>> getNameSupplier( ) {
+      return names;
+    }
+
+    @Override
+    Set<Name> getHostNames( ) {
+      return names.get( );
+    }
+  }
+}
@@ -0,0 +1,144 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.junit.Test;
+import org.xbill.DNS.Name;
+import com.eucalyptus.util.Strings;
+import com.eucalyptus.ws.server.FilteredPipeline.Route;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+public class PipelineIndexTest {
+
+  @Test
+  public void testPathRoutes( ) throws Exception {
+    final TestPipeline compute = new TestPipeline( "compute", Route.query( ImmutableSet.of( "/services/compute" ) ) );
+    final TestPipeline computeSoap = new TestPipeline( "compute-soap", Route.soap( ImmutableSet.of( "/services/compute" ) ) );
+    final TestPipeline euare = new TestPipeline( "euare", Route.any( ImmutableSet.of( "/services/Euare" ) ) );
+    final PipelineIndex index = new PipelineIndex( ImmutableList.of( compute, computeSoap, euare ) );
+
+    assertSame( compute, index.find( request( "/services/compute?Action=DescribeInstances", null, false ) ) );
+    assertSame( computeSoap, index.find( request( "/services/compute", null, true ) ) );
+    assertSame( euare, index.find( request( "/services/Euare/", null, true ) ) );
+    assertSame( euare, index.find( request( "/services/Euare?Action=ListUsers", null, false ) ) );
+    assertNull( index.find( request( "/services/compute/", null, true ) ) );
+    assertNull( index.find( request( "/services/other", null, false ) ) );
+  }
+
+  @Test
+  public void testHostRoutes( ) throws Exception {
+    final TestPipeline compute = new TestPipeline( "compute", Route.query( ImmutableSet.of( "/services/compute" ) ) );
+    final TestPipeline euare = new TestPipeline( "euare", Route.query( ImmutableSet.of( "/services/Euare" ) ) );
+    final PipelineIndex index = new PipelineIndex( ImmutableList.of( compute, euare ) );
+
+    assertSame( euare, index.find( request( "/", "euare.localhost:8773", false ) ) );
+    assertSame( compute, index.find( request( "/?Action=DescribeInstances", "Compute.localhost", false ) ) );
+    assertNull( index.find( request( "/", "euare.localhost", true ) ) );
+    assertNull( index.find( request( "/", "other.localhost", false ) ) );
+  }
+
+  @Test
+  public void testUnroutedOrder( ) throws Exception {
+    final TestPipeline first = new TestPipeline( "first", Route.query( ImmutableSet.of( "/services/first" ) ) );
+    final TestPipeline unrouted = new TestPipeline( "unrouted", null );
+    final TestPipeline last = new TestPipeline( "last", Route.query( ImmutableSet.of( "/services" ) ) );
+    final PipelineIndex index = new PipelineIndex( ImmutableList.of( first, unrouted, last ) );
+
+    assertSame( first, index.find( request( "/services/first", null, false ) ) );
+    assertSame( unrouted, index.find( request( "/services/unrouted", null, false ) ) );
+    assertSame( unrouted, index.find( request( "/services/first", null, true ) ) );
+  }
+
+  private static HttpRequest request( final String uri, @Nullable final String host, final boolean soap ) {
+    final HttpRequest request = new DefaultHttpRequest( HttpVersion.HTTP_1_1, HttpMethod.POST, uri );
+    if ( host != null ) {
+      request.setHeader( HttpHeaders.Names.HOST, host );
+    }
+    if ( soap ) {
+      request.setHeader( "SOAPAction", "" );
+    }
+    return request;
+  }
+
+  /**
+   * Pipeline accepting the requests its route describes, or any request for a service path
+   * when there is no route.
+   */
+  private static final class TestPipeline extends FilteredPipeline {
+    private final String name;
+    private final Route route;
+    private final Set<Name> names;
+
+    private TestPipeline( final String name, @Nullable final Route route ) throws Exception {
+      this.name = name;
+      this.route = route;
+      this.names = Collections.singleton( Name.fromString( name + ".localhost." ) );
+    }
+
+    @Override
+    public String getName( ) {
+      return name;
+    }
+
+    @Override
+    public Optional<Route> getRoute( ) {
+      return Optional.fromNullable( route );
+    }
+
+    @Override
+    public boolean checkAccepts( final HttpRequest message ) {
+      if ( route == null ) {
+        return message.getUri( ).startsWith( "/services/" );
+      }
+      final boolean soap = message.containsHeader( "SOAPAction" );
+      return ( soap ? route.isSoapRequests( ) : route.isQueryRequests( ) ) && (
+          Iterables.any( route.getPathPrefixes( ), Strings.isPrefixOf( message.getUri( ) ) ) ||
+          Iterables.any( route.getPathSuffixes( ), Strings.isSuffixOf( message.getUri( ) ) ) ||
+          resolvesByHost( message.getHeader( HttpHeaders.Names.HOST ) ) );
+    }
+
+    @Override
+    public ChannelPipeline addHandlers( final ChannelPipeline pipeline ) {
+      return pipeline;
+    }
+
+    @Override
+    protected Supplier<Set<Name>> getNameSupplier( ) {
+      return Suppliers.ofInstance( names );
+    }
+
+    @Override
+    Set<Name> getHostNames( ) {
+      return names;
+    }
+  }
+}
@@ -23,10 +23,13 @@ package com.eucalyptus.objectstorage.client;
 import java.util.Date;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.Protocol;
 import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.internal.StaticCredentialsProvider;
+import com.amazonaws.metrics.RequestMetricCollector;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.S3ClientOptions;
 
@@ -39,6 +42,7 @@ public class OsgInternalS3Client {
   private static final int CONNECTION_TIMEOUT_MS = 500; // 500ms connection timeout, fail fast
   private static final int OSG_SOCKET_TIMEOUT_MS = 10 * 1000; // 10 sec socket timeout if no data
   private static final int OSG_MAX_CONNECTIONS = 512; // Lots of connections since this is for the whole OSG
+  private static final long OSG_CONNECTION_MAX_IDLE_MS = 60 * 1000; // close pooled connections idle for a minute
   private static final String SIGNER_OVERRIDE =
       System.getProperty( "com.eucalyptus.objectstorage.client.signerType", "S3SignerType" );
 
@@ -48,8 +52,24 @@ public class OsgInternalS3Client {
   private Date instantiated;
   private volatile String endpoint;
   private volatile AWSCredentials currentCredentials;
+  private final int maxConnections;
+  private final long connectionMaxIdleMillis;
+  private final RequestMetricCollector metricCollector;
 
   public OsgInternalS3Client(AWSCredentials credentials, String endpoint, boolean https, boolean useDns) {
+    this(credentials, endpoint, https, useDns, OSG_MAX_CONNECTIONS, OSG_CONNECTION_MAX_IDLE_MS, null);
+  }
+
+  /**
+   * @param maxConnections size of the client's HTTP connection pool
+   * @param connectionMaxIdleMillis time after which idle pooled (keep-alive) connections are closed
+   * @param metricCollector optional collector for per-request metrics, including connection pool usage
+   */
+  public OsgInternalS3Client(AWSCredentials credentials, String endpoint, boolean https, boolean useDns, int maxConnections,
+      long connectionMaxIdleMillis, @Nullable RequestMetricCollector metricCollector) {
+    this.maxConnections = maxConnections;
+    this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+    this.metricCollector = metricCollector;
     update(credentials, endpoint, https, useDns);
   }
 
@@ -91,12 +111,14 @@ public class OsgInternalS3Client {
     config.setConnectionTimeout(CONNECTION_TIMEOUT_MS); // very short timeout
     config.setSocketTimeout(OSG_SOCKET_TIMEOUT_MS);
     config.setUseReaper(true);
-    config.setMaxConnections(OSG_MAX_CONNECTIONS);
+    config.setMaxConnections(maxConnections);
+    config.setConnectionMaxIdleMillis(connectionMaxIdleMillis);
+    config.setUseTcpKeepAlive(true);
     Protocol protocol = https ? Protocol.HTTPS : Protocol.HTTP;
     config.setProtocol(protocol);
     config.setSignerOverride(SIGNER_OVERRIDE);
     this.clientConfig = config;
-    this.s3Client = new AmazonS3Client(credentials, config);
+    this.s3Client = new AmazonS3Client(new StaticCredentialsProvider(credentials), config, metricCollector);
     this.ops = new S3ClientOptions().withPathStyleAccess(!useDns);
     this.s3Client.setS3ClientOptions(ops);
     this.instantiated = new Date();
@@ -130,4 +152,11 @@ public class OsgInternalS3Client {
   public Date getInstantiated() {
     return instantiated;
   }
+
+  /**
+   * Release the client's connections and threads. The client must not be used afterwards.
+   */
+  public void shutdown() {
+    s3Client.shutdown();
+  }
 }
@@ -0,0 +1,234 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.client;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+import org.apache.log4j.Logger;
+
+import com.amazonaws.Request;
+import com.amazonaws.Response;
+import com.amazonaws.auth.AWSCredentials;
+import com.amazonaws.metrics.RequestMetricCollector;
+import com.amazonaws.util.AWSRequestMetrics;
+import com.amazonaws.util.TimingInfo;
+import com.eucalyptus.util.metrics.MonitoredAction;
+import com.eucalyptus.util.metrics.ThruputMetrics;
+
+/**
+ * Pool of backend clients shared across requests, keyed by credentials, endpoint and connection settings.
+ *
+ * Each client holds its own HTTP connection pool so reusing clients keeps keep-alive connections (and TLS sessions) to the backend across
+ * requests. Clients that are not used for the idle timeout are removed from the pool and shut down after the same period again, so that
+ * responses still streaming from a removed client can complete.
+ */
+public class OsgInternalS3ClientPool {
+  private static final Logger LOG = Logger.getLogger(OsgInternalS3ClientPool.class);
+  private static final long MAINTENANCE_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+  private final Map<Key, PooledClient> clients = new ConcurrentHashMap<>();
+  private final Queue<PooledClient> retired = new ConcurrentLinkedQueue<>();
+  private final Lock maintenanceLock = new ReentrantLock();
+  private final AtomicInteger created = new AtomicInteger();
+  private volatile long lastMaintenance = System.currentTimeMillis();
+
+  /**
+   * Get a pooled client for the given settings, creating one if necessary.
+   *
+   * @param clientIdleMillis time after which an unused client is removed from the pool
+   */
+  public OsgInternalS3Client get(@Nonnull final AWSCredentials credentials, @Nonnull final String endpoint, final boolean https,
+      final boolean useDns, final int maxConnections, final long connectionMaxIdleMillis, final long clientIdleMillis) {
+    final long now = System.currentTimeMillis();
+    final Key key = new Key(credentials, endpoint, https, useDns, maxConnections, connectionMaxIdleMillis);
+    PooledClient pooled = clients.get(key);
+    if (pooled == null) {
+      synchronized (clients) {
+        pooled = clients.get(key);
+        if (pooled == null) {
+          final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+          pooled = new PooledClient(new OsgInternalS3Client(credentials, endpoint, https, useDns, maxConnections, connectionMaxIdleMillis,
+              metrics), metrics);
+          clients.put(key, pooled);
+          created.incrementAndGet();
+          LOG.debug("Created backend client for endpoint " + endpoint + ", pool size " + clients.size());
+        }
+      }
+    }
+    pooled.lastUsed = now;
+    if (now - lastMaintenance > MAINTENANCE_INTERVAL) {
+      maintain(now, clientIdleMillis);
+    }
+    return pooled.client;
+  }
+
+  /**
+   * Shut down all clients, including any retired clients that are still within their grace period.
+   */
+  public void flush() {
+    synchronized (clients) {
+      for (final PooledClient pooled : clients.values()) {
+        retired.add(pooled);
+      }
+      clients.clear();
+    }
+    PooledClient pooled;
+    while ((pooled = retired.poll()) != null) {
+      shutdown(pooled);
+    }
+  }
+
+  public int size() {
+    return clients.size();
+  }
+
+  void maintain(final long now, final long clientIdleMillis) {
+    if (!maintenanceLock.tryLock()) {
+      return;
+    }
+    try {
+      lastMaintenance = now;
+      long leased = 0;
+      long available = 0;
+      synchronized (clients) {
+        for (final Iterator<PooledClient> it = clients.values().iterator(); it.hasNext();) {
+          final PooledClient pooled = it.next();
+          if (now - pooled.lastUsed > clientIdleMillis) {
+            it.remove();
+            pooled.retiredAt = now;
+            retired.add(pooled);
+          } else {
+            leased += pooled.metrics.leased.get();
+            available += pooled.metrics.available.get();
+          }
+        }
+      }
+      for (final Iterator<PooledClient> it = retired.iterator(); it.hasNext();) {
+        final PooledClient pooled = it.next();
+        if (now - pooled.retiredAt > clientIdleMillis) {
+          it.remove();
+          shutdown(pooled);
+        }
+      }
+      ThruputMetrics.addDataPoint(MonitoredAction.BACKEND_CLIENT_CREATED, created.getAndSet(0));
+      ThruputMetrics.addDataPoint(MonitoredAction.BACKEND_CLIENT_POOL_SIZE, clients.size());
+      ThruputMetrics.addDataPoint(MonitoredAction.BACKEND_CONNECTIONS_ACTIVE, leased);
+      ThruputMetrics.addDataPoint(MonitoredAction.BACKEND_CONNECTIONS_IDLE, available);
+    } catch (final Exception e) {
+      LOG.warn("Error maintaining backend client pool", e);
+    } finally {
+      maintenanceLock.unlock();
+    }
+  }
+
+  private static void shutdown(final PooledClient pooled) {
+    try {
+      pooled.client.shutdown();
+    } catch (final Exception e) {
+      LOG.debug("Error shutting down backend client", e);
+    }
+  }
+
+  private static final class PooledClient {
+    private final OsgInternalS3Client client;
+    private final ConnectionPoolMetrics metrics;
+    private volatile long lastUsed;
+    private volatile long retiredAt;
+
+    private PooledClient(final OsgInternalS3Client client, final ConnectionPoolMetrics metrics) {
+      this.client = client;
+      this.metrics = metrics;
+    }
+  }
+
+  /**
+   * Records the connection pool usage reported by the SDK with each request.
+   */
+  private static final class ConnectionPoolMetrics extends RequestMetricCollector {
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+
+    @Override
+    public void collectMetrics(final Request<?> request, final Response<?> response) {
+      final AWSRequestMetrics requestMetrics = request.getAWSRequestMetrics();
+      final TimingInfo timingInfo = requestMetrics == null ? null : requestMetrics.getTimingInfo();
+      if (timingInfo != null) {
+        final Number leasedCount = timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolLeasedCount.name());
+        final Number availableCount = timingInfo.getCounter(AWSRequestMetrics.Field.HttpClientPoolAvailableCount.name());
+        if (leasedCount != null) {
+          leased.set(leasedCount.longValue());
+        }
+        if (availableCount != null) {
+          available.set(availableCount.longValue());
+        }
+      }
+    }
+  }
+
+  private static final class Key {
+    private final String accessKey;
+    private final String secretKey;
+    private final String endpoint;
+    private final boolean https;
+    private final boolean useDns;
+    private final int maxConnections;
+    private final long connectionMaxIdleMillis;
+
+    private Key(final AWSCredentials credentials, final String endpoint, final boolean https, final boolean useDns, final int maxConnections,
+        final long connectionMaxIdleMillis) {
+      this.accessKey = credentials.getAWSAccessKeyId();
+      this.secretKey = credentials.getAWSSecretKey();
+      this.endpoint = endpoint;
+      this.https = https;
+      this.useDns = useDns;
+      this.maxConnections = maxConnections;
+      this.connectionMaxIdleMillis = connectionMaxIdleMillis;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o)
+        return true;
+      if (o == null || getClass() != o.getClass())
+        return false;
+      final Key key = (Key) o;
+      return https == key.https && useDns == key.useDns && maxConnections == key.maxConnections
+          && connectionMaxIdleMillis == key.connectionMaxIdleMillis && Objects.equals(accessKey, key.accessKey)
+          && Objects.equals(secretKey, key.secretKey) && Objects.equals(endpoint, key.endpoint);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(accessKey, secretKey, endpoint, https, useDns, maxConnections, connectionMaxIdleMillis);
+    }
+  }
+}
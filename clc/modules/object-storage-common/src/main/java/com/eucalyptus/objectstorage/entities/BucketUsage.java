@@ -0,0 +1,117 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.objectstorage.entities;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Table;
+
+import com.eucalyptus.entities.AbstractPersistent;
+
+/**
+ * Object count and size totals for a bucket, used for quota enforcement.
+ *
+ * Totals include objects and parts that are creating or extant, matching
+ * the sums from the object and part metadata managers.
+ */
+@Entity
+@PersistenceContext(name = "eucalyptus_osg")
+@Table(name = "bucket_usage", indexes = {
+    @Index(name = "IDX_bucket_usage_owner_canonical_id", columnList = "owner_canonical_id"),
+    @Index(name = "IDX_bucket_usage_owner_iam_user_id", columnList = "owner_iam_user_id")
+})
+public class BucketUsage extends AbstractPersistent {
+  private static final long serialVersionUID = 1L;
+
+  @Column(name = "bucket_uuid", unique = true, nullable = false)
+  private String bucketUuid;
+
+  @Column(name = "owner_canonical_id")
+  private String ownerCanonicalId;
+
+  @Column(name = "owner_iam_user_id")
+  private String ownerIamUserId;
+
+  @Column(name = "object_count", nullable = false)
+  private Long objectCount;
+
+  @Column(name = "total_size", nullable = false)
+  private Long totalSize;
+
+  public BucketUsage() {}
+
+  public static BucketUsage forBucket(Bucket bucket) {
+    BucketUsage usage = new BucketUsage();
+    usage.setBucketUuid(bucket.getBucketUuid());
+    usage.setOwnerCanonicalId(bucket.getOwnerCanonicalId());
+    usage.setOwnerIamUserId(bucket.getOwnerIamUserId());
+    usage.setObjectCount(0L);
+    usage.setTotalSize(0L);
+    return usage;
+  }
+
+  public BucketUsage withUuid(String bucketUuid) {
+    this.setBucketUuid(bucketUuid);
+    return this;
+  }
+
+  public String getBucketUuid() {
+    return bucketUuid;
+  }
+
+  public void setBucketUuid(String bucketUuid) {
+    this.bucketUuid = bucketUuid;
+  }
+
+  public String getOwnerCanonicalId() {
+    return ownerCanonicalId;
+  }
+
+  public void setOwnerCanonicalId(String ownerCanonicalId) {
+    this.ownerCanonicalId = ownerCanonicalId;
+  }
+
+  public String getOwnerIamUserId() {
+    return ownerIamUserId;
+  }
+
+  public void setOwnerIamUserId(String ownerIamUserId) {
+    this.ownerIamUserId = ownerIamUserId;
+  }
+
+  public Long getObjectCount() {
+    return objectCount;
+  }
+
+  public void setObjectCount(Long objectCount) {
+    this.objectCount = objectCount;
+  }
+
+  public Long getTotalSize() {
+    return totalSize;
+  }
+
+  public void setTotalSize(Long totalSize) {
+    this.totalSize = totalSize;
+  }
+}
@@ -67,6 +67,18 @@ public class S3ProviderConfiguration extends AbstractPersistent implements Cache
   private static final Boolean DEFAULT_BACKEND_HTTPS = false;
   @Transient
   private static final String DEFAULT_S3_HEAD_RESPONSE = "405";
+  @Transient
+  private static final String DEFAULT_PARALLEL_GET_THRESHOLD_MB = "64";
+  @Transient
+  private static final String DEFAULT_PARALLEL_GET_PART_SIZE_MB = "8";
+  @Transient
+  private static final String DEFAULT_PARALLEL_GET_CONCURRENCY = "4";
+  @Transient
+  private static final String DEFAULT_BACKEND_MAX_CONNECTIONS = "512";
+  @Transient
+  private static final String DEFAULT_BACKEND_CONNECTION_IDLE_SECS = "60";
+  @Transient
+  private static final String DEFAULT_BACKEND_CLIENT_IDLE_MINS = "10";
 
   @ConfigurableField(description = "External S3 endpoint.", displayName = "s3_endpoint", initial = "s3.amazonaws.com")
   @Column(name = "endpoint")
@@ -97,6 +109,41 @@ public class S3ProviderConfiguration extends AbstractPersistent implements Cache
   @Column(name = "endpoint_head_response")
   protected Integer S3EndpointHeadResponse;
 
+  @ConfigurableField(description = "Fetch large objects from the backend using concurrent ranged GETs.", displayName = "parallel_get_enabled",
+      initial = "false", type = ConfigurableFieldType.BOOLEAN)
+  @Column(name = "parallel_get_enabled")
+  protected Boolean ParallelGetEnabled;
+
+  @ConfigurableField(description = "Minimum size in MB of a GET response for it to be fetched in parallel from the backend.",
+      displayName = "parallel_get_threshold_mb", initial = DEFAULT_PARALLEL_GET_THRESHOLD_MB)
+  @Column(name = "parallel_get_threshold_mb")
+  protected Integer ParallelGetThresholdMB;
+
+  @ConfigurableField(description = "Size in MB of each ranged GET issued to the backend. Aligned to the object's multipart upload part size when known.",
+      displayName = "parallel_get_part_size_mb", initial = DEFAULT_PARALLEL_GET_PART_SIZE_MB)
+  @Column(name = "parallel_get_part_size_mb")
+  protected Integer ParallelGetPartSizeMB;
+
+  @ConfigurableField(description = "Maximum number of ranged GETs in flight per request. Bounds read-ahead memory to this many parts.",
+      displayName = "parallel_get_concurrency", initial = DEFAULT_PARALLEL_GET_CONCURRENCY)
+  @Column(name = "parallel_get_concurrency")
+  protected Integer ParallelGetConcurrency;
+
+  @ConfigurableField(description = "Maximum number of pooled HTTP connections to the service backend for each backend client.",
+      displayName = "backend_max_connections", initial = DEFAULT_BACKEND_MAX_CONNECTIONS)
+  @Column(name = "backend_max_connections")
+  protected Integer BackendMaxConnections;
+
+  @ConfigurableField(description = "Time in seconds after which idle keep-alive connections to the service backend are closed.",
+      displayName = "backend_connection_idle_secs", initial = DEFAULT_BACKEND_CONNECTION_IDLE_SECS)
+  @Column(name = "backend_connection_idle_secs")
+  protected Integer BackendConnectionIdleSecs;
+
+  @ConfigurableField(description = "Time in minutes after which an unused backend client is removed from the client pool.",
+      displayName = "backend_client_idle_mins", initial = DEFAULT_BACKEND_CLIENT_IDLE_MINS)
+  @Column(name = "backend_client_idle_mins")
+  protected Integer BackendClientIdleMins;
+
   public Boolean getS3UseBackendDns() {
     return S3UseBackendDns;
   }
@@ -162,11 +209,74 @@ public class S3ProviderConfiguration extends AbstractPersistent implements Cache
     S3EndpointHeadResponse = s3EndpointHeadResponse;
   }
 
+  public Boolean getParallelGetEnabled() {
+    return ParallelGetEnabled;
+  }
+
+  public void setParallelGetEnabled(Boolean parallelGetEnabled) {
+    ParallelGetEnabled = parallelGetEnabled;
+  }
+
+  public Integer getParallelGetThresholdMB() {
+    return ParallelGetThresholdMB;
+  }
+
+  public void setParallelGetThresholdMB(Integer parallelGetThresholdMB) {
+    ParallelGetThresholdMB = parallelGetThresholdMB;
+  }
+
+  public Integer getParallelGetPartSizeMB() {
+    return ParallelGetPartSizeMB;
+  }
+
+  public void setParallelGetPartSizeMB(Integer parallelGetPartSizeMB) {
+    ParallelGetPartSizeMB = parallelGetPartSizeMB;
+  }
+
+  public Integer getParallelGetConcurrency() {
+    return ParallelGetConcurrency;
+  }
+
+  public void setParallelGetConcurrency(Integer parallelGetConcurrency) {
+    ParallelGetConcurrency = parallelGetConcurrency;
+  }
+
+  public Integer getBackendMaxConnections() {
+    return BackendMaxConnections;
+  }
+
+  public void setBackendMaxConnections(Integer backendMaxConnections) {
+    BackendMaxConnections = backendMaxConnections;
+  }
+
+  public Integer getBackendConnectionIdleSecs() {
+    return BackendConnectionIdleSecs;
+  }
+
+  public void setBackendConnectionIdleSecs(Integer backendConnectionIdleSecs) {
+    BackendConnectionIdleSecs = backendConnectionIdleSecs;
+  }
+
+  public Integer getBackendClientIdleMins() {
+    return BackendClientIdleMins;
+  }
+
+  public void setBackendClientIdleMins(Integer backendClientIdleMins) {
+    BackendClientIdleMins = backendClientIdleMins;
+  }
+
   public S3ProviderConfiguration initializeDefaults() {
     this.setS3Endpoint(DEFAULT_S3_ENDPOINT);
     this.setS3UseBackendDns(DEFAULT_BACKEND_DNS);
     this.setS3UseHttps(DEFAULT_BACKEND_HTTPS);
     this.setS3EndpointHeadResponse(Integer.valueOf(DEFAULT_S3_HEAD_RESPONSE));
+    this.setParallelGetEnabled(Boolean.FALSE);
+    this.setParallelGetThresholdMB(Integer.valueOf(DEFAULT_PARALLEL_GET_THRESHOLD_MB));
+    this.setParallelGetPartSizeMB(Integer.valueOf(DEFAULT_PARALLEL_GET_PART_SIZE_MB));
+    this.setParallelGetConcurrency(Integer.valueOf(DEFAULT_PARALLEL_GET_CONCURRENCY));
+    this.setBackendMaxConnections(Integer.valueOf(DEFAULT_BACKEND_MAX_CONNECTIONS));
+    this.setBackendConnectionIdleSecs(Integer.valueOf(DEFAULT_BACKEND_CONNECTION_IDLE_SECS));
+    this.setBackendClientIdleMins(Integer.valueOf(DEFAULT_BACKEND_CLIENT_IDLE_MINS));
     return this;
   }
 
@@ -176,6 +286,27 @@ public class S3ProviderConfiguration extends AbstractPersistent implements Cache
     if (this.S3EndpointHeadResponse == null) {
       this.S3EndpointHeadResponse = Integer.valueOf(DEFAULT_S3_HEAD_RESPONSE);
     }
+    if (this.ParallelGetEnabled == null) {
+      this.ParallelGetEnabled = Boolean.FALSE;
+    }
+    if (this.ParallelGetThresholdMB == null) {
+      this.ParallelGetThresholdMB = Integer.valueOf(DEFAULT_PARALLEL_GET_THRESHOLD_MB);
+    }
+    if (this.ParallelGetPartSizeMB == null) {
+      this.ParallelGetPartSizeMB = Integer.valueOf(DEFAULT_PARALLEL_GET_PART_SIZE_MB);
+    }
+    if (this.ParallelGetConcurrency == null) {
+      this.ParallelGetConcurrency = Integer.valueOf(DEFAULT_PARALLEL_GET_CONCURRENCY);
+    }
+    if (this.BackendMaxConnections == null) {
+      this.BackendMaxConnections = Integer.valueOf(DEFAULT_BACKEND_MAX_CONNECTIONS);
+    }
+    if (this.BackendConnectionIdleSecs == null) {
+      this.BackendConnectionIdleSecs = Integer.valueOf(DEFAULT_BACKEND_CONNECTION_IDLE_SECS);
+    }
+    if (this.BackendClientIdleMins == null) {
+      this.BackendClientIdleMins = Integer.valueOf(DEFAULT_BACKEND_CLIENT_IDLE_MINS);
+    }
   }
 
   public static S3ProviderConfiguration getS3ProviderConfiguration() {
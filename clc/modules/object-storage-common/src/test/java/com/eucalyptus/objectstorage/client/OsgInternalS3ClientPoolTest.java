@@ -0,0 +1,76 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.amazonaws.auth.BasicAWSCredentials;
+
+public class OsgInternalS3ClientPoolTest {
+
+  private static final String ENDPOINT = "http://localhost:8773/";
+  private static final long IDLE = 60 * 1000;
+
+  @Test
+  public void testClientReused() {
+    OsgInternalS3ClientPool pool = new OsgInternalS3ClientPool();
+    try {
+      OsgInternalS3Client client = pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 16, IDLE, IDLE);
+      assertSame(client, pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 16, IDLE, IDLE));
+      assertEquals(1, pool.size());
+    } finally {
+      pool.flush();
+    }
+  }
+
+  @Test
+  public void testClientPerKey() {
+    OsgInternalS3ClientPool pool = new OsgInternalS3ClientPool();
+    try {
+      OsgInternalS3Client client = pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 16, IDLE, IDLE);
+      assertNotSame(client, pool.get(new BasicAWSCredentials("access2", "secret2"), ENDPOINT, false, false, 16, IDLE, IDLE));
+      assertNotSame(client, pool.get(new BasicAWSCredentials("access", "secret"), "http://otherhost:8773/", false, false, 16, IDLE, IDLE));
+      assertNotSame(client, pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 32, IDLE, IDLE));
+      assertEquals(4, pool.size());
+    } finally {
+      pool.flush();
+    }
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void testIdleClientEvicted() {
+    OsgInternalS3ClientPool pool = new OsgInternalS3ClientPool();
+    try {
+      OsgInternalS3Client client = pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 16, IDLE, IDLE);
+      pool.maintain(System.currentTimeMillis() + IDLE / 2, IDLE);
+      assertEquals(1, pool.size());
+      pool.maintain(System.currentTimeMillis() + IDLE * 2, IDLE);
+      assertEquals(0, pool.size());
+      assertNotSame(client, pool.get(new BasicAWSCredentials("access", "secret"), ENDPOINT, false, false, 16, IDLE, IDLE));
+    } finally {
+      pool.flush();
+    }
+  }
+}
@@ -55,6 +55,7 @@ import com.eucalyptus.objectstorage.exceptions.s3.AccountProblemException;
 import com.eucalyptus.objectstorage.exceptions.s3.InternalErrorException;
 import com.eucalyptus.objectstorage.exceptions.s3.NoSuchBucketException;
 import com.eucalyptus.objectstorage.exceptions.s3.S3Exception;
+import com.eucalyptus.objectstorage.metadata.BucketUsages;
 import com.eucalyptus.objectstorage.metadata.ObjectMetadataManager;
 import com.eucalyptus.objectstorage.msgs.CompleteMultipartUploadResponseType;
 import com.eucalyptus.objectstorage.msgs.CompleteMultipartUploadType;
@@ -536,7 +537,7 @@ public class ObjectFactoryImpl implements ObjectFactory {
       }
 
       // Object does not exist on backend, remove record
-      Transactions.delete(entity);
+      Transactions.delete(entity, BucketUsages.releaseObject());
 
     } catch (EucalyptusCloudException ex) {
       // Failed. Keep record so we can retry later
@@ -32,6 +32,7 @@ import com.eucalyptus.objectstorage.ObjectState;
 import com.eucalyptus.objectstorage.OsgObjectFactory;
 import com.eucalyptus.objectstorage.entities.ObjectEntity;
 import com.eucalyptus.objectstorage.entities.PartEntity;
+import com.eucalyptus.objectstorage.metadata.BucketUsages;
 import com.eucalyptus.objectstorage.providers.ObjectStorageProviders;
 import com.eucalyptus.util.EucalyptusCloudException;
 
@@ -148,7 +149,7 @@ public class ObjectReaperTask implements Runnable {
     // we don't care about the backend here, because the backend will handle GC'ing parts
     // on its own.
     try {
-      Transactions.delete(part);
+      Transactions.delete(part, BucketUsages.releasePart());
     } catch (TransactionException e) {
       LOG.error("Unable to drop part: " + part.getBucket().getBucketName() + " uploadId: " + part.getUploadId() + " partNumber: "
           + part.getPartNumber() + " uuid: " + part.getPartUuid());
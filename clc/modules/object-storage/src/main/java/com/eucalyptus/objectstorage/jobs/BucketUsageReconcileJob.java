@@ -0,0 +1,56 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.objectstorage.jobs;
+
+import org.apache.log4j.Logger;
+import org.quartz.InterruptableJob;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.UnableToInterruptJobException;
+
+import com.eucalyptus.bootstrap.Databases;
+import com.eucalyptus.objectstorage.metadata.BucketUsages;
+
+/*
+ * Corrects any drift in the bucket usage used for quota checks.
+ */
+public class BucketUsageReconcileJob implements InterruptableJob {
+
+  private static Logger LOG = Logger.getLogger(BucketUsageReconcileJob.class);
+
+  @Override
+  public void execute(JobExecutionContext context) throws JobExecutionException {
+    if ( Databases.isVolatile( ) ) {
+      LOG.warn( "Skipping job due to database not available" );
+      return;
+    }
+    try {
+      BucketUsages.reconcileAll();
+    } catch (Exception e) {
+      LOG.warn("Error reconciling bucket usage. Will retry later.", e);
+    }
+  }
+
+  @Override
+  public void interrupt() throws UnableToInterruptJobException {
+    // each bucket is reconciled in its own transaction, let the current run complete
+  }
+}
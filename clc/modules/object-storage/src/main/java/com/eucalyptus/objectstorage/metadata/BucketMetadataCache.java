@@ -0,0 +1,232 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.metadata;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.configurable.PropertyChangeListeners;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.objectstorage.BucketState;
+import com.eucalyptus.objectstorage.entities.Bucket;
+import com.eucalyptus.util.Pair;
+import com.eucalyptus.util.metrics.MonitoredAction;
+import com.eucalyptus.util.metrics.ThruputMetrics;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.Maps;
+
+/**
+ * Read-through cache for extant bucket metadata, keyed by bucket name and by
+ * bucket uuid.
+ *
+ * Entries are invalidated on this host after the bucket is updated via the
+ * metadata manager. Updates on other hosts are found by periodically checking
+ * the versions of recently updated buckets (by bucket uuid) so an entry may
+ * be stale for up to the version check interval.
+ *
+ * Cached buckets are shared and must not be modified.
+ */
+@ConfigurableClass(root = "objectstorage.bucket_cache", description = "Parameters controlling the bucket metadata cache.")
+public class BucketMetadataCache {
+  private static final Logger LOG = Logger.getLogger(BucketMetadataCache.class);
+
+  private static final String DEFAULT_CACHE = "maximumSize=1000, expireAfterWrite=1m";
+
+  @ConfigurableField(description = "Bucket metadata cache configuration, use maximumSize=0 to disable caching.", initial = DEFAULT_CACHE,
+      changeListener = PropertyChangeListeners.CacheSpecListener.class)
+  public static volatile String CACHE = DEFAULT_CACHE;
+
+  @ConfigurableField(description = "Interval between checks for buckets updated by other hosts (seconds).", initial = "2",
+      changeListener = PropertyChangeListeners.IsPositiveInteger.class)
+  public static volatile Integer VERSION_CHECK_INTERVAL = 2;
+
+  /**
+   * Version checks include buckets updated this long before the previous check to allow for clock differences between hosts.
+   */
+  private static final long VERSION_CHECK_OVERLAP = TimeUnit.SECONDS.toMillis(30);
+
+  /**
+   * If there was no version check for this long the cache is cleared rather than checked.
+   */
+  private static final long VERSION_CHECK_MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+  private static final AtomicReference<Pair<String, Cache<String, Bucket>>> cacheReference = new AtomicReference<>();
+  private static final AtomicLong invalidations = new AtomicLong();
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final Lock versionCheckLock = new ReentrantLock();
+  private static volatile long lastVersionCheck = 0;
+
+  /**
+   * Lookup a bucket by name using the cache.
+   *
+   * @param bucketName The bucket name
+   * @param loader Loads the bucket on a cache miss
+   */
+  static Bucket lookup(final String bucketName, final Callable<Bucket> loader) throws Exception {
+    return lookupByKey(nameKey(bucketName), loader);
+  }
+
+  /**
+   * Lookup a bucket by uuid using the cache.
+   *
+   * @param bucketUuid The bucket uuid
+   * @param loader Loads the bucket on a cache miss, buckets that are not extant are not cached
+   */
+  static Bucket lookupByUuid(final String bucketUuid, final Callable<Bucket> loader) throws Exception {
+    return lookupByKey(uuidKey(bucketUuid), loader);
+  }
+
+  /**
+   * Invalidate any cached metadata for the bucket, call after the update is committed.
+   */
+  static void invalidate(final Bucket bucket) {
+    invalidations.incrementAndGet();
+    final Cache<String, Bucket> cache = cache();
+    if (bucket.getBucketName() != null) {
+      cache.invalidate(nameKey(bucket.getBucketName()));
+    }
+    if (bucket.getBucketUuid() != null) {
+      cache.invalidate(uuidKey(bucket.getBucketUuid()));
+    }
+  }
+
+  static void invalidateAll() {
+    invalidations.incrementAndGet();
+    cache().invalidateAll();
+  }
+
+  private static Bucket lookupByKey(final String key, final Callable<Bucket> loader) throws Exception {
+    final Cache<String, Bucket> cache = cache();
+    checkVersions(cache);
+    Bucket bucket = cache.getIfPresent(key);
+    if (bucket != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+      final long invalidationsBeforeLoad = invalidations.get();
+      bucket = loader.call();
+      // do not cache if the bucket may have been updated during the load
+      if (bucket != null && BucketState.extant.equals(bucket.getState()) && invalidationsBeforeLoad == invalidations.get()) {
+        cache.put(key, bucket);
+      }
+    }
+    return bucket;
+  }
+
+  private static String nameKey(final String bucketName) {
+    return "name:" + bucketName;
+  }
+
+  private static String uuidKey(final String bucketUuid) {
+    return "uuid:" + bucketUuid;
+  }
+
+  /**
+   * Invalidate cached buckets that were updated elsewhere.
+   *
+   * Only one thread performs the check, other threads continue to use the
+   * cache while the check is in progress.
+   */
+  private static void checkVersions(final Cache<String, Bucket> cache) {
+    final long now = System.currentTimeMillis();
+    if (now - lastVersionCheck < TimeUnit.SECONDS.toMillis(VERSION_CHECK_INTERVAL) || !versionCheckLock.tryLock()) {
+      return;
+    }
+    try {
+      final long lastCheck = lastVersionCheck;
+      if (now - lastCheck < TimeUnit.SECONDS.toMillis(VERSION_CHECK_INTERVAL)) {
+        return;
+      }
+      if (now - lastCheck > VERSION_CHECK_MAX_AGE) {
+        invalidateAll();
+      } else if (cache.size() > 0) {
+        final Map<String, Pair<Integer, Date>> updated = Maps.newHashMap();
+        try (TransactionResource trans = Entities.transactionFor(Bucket.class)) {
+          @SuppressWarnings("unchecked")
+          final List<Object[]> rows =
+              (List<Object[]>) Entities.createCriteria(Bucket.class)
+                  .add(Restrictions.ge("lastUpdateTimestamp", new Date(lastCheck - VERSION_CHECK_OVERLAP)))
+                  .setProjection(Projections.projectionList().add(Projections.property("bucketUuid")).add(Projections.property("version"))
+                      .add(Projections.property("lastUpdateTimestamp"))).setReadOnly(true).list();
+          for (final Object[] row : rows) {
+            updated.put((String) row[0], Pair.pair((Integer) row[1], (Date) row[2]));
+          }
+          trans.commit();
+        }
+        long stale = 0;
+        for (final Map.Entry<String, Bucket> entry : cache.asMap().entrySet()) {
+          final Pair<Integer, Date> versionAndTimestamp = updated.get(entry.getValue().getBucketUuid());
+          if (versionAndTimestamp != null && !versionAndTimestamp.getLeft().equals(entry.getValue().getVersion())) {
+            invalidate(entry.getValue());
+            stale++;
+            ThruputMetrics.addDataPoint(MonitoredAction.BUCKET_CACHE_STALENESS, Math.max(0, now - versionAndTimestamp.getRight().getTime()));
+          }
+        }
+        ThruputMetrics.addDataPoint(MonitoredAction.BUCKET_CACHE_STALE, stale);
+      }
+      lastVersionCheck = now;
+      ThruputMetrics.addDataPoint(MonitoredAction.BUCKET_CACHE_HIT, hits.getAndSet(0));
+      ThruputMetrics.addDataPoint(MonitoredAction.BUCKET_CACHE_MISS, misses.getAndSet(0));
+    } catch (final Exception e) {
+      LOG.warn("Error checking cached bucket versions, clearing cache", e);
+      invalidateAll();
+    } finally {
+      versionCheckLock.unlock();
+    }
+  }
+
+  private static Cache<String, Bucket> cache() {
+    Cache<String, Bucket> cache;
+    final Pair<String, Cache<String, Bucket>> cachePair = cacheReference.get();
+    final String cacheSpec = CACHE;
+    if (cachePair == null || !cacheSpec.equals(cachePair.getLeft())) {
+      final Pair<String, Cache<String, Bucket>> newCachePair = Pair.pair(cacheSpec, cache(cacheSpec));
+      if (cacheReference.compareAndSet(cachePair, newCachePair)) {
+        cache = newCachePair.getRight();
+      } else {
+        cache = cacheReference.get().getRight();
+      }
+    } else {
+      cache = cachePair.getRight();
+    }
+    return cache;
+  }
+
+  private static Cache<String, Bucket> cache(final String cacheSpec) {
+    return CacheBuilder.from(CacheBuilderSpec.parse(cacheSpec)).build();
+  }
+}
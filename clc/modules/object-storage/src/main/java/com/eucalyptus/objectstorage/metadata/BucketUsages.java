@@ -0,0 +1,342 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.objectstorage.metadata;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+import javax.persistence.LockModeType;
+
+import org.apache.log4j.Logger;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.exception.ConstraintViolationException;
+
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.objectstorage.BucketMetadataManagers;
+import com.eucalyptus.objectstorage.BucketState;
+import com.eucalyptus.objectstorage.ObjectState;
+import com.eucalyptus.objectstorage.entities.Bucket;
+import com.eucalyptus.objectstorage.entities.BucketUsage;
+import com.eucalyptus.objectstorage.entities.ObjectEntity;
+import com.eucalyptus.objectstorage.entities.PartEntity;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Ledger of per-bucket object count and size used for quota checks.
+ *
+ * Usage is adjusted within the transaction that changes the state of an
+ * object or part so quota checks do not need to sum the sizes of all objects.
+ * The ledger is periodically reconciled against the actual sums to correct
+ * any drift, e.g. from records removed outside of the metadata managers.
+ */
+public class BucketUsages {
+  private static final Logger LOG = Logger.getLogger(BucketUsages.class);
+
+  /**
+   * States included in usage, as for ObjectMetadataManager#getTotalSize
+   */
+  private static final Set<ObjectState> COUNTED_STATES = EnumSet.of(ObjectState.creating, ObjectState.extant);
+
+  private static final Predicate<ObjectEntity> RELEASE_OBJECT = new Predicate<ObjectEntity>() {
+    @Override
+    public boolean apply(@Nullable ObjectEntity entity) {
+      if (entity != null) {
+        objectTransition(entity.getBucket(), entity.getState(), entity.getSize(), null, null);
+      }
+      return true;
+    }
+  };
+
+  private static final Predicate<PartEntity> RELEASE_PART = new Predicate<PartEntity>() {
+    @Override
+    public boolean apply(@Nullable PartEntity entity) {
+      if (entity != null) {
+        partTransition(entity.getBucket(), entity.getState(), entity.getSize(), null, null);
+      }
+      return true;
+    }
+  };
+
+  static boolean isCounted(@Nullable ObjectState state) {
+    return state != null && COUNTED_STATES.contains(state);
+  }
+
+  /**
+   * Precondition for deletion of an object record that releases its usage.
+   */
+  public static Predicate<ObjectEntity> releaseObject() {
+    return RELEASE_OBJECT;
+  }
+
+  /**
+   * Precondition for deletion of a part record that releases its usage.
+   */
+  public static Predicate<PartEntity> releasePart() {
+    return RELEASE_PART;
+  }
+
+  /**
+   * Create the empty usage record for a new bucket, must be called in the bucket creation transaction.
+   */
+  static void bucketCreated(Bucket bucket) {
+    Entities.persist(BucketUsage.forBucket(bucket));
+  }
+
+  /**
+   * Remove the usage record for a bucket, must be called in the bucket deletion transaction.
+   */
+  static void bucketDeleted(Bucket bucket) {
+    Entities.deleteAllMatching(BucketUsage.class, "WHERE bucketUuid = :bucketUuid",
+        ImmutableMap.of("bucketUuid", bucket.getBucketUuid()));
+  }
+
+  /**
+   * Adjust usage for an object state change, must be called in the transaction making the change.
+   *
+   * @param fromState The prior state or null for a new object
+   * @param toState The new state or null for a deleted object
+   */
+  static void objectTransition(Bucket bucket, @Nullable ObjectState fromState, @Nullable Long fromSize, @Nullable ObjectState toState,
+      @Nullable Long toSize) {
+    long objects = 0;
+    long size = 0;
+    if (isCounted(fromState)) {
+      objects--;
+      size -= Objects.firstNonNull(fromSize, 0L);
+    }
+    if (isCounted(toState)) {
+      objects++;
+      size += Objects.firstNonNull(toSize, 0L);
+    }
+    adjust(bucket, objects, size);
+  }
+
+  /**
+   * Adjust usage for a part state change, must be called in the transaction making the change.
+   *
+   * @param fromState The prior state or null for a new part
+   * @param toState The new state or null for a deleted part
+   */
+  static void partTransition(Bucket bucket, @Nullable ObjectState fromState, @Nullable Long fromSize, @Nullable ObjectState toState,
+      @Nullable Long toSize) {
+    long size = 0;
+    if (isCounted(fromState)) {
+      size -= Objects.firstNonNull(fromSize, 0L);
+    }
+    if (isCounted(toState)) {
+      size += Objects.firstNonNull(toSize, 0L);
+    }
+    adjust(bucket, 0, size);
+  }
+
+  /**
+   * Adjust usage for the bucket, must be called in the transaction making the change.
+   *
+   * If there is no usage record for the bucket this is a no-op, the record
+   * is created with the actual totals on first use.
+   */
+  static void adjust(Bucket bucket, long objects, long size) {
+    if (bucket != null && (objects != 0 || size != 0)) {
+      Entities.updateAllMatching(BucketUsage.class,
+          "SET objectCount = objectCount + :objects, totalSize = totalSize + :size WHERE bucketUuid = :bucketUuid",
+          ImmutableMap.of("objects", objects, "size", size, "bucketUuid", bucket.getBucketUuid()));
+    }
+  }
+
+  /**
+   * Get the usage for the bucket, creating the record from the actual totals if necessary.
+   */
+  public static BucketUsage getUsage(Bucket bucket) throws Exception {
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      BucketUsage usage = Entities.uniqueResult(new BucketUsage().withUuid(bucket.getBucketUuid()));
+      trans.commit();
+      return usage;
+    } catch (NoSuchElementException e) {
+      return reconcile(bucket);
+    }
+  }
+
+  /**
+   * Get the total size for buckets owned by the account with the given canonical id.
+   */
+  public static long getTotalSizeByOwner(String ownerCanonicalId) throws Exception {
+    final Optional<Long> size = ownerTotalSize("ownerCanonicalId", ownerCanonicalId);
+    return size.isPresent() ? size.get() : getTotalSize(BucketMetadataManagers.getInstance().lookupBucketsByOwner(ownerCanonicalId));
+  }
+
+  /**
+   * Get the total size for buckets owned by the user with the given IAM id.
+   */
+  public static long getTotalSizeByUser(String ownerIamUserId) throws Exception {
+    final Optional<Long> size = ownerTotalSize("ownerIamUserId", ownerIamUserId);
+    return size.isPresent() ? size.get() : getTotalSize(BucketMetadataManagers.getInstance().lookupBucketsByUser(ownerIamUserId));
+  }
+
+  /**
+   * Sum the usage records for the owner using the owner index.
+   *
+   * @return The total size, absent if there are fewer records than buckets (e.g. buckets created before usage was tracked)
+   */
+  private static Optional<Long> ownerTotalSize(String ownerProperty, String ownerId) throws Exception {
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      final Object[] usageTotals = (Object[]) Entities.createCriteria(BucketUsage.class).add(Restrictions.eq(ownerProperty, ownerId))
+          .setProjection(Projections.projectionList().add(Projections.rowCount()).add(Projections.sum("totalSize"))).setReadOnly(true)
+          .uniqueResult();
+      final long bucketCount = toLong(Entities.createCriteria(Bucket.class).add(Restrictions.eq(ownerProperty, ownerId))
+          .add(Restrictions.eq("state", BucketState.extant)).setProjection(Projections.rowCount()).setReadOnly(true).uniqueResult());
+      trans.commit();
+      return toLong(usageTotals[0]) >= bucketCount ? Optional.of(toLong(usageTotals[1])) : Optional.<Long>absent();
+    }
+  }
+
+  /**
+   * Get the total size for the given buckets, creating records from the actual totals if necessary.
+   */
+  public static long getTotalSize(Collection<Bucket> buckets) throws Exception {
+    if (buckets.isEmpty()) {
+      return 0;
+    }
+    final Map<String, BucketUsage> usageByBucketUuid = Maps.newHashMap();
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      final Set<String> bucketUuids = Sets.newHashSet();
+      for (Bucket bucket : buckets) {
+        bucketUuids.add(bucket.getBucketUuid());
+      }
+      final List<BucketUsage> usages =
+          (List<BucketUsage>) Entities.createCriteria(BucketUsage.class).add(Restrictions.in("bucketUuid", bucketUuids)).setReadOnly(true)
+              .list();
+      for (BucketUsage usage : usages) {
+        usageByBucketUuid.put(usage.getBucketUuid(), usage);
+      }
+      trans.commit();
+    }
+    long size = 0;
+    for (Bucket bucket : buckets) {
+      BucketUsage usage = usageByBucketUuid.get(bucket.getBucketUuid());
+      if (usage == null) {
+        usage = reconcile(bucket);
+      }
+      size += usage.getTotalSize();
+    }
+    return size;
+  }
+
+  /**
+   * Set the usage for the bucket from the actual totals.
+   *
+   * The usage record is locked while the totals are calculated so changes
+   * in progress are either included in the totals or applied afterwards.
+   *
+   * If the record is created concurrently the reconcile is repeated with
+   * the record created by the other transaction.
+   */
+  public static BucketUsage reconcile(Bucket bucket) throws Exception {
+    try {
+      return doReconcile(bucket);
+    } catch (Exception e) {
+      if (Exceptions.isCausedBy(e, ConstraintViolationException.class)) {
+        LOG.debug("Usage record for bucket " + bucket.getBucketUuid() + " created concurrently, reconciling existing record");
+        return doReconcile(bucket);
+      }
+      throw e;
+    }
+  }
+
+  private static BucketUsage doReconcile(Bucket bucket) throws Exception {
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      BucketUsage usage;
+      try {
+        usage = Entities.uniqueResult(new BucketUsage().withUuid(bucket.getBucketUuid()));
+        Entities.refresh(usage, LockModeType.PESSIMISTIC_WRITE);
+      } catch (NoSuchElementException e) {
+        usage = Entities.persist(BucketUsage.forBucket(bucket));
+      }
+
+      final Object[] objectTotals = (Object[]) countedCriteria(ObjectEntity.class, bucket).uniqueResult();
+      final Object[] partTotals = (Object[]) countedCriteria(PartEntity.class, bucket).uniqueResult();
+      final long objectCount = toLong(objectTotals[0]);
+      final long totalSize = toLong(objectTotals[1]) + toLong(partTotals[1]);
+      if (objectCount != usage.getObjectCount() || totalSize != usage.getTotalSize()) {
+        LOG.debug("Reconciled usage for bucket " + bucket.getBucketUuid() + " objects " + usage.getObjectCount() + " -> " + objectCount
+            + ", size " + usage.getTotalSize() + " -> " + totalSize);
+        usage.setObjectCount(objectCount);
+        usage.setTotalSize(totalSize);
+      }
+      trans.commit();
+      return usage;
+    }
+  }
+
+  /**
+   * Reconcile usage for all buckets and remove usage for buckets that are deleting or no longer exist.
+   */
+  public static void reconcileAll() throws Exception {
+    final Set<String> bucketUuids = Sets.newHashSet();
+    for (BucketState state : EnumSet.of(BucketState.creating, BucketState.extant)) {
+      for (Bucket bucket : BucketMetadataManagers.getInstance().lookupBucketsByState(state)) {
+        bucketUuids.add(bucket.getBucketUuid());
+        try {
+          reconcile(bucket);
+        } catch (Exception e) {
+          LOG.warn("Error reconciling usage for bucket " + bucket.getBucketUuid() + ". Will retry later.", e);
+        }
+      }
+    }
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      final List<String> orphanedBucketUuids = Lists.newArrayList();
+      for (BucketUsage usage : Entities.query(new BucketUsage(), true)) {
+        if (!bucketUuids.contains(usage.getBucketUuid())) {
+          orphanedBucketUuids.add(usage.getBucketUuid());
+        }
+      }
+      if (!orphanedBucketUuids.isEmpty()) {
+        Entities.deleteAllMatching(BucketUsage.class, "WHERE bucketUuid IN (:bucketUuids)",
+            ImmutableMap.of("bucketUuids", orphanedBucketUuids));
+      }
+      trans.commit();
+    }
+  }
+
+  private static Criteria countedCriteria(Class<?> entityClass, Bucket bucket) {
+    return Entities.createCriteria(entityClass).add(Restrictions.in("state", COUNTED_STATES))
+        .setProjection(Projections.projectionList().add(Projections.rowCount()).add(Projections.sum("size"))).setReadOnly(true)
+        .createCriteria("bucket").add(Restrictions.eq("naturalId", bucket.getNaturalId()));
+  }
+
+  private static long toLong(@Nullable Object value) {
+    return value == null ? 0 : ((Number) value).longValue();
+  }
+}
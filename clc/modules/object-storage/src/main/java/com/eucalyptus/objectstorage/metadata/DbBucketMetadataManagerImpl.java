@@ -23,6 +23,7 @@ package com.eucalyptus.objectstorage.metadata;
 import java.util.HashMap;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -68,9 +69,13 @@ import javaslang.control.Option;
 public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
   private static final Logger LOG = Logger.getLogger(DbBucketMetadataManagerImpl.class);
 
-  public void start() throws Exception {}
+  public void start() throws Exception {
+    BucketMetadataCache.invalidateAll();
+  }
 
-  public void stop() throws Exception {}
+  public void stop() throws Exception {
+    BucketMetadataCache.invalidateAll();
+  }
 
   @Override
   public Bucket persistBucketInCreatingState(@Nonnull String bucketName, @Nonnull AccessControlPolicy acp, @Nullable String iamUserId,
@@ -86,10 +91,15 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
   }
 
   @Override
-  public Bucket lookupExtantBucket(@Nonnull String bucketName) throws NoSuchEntityException, MetadataOperationFailureException {
+  public Bucket lookupExtantBucket(@Nonnull final String bucketName) throws NoSuchEntityException, MetadataOperationFailureException {
     try {
-      Bucket searchExample = new Bucket(bucketName).withState(BucketState.extant);
-      return Transactions.find(searchExample);
+      return BucketMetadataCache.lookup(bucketName, new Callable<Bucket>() {
+        @Override
+        public Bucket call() throws Exception {
+          Bucket searchExample = new Bucket(bucketName).withState(BucketState.extant);
+          return Transactions.find(searchExample);
+        }
+      });
     } catch (NoSuchElementException e) {
       throw new NoSuchEntityException(bucketName);
     } catch (Exception e) {
@@ -112,10 +122,15 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
   }
 
   @Override
-  public Bucket lookupBucketByUuid(@Nonnull String bucketUuid) throws NoSuchEntityException, MetadataOperationFailureException {
+  public Bucket lookupBucketByUuid(@Nonnull final String bucketUuid) throws NoSuchEntityException, MetadataOperationFailureException {
     try {
-      Bucket searchExample = new Bucket().withUuid(bucketUuid);
-      return Transactions.find(searchExample);
+      return BucketMetadataCache.lookupByUuid(bucketUuid, new Callable<Bucket>() {
+        @Override
+        public Bucket call() throws Exception {
+          Bucket searchExample = new Bucket().withUuid(bucketUuid);
+          return Transactions.find(searchExample);
+        }
+      });
     } catch (NoSuchElementException e) {
       throw new NoSuchEntityException(bucketUuid);
     } catch (Exception e) {
@@ -172,6 +187,8 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
       throw new NoSuchEntityException("Bucket entity not found for merge", e);
     } catch (Exception e) {
       throw new MetadataOperationFailureException(e);
+    } finally {
+      BucketMetadataCache.invalidate(bucket);
     }
   }
 
@@ -181,6 +198,7 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
       Bucket bucketToDelete = Entities.uniqueResult(bucket);
       if (BucketState.deleting.equals(bucketToDelete.getState())) {
         // Remove the record.
+        BucketUsages.bucketDeleted(bucketToDelete);
         Entities.delete(bucketToDelete);
       } else {
         throw new IllegalResourceStateException("Bucket not in deleting state, no valid transition to deleted", null,
@@ -282,7 +300,7 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
   protected Bucket setAcp(@Nonnull Bucket bucketEntity, @Nonnull String jsonMarshalledAcl) throws MetadataOperationFailureException,
       NoSuchEntityException {
     try (TransactionResource trans = Entities.transactionFor(Bucket.class)) {
-      Bucket bucket = Entities.merge(bucketEntity);
+      Bucket bucket = Entities.uniqueResult(new Bucket().withUuid(bucketEntity.getBucketUuid()));
       bucket.setAcl(jsonMarshalledAcl);
       trans.commit();
       return bucket;
@@ -291,6 +309,8 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
     } catch (Exception e) {
       LOG.error("Error updating acl for bucket " + bucketEntity.getBucketName(), e);
       throw new MetadataOperationFailureException(e);
+    } finally {
+      BucketMetadataCache.invalidate(bucketEntity);
     }
   }
 
@@ -298,7 +318,7 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
   public Bucket setAcp(@Nonnull Bucket bucketEntity, @Nonnull AccessControlPolicy acp) throws MetadataOperationFailureException,
       NoSuchEntityException {
     try (TransactionResource trans = Entities.transactionFor(Bucket.class)) {
-      Bucket bucket = Entities.merge(bucketEntity);
+      Bucket bucket = Entities.uniqueResult(new Bucket().withUuid(bucketEntity.getBucketUuid()));
       bucket.setAcl(acp);
       trans.commit();
       return bucket;
@@ -307,6 +327,8 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
     } catch (Exception e) {
       LOG.error("Error updating acl for bucket " + bucketEntity.getBucketName(), e);
       throw new MetadataOperationFailureException(e);
+    } finally {
+      BucketMetadataCache.invalidate(bucketEntity);
     }
   }
 
@@ -315,7 +337,7 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
       @Nullable String destPrefix) throws TransactionException, S3Exception {
     EntityTransaction db = Entities.get(Bucket.class);
     try {
-      Bucket bucket = Entities.uniqueResult(bucketEntity);
+      Bucket bucket = Entities.uniqueResult(new Bucket().withUuid(bucketEntity.getBucketUuid()));
       bucket.setLoggingEnabled(loggingEnabled);
       bucket.setTargetBucket(destBucket);
       bucket.setTargetPrefix(destPrefix);
@@ -330,6 +352,7 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
       if (db != null && db.isActive()) {
         db.rollback();
       }
+      BucketMetadataCache.invalidate(bucketEntity);
     }
   }
 
@@ -352,6 +375,8 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
     } catch (TransactionException e) {
       LOG.error("Transaction error updating versioning state for bucket " + bucketEntity.getBucketName(), e);
       throw new MetadataOperationFailureException(e);
+    } finally {
+      BucketMetadataCache.invalidate(bucketEntity);
     }
   }
 
@@ -380,6 +405,8 @@ public class DbBucketMetadataManagerImpl implements BucketMetadataManager {
       return bucket;
     } catch ( final NoSuchElementException e ) {
       throw new NoSuchEntityException(bucketEntity.getBucketName());
+    } finally {
+      BucketMetadataCache.invalidate( bucketEntity );
     }
   }
 
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -218,7 +219,7 @@ public class DbMpuPartMetadataManagerImpl implements MpuPartMetadataManager {
   @Override
   public void delete(final @Nonnull PartEntity objectToDelete) throws IllegalResourceStateException, MetadataOperationFailureException {
     try {
-      Transactions.delete(objectToDelete);
+      Transactions.delete(objectToDelete, BucketUsages.releasePart());
     } catch (MetadataOperationFailureException | IllegalResourceStateException e) {
       throw e;
     } catch (Exception e) {
@@ -252,11 +253,13 @@ public class DbMpuPartMetadataManagerImpl implements MpuPartMetadataManager {
       public boolean apply(String uploadId) {
         try (TransactionResource db = Entities.transactionFor(PartEntity.class)) {
           // Calculate the sum size of the parts to update the bucket size.
-          PartEntity searchExample = new PartEntity().withUploadId(uploadId).withState(ObjectState.extant);
+          PartEntity searchExample = new PartEntity().withUploadId(uploadId);
           long size =
               Objects.firstNonNull(
-                  (Number) Entities.createCriteria(PartEntity.class).add(Example.create(searchExample)).setProjection(Projections.sum("size"))
+                  (Number) Entities.createCriteria(PartEntity.class).add(Example.create(searchExample))
+                      .add(Restrictions.in("state", EnumSet.of(ObjectState.creating, ObjectState.extant))).setProjection(Projections.sum("size"))
                       .setReadOnly(true).uniqueResult(), 0).longValue();
+          BucketUsages.adjust(bucket, 0, -size);
 
           // Remove all part records with this upload id
           Entities.deleteAllMatching(PartEntity.class, "where part_number IS NOT NULL and upload_id=:uploadId",
@@ -283,6 +286,7 @@ public class DbMpuPartMetadataManagerImpl implements MpuPartMetadataManager {
       search = getSearchByBucket(search, bucket);
       List<PartEntity> uploads = search.list();
       for (PartEntity e : uploads) {
+        BucketUsages.releasePart().apply(e);
         Entities.delete(e);
       }
       db.commit();
@@ -33,6 +33,7 @@ import javax.persistence.EntityTransaction;
 
 import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
@@ -70,6 +71,12 @@ import com.google.common.base.Strings;
 public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
   private static final Logger LOG = Logger.getLogger(DbObjectMetadataManagerImpl.class);
 
+  /**
+   * The highest code point (U+10FFFF), its UTF-8 encoding sorts after that of any other character so with the
+   * database byte-wise collation it follows any key with the same prefix other than those that continue with it.
+   */
+  private static final String KEY_UPPER_BOUND = new String(Character.toChars(Character.MAX_CODE_POINT));
+
   public void start() throws Exception {
     LOG.trace("Starting DbObjectMetadataManager");
   }
@@ -355,6 +362,8 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
       deleteMarker.setOwnerIamUserId(owningUser.getUserId());
       deleteMarker.setAcl(acp);
       ObjectEntity persistedDeleteMarker = Entities.persist(deleteMarker);
+      BucketUsages.objectTransition(persistedDeleteMarker.getBucket(), null, null, persistedDeleteMarker.getState(),
+          persistedDeleteMarker.getSize());
       persistedDeleteMarker = ObjectMetadataManagers.getInstance().transitionObjectToState(persistedDeleteMarker, ObjectState.extant);
       trans.commit();
       return persistedDeleteMarker;
@@ -369,7 +378,7 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
     try {
       // Delete markers can be just removed not state transitioned.
       if (objectToDelete.getIsDeleteMarker()) {
-        Transactions.delete(objectToDelete);
+        Transactions.delete(objectToDelete, BucketUsages.releaseObject());
         return;
       }
 
@@ -662,15 +671,21 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
           searchObj.setIsDeleteMarker(false);
         }
 
-        Criteria objCriteria = Entities.createCriteria(ObjectEntity.class);
-        objCriteria.setReadOnly(true);
-        objCriteria.setFetchSize(queryStrideSize);
-        objCriteria.add(Example.create(searchObj));
-        objCriteria.addOrder(Order.asc("objectKey"));
-        objCriteria.addOrder(Order.desc("objectModifiedTimestamp"));
-        objCriteria.setMaxResults(queryStrideSize);
+        // Ensure not null.
+        if (Strings.isNullOrEmpty(prefix)) {
+          prefix = "";
+        }
+        if (Strings.isNullOrEmpty(delimiter)) {
+          delimiter = "";
+        }
+        boolean useDelimiter = !Strings.isNullOrEmpty(delimiter);
 
+        // Keyset position, the next page starts after this key (and version timestamp / id when set)
+        String afterKey = null;
+        Date afterTimestamp = null;
+        String afterId = null;
         if (!Strings.isNullOrEmpty(fromKeyMarker)) {
+          afterKey = fromKeyMarker;
           if (!Strings.isNullOrEmpty(fromVersionId)) {
             // Look for the key that matches the key-marker and version-id-marker
             ObjectEntity searchObject = new ObjectEntity(bucket, fromKeyMarker, fromVersionId);
@@ -687,63 +702,37 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
 
             // The result set should be exclusive of the key with the key-marker version-id-marker pair. Look for keys that chronologically
             // follow the version-id-marker for the given key-marker and also the keys that follow the key-marker.
-            objCriteria.add(Restrictions.or(
-                Restrictions.and(Restrictions.eq("objectKey", fromKeyMarker),
-                    Restrictions.lt("objectModifiedTimestamp", matchingObject.getObjectModifiedTimestamp())),
-                Restrictions.gt("objectKey", fromKeyMarker)));
-          } else { // No version-id-marker, just set the criteria the key-marker
-            objCriteria.add(Restrictions.gt("objectKey", fromKeyMarker));
+            afterTimestamp = matchingObject.getObjectModifiedTimestamp();
+            afterId = matchingObject.getNaturalId();
+          } else if (useDelimiter && fromKeyMarker.equals(commonPrefix(fromKeyMarker, prefix, delimiter))) {
+            // The key-marker is a common prefix from a previous page, skip all keys it collapses
+            afterKey = seekPastPrefix(fromKeyMarker, fromKeyMarker);
           }
-        } else {
-          // No criteria to be set
-        }
-
-        if (!Strings.isNullOrEmpty(prefix)) {
-          objCriteria.add(Restrictions.like("objectKey", prefix, MatchMode.START));
-        } else {
-          prefix = "";
-        }
-
-        objCriteria = getSearchByBucket(objCriteria, bucket);
-
-        // Ensure not null.
-        if (Strings.isNullOrEmpty(delimiter)) {
-          delimiter = "";
         }
 
         List<ObjectEntity> objectInfos = null;
         int resultKeyCount = 0;
-        String[] parts = null;
-        String prefixString = null;
-        boolean useDelimiter = !Strings.isNullOrEmpty(delimiter);
-        int pages = 0;
 
         // Iterate over result sets of size maxkeys + 1 since
         // commonPrefixes collapse the list, we may examine many more
-        // records than maxkeys + 1
+        // records than maxkeys + 1. Each page is a keyset query following
+        // the last record examined, once a common prefix is found the next
+        // page seeks past all keys with that prefix rather than reading them.
         do {
-          parts = null;
-          prefixString = null;
-
-          // Skip ahead the next page of 'queryStrideSize' results.
-          objCriteria.setFirstResult(pages++ * queryStrideSize);
-
-          objectInfos = (List<ObjectEntity>) objCriteria.list();
+          objectInfos = (List<ObjectEntity>) listingPageCriteria(bucket, searchObj, prefix, afterKey, afterTimestamp, afterId, queryStrideSize).list();
           if (objectInfos == null) {
             // nothing to do.
             break;
           }
 
           for (ObjectEntity objectRecord : objectInfos) {
+            afterKey = objectRecord.getObjectKey();
+            afterTimestamp = latestOnly ? null : objectRecord.getObjectModifiedTimestamp();
+            afterId = latestOnly ? null : objectRecord.getNaturalId();
             if (useDelimiter) {
               // Check if it will get aggregated as a commonprefix
-              // Split the substring with at least 2 matches as we need a result containing trailing strings. For instance
-              // if "x" is delimiter and key string is also "x", then this key should be included in common prefixes.
-              // "x".split("x") gives 0 strings which causes the subsequent logic to skip the key where as
-              // "x".split("x", 2) gives 2 empty strings which is what the logic expects
-              parts = objectRecord.getObjectKey().substring(prefix.length()).split(delimiter, 2);
-              if (parts.length > 1) {
-                prefixString = prefix + parts[0] + delimiter;
+              String prefixString = commonPrefix(objectRecord.getObjectKey(), prefix, delimiter);
+              if (prefixString != null) {
                 if (!prefixString.equals(fromKeyMarker) && !commonPrefixes.contains(prefixString)) {
                   if (resultKeyCount == maxEntries) {
                     // This is a new record, so we know
@@ -762,6 +751,9 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
                 } else {
                   // Already have this prefix, so skip
                 }
+                afterKey = seekPastPrefix(prefixString, objectRecord.getObjectKey());
+                afterTimestamp = null;
+                afterId = null;
                 continue;
               }
             }
@@ -778,11 +770,7 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
             result.setLastEntry(objectRecord);
             resultKeyCount++;
           }
-
-          if (resultKeyCount <= maxEntries && objectInfos.size() <= maxEntries) {
-            break;
-          }
-        } while (resultKeyCount <= maxEntries);
+        } while (resultKeyCount <= maxEntries && objectInfos.size() == queryStrideSize);
 
         // Sort the prefixes from the hashtable and add to the reply
         if (commonPrefixes != null) {
@@ -802,6 +790,94 @@ public class DbObjectMetadataManagerImpl implements ObjectMetadataManager {
     }
   }
 
+  /**
+   * Criteria for a page of a listing, ordered by key then newest version first.
+   *
+   * Versions with the same timestamp are ordered by (natural) id so a page boundary between them does not skip any.
+   *
+   * @param afterKey The (exclusive) key to list from, null for the first page
+   * @param afterTimestamp If not null, versions of afterKey older than this timestamp are included
+   * @param afterId If not null, versions of afterKey with afterTimestamp and a lower id are included
+   */
+  private static Criteria listingPageCriteria(final Bucket bucket, final ObjectEntity searchObj, final String prefix, final String afterKey,
+      final Date afterTimestamp, final String afterId, final int maxResults) {
+    Criteria objCriteria = Entities.createCriteria(ObjectEntity.class);
+    objCriteria.setReadOnly(true);
+    objCriteria.setFetchSize(maxResults);
+    objCriteria.add(Example.create(searchObj));
+    objCriteria.addOrder(Order.asc("objectKey"));
+    objCriteria.addOrder(Order.desc("objectModifiedTimestamp"));
+    objCriteria.addOrder(Order.desc("naturalId"));
+    objCriteria.setMaxResults(maxResults);
+
+    if (afterKey != null) {
+      if (afterTimestamp != null) {
+        Criterion afterVersion = Restrictions.lt("objectModifiedTimestamp", afterTimestamp);
+        if (afterId != null) {
+          afterVersion = Restrictions.or(afterVersion,
+              Restrictions.and(Restrictions.eq("objectModifiedTimestamp", afterTimestamp), Restrictions.lt("naturalId", afterId)));
+        }
+        objCriteria.add(Restrictions.or(
+            Restrictions.and(Restrictions.eq("objectKey", afterKey), afterVersion),
+            Restrictions.gt("objectKey", afterKey)));
+      } else {
+        objCriteria.add(Restrictions.gt("objectKey", afterKey));
+      }
+    }
+
+    if (!Strings.isNullOrEmpty(prefix)) {
+      objCriteria.add(Restrictions.like("objectKey", prefix, MatchMode.START));
+    }
+
+    return getSearchByBucket(objCriteria, bucket);
+  }
+
+  /**
+   * Get the key to continue a listing from to skip all keys with the given common prefix.
+   *
+   * Keys compare by their UTF-8 bytes, if the last key examined does not sort before the prefix followed by the upper
+   * bound (it continues with the highest code point) the listing continues from that key so it always moves forward.
+   *
+   * @param commonPrefix The common prefix to skip
+   * @param lastKey The last key examined, which has the common prefix
+   * @return The exclusive key to list from
+   */
+  static String seekPastPrefix(final String commonPrefix, final String lastKey) {
+    final String bound = commonPrefix + KEY_UPPER_BOUND;
+    return compareUtf8(bound, lastKey) > 0 ? bound : lastKey;
+  }
+
+  /**
+   * Compare strings in the order of their UTF-8 encodings, which is code point order.
+   */
+  static int compareUtf8(final String first, final String second) {
+    int firstIndex = 0;
+    int secondIndex = 0;
+    while (firstIndex < first.length() && secondIndex < second.length()) {
+      final int firstCodePoint = first.codePointAt(firstIndex);
+      final int secondCodePoint = second.codePointAt(secondIndex);
+      if (firstCodePoint != secondCodePoint) {
+        return Integer.compare(firstCodePoint, secondCodePoint);
+      }
+      firstIndex += Character.charCount(firstCodePoint);
+      secondIndex += Character.charCount(secondCodePoint);
+    }
+    return Integer.compare(first.length() - firstIndex, second.length() - secondIndex);
+  }
+
+  /**
+   * Get the common prefix for the given key, including the delimiter.
+   *
+   * @return The common prefix or null if the key does not contain the delimiter after the prefix
+   */
+  static String commonPrefix(final String objectKey, final String prefix, final String delimiter) {
+    if (!objectKey.startsWith(prefix)) {
+      return null;
+    }
+    final int index = objectKey.indexOf(delimiter, prefix.length());
+    return index < 0 ? null : objectKey.substring(0, index + delimiter.length());
+  }
+
   @Override
   public long countValid(Bucket bucket) throws Exception {
     try (TransactionResource trans = Entities.transactionFor(ObjectEntity.class)) {
@@ -80,6 +80,7 @@ public class MpuPartStateTransitions {
           initializedObject.setBucket(extantBucket);
           initializedObject.setState(ObjectState.creating);
           initializedObject.updateCreationExpiration();
+          BucketUsages.partTransition(extantBucket, null, null, ObjectState.creating, initializedObject.getSize());
           return Entities.persist(initializedObject);
         }
 
@@ -101,6 +102,8 @@ public class MpuPartStateTransitions {
           PartEntity updatingEntity = Entities.uniqueResult(new PartEntity().withUuid(entity.getPartUuid()));
           if (!ObjectState.deleting.equals(entity.getState())) {
             // Set the new part state
+            BucketUsages.partTransition(updatingEntity.getBucket(), updatingEntity.getState(), updatingEntity.getSize(), ObjectState.extant,
+                entity.getSize());
             updatingEntity.setState(ObjectState.extant);
             updatingEntity.setCreationExpiration(null);
             updatingEntity.setObjectModifiedTimestamp(entity.getObjectModifiedTimestamp());
@@ -149,6 +152,7 @@ public class MpuPartStateTransitions {
             entity = objectToUpdate;
           }
 
+          BucketUsages.partTransition(entity.getBucket(), entity.getState(), entity.getSize(), ObjectState.deleting, entity.getSize());
           entity.setState(ObjectState.deleting);
           return entity;
         } catch (NoSuchElementException e) {
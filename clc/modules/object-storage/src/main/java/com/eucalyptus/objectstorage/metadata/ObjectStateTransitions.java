@@ -82,6 +82,7 @@ public class ObjectStateTransitions {
           initializedObject.setBucket(extantBucket);
           initializedObject.setState(ObjectState.creating);
           initializedObject.updateCreationExpiration();
+          BucketUsages.objectTransition(extantBucket, null, null, ObjectState.creating, initializedObject.getSize());
           return Entities.persist(initializedObject);
         }
 
@@ -114,6 +115,8 @@ public class ObjectStateTransitions {
              */
 
             // Set the new object state
+            BucketUsages.objectTransition(updatingEntity.getBucket(), updatingEntity.getState(), updatingEntity.getSize(), ObjectState.extant,
+                entity.getSize());
             updatingEntity.setState(ObjectState.extant);
             updatingEntity.setCreationExpiration(null);
             updatingEntity.setObjectModifiedTimestamp(entity.getObjectModifiedTimestamp());
@@ -160,6 +163,8 @@ public class ObjectStateTransitions {
         try {
           ObjectEntity updatingEntity = Entities.uniqueResult(new ObjectEntity().withUuid(entity.getObjectUuid()));
           if (ObjectState.creating.equals(updatingEntity.getState())) {
+            BucketUsages.objectTransition(updatingEntity.getBucket(), updatingEntity.getState(), updatingEntity.getSize(), ObjectState.mpu_pending,
+                updatingEntity.getSize());
             updatingEntity.setState(ObjectState.mpu_pending);
             updatingEntity.setCreationExpiration(null);
             updatingEntity.setObjectModifiedTimestamp(entity.getObjectModifiedTimestamp());
@@ -198,6 +203,7 @@ public class ObjectStateTransitions {
           } else {
             entity = objectToUpdate;
           }
+          BucketUsages.objectTransition(entity.getBucket(), entity.getState(), entity.getSize(), ObjectState.deleting, entity.getSize());
           entity.setState(ObjectState.deleting);
           entity.setIsLatest(Boolean.FALSE);
 
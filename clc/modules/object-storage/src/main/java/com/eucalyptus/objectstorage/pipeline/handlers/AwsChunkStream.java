@@ -52,7 +52,7 @@ public class AwsChunkStream {
     boolean append(HttpChunk httpChunk) {
       httpChunks.add(httpChunk);
       AwsChunk currentChunk = getOrCreateCurrentAwsChunk();
-      currentChunk.appendContent(httpChunk.getContent().copy());
+      currentChunk.appendContent(httpChunk.getContent().slice());
 
       if (!currentChunk.isParsed())
         currentChunk.parseChunkInfo();
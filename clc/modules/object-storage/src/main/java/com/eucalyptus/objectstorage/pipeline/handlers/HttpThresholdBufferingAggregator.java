@@ -111,12 +111,16 @@ public class HttpThresholdBufferingAggregator {
     }
 
     /**
-     * May be invoked repeatedly, but will result in distinct copies of the aggregated buffer for each call. Use carefully to avoid memory issues
+     * May be invoked repeatedly, each call returns a distinct buffer that wraps (does not copy) the aggregated content.
      * 
      * @return
      */
     public ChannelBuffer getAggregatedContentBuffer() {
-      return ChannelBuffers.copiedBuffer(this.contentBuffers.toArray(new ChannelBuffer[this.contentBuffers.size()]));
+      final ChannelBuffer[] slices = new ChannelBuffer[this.contentBuffers.size()];
+      for (int i = 0; i < slices.length; i++) {
+        slices[i] = this.contentBuffers.get(i).slice();
+      }
+      return ChannelBuffers.wrappedBuffer(slices);
     }
 
     public void addContentBuffer(ChannelBuffer nextContentBuffer, boolean isLast) {
@@ -163,7 +167,9 @@ public class HttpThresholdBufferingAggregator {
    */
   public AggregatedMessageEvent poll() {
     if (this.currentEvent != null && (this.currentEvent.isLastReceived() || this.currentEvent.getCurrentAggregatedSize() >= this.maxBufferingSize)) {
-      LOG.trace("Poll returning event: " + this.currentEvent.toString() + " data: " + this.currentEvent.getAggregatedContentBuffer().toString());
+      if (LOG.isTraceEnabled()) {
+        LOG.trace("Poll returning event: " + this.currentEvent.toString() + " data: " + this.currentEvent.getAggregatedContentBuffer().toString());
+      }
       return this.currentEvent;
     } else {
       LOG.trace("Poll returning null");
@@ -80,7 +80,7 @@ public class ObjectStoragePUTAggregator extends SimpleChannelUpstreamHandler {
     try {
       // Write the content into the buffer
       Logs.extreme().debug("Writing content data to stream for channel: " + channel.getId() + " Content length: " + input.readableBytes());
-      inputStream.putChunk(input);
+      inputStream.putChunk(input, channel);
     } catch (Exception ex) {
       throw new IllegalStateException(ex);
     }
@@ -0,0 +1,250 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.providers.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * InputStream over a byte range that is fetched as several smaller ranges concurrently and returned in order.
+ *
+ * At most <code>concurrency</code> ranges are in flight or buffered at any time, so read-ahead memory is bounded by
+ * <code>concurrency * partSize</code> regardless of the size of the range. Range boundaries are multiples of the part size in object offsets
+ * so that when the part size matches the upload part size each fetch reads exactly one backend part.
+ */
+public class ParallelRangeInputStream extends InputStream {
+
+  public interface RangeFetcher {
+    /**
+     * Open a stream for the inclusive byte range. The returned stream must contain exactly <code>end - start + 1</code> bytes.
+     */
+    InputStream fetch(long start, long end) throws IOException;
+  }
+
+  private final RangeFetcher fetcher;
+  private final ExecutorService executor;
+  private final long end;
+  private final long partSize;
+  private final int concurrency;
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+  private long nextStart;
+  private byte[] current = new byte[0];
+  private int position = 0;
+  private boolean closed = false;
+
+  /**
+   * @param start first byte of the range, inclusive
+   * @param end last byte of the range, inclusive
+   */
+  public ParallelRangeInputStream(final RangeFetcher fetcher, final ExecutorService executor, final long start, final long end,
+      final long partSize, final int concurrency) {
+    if (start < 0 || end < start) {
+      throw new IllegalArgumentException("Invalid range " + start + "-" + end);
+    }
+    if (partSize < 1 || partSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid part size " + partSize);
+    }
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("Invalid concurrency " + concurrency);
+    }
+    this.fetcher = fetcher;
+    this.executor = executor;
+    this.end = end;
+    this.partSize = partSize;
+    this.concurrency = concurrency;
+    this.nextStart = start;
+    fill();
+  }
+
+  /**
+   * Part size aligned to the original upload where the object was a multipart upload of <code>partCount</code> parts.
+   *
+   * Clients upload all but the last part at a fixed size, usually a whole number of MB, so the upload part size is taken as the MB multiple
+   * consistent with the object size and part count, preferring powers of two where several sizes would fit. The returned size is a multiple
+   * of that close to the configured size or, for upload parts larger than the configured size, an equal division of the upload part so
+   * each fetch reads within one backend part. The returned size is never larger than the configured size. If the object was not a multipart
+   * upload the configured size is returned.
+   */
+  public static long alignedPartSize(final long objectSize, final int partCount, final long configuredPartSize) {
+    if (partCount < 2 || objectSize < partCount) {
+      return configuredPartSize;
+    }
+    final long mb = 1024l * 1024l;
+    final long smallest = (((objectSize + partCount - 1) / partCount + mb - 1) / mb) * mb;
+    final long largest = ((objectSize - 1) / (partCount - 1) / mb) * mb;
+    if (smallest == 0 || smallest > largest) {
+      return configuredPartSize;
+    }
+    long uploadPartSize = smallest;
+    for (int shift = 20; shift > 0; shift--) {
+      final long multiple = mb << shift;
+      final long candidate = ((smallest + multiple - 1) / multiple) * multiple;
+      if (candidate <= largest) {
+        uploadPartSize = candidate;
+        break;
+      }
+    }
+    if (uploadPartSize <= configuredPartSize) {
+      return (configuredPartSize / uploadPartSize) * uploadPartSize;
+    }
+    final long uploadPartMb = uploadPartSize / mb;
+    for (long divisions = (uploadPartSize + configuredPartSize - 1) / configuredPartSize; divisions <= uploadPartMb; divisions++) {
+      if (uploadPartMb % divisions == 0) {
+        return (uploadPartMb / divisions) * mb;
+      }
+    }
+    return configuredPartSize;
+  }
+
+  /**
+   * Number of parts of a multipart upload from its S3 ETag, or 1 if the ETag is not of the form "md5-N".
+   */
+  public static int partCount(final String etag) {
+    if (etag != null) {
+      final String value = etag.replace("\"", "");
+      final int index = value.lastIndexOf('-');
+      if (index > 0 && index < value.length() - 1) {
+        try {
+          return Math.max(1, Integer.parseInt(value.substring(index + 1)));
+        } catch (NumberFormatException e) {
+          // not a multipart etag
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * Complete length of the object from a Content-Range header value of the form "bytes start-end/length", or -1 if not known.
+   */
+  public static long instanceLength(final String contentRange) {
+    if (contentRange != null) {
+      final int index = contentRange.lastIndexOf('/');
+      if (index > 0 && index < contentRange.length() - 1) {
+        try {
+          return Long.parseLong(contentRange.substring(index + 1).trim());
+        } catch (NumberFormatException e) {
+          // length not known
+        }
+      }
+    }
+    return -1;
+  }
+
+  private void fill() {
+    while (!closed && pending.size() < concurrency && nextStart <= end) {
+      final long rangeStart = nextStart;
+      final long rangeEnd = Math.min(end, ((rangeStart / partSize) + 1) * partSize - 1);
+      nextStart = rangeEnd + 1;
+      pending.add(executor.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() throws Exception {
+          final byte[] data = new byte[(int) (rangeEnd - rangeStart + 1)];
+          try (final InputStream in = fetcher.fetch(rangeStart, rangeEnd)) {
+            ByteStreams.readFully(in, data);
+          }
+          return data;
+        }
+      }));
+    }
+  }
+
+  /**
+   * Advance to the next buffered range, waiting for it if necessary.
+   *
+   * @return false at the end of the range
+   */
+  private boolean advance() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+    final Future<byte[]> next = pending.poll();
+    if (next == null) {
+      return false;
+    }
+    try {
+      current = next.get();
+      position = 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      close();
+      throw new IOException("Interrupted waiting for range", e);
+    } catch (ExecutionException | CancellationException e) {
+      close();
+      final Throwable cause = e.getCause() != null ? e.getCause() : e;
+      throw cause instanceof IOException ? (IOException) cause : new IOException("Error fetching range", cause);
+    }
+    fill();
+    return true;
+  }
+
+  @Override
+  public int read() throws IOException {
+    while (position >= current.length) {
+      if (!advance()) {
+        return -1;
+      }
+    }
+    return current[position++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (position >= current.length) {
+      if (!advance()) {
+        return -1;
+      }
+    }
+    final int count = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return current.length - position;
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      for (final Future<byte[]> future : pending) {
+        future.cancel(true);
+      }
+      pending.clear();
+      current = new byte[0];
+      position = 0;
+    }
+  }
+}
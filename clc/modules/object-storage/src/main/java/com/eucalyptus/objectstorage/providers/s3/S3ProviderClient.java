@@ -22,6 +22,7 @@ package com.eucalyptus.objectstorage.providers.s3;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -31,12 +32,17 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 import org.apache.log4j.Logger;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -82,6 +88,7 @@ import com.amazonaws.services.s3.model.VersionListing;
 import com.eucalyptus.auth.principal.User;
 import com.eucalyptus.auth.principal.UserPrincipal;
 import com.eucalyptus.objectstorage.client.OsgInternalS3Client;
+import com.eucalyptus.objectstorage.client.OsgInternalS3ClientPool;
 import com.eucalyptus.objectstorage.entities.S3ProviderConfiguration;
 import com.eucalyptus.objectstorage.exceptions.S3ExceptionMapper;
 import com.eucalyptus.objectstorage.exceptions.s3.InternalErrorException;
@@ -169,7 +176,9 @@ import com.eucalyptus.storage.msgs.s3.LoggingEnabled;
 import com.eucalyptus.storage.msgs.s3.MetaDataEntry;
 import com.eucalyptus.storage.msgs.s3.Part;
 import com.eucalyptus.storage.msgs.s3.VersionEntry;
+import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.EucalyptusCloudException;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
@@ -186,12 +195,32 @@ import com.google.common.collect.Lists;
 
 public class S3ProviderClient implements ObjectStorageProviderClient {
   private static final Logger LOG = Logger.getLogger(S3ProviderClient.class);
+
+  /*
+   * The thread pool for ranged backend GETs when parallel GET is enabled. Callers run the fetch themselves when the pool is saturated so a busy
+   * OSG degrades to sequential GETs instead of failing.
+   */
+  private static final int PARALLEL_GET_CORE_POOL_SIZE = 10;
+  private static final int PARALLEL_GET_MAX_POOL_SIZE = 100;
+  private static final int PARALLEL_GET_MAX_QUEUE_SIZE = 2 * PARALLEL_GET_MAX_POOL_SIZE;
+  private static final ExecutorService PARALLEL_GET_SERVICE = new ThreadPoolExecutor(PARALLEL_GET_CORE_POOL_SIZE, PARALLEL_GET_MAX_POOL_SIZE, 60,
+      TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(PARALLEL_GET_MAX_QUEUE_SIZE), Threads.threadFactory("osg-parallel-get-pool-%d"),
+      new ThreadPoolExecutor.CallerRunsPolicy());
+  private static final long MB = 1024l * 1024l;
+
   private volatile URI upstreamEndpoint;
-  private volatile OsgInternalS3Client backendClient;
+
+  /*
+   * Backend clients shared by all requests (and all S3-based providers), keyed by credentials and endpoint so that connections to the backend
+   * are reused rather than opened per client.
+   */
+  private static final OsgInternalS3ClientPool CLIENT_POOL = new OsgInternalS3ClientPool();
 
   /**
    * Returns a usable S3 Client configured to send requests to the currently configured endpoint with the currently configured credentials.
-   * 
+   *
+   * Clients are pooled, the returned client is shared and must not be modified.
+   *
    * @return
    */
   protected OsgInternalS3Client getS3Client(User requestUser) throws InternalErrorException {
@@ -205,31 +234,24 @@ public class S3ProviderClient implements ObjectStorageProviderClient {
           "Cannot construct s3client due to inability to map credentials for user: " + (requestUser != null ? requestUser.getUserId() : "null"), e);
     }
 
-    if (this.backendClient == null) {
-      synchronized (this) {
-        if (this.backendClient == null) {
-          try {
-            // Create new one
-            this.backendClient = new OsgInternalS3Client(credentials, this.getUpstreamEndpoint().toASCIIString(), providerConfig.getS3UseHttps(),
-                providerConfig.getS3UseBackendDns());
-            return this.backendClient;
-          } catch (Exception e) {
-            LOG.error("exception thrown retrieving internal s3 client", e);
-            throw new InternalErrorException("Cannot get s3client from pool", e);
-          }
-        }
-      }
-    }
-
     try {
-      this.backendClient.update(credentials, this.getUpstreamEndpoint().toASCIIString(), providerConfig.getS3UseHttps(),
-          providerConfig.getS3UseBackendDns());
-      return this.backendClient;
+      return CLIENT_POOL.get(credentials, this.getUpstreamEndpoint().toASCIIString(), Boolean.TRUE.equals(providerConfig.getS3UseHttps()),
+          Boolean.TRUE.equals(providerConfig.getS3UseBackendDns()), MoreObjects.firstNonNull(providerConfig.getBackendMaxConnections(), 512),
+          TimeUnit.SECONDS.toMillis(MoreObjects.firstNonNull(providerConfig.getBackendConnectionIdleSecs(), 60)),
+          TimeUnit.MINUTES.toMillis(MoreObjects.firstNonNull(providerConfig.getBackendClientIdleMins(), 10)));
     } catch (Exception e) {
-      throw new InternalErrorException(e);
+      LOG.error("exception thrown retrieving internal s3 client", e);
+      throw new InternalErrorException("Cannot get s3client from pool", e);
     }
   }
 
+  /**
+   * Shut down all pooled backend clients, new clients are created on demand.
+   */
+  protected void flushClientPools() {
+    CLIENT_POOL.flush();
+  }
+
   protected URI getUpstreamEndpoint() throws URISyntaxException {
     String raw = ConfigurationCache.getConfiguration(S3ProviderConfiguration.class).getS3Endpoint();
     if (upstreamEndpoint == null
@@ -471,7 +493,7 @@ public class S3ProviderClient implements ObjectStorageProviderClient {
   public void stop() throws EucalyptusCloudException {
     LOG.debug("Stopping");
     // Force a new load of this on startup.
-    // flushClientPools();
+    flushClientPools();
     LOG.debug("Stop completed successfully");
   }
 
@@ -776,6 +798,94 @@ public class S3ProviderClient implements ObjectStorageProviderClient {
 
   }
 
+  /**
+   * Returns a stream for the object (or the given range of it), or null if parallel GET is disabled. The first part is fetched with a ranged
+   * GET and the object size is taken from its Content-Range. If the response exceeds the configured threshold the remaining ranges are
+   * fetched using concurrent ranged GETs, otherwise the remainder (if any) is fetched with a single GET. When a stream is returned the reply
+   * metadata has been populated from the first response.
+   *
+   * The ranges are aligned to the part size of the original multipart upload when the ETag shows the object was uploaded in parts. If the
+   * object cannot be fetched by range null is returned so the object is fetched with a single GET.
+   */
+  protected InputStream getObjectParallel(final AmazonS3Client s3Client, final String bucket, final String key, final Long byteRangeStart,
+      final Long byteRangeEnd, final ObjectStorageDataResponseType reply) {
+    S3ProviderConfiguration providerConfig = ConfigurationCache.getConfiguration(S3ProviderConfiguration.class);
+    if (!Boolean.TRUE.equals(providerConfig.getParallelGetEnabled())) {
+      return null;
+    }
+    long threshold = MoreObjects.firstNonNull(providerConfig.getParallelGetThresholdMB(), 64) * MB;
+    long configuredPartSize = Math.max(1, MoreObjects.firstNonNull(providerConfig.getParallelGetPartSizeMB(), 8)) * MB;
+    int concurrency = Math.max(1, MoreObjects.firstNonNull(providerConfig.getParallelGetConcurrency(), 4));
+
+    boolean ranged = byteRangeStart != null && byteRangeEnd != null;
+    long start = ranged ? byteRangeStart : 0;
+    long requestedEnd = ranged ? byteRangeEnd : Long.MAX_VALUE;
+    GetObjectRequest firstRequest = new GetObjectRequest(bucket, key);
+    firstRequest.setRange(start, Math.min(requestedEnd, ((start / configuredPartSize) + 1) * configuredPartSize - 1));
+    S3Object first;
+    try {
+      first = s3Client.getObject(firstRequest);
+    } catch (AmazonServiceException e) {
+      if (e.getStatusCode() == HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE.getCode()) {
+        // empty object, let the backend handle it with a single GET
+        return null;
+      }
+      throw e;
+    }
+
+    ObjectMetadata metadata = first.getObjectMetadata();
+    long objectSize = ParallelRangeInputStream.instanceLength(getRawMetadataValue(metadata, HttpHeaders.Names.CONTENT_RANGE));
+    if (objectSize < 0) {
+      LOG.debug("Using single GET for " + bucket + "/" + key + ": range not supported by backend");
+      first.getObjectContent().abort();
+      return null;
+    }
+    long end = Math.min(requestedEnd, objectSize - 1);
+    long firstEnd = start + metadata.getContentLength() - 1;
+    populateResponseMetadata(reply, metadata);
+    reply.setSize(end - start + 1);
+    if (firstEnd >= end) {
+      return first.getObjectContent();
+    }
+
+    InputStream remainder;
+    try {
+      if (end - start + 1 < threshold) {
+        GetObjectRequest remainderRequest = new GetObjectRequest(bucket, key);
+        remainderRequest.setRange(firstEnd + 1, end);
+        remainder = s3Client.getObject(remainderRequest).getObjectContent();
+      } else {
+        long partSize = ParallelRangeInputStream.alignedPartSize(objectSize, ParallelRangeInputStream.partCount(metadata.getETag()), configuredPartSize);
+        ParallelRangeInputStream.RangeFetcher fetcher = new ParallelRangeInputStream.RangeFetcher() {
+          @Override
+          public InputStream fetch(long rangeStart, long rangeEnd) throws IOException {
+            GetObjectRequest rangeRequest = new GetObjectRequest(bucket, key);
+            rangeRequest.setRange(rangeStart, rangeEnd);
+            try {
+              return s3Client.getObject(rangeRequest).getObjectContent();
+            } catch (AmazonClientException e) {
+              throw new IOException("Error getting range " + rangeStart + "-" + rangeEnd + " of " + bucket + "/" + key + " from backend", e);
+            }
+          }
+        };
+        remainder = new ParallelRangeInputStream(fetcher, PARALLEL_GET_SERVICE, firstEnd + 1, end, partSize, concurrency);
+      }
+    } catch (RuntimeException e) {
+      first.getObjectContent().abort();
+      throw e;
+    }
+    return new SequenceInputStream(first.getObjectContent(), remainder);
+  }
+
+  private static String getRawMetadataValue(final ObjectMetadata metadata, final String name) {
+    for (Map.Entry<String, Object> entry : metadata.getRawMetadata().entrySet()) {
+      if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null) {
+        return entry.getValue().toString();
+      }
+    }
+    return null;
+  }
+
   @Override
   public GetObjectResponseType getObject(final GetObjectType request) throws S3Exception {
     User requestUser = getRequestUser(request);
@@ -785,6 +895,11 @@ public class S3ProviderClient implements ObjectStorageProviderClient {
       internalS3Client = getS3Client(requestUser);
       AmazonS3Client s3Client = internalS3Client.getS3Client();
       GetObjectResponseType reply = request.getReply();
+      InputStream parallelStream = getObjectParallel(s3Client, request.getBucket(), request.getKey(), null, null, reply);
+      if (parallelStream != null) {
+        reply.setDataInputStream(parallelStream);
+        return reply;
+      }
       S3Object response;
       response = s3Client.getObject(getRequest);
       populateResponseMetadata(reply, response.getObjectMetadata());
@@ -812,11 +927,15 @@ public class S3ProviderClient implements ObjectStorageProviderClient {
     try {
       internalS3Client = getS3Client(requestUser);
       AmazonS3Client s3Client = internalS3Client.getS3Client();
-      S3Object response = s3Client.getObject(getRequest);
-
       GetObjectExtendedResponseType reply = request.getReply();
-      populateResponseMetadata(reply, response.getObjectMetadata());
-      reply.setDataInputStream(response.getObjectContent());
+      InputStream parallelStream = getObjectParallel(s3Client, request.getBucket(), request.getKey(), byteRangeStart, byteRangeEnd, reply);
+      if (parallelStream != null) {
+        reply.setDataInputStream(parallelStream);
+      } else {
+        S3Object response = s3Client.getObject(getRequest);
+        populateResponseMetadata(reply, response.getObjectMetadata());
+        reply.setDataInputStream(response.getObjectContent());
+      }
       reply.setByteRangeStart(request.getByteRangeStart());
       reply.setByteRangeEnd(request.getByteRangeEnd());
       return reply;
@@ -25,6 +25,7 @@ import com.eucalyptus.auth.principal.AccountIdentifiers
 import com.eucalyptus.entities.Transactions
 import com.eucalyptus.objectstorage.entities.Bucket
 import com.eucalyptus.objectstorage.entities.S3AccessControlledEntity
+import com.eucalyptus.objectstorage.exceptions.NoSuchEntityException
 import com.eucalyptus.objectstorage.metadata.BucketMetadataManager
 import com.eucalyptus.objectstorage.util.ObjectStorageProperties
 import com.eucalyptus.storage.msgs.s3.AccessControlList
@@ -366,6 +367,30 @@ public class BucketMetadataManagerTest {
     assert (postupdate2.getVersioning() == ObjectStorageProperties.VersioningStatus.Suspended)
   }
 
+  @Test
+  public void testLookupExtantBucketCached() {
+    def bucketName = 'testbucket1'
+    Bucket b = TestUtils.createTestBucket(mgr, bucketName)
+
+    Bucket lookup1 = mgr.lookupExtantBucket(bucketName)
+    Bucket lookup2 = mgr.lookupExtantBucket(bucketName)
+    assert (lookup1.is(lookup2))
+
+    // updates invalidate the cached bucket
+    mgr.setVersioning(lookup1, ObjectStorageProperties.VersioningStatus.Enabled)
+    Bucket lookup3 = mgr.lookupExtantBucket(bucketName)
+    assert (!lookup3.is(lookup1))
+    assert (lookup3.getVersioning() == ObjectStorageProperties.VersioningStatus.Enabled)
+
+    mgr.transitionBucketToState(lookup3, BucketState.deleting)
+    try {
+      mgr.lookupExtantBucket(bucketName)
+      fail('Lookup should fail for bucket in deleting state')
+    } catch (NoSuchEntityException e) {
+      println 'Correctly caught exception on lookup of a bucket in deleting state'
+    }
+  }
+
   @Ignore
   @Test
   public void testSetLoggingStatus() {
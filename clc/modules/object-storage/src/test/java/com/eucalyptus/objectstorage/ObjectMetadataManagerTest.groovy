@@ -35,6 +35,7 @@ import org.junit.After
 import org.junit.AfterClass
 import org.junit.Before
 import org.junit.BeforeClass;
+import org.junit.Ignore
 
 import com.eucalyptus.objectstorage.entities.Bucket;
 import org.apache.log4j.Logger
@@ -47,6 +48,7 @@ import com.eucalyptus.auth.principal.User;
 import com.eucalyptus.objectstorage.entities.ObjectEntity
 
 import javax.persistence.EntityTransaction;
+import java.util.concurrent.TimeUnit
 
 /**
  * Tests the ObjectMetadataManager implementations.
@@ -285,6 +287,144 @@ public class ObjectMetadataManagerTest {
     assert(verifyListingOrder(listing))
   }
 
+  @Test
+  public void testListPaginatedDelimiter() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first())
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    ['a/', 'b/c/', 'b/d/', 'b.', 'e'].each { k ->
+      TestUtils.createNObjects(objMgr, 5, bucket, (String)k, 100, usr)
+    }
+
+    PaginatedResult<ObjectEntity> listing = objMgr.listPaginated(bucket, 1000, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'b/'])
+    assert(listing.getEntityList().collect{ it.getObjectKey() } == ['b.0', 'b.1', 'b.2', 'b.3', 'b.4', 'e0', 'e1', 'e2', 'e3', 'e4'])
+    assert(!listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 1000, 'b/', '/', null)
+    assert(listing.getCommonPrefixes() == ['b/c/', 'b/d/'])
+    assert(listing.getEntityList().isEmpty())
+
+    // delimiter is not a pattern
+    listing = objMgr.listPaginated(bucket, 1000, null, '.', null)
+    assert(listing.getCommonPrefixes() == ['b.'])
+    assert(listing.getEntityList().size() == 20)
+
+    // page through, continuing after each common prefix or key
+    List<String> entries = []
+    String marker = null
+    int pages = 0
+    while (true) {
+      listing = objMgr.listPaginated(bucket, 2, null, '/', marker)
+      entries.addAll(listing.getCommonPrefixes())
+      entries.addAll(listing.getEntityList().collect{ it.getObjectKey() })
+      pages++
+      if (!listing.getIsTruncated()) break
+      marker = listing.getLastEntry() instanceof ObjectEntity ?
+          ((ObjectEntity)listing.getLastEntry()).getObjectKey() :
+          (String)listing.getLastEntry()
+    }
+    assert(pages == 6)
+    assert(entries.sort() == ['a/', 'b.0', 'b.1', 'b.2', 'b.3', 'b.4', 'b/', 'e0', 'e1', 'e2', 'e3', 'e4'])
+  }
+
+  @Test
+  public void testListPaginatedDelimiterSupplementaryKeys() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first())
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    String max = new String(Character.toChars(Character.MAX_CODE_POINT))
+    // keys with characters outside the basic multilingual plane, including the highest code point
+    ['a/\uD83D\uDE00/', 'a/' + max + '/', 'a/' + max, 'a\uD83D\uDE00/', 'b/'].each { k ->
+      TestUtils.createNObjects(objMgr, 3, bucket, (String)k, 100, usr)
+    }
+
+    PaginatedResult<ObjectEntity> listing = objMgr.listPaginated(bucket, 1000, null, '/', null)
+    assert(listing.getCommonPrefixes() == ['a/', 'a\uD83D\uDE00/', 'b/'])
+    assert(listing.getEntityList().isEmpty())
+    assert(!listing.getIsTruncated())
+
+    listing = objMgr.listPaginated(bucket, 1000, 'a/', '/', null)
+    assert(listing.getCommonPrefixes() == ['a/\uD83D\uDE00/', 'a/' + max + '/'])
+    assert(listing.getEntityList().collect{ it.getObjectKey() } == ['a/' + max + '0', 'a/' + max + '1', 'a/' + max + '2'])
+
+    // page through one entry at a time, each page must continue past the previous common prefix
+    List<String> entries = []
+    String marker = null
+    int pages = 0
+    while (pages < 20) {
+      listing = objMgr.listPaginated(bucket, 1, null, '/', marker)
+      entries.addAll(listing.getCommonPrefixes())
+      entries.addAll(listing.getEntityList().collect{ it.getObjectKey() })
+      pages++
+      if (!listing.getIsTruncated()) break
+      marker = listing.getLastEntry() instanceof ObjectEntity ?
+          ((ObjectEntity)listing.getLastEntry()).getObjectKey() :
+          (String)listing.getLastEntry()
+    }
+    assert(pages == 3)
+    assert(entries == ['a/', 'a\uD83D\uDE00/', 'b/'])
+  }
+
+  @Test
+  public void testListVersionsPaginatedSameTimestamp() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first())
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    bucket = mgr.setVersioning(bucket, ObjectStorageProperties.VersioningStatus.Enabled)
+
+    // versions of a key modified at the same time
+    Date modified = new Date()
+    Set<String> versionIds = [] as Set
+    5.times {
+      ObjectEntity entity = objMgr.initiateCreation(ObjectEntity.newInitializedForCreate(bucket, 'key', 100, usr))
+      versionIds.add(objMgr.finalizeCreation(entity, modified, UUID.randomUUID().toString()).getVersionId())
+    }
+
+    Set<String> listed = [] as Set
+    String keyMarker = null
+    String versionIdMarker = null
+    int pages = 0
+    while (pages < 10) {
+      PaginatedResult<ObjectEntity> listing = objMgr.listVersionsPaginated(bucket, 2, null, null, keyMarker, versionIdMarker, false)
+      listing.getEntityList().each { ObjectEntity entity ->
+        assert(listed.add(entity.getVersionId()))
+      }
+      pages++
+      if (!listing.getIsTruncated()) break
+      ObjectEntity last = (ObjectEntity)listing.getLastEntry()
+      keyMarker = last.getObjectKey()
+      versionIdMarker = last.getVersionId()
+    }
+    assert(pages == 3)
+    assert(listed == versionIds)
+  }
+
+  @Ignore("Manual benchmark")
+  @Test
+  public void benchmarkListPaginatedDelimiter() {
+    UserPrincipal usr = Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first())
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    // wide, many keys under few directories
+    (0..<5).each { int dir ->
+      TestUtils.createNObjects(objMgr, 2000, bucket, "wide${dir}/", 100, usr)
+    }
+    // deep, keys nested several levels below each directory
+    (0..<20).each { int dir ->
+      TestUtils.createNObjects(objMgr, 100, bucket, "deep${dir}/a/b/c/d/", 100, usr)
+    }
+
+    [ [ null, '/' ], [ 'deep1/', '/' ], [ 'deep1/a/b/', '/' ], [ 'wide1/', '/' ], [ null, null ] ].each { List<String> prefixAndDelimiter ->
+      objMgr.listPaginated(bucket, 1000, prefixAndDelimiter[0], prefixAndDelimiter[1], null) // warm up
+      long before = System.nanoTime()
+      int iterations = 20
+      PaginatedResult<ObjectEntity> listing = null
+      for (int i = 0; i < iterations; i++) {
+        listing = objMgr.listPaginated(bucket, 1000, prefixAndDelimiter[0], prefixAndDelimiter[1], null)
+      }
+      long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - before) / iterations
+      println "prefix=${prefixAndDelimiter[0]} delimiter=${prefixAndDelimiter[1]}: ${elapsedMicros}us " +
+          "(${listing.getEntityList().size()} keys, ${listing.getCommonPrefixes().size()} prefixes)"
+    }
+  }
+
   private static boolean verifyListingOrder(PaginatedResult<ObjectEntity> listing) {
     ObjectEntity last = null;
     for(ObjectEntity e : listing.getEntityList()) {
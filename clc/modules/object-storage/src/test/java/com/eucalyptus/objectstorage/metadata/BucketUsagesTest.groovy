@@ -0,0 +1,190 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+
+package com.eucalyptus.objectstorage.metadata
+
+import com.eucalyptus.auth.Accounts
+import com.eucalyptus.auth.principal.UserPrincipal
+import com.eucalyptus.entities.Entities
+import com.eucalyptus.entities.TransactionResource
+import com.eucalyptus.objectstorage.BucketMetadataManagers
+import com.eucalyptus.objectstorage.ObjectMetadataManagers
+import com.eucalyptus.objectstorage.ObjectState
+import com.eucalyptus.objectstorage.TestUtils
+import com.eucalyptus.objectstorage.UnitTestSupport
+import com.eucalyptus.objectstorage.entities.Bucket
+import com.eucalyptus.objectstorage.entities.BucketUsage
+import com.eucalyptus.objectstorage.entities.ObjectEntity
+import com.google.common.collect.ImmutableMap
+import org.junit.After
+import org.junit.AfterClass
+import org.junit.Before
+import org.junit.BeforeClass
+import org.junit.Test
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Tests for the bucket usage ledger used for quota checks.
+ */
+class BucketUsagesTest {
+  static BucketMetadataManager mgr = BucketMetadataManagers.getInstance()
+  static ObjectMetadataManager objMgr = ObjectMetadataManagers.getInstance()
+
+  @Before
+  public void setUp() throws Exception {
+    mgr.start()
+    objMgr.start()
+    UnitTestSupport.flushObjects()
+    UnitTestSupport.flushBuckets()
+    TestUtils.initTestAccountsAndAcls()
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mgr.stop()
+    objMgr.stop()
+    UnitTestSupport.flushObjects()
+    UnitTestSupport.flushBuckets()
+  }
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    UnitTestSupport.setupOsgPersistenceContext()
+    UnitTestSupport.setupAuthPersistenceContext()
+    UnitTestSupport.initializeAuth(2, 2)
+  }
+
+  @AfterClass
+  public static void teardownAfterClass() throws Exception {
+    UnitTestSupport.tearDownOsgPersistenceContext()
+    UnitTestSupport.tearDownAuthPersistenceContext()
+  }
+
+  private static UserPrincipal user() {
+    Accounts.lookupPrincipalByUserId(UnitTestSupport.getUsersByAccountName(UnitTestSupport.getTestAccounts().first()).first())
+  }
+
+  private static void setUsage(Bucket bucket, long objects, long size) {
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      Entities.updateAllMatching(BucketUsage.class,
+          "SET objectCount = :objects, totalSize = :size WHERE bucketUuid = :bucketUuid",
+          ImmutableMap.of("objects", objects, "size", size, "bucketUuid", bucket.getBucketUuid()))
+      trans.commit()
+    }
+  }
+
+  private static void deleteUsage(Bucket bucket) {
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      BucketUsages.bucketDeleted(bucket)
+      trans.commit()
+    }
+  }
+
+  @Test
+  public void testIncrementDecrement() {
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    BucketUsage usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 0 && usage.getTotalSize() == 0)
+
+    // creating and extant objects are counted
+    ObjectEntity creating = objMgr.initiateCreation(ObjectEntity.newInitializedForCreate(bucket, 'creating', 50, user()))
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 1 && usage.getTotalSize() == 50)
+
+    List<ObjectEntity> objects = TestUtils.createNObjects(objMgr, 3, bucket, 'key', 100, user())
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 4 && usage.getTotalSize() == 350)
+
+    // deleting objects are released, the record deletion does not release them again
+    ObjectEntity deleting = objMgr.transitionObjectToState(objects.first(), ObjectState.deleting)
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 3 && usage.getTotalSize() == 250)
+    objMgr.delete(deleting)
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 3 && usage.getTotalSize() == 250)
+
+    // uploads that are finalized remain counted
+    creating = objMgr.finalizeCreation(creating, new Date(), UUID.randomUUID().toString())
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 3 && usage.getTotalSize() == 250)
+    objMgr.transitionObjectToState(creating, ObjectState.deleting)
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 2 && usage.getTotalSize() == 200)
+
+    assert(BucketUsages.reconcile(bucket).getTotalSize() == 200)
+  }
+
+  @Test
+  public void testReconcile() {
+    Bucket bucket = TestUtils.createTestBucket(mgr, 'bucket')
+    TestUtils.createNObjects(objMgr, 3, bucket, 'key', 100, user())
+
+    // drift is corrected
+    setUsage(bucket, 10, 10)
+    assert(BucketUsages.getUsage(bucket).getTotalSize() == 10)
+    BucketUsage usage = BucketUsages.reconcile(bucket)
+    assert(usage.getObjectCount() == 3 && usage.getTotalSize() == 300)
+    assert(BucketUsages.getUsage(bucket).getTotalSize() == 300)
+
+    // missing records are created from the actual totals
+    deleteUsage(bucket)
+    usage = BucketUsages.getUsage(bucket)
+    assert(usage.getObjectCount() == 3 && usage.getTotalSize() == 300)
+
+    // concurrent creation of a missing record
+    deleteUsage(bucket)
+    ExecutorService executor = Executors.newFixedThreadPool(4)
+    try {
+      List<Future<BucketUsage>> results = executor.invokeAll((1..4).collect {
+        { -> BucketUsages.reconcile(bucket) } as Callable<BucketUsage>
+      })
+      results.each { Future<BucketUsage> result ->
+        assert(result.get().getTotalSize() == 300)
+      }
+    } finally {
+      executor.shutdown()
+    }
+    try (TransactionResource trans = Entities.transactionFor(BucketUsage.class)) {
+      assert(Entities.query(new BucketUsage().withUuid(bucket.getBucketUuid()), true).size() == 1)
+      trans.commit()
+    }
+  }
+
+  @Test
+  public void testTotalSizeByOwner() {
+    Bucket bucket1 = TestUtils.createTestBucket(mgr, 'bucket1')
+    Bucket bucket2 = TestUtils.createTestBucket(mgr, 'bucket2')
+    TestUtils.createNObjects(objMgr, 2, bucket1, 'key', 100, user())
+    TestUtils.createNObjects(objMgr, 3, bucket2, 'key', 10, user())
+
+    assert(BucketUsages.getTotalSizeByOwner(bucket1.getOwnerCanonicalId()) == 230)
+    assert(BucketUsages.getTotalSizeByUser(bucket1.getOwnerIamUserId()) == 230)
+    assert(BucketUsages.getTotalSizeByOwner('no-such-owner') == 0)
+
+    // buckets without a record are included
+    deleteUsage(bucket2)
+    assert(BucketUsages.getTotalSizeByOwner(bucket1.getOwnerCanonicalId()) == 230)
+    assert(BucketUsages.getTotalSizeByUser(bucket1.getOwnerIamUserId()) == 230)
+  }
+}
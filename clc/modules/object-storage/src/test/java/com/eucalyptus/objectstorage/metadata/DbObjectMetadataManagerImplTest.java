@@ -0,0 +1,50 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import com.google.common.primitives.UnsignedBytes;
+
+public class DbObjectMetadataManagerImplTest {
+
+  private static final String MAX = new String( Character.toChars( Character.MAX_CODE_POINT ) );
+
+  @Test
+  public void testCompareUtf8( ) {
+    final String[] keys = { "", "a", "a/", "a/\uFFFF", "a/\uD83D\uDE00", "a/" + MAX, "a/" + MAX + "/0", "b" };
+    for ( final String first : keys ) {
+      for ( final String second : keys ) {
+        assertEquals( first + " / " + second,
+            Integer.signum( UnsignedBytes.lexicographicalComparator( ).compare(
+                first.getBytes( StandardCharsets.UTF_8 ), second.getBytes( StandardCharsets.UTF_8 ) ) ),
+            Integer.signum( DbObjectMetadataManagerImpl.compareUtf8( first, second ) ) );
+      }
+    }
+  }
+
+  @Test
+  public void testSeekPastPrefix( ) {
+    assertEquals( "a/" + MAX, DbObjectMetadataManagerImpl.seekPastPrefix( "a/", "a/0" ) );
+    assertEquals( "a/" + MAX, DbObjectMetadataManagerImpl.seekPastPrefix( "a/", "a/\uD83D\uDE00/0" ) );
+    assertEquals( "a/" + MAX + "/0", DbObjectMetadataManagerImpl.seekPastPrefix( "a/", "a/" + MAX + "/0" ) );
+    for ( final String key : new String[]{ "a/0", "a/\uFFFF", "a/\uD83D\uDE00", "a/" + MAX, "a/" + MAX + MAX } ) {
+      assertTrue( key, DbObjectMetadataManagerImpl.compareUtf8( DbObjectMetadataManagerImpl.seekPastPrefix( "a/", key ), key ) >= 0 );
+    }
+  }
+}
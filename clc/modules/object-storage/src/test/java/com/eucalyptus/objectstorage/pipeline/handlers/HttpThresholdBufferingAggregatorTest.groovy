@@ -213,7 +213,7 @@ class HttpThresholdBufferingAggregatorTest {
     ChannelBuffer testbuffer = ChannelBuffers.buffer(content.length + chunkContent.length)
     testbuffer.writeBytes(content)
     testbuffer.writeBytes(chunkContent)
-    assert(output.getAggregatedContentBuffer().array() == testbuffer.array())
+    assert(output.getAggregatedContentBuffer() == testbuffer)
     assert(output.getMessageEvent() == initialEvent)
   }
 
@@ -270,7 +270,7 @@ class HttpThresholdBufferingAggregatorTest {
     ChannelBuffer testbuffer = ChannelBuffers.buffer(content.length + chunkContent.length)
     testbuffer.writeBytes(content)
     testbuffer.writeBytes(chunkContent)
-    assert(output.getAggregatedContentBuffer().array() == testbuffer.array())
+    assert(output.getAggregatedContentBuffer() == testbuffer)
 
 
   }
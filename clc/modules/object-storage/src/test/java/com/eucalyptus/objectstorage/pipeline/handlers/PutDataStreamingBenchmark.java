@@ -0,0 +1,170 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.pipeline.handlers;
+
+import com.eucalyptus.objectstorage.pipeline.handlers.AwsChunkStream.AwsChunk;
+import com.eucalyptus.objectstorage.pipeline.handlers.AwsChunkStream.StreamingHttpRequest;
+import com.eucalyptus.util.ChannelBufferStreamingInputStream;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpChunk;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams 1GB PUT bodies from HTTP chunks through to a reader of the upload
+ * stream, as the provider client would, with and without aws-chunked encoding.
+ */
+@Ignore("Manual benchmark")
+public class PutDataStreamingBenchmark {
+
+  private static final long OBJECT_SIZE = 1024L * 1024L * 1024L;
+  private static final int HTTP_CHUNK_SIZE = 8 * 1024;
+  private static final int AWS_CHUNK_SIZE = 64 * 1024;
+  private static final int READ_SIZE = 64 * 1024;
+  private static final int ITERATIONS = 3;
+
+  private interface Producer {
+    void produce(ChannelBufferStreamingInputStream stream) throws Exception;
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Body content, as HTTP chunks from the decoder.
+   */
+  private static void produceHttpChunks(final byte[] body, final long size, final Callback callback) throws Exception {
+    long remaining = size;
+    int offset = 0;
+    while (remaining > 0) {
+      final int length = (int) Math.min(Math.min(HTTP_CHUNK_SIZE, remaining), body.length - offset);
+      callback.chunk(ChannelBuffers.copiedBuffer(body, offset, length));
+      remaining -= length;
+      offset = (offset + length) % body.length;
+    }
+  }
+
+  private interface Callback {
+    void chunk(ChannelBuffer buffer) throws Exception;
+  }
+
+  private static byte[] awsChunk(final int payloadSize) {
+    final byte[] header =
+        (Integer.toHexString(payloadSize) + ";chunk-signature=" + Strings.repeat("0", 64) + "\r\n").getBytes(Charsets.UTF_8);
+    final byte[] chunk = new byte[header.length + payloadSize + 2];
+    System.arraycopy(header, 0, chunk, 0, header.length);
+    chunk[chunk.length - 2] = '\r';
+    chunk[chunk.length - 1] = '\n';
+    return chunk;
+  }
+
+  private static void run(final String name, final Producer producer) throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      for (int i = 0; i <= ITERATIONS; i++) { // first run is warm up
+        final ChannelBufferStreamingInputStream stream = new ChannelBufferStreamingInputStream(ChannelBuffers.EMPTY_BUFFER);
+        final long before = System.nanoTime();
+        final Future<Long> produced = executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            final long allocated = allocatedBytes();
+            producer.produce(stream);
+            return allocatedBytes() - allocated;
+          }
+        });
+        final Future<Long> consumed = executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws Exception {
+            final long allocated = allocatedBytes();
+            final byte[] read = new byte[READ_SIZE];
+            long total = 0;
+            while (total < OBJECT_SIZE) {
+              final int count = stream.read(read, 0, (int) Math.min(read.length, OBJECT_SIZE - total));
+              if (count <= 0) throw new IllegalStateException("Stream ended after " + total + " bytes");
+              total += count;
+            }
+            return allocatedBytes() - allocated;
+          }
+        });
+        final long allocated = produced.get(10, TimeUnit.MINUTES) + consumed.get(10, TimeUnit.MINUTES);
+        final long elapsed = System.nanoTime() - before;
+        if (i > 0) {
+          System.out.println(name + ": " + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms, "
+              + (OBJECT_SIZE * 1000 / Math.max(1, TimeUnit.NANOSECONDS.toMillis(elapsed)) / (1024 * 1024)) + "MB/s, "
+              + (allocated / (1024 * 1024)) + "MB allocated");
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void benchmarkPut() throws Exception {
+    final byte[] body = new byte[AWS_CHUNK_SIZE];
+    run("put", new Producer() {
+      @Override
+      public void produce(final ChannelBufferStreamingInputStream stream) throws Exception {
+        produceHttpChunks(body, OBJECT_SIZE, new Callback() {
+          @Override
+          public void chunk(final ChannelBuffer buffer) throws Exception {
+            stream.putChunk(buffer);
+          }
+        });
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkPutAwsChunked() throws Exception {
+    final byte[] body = awsChunk(AWS_CHUNK_SIZE);
+    final long encodedSize = (OBJECT_SIZE / AWS_CHUNK_SIZE) * body.length;
+    run("put aws-chunked", new Producer() {
+      @Override
+      public void produce(final ChannelBufferStreamingInputStream stream) throws Exception {
+        final AwsChunkStream awsChunkStream = new AwsChunkStream();
+        final Callback callback = new Callback() {
+          @Override
+          public void chunk(final ChannelBuffer buffer) throws Exception {
+            final StreamingHttpRequest request = awsChunkStream.append(new DefaultHttpChunk(buffer));
+            if (request != null) {
+              for (final AwsChunk awsChunk : request.awsChunks) {
+                stream.putChunk(awsChunk.toHttpChunk().getContent());
+              }
+            }
+          }
+        };
+        produceHttpChunks(body, encodedSize, callback);
+        produceHttpChunks(awsChunk(0), awsChunk(0).length, callback);
+      }
+    });
+  }
+}
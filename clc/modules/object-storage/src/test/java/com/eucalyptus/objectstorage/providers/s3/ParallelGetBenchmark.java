@@ -0,0 +1,201 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.providers.s3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares a single backend GET with parallel ranged GETs for a 512MB object served by a local S3 stand-in that limits each connection to
+ * 32MB/s, as a remote backend would.
+ */
+@Ignore("Manual benchmark")
+public class ParallelGetBenchmark {
+
+  private static final long MB = 1024l * 1024l;
+  private static final int OBJECT_SIZE = (int) (512 * MB);
+  private static final long CONNECTION_BYTES_PER_SECOND = 32 * MB;
+  private static final int ITERATIONS = 3;
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  private static HttpServer server;
+  private static AmazonS3Client s3Client;
+  private static ExecutorService executor;
+  private static byte[] object;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    object = new byte[OBJECT_SIZE];
+    new Random(OBJECT_SIZE).nextBytes(object);
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        serve(exchange);
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+
+    ClientConfiguration config = new ClientConfiguration();
+    config.setMaxConnections(64);
+    s3Client = new AmazonS3Client(new BasicAWSCredentials("access", "secret"), config);
+    s3Client.setS3ClientOptions(new S3ClientOptions().withPathStyleAccess(true));
+    s3Client.setEndpoint("http://127.0.0.1:" + server.getAddress().getPort());
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+    s3Client.shutdown();
+  }
+
+  private static void serve(HttpExchange exchange) throws IOException {
+    long start = 0;
+    long end = OBJECT_SIZE - 1;
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    int status = 200;
+    if (range != null) {
+      Matcher matcher = RANGE.matcher(range);
+      if (matcher.matches()) {
+        start = Long.parseLong(matcher.group(1));
+        end = Math.min(end, Long.parseLong(matcher.group(2)));
+        status = 206;
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + OBJECT_SIZE);
+      }
+    }
+    // multipart style etag so the client does not validate an MD5 of the content
+    exchange.getResponseHeaders().add("ETag", "\"00000000000000000000000000000000-64\"");
+    exchange.getResponseHeaders().add("Content-Type", "binary/octet-stream");
+    long length = end - start + 1;
+    if ("HEAD".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().add("Content-Length", String.valueOf(OBJECT_SIZE));
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+      return;
+    }
+    exchange.sendResponseHeaders(status, length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      long before = System.nanoTime();
+      long written = 0;
+      while (written < length) {
+        int count = (int) Math.min(256 * 1024, length - written);
+        out.write(object, (int) (start + written), count);
+        written += count;
+        long due = before + TimeUnit.SECONDS.toNanos(1) * written / CONNECTION_BYTES_PER_SECOND;
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+          TimeUnit.NANOSECONDS.sleep(wait);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static long drain(InputStream in) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long total = 0;
+    try {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        total += read;
+      }
+    } finally {
+      in.close();
+    }
+    if (total != OBJECT_SIZE) {
+      throw new IllegalStateException("Unexpected size " + total);
+    }
+    return total;
+  }
+
+  private interface Get {
+    InputStream open() throws Exception;
+  }
+
+  private static void report(String name, Get get) throws Exception {
+    drain(get.open()); // warm up
+    long total = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long before = System.nanoTime();
+      drain(get.open());
+      total += System.nanoTime() - before;
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(total / ITERATIONS);
+    System.out.println(name + ": " + millis + "ms, " + (OBJECT_SIZE / MB * 1000 / Math.max(1, millis)) + "MB/s");
+  }
+
+  @Test
+  public void benchmarkSingleGet() throws Exception {
+    report("single GET", new Get() {
+      @Override
+      public InputStream open() throws Exception {
+        return s3Client.getObject(new GetObjectRequest("bucket", "key")).getObjectContent();
+      }
+    });
+  }
+
+  @Test
+  public void benchmarkParallelGet() throws Exception {
+    final ParallelRangeInputStream.RangeFetcher fetcher = new ParallelRangeInputStream.RangeFetcher() {
+      @Override
+      public InputStream fetch(long start, long end) throws IOException {
+        GetObjectRequest request = new GetObjectRequest("bucket", "key");
+        request.setRange(start, end);
+        return s3Client.getObject(request).getObjectContent();
+      }
+    };
+    for (final int concurrency : new int[] {2, 4, 8}) {
+      report("parallel GET x" + concurrency, new Get() {
+        @Override
+        public InputStream open() throws Exception {
+          long size = s3Client.getObjectMetadata("bucket", "key").getContentLength();
+          long partSize = ParallelRangeInputStream.alignedPartSize(size, 64, 8 * MB);
+          return new ParallelRangeInputStream(fetcher, executor, 0, size - 1, partSize, concurrency);
+        }
+      });
+    }
+  }
+}
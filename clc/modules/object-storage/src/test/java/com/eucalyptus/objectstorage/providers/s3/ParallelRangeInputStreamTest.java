@@ -0,0 +1,175 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.objectstorage.providers.s3;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ParallelRangeInputStreamTest {
+
+  private static final long MB = 1024l * 1024l;
+  private static final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private static byte[] data(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  private static class ArrayFetcher implements ParallelRangeInputStream.RangeFetcher {
+    private final byte[] data;
+    private final List<long[]> ranges = new CopyOnWriteArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int maxInFlight;
+
+    ArrayFetcher(byte[] data) {
+      this.data = data;
+    }
+
+    @Override
+    public InputStream fetch(long start, long end) throws IOException {
+      ranges.add(new long[] {start, end});
+      int current = inFlight.incrementAndGet();
+      maxInFlight = Math.max(maxInFlight, current);
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        inFlight.decrementAndGet();
+      }
+      return new ByteArrayInputStream(data, (int) start, (int) (end - start + 1));
+    }
+  }
+
+  @Test
+  public void testReadWholeObjectInOrder() throws Exception {
+    byte[] data = data(1000);
+    ArrayFetcher fetcher = new ArrayFetcher(data);
+    try (InputStream in = new ParallelRangeInputStream(fetcher, executor, 0, data.length - 1, 64, 3)) {
+      assertArrayEquals(data, ByteStreams.toByteArray(in));
+    }
+    assertEquals(16, fetcher.ranges.size());
+    assertTrue("Read-ahead not bounded: " + fetcher.maxInFlight, fetcher.maxInFlight <= 3);
+  }
+
+  @Test
+  public void testRangeAlignedToPartBoundaries() throws Exception {
+    byte[] data = data(1000);
+    ArrayFetcher fetcher = new ArrayFetcher(data);
+    try (InputStream in = new ParallelRangeInputStream(fetcher, executor, 100, 499, 128, 2)) {
+      byte[] expected = new byte[400];
+      System.arraycopy(data, 100, expected, 0, 400);
+      assertArrayEquals(expected, ByteStreams.toByteArray(in));
+    }
+    assertEquals(4, fetcher.ranges.size());
+    assertArrayEquals(new long[] {100, 127}, fetcher.ranges.get(0));
+    assertArrayEquals(new long[] {128, 255}, fetcher.ranges.get(1));
+    assertArrayEquals(new long[] {384, 499}, fetcher.ranges.get(3));
+  }
+
+  @Test
+  public void testFetchErrorPropagates() throws Exception {
+    ParallelRangeInputStream.RangeFetcher fetcher = new ParallelRangeInputStream.RangeFetcher() {
+      @Override
+      public InputStream fetch(long start, long end) throws IOException {
+        if (start > 0) {
+          throw new IOException("backend failure");
+        }
+        return new ByteArrayInputStream(new byte[(int) (end - start + 1)]);
+      }
+    };
+    try (InputStream in = new ParallelRangeInputStream(fetcher, executor, 0, 255, 64, 2)) {
+      ByteStreams.toByteArray(in);
+      fail("Expected error from fetch");
+    } catch (IOException e) {
+      assertEquals("backend failure", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testAlignedPartSizeBounded() {
+    for (int partCount = 2; partCount < 200; partCount += 7) {
+      for (long objectSize = 3 * MB; objectSize < 100000 * MB; objectSize = objectSize * 3 + 17) {
+        long partSize = ParallelRangeInputStream.alignedPartSize(objectSize, partCount, 8 * MB);
+        assertTrue(objectSize + "/" + partCount + " " + partSize, partSize > 0 && partSize <= 8 * MB);
+      }
+    }
+  }
+
+  @Test
+  public void testPartCount() {
+    assertEquals(1, ParallelRangeInputStream.partCount(null));
+    assertEquals(1, ParallelRangeInputStream.partCount("d41d8cd98f00b204e9800998ecf8427e"));
+    assertEquals(12, ParallelRangeInputStream.partCount("\"d41d8cd98f00b204e9800998ecf8427e-12\""));
+    assertEquals(1, ParallelRangeInputStream.partCount("d41d8cd98f00b204e9800998ecf8427e-"));
+  }
+
+  @Test
+  public void testInstanceLength() {
+    assertEquals(-1, ParallelRangeInputStream.instanceLength(null));
+    assertEquals(-1, ParallelRangeInputStream.instanceLength("bytes 0-8388607/*"));
+    assertEquals(-1, ParallelRangeInputStream.instanceLength("bytes 0-8388607/"));
+    assertEquals(10, ParallelRangeInputStream.instanceLength("bytes 0-9/10"));
+    assertEquals(107374182400l, ParallelRangeInputStream.instanceLength("bytes 8388608-16777215/107374182400"));
+  }
+
+  @Test
+  public void testAlignedPartSize() {
+    // not multipart
+    assertEquals(8 * MB, ParallelRangeInputStream.alignedPartSize(100 * MB, 1, 8 * MB));
+    // 5MB parts, 21 parts for 101MB, multiple of upload part size near configured
+    assertEquals(5 * MB, ParallelRangeInputStream.alignedPartSize(101 * MB, 21, 8 * MB));
+    // 16MB parts, larger than configured so split each upload part
+    assertEquals(8 * MB, ParallelRangeInputStream.alignedPartSize(100 * MB, 7, 8 * MB));
+    // 1MB parts, configured size is a multiple
+    assertEquals(8 * MB, ParallelRangeInputStream.alignedPartSize(10 * MB, 10, 8 * MB));
+    // 8MB and 2MB parts, several sizes fit so prefer the power of two, split to the configured size
+    assertEquals(4 * MB, ParallelRangeInputStream.alignedPartSize(10 * MB + 10, 2, 4 * MB));
+    // 5GB parts, larger than a single fetch buffer
+    assertEquals(8 * MB, ParallelRangeInputStream.alignedPartSize(10240 * MB, 2, 8 * MB));
+    // 7MB parts, only split evenly into 1MB ranges
+    assertEquals(1 * MB, ParallelRangeInputStream.alignedPartSize(70 * MB, 10, 4 * MB));
+    // part count not consistent with a whole number of MB
+    assertEquals(8 * MB, ParallelRangeInputStream.alignedPartSize(3 * MB, 10, 8 * MB));
+  }
+}
@@ -37,6 +37,7 @@ import org.hibernate.annotations.Type;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Lob;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Table;
@@ -48,7 +49,10 @@ import javax.persistence.UniqueConstraint;
 @Entity
 @PersistenceContext( name = "eucalyptus_simplequeue" )
 @Table( name = "messages", uniqueConstraints = @UniqueConstraint(columnNames = {"account_id", "queue_name", "message_id"},
-  name = "queues_composite_key") )
+  name = "queues_composite_key"), indexes = {
+  @Index(name = "IDX_messages_visible", columnList = "account_id, queue_name, visible_timestamp_secs"),
+  @Index(name = "IDX_messages_expired", columnList = "expired_timestamp_secs")
+} )
 @Cache( usage = CacheConcurrencyStrategy.TRANSACTIONAL )
 public class MessageEntity extends AbstractPersistent {
   @Column(name = "account_id", nullable = false)
@@ -61,6 +61,21 @@ import java.util.UUID;
  */
 public class PostgresqlMessagePersistence implements MessagePersistence {
 
+  // messages with a visibility time of exactly now should be visible, messages with an expiration time of exactly now
+  // should expire, both use the messages (account_id, queue_name, visible_timestamp_secs) index
+  private static final String RECEIVE_SQL =
+    "SELECT * FROM {h-schema}messages " +
+    "WHERE account_id = :accountId AND queue_name = :queueName " +
+    "AND visible_timestamp_secs <= :now AND expired_timestamp_secs > :now " +
+    "ORDER BY visible_timestamp_secs LIMIT :maxMessages FOR UPDATE SKIP LOCKED";
+
+  private static final String RECEIVE_DEAD_LETTER_SOURCE_SQL =
+    "SELECT * FROM {h-schema}messages " +
+    "WHERE account_id = :accountId AND queue_name = :queueName " +
+    "AND visible_timestamp_secs <= :now AND expired_timestamp_secs > :now " +
+    "AND local_receive_count < :maxReceiveCount " +
+    "ORDER BY visible_timestamp_secs LIMIT :maxMessages FOR UPDATE SKIP LOCKED";
+
   @Override
   public UUID getNewMessageUUID() {
     return UUID.randomUUID();
@@ -79,19 +94,6 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
         List<Message> messages = Lists.newArrayList();
         Optional<SimpleQueueException> simpleQueueExceptionOptional;
         try {
-          List<MessageEntity> messageEntityList = Entities.criteriaQuery(MessageEntity.class)
-            .whereEqual(MessageEntity_.accountId, queue.getAccountId())
-            .whereEqual(MessageEntity_.queueName, queue.getQueueName())
-//      -- Just delete the expired messages here
-//        // messages with an expiration time of exactly now should expire, so we want the expiration
-//        // timestamp to be strictly greater than now
-//        .where(Entities.restriction(MessageEntity.class).gt(MessageEntity_.expiredTimestampSecs, now))
-              // messages with a visibility time of exactly now should be visible, so we want the the visibility
-              // timestamp to be less than or equal to now.
-            .where(Entities.restriction(MessageEntity.class).le(MessageEntity_.visibleTimestampSecs, now))
-            .orderBy(MessageEntity_.visibleTimestampSecs)
-              // TODO: consider what happens if this returns too many results.
-            .list();
           boolean deadLetterQueue = false;
           String deadLetterQueueAccountId = null;
           String deadLetterQueueName = null;
@@ -106,28 +108,29 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
             deadLetterQueue = true;
           } catch (Exception ignore) {
           }
-          int numMessages = 0;
           int maxNumMessages = 1;
           try {
             maxNumMessages = Integer.parseInt(receiveAttributes.get(Constants.MAX_NUMBER_OF_MESSAGES));
           } catch (Exception ignore) {
           }
 
+          // Expired messages and messages to move to the dead letter queue are skipped here and handled in batches
+          // by the sweeper. Messages locked by concurrent receives are skipped so receives do not wait on each other.
+          Map<String, Object> parameters = Maps.newHashMap();
+          parameters.put("accountId", queue.getAccountId());
+          parameters.put("queueName", queue.getQueueName());
+          parameters.put("now", now);
+          parameters.put("maxMessages", maxNumMessages);
+          if (deadLetterQueue) {
+            parameters.put("maxReceiveCount", maxReceiveCount);
+            PostgresqlMessageSweeper.addDeadLetterSourceQueue(queue.getKey(), deadLetterQueueAccountId, deadLetterQueueName,
+              maxReceiveCount, deadLetterQueueMessageRetentionPeriod);
+          }
+          List<MessageEntity> messageEntityList = Entities.nativeQuery(MessageEntity.class,
+            deadLetterQueue ? RECEIVE_DEAD_LETTER_SOURCE_SQL : RECEIVE_SQL, parameters);
+
           if (messageEntityList != null) {
             for (MessageEntity messageEntity : messageEntityList) {
-              if (messageEntity.getExpiredTimestampSecs() <= now) {
-                Entities.delete(messageEntity);
-                continue;
-              }
-              if (deadLetterQueue && messageEntity.getLocalReceiveCount() >= maxReceiveCount) {
-                // move to dead letter
-                messageEntity.setLocalReceiveCount(0);
-                messageEntity.setAccountId(deadLetterQueueAccountId);
-                messageEntity.setQueueName(deadLetterQueueName);
-                messageEntity.setExpiredTimestampSecs(messageEntity.getSentTimestampSecs() + deadLetterQueueMessageRetentionPeriod);
-                continue;
-              }
-
               Message message = MessageJsonHelper.jsonToMessage(messageEntity.getMessageJson());
               message.setMessageId(messageEntity.getMessageId());
               // set receive timestamp if first time being received
@@ -152,8 +155,6 @@ public class PostgresqlMessagePersistence implements MessagePersistence {
               message.getAttribute().add(new Attribute(Constants.SENT_TIMESTAMP, "" + (messageEntity.getSentTimestampSecs())));
               message.setReceiptHandle(messageEntity.getAccountId() + ":" + messageEntity.getQueueName() + ":" + messageEntity.getMessageId() + ":" + messageEntity.getLocalReceiveCount());
               messages.add(message);
-              numMessages++;
-              if (numMessages >= maxNumMessages) break;
             }
           }
           either = Either.right(messages);
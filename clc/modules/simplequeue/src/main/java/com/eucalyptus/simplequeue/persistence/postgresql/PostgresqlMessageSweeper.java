@@ -0,0 +1,159 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import com.eucalyptus.bootstrap.Databases;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.event.ClockTick;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.simplequeue.SimpleQueue;
+import com.eucalyptus.simplequeue.SimpleQueueService;
+import com.eucalyptus.simplequeue.config.SimpleQueueProperties;
+import com.eucalyptus.simplequeue.persistence.Queue;
+import com.google.common.collect.Maps;
+import org.apache.log4j.Logger;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes expired messages and moves messages that exceeded the maximum receive count to their dead letter queue.
+ *
+ * Receives skip these messages so that each receive only reads the messages it returns. Rows are claimed in bounded
+ * batches with SKIP LOCKED, so sweeping does not wait on receives, and sweepers on other hosts do not wait on each other.
+ * Queues with a redrive policy are registered when they are received from.
+ */
+public class PostgresqlMessageSweeper implements EventListener<ClockTick> {
+
+  private static final Logger LOG = Logger.getLogger(PostgresqlMessageSweeper.class);
+
+  private static final int BATCH_SIZE = 1000;
+  private static final int MAX_BATCHES = 10;
+
+  private static final String DELETE_EXPIRED_SQL =
+    "DELETE FROM {h-schema}messages WHERE id IN (" +
+    "SELECT id FROM {h-schema}messages WHERE expired_timestamp_secs <= :now " +
+    "LIMIT :batchSize FOR UPDATE SKIP LOCKED)";
+
+  private static final String MOVE_DEAD_LETTER_SQL =
+    "UPDATE {h-schema}messages SET account_id = :deadLetterAccountId, queue_name = :deadLetterQueueName, " +
+    "local_receive_count = 0, expired_timestamp_secs = sent_timestamp_secs + :deadLetterRetentionPeriod, " +
+    "version = version + 1 WHERE id IN (" +
+    "SELECT id FROM {h-schema}messages WHERE account_id = :accountId AND queue_name = :queueName " +
+    "AND visible_timestamp_secs <= :now AND local_receive_count >= :maxReceiveCount " +
+    "LIMIT :batchSize FOR UPDATE SKIP LOCKED)";
+
+  private static final ConcurrentMap<Queue.Key, DeadLetterTarget> deadLetterSourceQueues = Maps.newConcurrentMap();
+  private static final AtomicBoolean running = new AtomicBoolean();
+
+  public static void register() {
+    Listeners.register(ClockTick.class, new PostgresqlMessageSweeper());
+  }
+
+  /**
+   * Register a queue with a redrive policy so its messages are moved to the dead letter queue.
+   */
+  static void addDeadLetterSourceQueue(Queue.Key queueKey, String deadLetterAccountId, String deadLetterQueueName,
+                                       int maxReceiveCount, long deadLetterRetentionPeriod) {
+    deadLetterSourceQueues.put(queueKey,
+      new DeadLetterTarget(deadLetterAccountId, deadLetterQueueName, maxReceiveCount, deadLetterRetentionPeriod));
+  }
+
+  @Override
+  public void fireEvent(final ClockTick event) {
+    if (!"cassandra".equalsIgnoreCase(SimpleQueueProperties.DB_TO_USE) &&
+      Topology.isEnabledLocally(SimpleQueue.class) && !Databases.isVolatile() && running.compareAndSet(false, true)) {
+      try {
+        sweep(SimpleQueueService.currentTimeSeconds());
+      } catch (final Exception e) {
+        LOG.error("Error sweeping messages", e);
+      } finally {
+        running.set(false);
+      }
+    }
+  }
+
+  private static void sweep(long now) {
+    int deleted = 0;
+    for (int batch = 0; batch < MAX_BATCHES; batch++) {
+      Map<String, Object> parameters = Maps.newHashMap();
+      parameters.put("now", now);
+      parameters.put("batchSize", BATCH_SIZE);
+      int count = update(DELETE_EXPIRED_SQL, parameters);
+      deleted += count;
+      if (count < BATCH_SIZE) break;
+    }
+    if (deleted > 0) {
+      LOG.debug("Deleted " + deleted + " expired messages");
+    }
+
+    for (Iterator<Map.Entry<Queue.Key, DeadLetterTarget>> it = deadLetterSourceQueues.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Queue.Key, DeadLetterTarget> entry = it.next();
+      Queue.Key queueKey = entry.getKey();
+      DeadLetterTarget target = entry.getValue();
+      int moved = 0;
+      int count = 0;
+      for (int batch = 0; batch < MAX_BATCHES; batch++) {
+        Map<String, Object> parameters = Maps.newHashMap();
+        parameters.put("deadLetterAccountId", target.accountId);
+        parameters.put("deadLetterQueueName", target.queueName);
+        parameters.put("deadLetterRetentionPeriod", target.retentionPeriod);
+        parameters.put("accountId", queueKey.getAccountId());
+        parameters.put("queueName", queueKey.getQueueName());
+        parameters.put("now", now);
+        parameters.put("maxReceiveCount", target.maxReceiveCount);
+        parameters.put("batchSize", BATCH_SIZE);
+        count = update(MOVE_DEAD_LETTER_SQL, parameters);
+        moved += count;
+        if (count < BATCH_SIZE) break;
+      }
+      if (moved > 0) {
+        LOG.debug("Moved " + moved + " messages from queue " + queueKey.getArn() + " to dead letter queue " + target.queueName);
+      }
+      if (count < BATCH_SIZE) {
+        // registered again on the next receive, kept if a receive registered it again during the sweep
+        deadLetterSourceQueues.remove(queueKey, target);
+      }
+    }
+  }
+
+  private static int update(String sql, Map<String, Object> parameters) {
+    try (TransactionResource db = Entities.transactionFor(MessageEntity.class)) {
+      int count = Entities.nativeUpdate(MessageEntity.class, sql, parameters);
+      db.commit();
+      return count;
+    }
+  }
+
+  private static final class DeadLetterTarget {
+    private final String accountId;
+    private final String queueName;
+    private final int maxReceiveCount;
+    private final long retentionPeriod;
+
+    private DeadLetterTarget(String accountId, String queueName, int maxReceiveCount, long retentionPeriod) {
+      this.accountId = accountId;
+      this.queueName = queueName;
+      this.maxReceiveCount = maxReceiveCount;
+      this.retentionPeriod = retentionPeriod;
+    }
+  }
+}
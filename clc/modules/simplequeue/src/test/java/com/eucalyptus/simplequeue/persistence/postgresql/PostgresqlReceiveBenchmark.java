@@ -0,0 +1,177 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simplequeue.persistence.postgresql;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Receive throughput with concurrent consumers for a queue with a large backlog.
+ *
+ * Compares the bounded SKIP LOCKED receive used by PostgresqlMessagePersistence with the previous receive that read
+ * every visible message in the queue. Each consumer receives up to 10 messages and deletes them, as a client would.
+ *
+ * Run against a scratch database, e.g.:
+ *
+ *   -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/benchmark -Dbenchmark.jdbc.user=postgres
+ *   -Dbenchmark.messages=100000 -Dbenchmark.consumers=8
+ */
+@Ignore("Manual benchmark")
+public class PostgresqlReceiveBenchmark {
+
+  private static final String URL = System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5432/benchmark");
+  private static final String USER = System.getProperty("benchmark.jdbc.user", "postgres");
+  private static final String PASSWORD = System.getProperty("benchmark.jdbc.password", "");
+  private static final int MESSAGES = Integer.getInteger("benchmark.messages", 100000);
+  private static final int CONSUMERS = Integer.getInteger("benchmark.consumers", 8);
+  private static final int RECEIVES = Integer.getInteger("benchmark.receives", 200);
+  private static final int MAX_MESSAGES = 10;
+
+  private static final String CLAIM_SQL =
+    "SELECT id, local_receive_count, receive_count, message_json FROM benchmark_messages " +
+    "WHERE account_id = ? AND queue_name = ? AND visible_timestamp_secs <= ? AND expired_timestamp_secs > ? " +
+    "ORDER BY visible_timestamp_secs LIMIT ? FOR UPDATE SKIP LOCKED";
+
+  private static final String SCAN_SQL =
+    "SELECT id, local_receive_count, receive_count, message_json FROM benchmark_messages " +
+    "WHERE account_id = ? AND queue_name = ? AND visible_timestamp_secs <= ? " +
+    "ORDER BY visible_timestamp_secs";
+
+  @Test
+  public void testClaimReceive() throws Exception {
+    run("claim", CLAIM_SQL, true);
+  }
+
+  @Test
+  public void testScanReceive() throws Exception {
+    run("scan", SCAN_SQL, false);
+  }
+
+  private void run(final String name, final String sql, final boolean bounded) throws Exception {
+    setup();
+    ExecutorService executor = Executors.newFixedThreadPool(CONSUMERS);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int i = 0; i < CONSUMERS; i++) {
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws Exception {
+            int received = 0;
+            try (Connection connection = connect()) {
+              connection.setAutoCommit(false);
+              for (int receive = 0; receive < RECEIVES; receive++) {
+                received += receive(connection, sql, bounded);
+              }
+            }
+            return received;
+          }
+        }));
+      }
+      int received = 0;
+      for (Future<Integer> future : futures) {
+        received += future.get();
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%s: %d consumers received %d messages from a backlog of %d in %.2fs (%.0f messages/s)",
+        name, CONSUMERS, received, MESSAGES, seconds, received / seconds));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static int receive(Connection connection, String sql, boolean bounded) throws SQLException {
+    long now = System.currentTimeMillis() / 1000;
+    List<String> ids = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setString(1, "000000000000");
+      statement.setString(2, "benchmark");
+      statement.setLong(3, now);
+      if (bounded) {
+        statement.setLong(4, now);
+        statement.setInt(5, MAX_MESSAGES);
+      }
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          results.getString(4); // message json is read for every row, as the receive parses it
+          if (ids.size() < MAX_MESSAGES) {
+            ids.add(results.getString(1));
+          }
+        }
+      }
+    }
+    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM benchmark_messages WHERE id = ?")) {
+      for (String id : ids) {
+        delete.setString(1, id);
+        delete.addBatch();
+      }
+      delete.executeBatch();
+    }
+    connection.commit();
+    return ids.size();
+  }
+
+  private static void setup() throws SQLException {
+    try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+      statement.execute("DROP TABLE IF EXISTS benchmark_messages");
+      statement.execute("CREATE TABLE benchmark_messages (id varchar(255) PRIMARY KEY, account_id varchar(255) NOT NULL, " +
+        "queue_name varchar(255) NOT NULL, message_id varchar(255) NOT NULL, sent_timestamp_secs bigint NOT NULL, " +
+        "visible_timestamp_secs bigint NOT NULL, expired_timestamp_secs bigint NOT NULL, receive_count integer NOT NULL, " +
+        "local_receive_count integer NOT NULL, message_json text NOT NULL)");
+      statement.execute("CREATE INDEX benchmark_messages_visible ON benchmark_messages (account_id, queue_name, visible_timestamp_secs)");
+      statement.execute("CREATE INDEX benchmark_messages_expired ON benchmark_messages (expired_timestamp_secs)");
+      connection.setAutoCommit(false);
+      long now = System.currentTimeMillis() / 1000;
+      try (PreparedStatement insert = connection.prepareStatement("INSERT INTO benchmark_messages VALUES (?, ?, ?, ?, ?, ?, ?, 0, 0, ?)")) {
+        for (int i = 0; i < MESSAGES; i++) {
+          insert.setString(1, UUID.randomUUID().toString());
+          insert.setString(2, "000000000000");
+          insert.setString(3, "benchmark");
+          insert.setString(4, UUID.randomUUID().toString());
+          insert.setLong(5, now - MESSAGES + i);
+          insert.setLong(6, now - MESSAGES + i);
+          insert.setLong(7, now + 345600);
+          insert.setString(8, "{\"Body\":\"message " + i + "\",\"MessageAttribute\":[]}");
+          insert.addBatch();
+          if (i % 1000 == 999) {
+            insert.executeBatch();
+          }
+        }
+        insert.executeBatch();
+      }
+      connection.commit();
+      statement.execute("ANALYZE benchmark_messages");
+    }
+  }
+
+  private static Connection connect() throws SQLException {
+    return DriverManager.getConnection(URL, USER, PASSWORD);
+  }
+}
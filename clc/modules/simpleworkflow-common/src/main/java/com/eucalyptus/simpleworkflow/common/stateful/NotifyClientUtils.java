@@ -30,11 +30,15 @@ import com.eucalyptus.simpleworkflow.stateful.PollForNotificationType;
 import com.eucalyptus.util.Consumer;
 import com.eucalyptus.util.Consumers;
 import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.async.AsyncRequests;
 import com.eucalyptus.util.async.ConnectionException;
 import com.eucalyptus.util.concurrent.ListenableFuture;
 import com.eucalyptus.ws.WebServicesException;
+import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import org.apache.log4j.Logger;
 
@@ -48,10 +52,24 @@ import java.util.concurrent.ExecutionException;
 public class NotifyClientUtils {
 
   private static final Logger logger = Logger.getLogger( NotifyClientUtils.class );
+  private static final Pair<Boolean,Optional<String>> NOT_NOTIFIED = Pair.ropair( false, null );
+  private static final char DETAILS_SEPARATOR = ',';
+
+  /**
+   * Join details for a batch of notifications on a channel, the notification service dispatches each separately.
+   */
+  public static String joinDetails(final Iterable<String> details) {
+    return Joiner.on(DETAILS_SEPARATOR).join(details);
+  }
+
+  public static Iterable<String> splitDetails(final String details) {
+    return Splitter.on(DETAILS_SEPARATOR).omitEmptyStrings().split(details);
+  }
 
   public static void notifyChannel(final ChannelWrapper channelWrapper) {
     final NotifyType notify = new NotifyType( );
     notify.setChannel(channelWrapper.getChannelName());
+    notify.setDetails(channelWrapper.getDetails());
     try {
       final ListenableFuture<NotifyResponseType> dispatchFuture =
           AsyncRequests.dispatch(Topology.lookup(PolledNotifications.class), notify);
@@ -76,7 +94,16 @@ public class NotifyClientUtils {
   public static void pollChannel(final ChannelWrapper channelWrapper,
                                  final long timeout,
                                  final Consumer<Boolean> resultConsumer) throws Exception {
-    final Consumer<Boolean> consumer = Consumers.once(resultConsumer);
+    pollChannelForDetails(channelWrapper, timeout, result -> resultConsumer.accept(result.getLeft()));
+  }
+
+  /**
+   * Poll for a notification, the consumer receives the notified flag and the details of the notification (if any)
+   */
+  public static void pollChannelForDetails(final ChannelWrapper channelWrapper,
+                                           final long timeout,
+                                           final Consumer<Pair<Boolean,Optional<String>>> resultConsumer) throws Exception {
+    final Consumer<Pair<Boolean,Optional<String>>> consumer = Consumers.once(resultConsumer);
     final PollForNotificationType poll = new PollForNotificationType( );
     poll.setChannel(channelWrapper.getChannelName());
     poll.setTimeout( timeout );
@@ -101,7 +128,7 @@ public class NotifyClientUtils {
       public void run( ) {
         try {
           final PollForNotificationResponseType response = dispatchFuture.get( );
-          consumer.accept(Objects.firstNonNull(response.getNotified(), false));
+          consumer.accept(Pair.ropair(Objects.firstNonNull(response.getNotified(), false), response.getDetails()));
         } catch ( final InterruptedException e ) {
           logger.info( "Interrupted while polling for task " + poll.getChannel( ), e );
         } catch ( final ExecutionException e ) {
@@ -113,20 +140,20 @@ public class NotifyClientUtils {
         } catch ( final Exception e ) {
           logger.error( "Error polling for task " + poll.getChannel( ), e );
         } finally {
-          consumer.accept( false );
+          consumer.accept( NOT_NOTIFIED );
         }
       }
     } );
   }
 
   private static void delayedPollFailure( final long delay,
-                                          final Consumer<Boolean> consumer) {
+                                          final Consumer<Pair<Boolean,Optional<String>>> consumer) {
     try {
       Thread.sleep( delay );
     } catch (InterruptedException e1) {
       Thread.currentThread( ).interrupt( );
     } finally {
-      consumer.accept( false );
+      consumer.accept( NOT_NOTIFIED );
     }
   }
 
@@ -154,5 +181,12 @@ public class NotifyClientUtils {
 
   public interface ChannelWrapper {
     public String getChannelName();
+
+    /**
+     * Details for a notification, pollers receive the details of the notification they were woken for.
+     */
+    default String getDetails() {
+      return null;
+    }
   }
 }
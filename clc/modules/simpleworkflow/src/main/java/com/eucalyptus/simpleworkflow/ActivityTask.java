@@ -26,17 +26,20 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PersistenceContext;
 import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import org.hibernate.annotations.Type;
 import com.eucalyptus.entities.AbstractOwnedPersistent;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.auth.principal.OwnerFullName;
 import com.eucalyptus.util.Pair;
@@ -52,7 +55,9 @@ import com.google.common.collect.Lists;
  */
 @Entity
 @PersistenceContext( name = "eucalyptus_simpleworkflow" )
-@Table( name = "swf_activity_task" )
+@Table( name = "swf_activity_task", indexes = {
+    @Index( name = "swf_activity_task_last_update_idx", columnList = "last_update_timestamp" )
+} )
 public class ActivityTask extends AbstractOwnedPersistent implements ActivityTaskMetadata {
   private static final long serialVersionUID = 1L;
 
@@ -411,5 +416,11 @@ public class ActivityTask extends AbstractOwnedPersistent implements ActivityTas
   protected void updateTimeout( ) {
     updateTimeStamps( );
     setTimeoutTimestamp( Optional.fromNullable( calculateNextTimeout( ) ).transform( Pair.<String,Date>right( ) ).orNull( ) );
+    TimeoutManager.scheduleTimeout( this );
+  }
+
+  @PreRemove
+  protected void removeTimeout( ) {
+    TimeoutManager.cancelTimeout( this );
   }
 }
@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.auth.principal.OwnerFullName;
@@ -35,7 +37,10 @@ public interface ActivityTasks {
                              Predicate<? super ActivityTask> filter,
                              Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+  /**
+   * List activity task deadlines, only for activity tasks updated since the given time if specified.
+   */
+  List<TimeoutDeadline> listTimeouts( @Nullable Date updatedSince ) throws SwfMetadataException;
 
   <T> T updateByExample( ActivityTask example,
                          OwnerFullName ownerFullName,
@@ -22,8 +22,14 @@ package com.eucalyptus.simpleworkflow;
 import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
 import org.apache.log4j.Logger;
 import com.eucalyptus.auth.principal.AccountFullName;
+import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.util.Consumer;
+import com.eucalyptus.util.Pair;
 import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 
 /**
  *
@@ -37,6 +43,7 @@ public class NotifyClient {
     private final String domain;
     private final String type;
     private final String name;
+    private final String details;
 
     public NotifyTaskList( final AccountFullName accountFullName,
                            final String domain,
@@ -49,10 +56,19 @@ public class NotifyClient {
                            final String domain,
                            final String type,
                            final String name ) {
+      this( accountNumber, domain, type, name, null );
+    }
+
+    public NotifyTaskList( final String accountNumber,
+                           final String domain,
+                           final String type,
+                           final String name,
+                           final String details ) {
       this.accountNumber = accountNumber;
       this.domain = domain;
       this.type = type;
       this.name = name;
+      this.details = details;
     }
 
     public static NotifyTaskList of( final AccountFullName accountFullName,
@@ -69,6 +85,56 @@ public class NotifyClient {
       return new NotifyTaskList( accountNumber, domain, type, name );
     }
 
+    /**
+     * Notification for the pending decision task of a workflow execution.
+     */
+    public static NotifyTaskList decision( final WorkflowExecution workflowExecution ) {
+      return new NotifyTaskList(
+          workflowExecution.getOwnerAccountNumber( ),
+          workflowExecution.getDomainName( ),
+          "decision",
+          workflowExecution.getTaskList( ),
+          TaskDetails.of( workflowExecution.getDomainUuid( ), workflowExecution.getDisplayName( ), null ).toString( ) );
+    }
+
+    /**
+     * Notification for a pending activity task.
+     */
+    public static NotifyTaskList activity( final String accountNumber,
+                                           final String domain,
+                                           final String domainUuid,
+                                           final String runId,
+                                           final Long scheduledEventId,
+                                           final String taskList ) {
+      return new NotifyTaskList(
+          accountNumber,
+          domain,
+          "activity",
+          taskList,
+          TaskDetails.of( domainUuid, runId, scheduledEventId ).toString( ) );
+    }
+
+    public String getAccountNumber( ) {
+      return accountNumber;
+    }
+
+    public String getDomain( ) {
+      return domain;
+    }
+
+    public String getType( ) {
+      return type;
+    }
+
+    public String getName( ) {
+      return name;
+    }
+
+    @Override
+    public String getDetails( ) {
+      return details;
+    }
+
     public String getChannelName( ) {
       return Joiner.on( ':' ).join( accountNumber, type, domain, name );
     }
@@ -85,6 +151,7 @@ public class NotifyClient {
       if ( !domain.equals( taskList.domain ) ) return false;
       if ( !name.equals( taskList.name ) ) return false;
       if ( !type.equals( taskList.type ) ) return false;
+      if ( details != null ? !details.equals( taskList.details ) : taskList.details != null ) return false;
 
       return true;
     }
@@ -95,10 +162,75 @@ public class NotifyClient {
       result = 31 * result + domain.hashCode();
       result = 31 * result + type.hashCode();
       result = 31 * result + name.hashCode();
+      result = 31 * result + ( details != null ? details.hashCode() : 0 );
       return result;
     }
   }
 
+  /**
+   * Identifies the task a notification was sent for, so a poller can claim it directly.
+   */
+  public static final class TaskDetails {
+    private final String domainUuid;
+    private final String runId;
+    private final Long scheduledEventId;
+
+    private TaskDetails( final String domainUuid,
+                         final String runId,
+                         final Long scheduledEventId ) {
+      this.domainUuid = domainUuid;
+      this.runId = runId;
+      this.scheduledEventId = scheduledEventId;
+    }
+
+    public static TaskDetails of( final String domainUuid,
+                                  final String runId,
+                                  @Nullable final Long scheduledEventId ) {
+      return new TaskDetails( domainUuid, runId, scheduledEventId );
+    }
+
+    /**
+     * Parse notification details, absent if the notification was not for a task.
+     */
+    public static Optional<TaskDetails> parse( @Nullable final String details ) {
+      if ( details != null ) {
+        final List<String> parts = Splitter.on( ':' ).splitToList( details );
+        try {
+          if ( parts.size( ) == 2 ) {
+            return Optional.of( new TaskDetails( parts.get( 0 ), parts.get( 1 ), null ) );
+          } else if ( parts.size( ) == 3 ) {
+            return Optional.of( new TaskDetails( parts.get( 0 ), parts.get( 1 ), Long.valueOf( parts.get( 2 ) ) ) );
+          }
+        } catch ( final NumberFormatException e ) {
+          logger.warn( "Ignoring invalid task details: " + details );
+        }
+      }
+      return Optional.absent( );
+    }
+
+    public String getDomainUuid( ) {
+      return domainUuid;
+    }
+
+    public String getRunId( ) {
+      return runId;
+    }
+
+    /**
+     * Scheduled event identifier for an activity task, null for a decision task.
+     */
+    @Nullable
+    public Long getScheduledEventId( ) {
+      return scheduledEventId;
+    }
+
+    public String toString( ) {
+      return scheduledEventId == null ?
+          Joiner.on( ':' ).join( domainUuid, runId ) :
+          Joiner.on( ':' ).join( domainUuid, runId, scheduledEventId );
+    }
+  }
+
   public static void notifyTaskList( final AccountFullName accountFullName,
                                      final String domain,
                                      final String type,
@@ -110,6 +242,21 @@ public class NotifyClient {
     NotifyClientUtils.notifyChannel(taskList);
   }
 
+  /**
+   * Notify tasks for a single task list with one request, the tasks are dispatched to pollers individually.
+   */
+  public static void notifyTasks( final List<NotifyTaskList> tasks ) {
+    if ( !tasks.isEmpty( ) ) {
+      final NotifyTaskList taskList = tasks.get( 0 );
+      notifyTaskList( new NotifyTaskList(
+          taskList.getAccountNumber( ),
+          taskList.getDomain( ),
+          taskList.getType( ),
+          taskList.getName( ),
+          NotifyClientUtils.joinDetails( Iterables.transform( tasks, NotifyTaskList::getDetails ) ) ) );
+    }
+  }
+
   public static void pollTaskList( final AccountFullName accountFullName,
                                    final String domain,
                                    final String type,
@@ -125,4 +272,19 @@ public class NotifyClient {
     NotifyClientUtils.pollChannel(taskList, timeout, resultConsumer);
   }
 
+  /**
+   * Poll a task list, the consumer receives the notified flag and the details of any task dispatched to this poller
+   */
+  public static void pollTaskListForTask( final AccountFullName accountFullName,
+                                          final String domain,
+                                          final String type,
+                                          final String taskList,
+                                          final long timeout,
+                                          final Consumer<Pair<Boolean,Optional<TaskDetails>>> resultConsumer ) throws Exception {
+    NotifyClientUtils.pollChannelForDetails(
+        new NotifyTaskList( accountFullName, domain, type, taskList ),
+        timeout,
+        result -> resultConsumer.accept( Pair.pair( result.getLeft( ), TaskDetails.parse( result.getRight( ).orNull( ) ) ) ) );
+  }
+
 }
@@ -60,6 +60,9 @@ public class SimpleWorkflowProperties {
   @ConfigurableField( initial = "25000", description = "Maximum number of events per workflow execution." )
   public static volatile int workflowExecutionHistorySize = 25000;
 
+  @ConfigurableField( initial = "false", description = "Decision tasks include only the history events since the previous decision task was started." )
+  public static volatile boolean decisionTaskIncrementalHistory = false;
+
   @ConfigurableField(
       initial = "365d",
       description = "Maximum workflow execution time.",
@@ -133,6 +136,10 @@ public class SimpleWorkflowProperties {
     return workflowExecutionHistorySize;
   }
 
+  public static boolean isDecisionTaskIncrementalHistory() {
+    return decisionTaskIncrementalHistory;
+  }
+
   public static long getWorkflowExecutionDurationMillis() {
     return workflowExecutionDurationMillis.get();
   }
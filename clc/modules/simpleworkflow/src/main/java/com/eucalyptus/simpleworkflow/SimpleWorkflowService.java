@@ -32,8 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -52,12 +50,11 @@ import com.eucalyptus.entities.AbstractPersistent;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.PersistenceExceptions;
-import com.eucalyptus.event.ClockTick;
-import com.eucalyptus.event.EventListener;
-import com.eucalyptus.event.Listeners;
 import com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
+import com.eucalyptus.simpleworkflow.NotifyClient.TaskDetails;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
 import com.eucalyptus.simpleworkflow.common.model.*;
+import com.eucalyptus.simpleworkflow.tokens.HistoryPageToken;
 import com.eucalyptus.simpleworkflow.tokens.TaskToken;
 import com.eucalyptus.simpleworkflow.tokens.TaskTokenException;
 import com.eucalyptus.simpleworkflow.tokens.TaskTokenManager;
@@ -77,7 +74,6 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
-import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -92,7 +88,6 @@ import com.google.common.collect.Sets;
 public class SimpleWorkflowService {
 
   private static final Logger logger = Logger.getLogger( SimpleWorkflowService.class );
-  private static final ConcurrentMap<NotifyTaskList, Long> taskListActivity = Maps.newConcurrentMap( );
 
   private final Domains domains;
   private final ActivityTasks activityTasks;
@@ -814,7 +809,7 @@ public class SimpleWorkflowService {
       }
     }, WorkflowExecution.class, request.getWorkflowId( ) );
 
-    notifyTaskList( accountFullName, workflowExecution.getDomainName( ), "decision", workflowExecution.getTaskList( ) );
+    notifyTaskList( NotifyTaskList.decision( workflowExecution ) );
 
     final Run run = new Run( );
     run.setRunId( workflowExecution.getDisplayName() );
@@ -832,89 +827,133 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
-    final Callable<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskCallable =
-        () -> {
-          com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
-          final List<ActivityTask> pending = activityTasks.listByExample(
-              ActivityTask.examplePending( accountFullName, domain, taskList ),
+    final TaskClaimer<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskClaimer = task -> {
+      if ( task.isPresent( ) && task.get( ).getScheduledEventId( ) != null ) {
+        return claimActivityTask(
+            accountFullName,
+            accessible,
+            request,
+            task.get( ).getDomainUuid( ),
+            task.get( ).getRunId( ),
+            ActivityTask.exampleWithUniqueName( accountFullName, task.get( ).getRunId( ), task.get( ).getScheduledEventId( ) ) );
+      }
+      TaskClaim<com.eucalyptus.simpleworkflow.common.model.ActivityTask> claim = TaskClaim.unavailable( );
+      ActivityTask claimedTask = null;
+      final List<ActivityTask> pending = activityTasks.listByExample(
+          ActivityTask.examplePending( accountFullName, domain, taskList ),
+          accessible,
+          Functions.identity( ) );
+      Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
+      for ( final List<ActivityTask> pendingSegment : shufflePartitions( pending ) ) {
+        for ( final ActivityTask pendingTask : pendingSegment ) {
+          if ( claim.isClaimed( ) ) break;
+          claim = claimActivityTask(
+              accountFullName,
               accessible,
-              Functions.identity( ) );
-          Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
-          for ( final List<ActivityTask> pendingSegment : shufflePartitions( pending ) ) {
-            for ( final ActivityTask pendingTask : pendingSegment ) {
-              if ( activityTask != null ) break;
-              try ( final WorkflowLock lock = WorkflowLock.tryLock(
-                  accountFullName,
-                  pendingTask.getDomainUuid( ),
-                  pendingTask.getWorkflowRunId() ) ) {
-                if ( !lock.isHeldByCurrentThread( ) ) {
-                  continue;
-                }
-                activityTask = activityTasks.updateByExample(
-                    pendingTask,
-                    accountFullName,
-                    pendingTask.getDisplayName(),
-                    new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
-                      @Nullable
-                      @Override
-                      public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
-                        if ( activityTask.getState( ) == ActivityTask.State.Pending ) {
-                          final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
-                          final Long startedId = workflowExecution.addHistoryEvent(
-                              WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
-                                  .withIdentity( request.getIdentity( ) )
-                                  .withScheduledEventId( activityTask.getScheduledEventId( ) )
-                              )
-                          );
-                          activityTask.setState( ActivityTask.State.Active );
-                          activityTask.setStartedEventId( startedId );
-
-                          return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
-                              .withStartedEventId( startedId )
-                              .withInput( activityTask.getInput() )
-                              .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                                  accountFullName.getAccountNumber(),
-                                  workflowExecution.getDomain().getNaturalId(),
-                                  workflowExecution.getDisplayName(),
-                                  activityTask.getScheduledEventId(),
-                                  startedId,
-                                  System.currentTimeMillis(),
-                                  System.currentTimeMillis() ) ) )
-                              .withActivityId( activityTask.getDisplayName() )
-                              .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
-                                  .withName( activityTask.getActivityType() )
-                                  .withVersion( activityTask.getActivityVersion() ) )
-                              .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
-                                  .withRunId( workflowExecution.getDisplayName() )
-                                  .withWorkflowId( workflowExecution.getWorkflowId() ) );
-                        }
-                        return null;
-                      }
-                    });
-
-              } catch ( SwfMetadataException e ) {
-                logger.info( "Activity task for domain " + domain + ", list " + taskList + " not found" );
-              } catch ( Exception e ) {
-                if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " already taken"  );
-                } else if (  PersistenceExceptions.isLockError( e ) ) {
-                  logger.info( "Activity task for domain " + domain + ", list " + taskList + " locking error" );
-                } else {
-                  logger.error( "Error taking activity task for domain " + domain + ", list " + taskList, e );
-                }
-              }
-            }
-          }
-          return activityTask;
-        };
+              request,
+              pendingTask.getDomainUuid( ),
+              pendingTask.getWorkflowRunId( ),
+              pendingTask );
+          claimedTask = pendingTask;
+        }
+      }
+      final ActivityTask claimed = claim.isClaimed( ) ? claimedTask : null;
+      dispatchPending( Iterables.transform(
+          Iterables.filter( pending, pendingTask -> pendingTask != claimed ),
+          pendingTask -> NotifyTaskList.activity(
+              pendingTask.getOwnerAccountNumber( ),
+              pendingTask.getDomain( ),
+              pendingTask.getDomainUuid( ),
+              pendingTask.getWorkflowRunId( ),
+              pendingTask.getScheduledEventId( ),
+              pendingTask.getTaskList( ) ) ) );
+      return claim;
+    };
 
     try {
-      return handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskCallable );
+      return handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskClaimer );
     } catch ( Exception e ) {
       throw handleException( e );
     }
   }
 
+  /**
+   * Claim a pending activity task.
+   *
+   * @return The claimed activity task, or the reason it was not claimed
+   */
+  private TaskClaim<com.eucalyptus.simpleworkflow.common.model.ActivityTask> claimActivityTask(
+      final AccountFullName accountFullName,
+      final Predicate<? super ActivityTask> accessible,
+      final PollForActivityTaskRequest request,
+      final String domainUuid,
+      final String runId,
+      final ActivityTask example
+  ) {
+    try ( final WorkflowLock lock = WorkflowLock.tryLock( accountFullName, domainUuid, runId ) ) {
+      if ( !lock.isHeldByCurrentThread( ) ) {
+        return TaskClaim.contended( );
+      }
+      return TaskClaim.of( activityTasks.updateByExample(
+          example,
+          accountFullName,
+          runId,
+          new Function<ActivityTask,com.eucalyptus.simpleworkflow.common.model.ActivityTask>(){
+            @Nullable
+            @Override
+            public com.eucalyptus.simpleworkflow.common.model.ActivityTask apply( final ActivityTask activityTask ) {
+              if ( activityTask.getState( ) == ActivityTask.State.Pending &&
+                  request.getDomain( ).equals( activityTask.getDomain( ) ) &&
+                  request.getTaskList( ).getName( ).equals( activityTask.getTaskList( ) ) &&
+                  accessible.apply( activityTask ) ) {
+                final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution( );
+                final Long startedId = workflowExecution.addHistoryEvent(
+                    WorkflowHistoryEvent.create( workflowExecution, new ActivityTaskStartedEventAttributes( )
+                        .withIdentity( request.getIdentity( ) )
+                        .withScheduledEventId( activityTask.getScheduledEventId( ) )
+                    )
+                );
+                activityTask.setState( ActivityTask.State.Active );
+                activityTask.setStartedEventId( startedId );
+
+                return new com.eucalyptus.simpleworkflow.common.model.ActivityTask( )
+                    .withStartedEventId( startedId )
+                    .withInput( activityTask.getInput() )
+                    .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                        accountFullName.getAccountNumber(),
+                        workflowExecution.getDomain().getNaturalId(),
+                        workflowExecution.getDisplayName(),
+                        activityTask.getScheduledEventId(),
+                        startedId,
+                        System.currentTimeMillis(),
+                        System.currentTimeMillis() ) ) )
+                    .withActivityId( activityTask.getDisplayName() )
+                    .withActivityType( new com.eucalyptus.simpleworkflow.common.model.ActivityType()
+                        .withName( activityTask.getActivityType() )
+                        .withVersion( activityTask.getActivityVersion() ) )
+                    .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution()
+                        .withRunId( workflowExecution.getDisplayName() )
+                        .withWorkflowId( workflowExecution.getWorkflowId() ) );
+              }
+              return null;
+            }
+          } ) );
+    } catch ( SwfMetadataNotFoundException e ) {
+      logger.info( "Activity task for domain " + request.getDomain( ) + ", list " + request.getTaskList( ).getName( ) + " not found" );
+    } catch ( Exception e ) {
+      if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+        logger.info( "Activity task for domain " + request.getDomain( ) + ", list " + request.getTaskList( ).getName( ) + " already taken"  );
+        return TaskClaim.contended( );
+      } else if (  PersistenceExceptions.isLockError( e ) ) {
+        logger.info( "Activity task for domain " + request.getDomain( ) + ", list " + request.getTaskList( ).getName( ) + " locking error" );
+        return TaskClaim.contended( );
+      } else {
+        logger.error( "Error taking activity task for domain " + request.getDomain( ) + ", list " + request.getTaskList( ).getName( ), e );
+      }
+    }
+    return TaskClaim.unavailable( );
+  }
+
   public ActivityTaskStatus recordActivityTaskHeartbeat( final RecordActivityTaskHeartbeatRequest request ) throws SimpleWorkflowException {
     final Context ctx = Contexts.lookup( );
     final UserFullName userFullName = ctx.getUserFullName( );
@@ -964,9 +1003,9 @@ public class SimpleWorkflowService {
       final TaskToken token =
           taskTokenManager.decryptTaskToken( accountFullName.getAccountNumber( ), request.getTaskToken( ) );
 
-      final Pair<String,String> domainTaskListPair;
+      final NotifyTaskList decisionTaskList;
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, token.getDomainUuid( ), token.getRunId( ) ) ) {
-        domainTaskListPair = activityTasks.withRetries().updateByExample(
+        decisionTaskList = activityTasks.withRetries().updateByExample(
             ActivityTask.exampleWithUniqueName( accountFullName, token.getRunId(), token.getScheduledEventId() ),
             accountFullName,
             token.getRunId() + "/" + token.getScheduledEventId(),
@@ -995,15 +1034,15 @@ public class SimpleWorkflowService {
                 }
                 Entities.delete( activityTask );
                 return workflowExecution.getDecisionStatus() == Pending ?
-                    Pair.pair( workflowExecution.getDomainName(), workflowExecution.getTaskList() ) :
+                    NotifyTaskList.decision( workflowExecution ) :
                     null;
               }
               return null;
             } );
       }
 
-      if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft(), "decision", domainTaskListPair.getRight() );
+      if ( decisionTaskList != null ) {
+        notifyTaskList( decisionTaskList );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -1080,7 +1119,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus() == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyTaskList( NotifyTaskList.decision( workflowExecution ) );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1154,7 +1193,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyTaskList( NotifyTaskList.decision( workflowExecution ) );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1172,98 +1211,148 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
-    final Callable<DecisionTask> taskCallable = () -> {
+    if ( request.getNextPageToken( ) != null ) {
+      return request.reply( decisionTaskHistoryPage( accountFullName, accessible, request ) );
+    }
+    final TaskClaimer<DecisionTask> taskClaimer = task -> {
+      if ( task.isPresent( ) && task.get( ).getScheduledEventId( ) == null ) {
+        return claimDecisionTask( accountFullName, accessible, request, task.get( ).getDomainUuid( ), task.get( ).getRunId( ) );
+      }
       final List<WorkflowExecution> pending = workflowExecutions.listByExample(
           WorkflowExecution.exampleWithPendingDecision( accountFullName, domain, taskList ),
           accessible,
           Functions.identity( ) );
       Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
-      DecisionTask decisionTask = null;
+      TaskClaim<DecisionTask> claim = TaskClaim.unavailable( );
+      WorkflowExecution claimedExecution = null;
       for ( final List<WorkflowExecution> pendingSegment : shufflePartitions( pending ) ) {
         for ( final WorkflowExecution execution : pendingSegment ) {
-          if ( decisionTask != null ) break;
-          try ( final WorkflowLock lock = WorkflowLock.tryLock(
-              accountFullName,
-              execution.getDomainUuid( ),
-              execution.getDisplayName( ) ) ) {
-            if ( !lock.isHeldByCurrentThread( ) ) {
-              continue;
-            }
-            decisionTask = workflowExecutions.updateByExample(
-                WorkflowExecution.exampleWithUniqueName( accountFullName, execution.getDomainName( ), execution.getDisplayName( ) ),
-                accountFullName,
-                execution.getDisplayName(),
-                new Function<WorkflowExecution,DecisionTask>( ) {
-                  @Nullable
-                  @Override
-                  public DecisionTask apply( final WorkflowExecution workflowExecution ) {
-                    if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-                      final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                      final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                      final WorkflowHistoryEvent scheduled = Iterables.find(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskScheduled", EVENT_TYPE ) );
-                      final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                          reverseEvents,
-                          CollectionUtils.propertyPredicate( "DecisionTaskStarted", EVENT_TYPE ) );
-                      workflowExecution.setDecisionStatus( Active );
-                      workflowExecution.setDecisionTimestamp( new Date( ) );
-                      final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new DecisionTaskStartedEventAttributes()
-                              .withIdentity( request.getIdentity() )
-                              .withScheduledEventId( scheduled.getEventId() ) );
-                      workflowExecution.addHistoryEvent( started );
-                      return new DecisionTask( )
-                          .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
-                              .withWorkflowId( workflowExecution.getWorkflowId( ) )
-                              .withRunId( workflowExecution.getDisplayName( ) ) )
-                          .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
-                              .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
-                              .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
-                          .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
-                              accountFullName.getAccountNumber( ),
-                              workflowExecution.getDomain( ).getNaturalId( ),
-                              workflowExecution.getDisplayName( ),
-                              scheduled.getEventId( ),
-                              started.getEventId( ),
-                              System.currentTimeMillis( ),
-                              System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
-                          .withStartedEventId( started.getEventId() )
-                          .withPreviousStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).or( 0L ) )
-                          .withEvents( Collections2.transform(
-                              MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
-                              TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                          ) );
-                    }
-                    return null;
-                  }
-                } );
-          } catch ( Exception e ) {
-            final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
-            if ( stale != null ) try {
-              Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
-            } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
-            if ( PersistenceExceptions.isStaleUpdate( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " already taken" );
-            } else if (  PersistenceExceptions.isLockError( e ) ) {
-              logger.info( "Decision task for workflow " + execution.getDisplayName() + " locking error" );
-            } else {
-              logger.error( "Error taking decision task for workflow " + execution.getDisplayName( ), e );
-            }
-          }
+          if ( claim.isClaimed( ) ) break;
+          claim = claimDecisionTask( accountFullName, accessible, request, execution.getDomainUuid( ), execution.getDisplayName( ) );
+          claimedExecution = execution;
         }
       }
-      return decisionTask;
+      final WorkflowExecution claimed = claim.isClaimed( ) ? claimedExecution : null;
+      dispatchPending( Iterables.transform(
+          Iterables.filter( pending, execution -> execution != claimed ),
+          NotifyTaskList::decision ) );
+      return claim;
     };
 
     try {
-      return handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskCallable );
+      return handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskClaimer );
     } catch ( Exception e ) {
       throw handleException( e );
     }
   }
 
+  /**
+   * Claim the pending decision task for a workflow execution, loading its history once claimed.
+   *
+   * @return The claimed decision task, or the reason it was not claimed
+   */
+  private TaskClaim<DecisionTask> claimDecisionTask( final AccountFullName accountFullName,
+                                          final Predicate<? super WorkflowExecution> accessible,
+                                          final PollForDecisionTaskRequest request,
+                                          final String domainUuid,
+                                          final String runId ) throws SwfMetadataException {
+    DecisionTask decisionTask = null;
+    try ( final WorkflowLock lock = WorkflowLock.tryLock( accountFullName, domainUuid, runId ) ) {
+      if ( !lock.isHeldByCurrentThread( ) ) {
+        return TaskClaim.contended( );
+      }
+      decisionTask = workflowExecutions.updateByExample(
+          WorkflowExecution.exampleWithUniqueName( accountFullName, request.getDomain( ), runId ),
+          accountFullName,
+          runId,
+          new Function<WorkflowExecution,DecisionTask>( ) {
+            @Nullable
+            @Override
+            public DecisionTask apply( final WorkflowExecution workflowExecution ) {
+              if ( workflowExecution.getDecisionStatus( ) == Pending &&
+                  request.getTaskList( ).getName( ).equals( workflowExecution.getTaskList( ) ) &&
+                  accessible.apply( workflowExecution ) ) {
+                // targeted lookups so the history is not loaded while the execution is locked
+                final Long lastEventId;
+                final Long scheduledEventId;
+                final Long previousStartedEventId;
+                try {
+                  lastEventId = workflowExecutions.findLatestHistoryEvent(
+                      accountFullName, runId, null, WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID );
+                  scheduledEventId = workflowExecutions.findLatestHistoryEvent(
+                      accountFullName, runId, "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID );
+                  previousStartedEventId = workflowExecutions.findLatestHistoryEvent(
+                      accountFullName, runId, "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID );
+                } catch ( SwfMetadataException e ) {
+                  throw up( e );
+                }
+                if ( lastEventId == null || scheduledEventId == null ) {
+                  throw new IllegalStateException( "Scheduled event not found for pending decision task " + runId );
+                }
+                workflowExecution.setDecisionStatus( Active );
+                workflowExecution.setDecisionTimestamp( new Date( ) );
+                final WorkflowHistoryEvent started = WorkflowHistoryEvent.create(
+                    workflowExecution,
+                    new DecisionTaskStartedEventAttributes()
+                        .withIdentity( request.getIdentity() )
+                        .withScheduledEventId( scheduledEventId ) );
+                workflowExecution.addHistoryEvent( started, lastEventId );
+                return new DecisionTask( )
+                    .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                        .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                        .withRunId( workflowExecution.getDisplayName( ) ) )
+                    .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                        .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                        .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+                    .withTaskToken( taskTokenManager.encryptTaskToken( new TaskToken(
+                        accountFullName.getAccountNumber( ),
+                        workflowExecution.getDomain( ).getNaturalId( ),
+                        workflowExecution.getDisplayName( ),
+                        scheduledEventId,
+                        started.getEventId( ),
+                        System.currentTimeMillis( ),
+                        System.currentTimeMillis( ) ) ) )  //TODO:STEVE: token expiry date
+                    .withStartedEventId( started.getEventId() )
+                    .withPreviousStartedEventId( MoreObjects.firstNonNull( previousStartedEventId, 0L ) );
+              }
+              return null;
+            }
+          } );
+    } catch ( SwfMetadataNotFoundException e ) {
+      logger.info( "Decision task for workflow " + runId + " not found" );
+    } catch ( Exception e ) {
+      final StaleObjectStateException stale = Exceptions.findCause( e, StaleObjectStateException.class );
+      if ( stale != null ) try {
+        Entities.evictCache( Class.forName( stale.getEntityName( ) ) );
+      } catch ( ClassNotFoundException ce ) { /* eviction failure */ }
+      if ( PersistenceExceptions.isStaleUpdate( e ) ) {
+        logger.info( "Decision task for workflow " + runId + " already taken" );
+        return TaskClaim.contended( );
+      } else if (  PersistenceExceptions.isLockError( e ) ) {
+        logger.info( "Decision task for workflow " + runId + " locking error" );
+        return TaskClaim.contended( );
+      } else {
+        logger.error( "Error taking decision task for workflow " + runId, e );
+      }
+    }
+    if ( decisionTask != null ) {
+      // history is read after the decision task is claimed so the execution is not locked while events are loaded
+      final History history = historyPage(
+          accountFullName,
+          HistoryPageToken.forDecisionTask(
+              accountFullName.getAccountNumber( ),
+              domainUuid,
+              runId,
+              decisionTask.getStartedEventId( ),
+              decisionTask.getPreviousStartedEventId( ),
+              SimpleWorkflowProperties.isDecisionTaskIncrementalHistory( ),
+              MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ),
+          request.getMaximumPageSize( ) );
+      decisionTask.withEvents( history.getEvents( ) ).withNextPageToken( history.getNextPageToken( ) );
+    }
+    return TaskClaim.of( decisionTask );
+  }
+
   public SimpleWorkflowMessage respondDecisionTaskCompleted( final RespondDecisionTaskCompletedRequest request ) throws SimpleWorkflowException {
     final Context ctx = Contexts.lookup( );
     final UserFullName userFullName = ctx.getUserFullName( );
@@ -1281,7 +1370,7 @@ public class SimpleWorkflowService {
           Predicates.alwaysTrue( ),
           Functions.identity( ) );
 
-      final Set<Pair<String,String>> notificationTypeListPairs = Sets.newHashSet( );
+      final Set<NotifyTaskList> notificationTaskLists = Sets.newHashSet( );
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, domain, token.getRunId() ) ) {
         workflowExecutions.withRetries( ).updateByExample(
           WorkflowExecution.exampleWithUniqueName( accountFullName, domain.getDisplayName( ), token.getRunId( ) ),
@@ -1293,7 +1382,7 @@ public class SimpleWorkflowService {
             public WorkflowExecution apply( final WorkflowExecution workflowExecution ) {
               if ( accessible.apply( workflowExecution ) ) {
                 // clear pending notifications in case of retries
-                notificationTypeListPairs.clear( );
+                notificationTaskLists.clear( );
 
                 // verify token is valid
                 final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
@@ -1313,7 +1402,7 @@ public class SimpleWorkflowService {
                 } else {
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  notificationTaskLists.add( NotifyTaskList.decision( workflowExecution ) );
                 }
 
                 // setup activity count supplier
@@ -1509,7 +1598,7 @@ public class SimpleWorkflowService {
 
                           deleteActivities( activityTasks, accountFullName, workflowExecution );
 
-                          notificationTypeListPairs.add( Pair.pair( "decision", taskList ) );
+                          notificationTaskLists.add( NotifyTaskList.decision( workflowExecutionContinued ) );
                         }
                       }
 
@@ -1689,7 +1778,13 @@ public class SimpleWorkflowService {
                         ) );
                         activityTaskScheduledCount++;
 
-                        notificationTypeListPairs.add( Pair.pair( "activity", list ) );
+                        notificationTaskLists.add( NotifyTaskList.activity(
+                            accountFullName.getAccountNumber( ),
+                            domain.getDisplayName( ),
+                            domain.getNaturalId( ),
+                            workflowExecution.getDisplayName( ),
+                            scheduledId,
+                            list ) );
                       } catch ( final ScheduleActivityTaskException e ) {
                         workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                             workflowExecution,
@@ -1813,7 +1908,7 @@ public class SimpleWorkflowService {
                   ) );
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  notificationTaskLists.add( NotifyTaskList.decision( workflowExecution ) );
                 } else {
                   workflowExecution.updateTimeStamps( );
                 }
@@ -1824,12 +1919,8 @@ public class SimpleWorkflowService {
           }
 
           //TODO:STEVE: update API to allow batch notification
-          for ( final Pair<String,String> notificationTypeListPair : notificationTypeListPairs ) {
-            notifyTaskList(
-                accountFullName,
-                domain.getDisplayName( ),
-                notificationTypeListPair.getLeft( ),
-                notificationTypeListPair.getRight( ) );
+          for ( final NotifyTaskList notificationTaskList : notificationTaskLists ) {
+            notifyTaskList( notificationTaskList );
           }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1859,9 +1950,9 @@ public class SimpleWorkflowService {
               WorkflowExecutions.WorkflowExecutionStringFunctions.DOMAIN_UUID,
               SimpleWorkflowMetadatas.toDisplayName( ) ) );
 
-      final Pair<String,String> domainTaskListPair;
+      final NotifyTaskList decisionTaskList;
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, domainUuidRunIdPair ) ) {
-        domainTaskListPair = workflowExecutions.withRetries().updateByExample(
+        decisionTaskList = workflowExecutions.withRetries().updateByExample(
             example,
             accountFullName,
             request.getWorkflowId(),
@@ -1884,7 +1975,7 @@ public class SimpleWorkflowService {
                   if ( workflowExecution.getDecisionStatus() == Idle ) {
                     workflowExecution.setDecisionStatus( Pending );
                     workflowExecution.setDecisionTimestamp( new Date() );
-                    return Pair.pair( workflowExecution.getDomainName(), workflowExecution.getTaskList() );
+                    return NotifyTaskList.decision( workflowExecution );
                   }
                 }
               }
@@ -1893,8 +1984,8 @@ public class SimpleWorkflowService {
         );
       }
 
-      if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
+      if ( decisionTaskList != null ) {
+        notifyTaskList( decisionTaskList );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -1930,9 +2021,9 @@ public class SimpleWorkflowService {
               WorkflowExecutions.WorkflowExecutionStringFunctions.DOMAIN_UUID,
               SimpleWorkflowMetadatas.toDisplayName( ) ) );
 
-      final Pair<String, String> domainTaskListPair;
+      final NotifyTaskList decisionTaskList;
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName,  domainUuidRunIdPair ) ) {
-        domainTaskListPair = workflowExecutions.withRetries().updateByExample(
+        decisionTaskList = workflowExecutions.withRetries().updateByExample(
             example,
             accountFullName,
             request.getWorkflowId(),
@@ -1954,7 +2045,7 @@ public class SimpleWorkflowService {
                   if ( workflowExecution.getDecisionStatus() == Idle ) {
                     workflowExecution.setDecisionStatus( Pending );
                     workflowExecution.setDecisionTimestamp( new Date() );
-                    return Pair.pair( workflowExecution.getDomainName(), workflowExecution.getTaskList() );
+                    return NotifyTaskList.decision( workflowExecution );
                   }
                 }
               }
@@ -1963,8 +2054,8 @@ public class SimpleWorkflowService {
         );
       }
 
-      if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
+      if ( decisionTaskList != null ) {
+        notifyTaskList( decisionTaskList );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -2046,21 +2137,29 @@ public class SimpleWorkflowService {
 
     final History history;
     try {
-      history = workflowExecutions.lookupByExample(
-          WorkflowExecution.exampleWithName( accountFullName, request.getExecution().getRunId( ) ),
+      final String runId = request.getExecution( ).getRunId( );
+      final HistoryPageToken pageToken = request.getNextPageToken( ) == null ?
+          null :
+          decryptPageToken( accountFullName, request.getNextPageToken( ) );
+      if ( pageToken != null && ( !runId.equals( pageToken.getRunId( ) ) || pageToken.getStartedEventId( ) != 0 ) ) {
+        throw new SimpleWorkflowClientException( "InvalidParameterValue", "Invalid next page token." );
+      }
+      final HistoryPageToken position = workflowExecutions.lookupByExample(
+          WorkflowExecution.exampleWithName( accountFullName, runId ),
           accountFullName,
-          request.getExecution().getRunId(),
-          accessible,
-          workflowExecution -> {
-            final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-            final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-            return new History( )
-                .withEvents( Collections2.transform(
-                    MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) ? reverseEvents : events,
-                    TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class )
-                ) );
-          }
+          runId,
+          Predicates.and( accessible, execution -> execution != null &&
+              request.getDomain( ).equals( execution.getDomainName( ) ) &&
+              ( pageToken == null || pageToken.getDomainUuid( ).equals( execution.getDomainUuid( ) ) ) ),
+          workflowExecution -> pageToken != null ?
+              pageToken :
+              HistoryPageToken.forExecution(
+                  accountFullName.getAccountNumber( ),
+                  workflowExecution.getDomainUuid( ),
+                  runId,
+                  MoreObjects.firstNonNull( request.isReverseOrder( ), Boolean.FALSE ) )
       );
+      history = historyPage( accountFullName, position, request.getMaximumPageSize( ) );
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
           "UnknownResourceFault",
@@ -2072,6 +2171,79 @@ public class SimpleWorkflowService {
     return request.reply( history );
   }
 
+  /**
+   * Next page of history for a decision task, this does not claim a decision task.
+   */
+  private DecisionTask decisionTaskHistoryPage(
+      final AccountFullName accountFullName,
+      final Predicate<? super WorkflowExecution> accessible,
+      final PollForDecisionTaskRequest request
+  ) throws SimpleWorkflowException {
+    try {
+      final HistoryPageToken position = decryptPageToken( accountFullName, request.getNextPageToken( ) );
+      if ( position.getStartedEventId( ) == 0 ) {
+        throw new SimpleWorkflowClientException( "InvalidParameterValue", "Invalid next page token." );
+      }
+      final DecisionTask decisionTask = workflowExecutions.lookupByExample(
+          WorkflowExecution.exampleWithName( accountFullName, position.getRunId( ) ),
+          accountFullName,
+          position.getRunId( ),
+          Predicates.and( accessible, execution -> execution != null &&
+              request.getDomain( ).equals( execution.getDomainName( ) ) &&
+              position.getDomainUuid( ).equals( execution.getDomainUuid( ) ) ),
+          workflowExecution -> new DecisionTask( )
+              .withWorkflowExecution( new com.eucalyptus.simpleworkflow.common.model.WorkflowExecution( )
+                  .withWorkflowId( workflowExecution.getWorkflowId( ) )
+                  .withRunId( workflowExecution.getDisplayName( ) ) )
+              .withWorkflowType( new com.eucalyptus.simpleworkflow.common.model.WorkflowType()
+                  .withName( workflowExecution.getWorkflowType( ).getDisplayName( ) )
+                  .withVersion( workflowExecution.getWorkflowType( ).getWorkflowVersion( ) ) )
+              .withStartedEventId( position.getStartedEventId( ) )
+              .withPreviousStartedEventId( position.getPreviousStartedEventId( ) )
+      );
+      final History history = historyPage( accountFullName, position, request.getMaximumPageSize( ) );
+      return decisionTask.withEvents( history.getEvents( ) ).withNextPageToken( history.getNextPageToken( ) );
+    } catch ( SwfMetadataNotFoundException e ) {
+      throw new SimpleWorkflowClientException(
+          "UnknownResourceFault",
+          "Unknown execution for next page token." );
+    } catch ( Exception e ) {
+      throw handleException( e );
+    }
+  }
+
+  /**
+   * Page of history events from the given position, with a token for the next page if any events remain.
+   */
+  private History historyPage(
+      final AccountFullName accountFullName,
+      final HistoryPageToken position,
+      final Integer maximumPageSize
+  ) throws SwfMetadataException {
+    final int pageSize = maximumPageSize == null || maximumPageSize < 1 ? HISTORY_PAGE_SIZE : maximumPageSize;
+    final List<HistoryEvent> events = workflowExecutions.listHistoryEvents(
+        accountFullName,
+        position.getRunId( ),
+        position.getNextEventId( ),
+        position.getLastEventId( ),
+        pageSize + 1,
+        TypeMappers.lookup( WorkflowHistoryEvent.class, HistoryEvent.class ) );
+    final HistoryPageToken next = position.next( events, pageSize, HistoryEvent::getEventId );
+    final String nextPageToken = next == null ? null : taskTokenManager.encryptPageToken( next );
+    return new History( ).withEvents( events ).withNextPageToken( nextPageToken );
+  }
+
+  private HistoryPageToken decryptPageToken(
+      final AccountFullName accountFullName,
+      final String nextPageToken
+  ) throws SimpleWorkflowClientException {
+    try {
+      return taskTokenManager.decryptPageToken( accountFullName.getAccountNumber( ), nextPageToken );
+    } catch ( TaskTokenException e ) {
+      throw new SimpleWorkflowClientException( "InvalidParameterValue", "Invalid next page token." );
+    }
+  }
+
   private <T extends AbstractPersistent & RestrictedType> T allocate(
       final Supplier<T> allocator,
       final Class<T> type,
@@ -2256,38 +2428,74 @@ public class SimpleWorkflowService {
         segment -> { List<T> copy = Lists.newArrayList( segment ); Collections.shuffle( copy ); return copy; } );
   }
 
-  private static void noteTaskListActivity( final AccountFullName accountFullName,
-                                            final String domain,
-                                            final String type,
-                                            final String taskList ) {
-    taskListActivity.put( NotifyTaskList.of( accountFullName, domain, type, taskList ), System.currentTimeMillis( ) );
+  private static void notifyTaskList( final NotifyTaskList taskList ) {
+    NotifyClient.notifyTaskList( taskList );
   }
 
-  private static boolean taskListActive( final AccountFullName accountFullName,
-                                         final String domain,
-                                         final String type,
-                                         final String taskList,
-                                         final long timestamp ) {
-    return taskListActivity.getOrDefault( NotifyTaskList.of( accountFullName, domain, type, taskList ), 0L ) > timestamp;
+  /**
+   * Feed pending tasks found by a task list scan to the dispatch queue, this reconciles the queue if notifications were
+   * lost, e.g. on failover of the notification service. The tasks are sent in a single notification.
+   */
+  private static void dispatchPending( final Iterable<NotifyTaskList> pending ) {
+    NotifyClient.notifyTasks( Lists.newArrayList( Iterables.limit( pending, DISPATCH_RECONCILE_LIMIT ) ) );
   }
 
-  private static void taskListActivityCleanup( long timestamp ) {
-    for ( final Map.Entry<NotifyTaskList,Long> entry : taskListActivity.entrySet( ) ) {
-      if ( entry.getValue( ) < timestamp ) {
-        taskListActivity.remove( entry.getKey( ), entry.getValue( ) );
-      }
-    }
+  private static final long EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+  private static final int HISTORY_PAGE_SIZE = 1000;
+  private static final int DISPATCH_RECONCILE_LIMIT = 100;
+
+  private interface TaskClaimer<R> {
+    /**
+     * Claim the given task, or any pending task for the task list if absent.
+     */
+    TaskClaim<R> claim( Optional<TaskDetails> task ) throws Exception;
   }
 
-  private static void notifyTaskList( final AccountFullName accountFullName,
-                                      final String domain,
-                                      final String type,
-                                      final String taskList ) {
-    noteTaskListActivity( accountFullName, domain, type, taskList );
-    NotifyClient.notifyTaskList( accountFullName, domain, type, taskList );
-  }
+  /**
+   * Result of an attempt to claim a task.
+   *
+   * A contended task could not be claimed because the execution was locked or concurrently updated, the task may
+   * still be pending. An unavailable task is gone, e.g. already claimed or deleted.
+   */
+  private static final class TaskClaim<R> {
+    private static final TaskClaim<?> CONTENDED = new TaskClaim<>( null, true );
+    private static final TaskClaim<?> UNAVAILABLE = new TaskClaim<>( null, false );
 
-  private static final long EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
+    private final R task;
+    private final boolean contended;
+
+    private TaskClaim( final R task, final boolean contended ) {
+      this.task = task;
+      this.contended = contended;
+    }
+
+    static <R> TaskClaim<R> of( @Nullable final R task ) {
+      return task == null ? unavailable( ) : new TaskClaim<>( task, false );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    static <R> TaskClaim<R> contended( ) {
+      return (TaskClaim<R>) CONTENDED;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    static <R> TaskClaim<R> unavailable( ) {
+      return (TaskClaim<R>) UNAVAILABLE;
+    }
+
+    @Nullable
+    R getTask( ) {
+      return task;
+    }
+
+    boolean isClaimed( ) {
+      return task != null;
+    }
+
+    boolean isContended( ) {
+      return contended;
+    }
+  }
 
   private static <R extends SimpleWorkflowMessage> R handleTaskPolling( final AccountFullName accountFullName,
                                          final String domain,
@@ -2295,41 +2503,43 @@ public class SimpleWorkflowService {
                                          final String taskList,
                                          final String correlationId,
                                          final R emptyResponse,
-                                         final Callable<R> responseCallable) {
+                                         final TaskClaimer<R> taskClaimer) {
     final Long pollTimeout = System.currentTimeMillis() + EXPIRY_MILLIS;
-    return handleTaskPolling(accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, true, pollTimeout);
+    return handleTaskPolling(accountFullName, domain, type, taskList, correlationId, emptyResponse, taskClaimer, pollTimeout);
   }
 
+  /**
+   * Poll the task list, pending tasks are dispatched to one poller each by the notification service so only the
+   * dispatched task is claimed. Pollers notified without a task scan the task list.
+   */
   private static <R extends SimpleWorkflowMessage> R handleTaskPolling( final AccountFullName accountFullName,
                                          final String domain,
                                          final String type,
                                          final String taskList,
                                          final String correlationId,
                                          final R emptyResponse,
-                                         final Callable<R> responseCallable,
-                                         final boolean checkImmediately,
+                                         final TaskClaimer<R> taskClaimer,
                                          final long pollTimeout) {
     final String list = Joiner.on('/').join( type, domain, taskList );
     try {
-        final long activityTimestamp = System.currentTimeMillis( ) - TimeUnit.SECONDS.toMillis( 1L );
-        if ( checkImmediately && taskListActive( accountFullName, domain, type, taskList, activityTimestamp ) ) {
-          final R taskResponse = responseCallable.call( );
-          if ( taskResponse != null ) {
-            taskResponse.setCorrelationId(correlationId);
-            return taskResponse;
-          }
-        }
-        NotifyClient.pollTaskList(accountFullName, domain, type, taskList, pollTimeout, Contexts.consumerWithCurrentContext(
-                (notified) -> {
+        NotifyClient.pollTaskListForTask(accountFullName, domain, type, taskList, pollTimeout, Contexts.consumerWithCurrentContext(
+                (result) -> {
                   try {
-                    if (notified) {
-                      final SimpleWorkflowMessage taskResponse = responseCallable.call();
-                      if (taskResponse != null) {
+                    if (result.getLeft()) {
+                      final TaskClaim<R> claim = taskClaimer.claim(result.getRight());
+                      if (claim.isClaimed()) {
+                        final SimpleWorkflowMessage taskResponse = claim.getTask();
                         taskResponse.setCorrelationId(correlationId);
                         Contexts.response(taskResponse);
                         return;
-                      } else if ( System.currentTimeMillis() < pollTimeout ) {
-                        handleTaskPolling( accountFullName, domain, type, taskList, correlationId, emptyResponse, responseCallable, false, pollTimeout );
+                      }
+                      if (claim.isContended() && result.getRight().isPresent()) {
+                        // the task may still be pending so give it back for the next poller
+                        notifyTaskList( new NotifyTaskList(
+                            accountFullName.getAccountNumber(), domain, type, taskList, result.getRight().get().toString()) );
+                      }
+                      if ( System.currentTimeMillis() < pollTimeout ) {
+                        handleTaskPolling( accountFullName, domain, type, taskList, correlationId, emptyResponse, taskClaimer, pollTimeout );
                         return;
                       }
                     }
@@ -2351,18 +2561,6 @@ public class SimpleWorkflowService {
     }
   }
 
-  public static class SimpleWorkflowServiceActivityCleanup implements EventListener<ClockTick> {
-
-    public static void register() {
-      Listeners.register( ClockTick.class, new SimpleWorkflowServiceActivityCleanup( ) );
-    }
-
-    @Override
-    public void fireEvent( final ClockTick event ) {
-      taskListActivityCleanup( System.currentTimeMillis( ) - TimeUnit.SECONDS.toMillis( 10 ) );
-    }
-  }
-
   private static final class ScheduleActivityTaskException extends Exception {
     private static final long serialVersionUID = 1L;
 
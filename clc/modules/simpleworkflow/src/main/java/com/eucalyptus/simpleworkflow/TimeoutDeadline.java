@@ -0,0 +1,87 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow;
+
+import java.util.Date;
+import javax.annotation.Nullable;
+
+/**
+ * Timeout deadline for a timer, activity task or workflow execution.
+ *
+ * Deadlines are listed using a projection of the key and timestamp columns so
+ * that synchronizing deadlines does not load the entities.
+ */
+public class TimeoutDeadline {
+  private final String accountNumber;
+  private final String domainUuid;
+  private final String runId;
+  private final String id;
+  private final Date timeoutTimestamp;
+  private final Date creationTimestamp;
+  private final Date lastUpdateTimestamp;
+
+  public TimeoutDeadline( final String accountNumber,
+                          final String domainUuid,
+                          final String runId,
+                          final String id,
+                          @Nullable final Date timeoutTimestamp,
+                          final Date creationTimestamp,
+                          final Date lastUpdateTimestamp ) {
+    this.accountNumber = accountNumber;
+    this.domainUuid = domainUuid;
+    this.runId = runId;
+    this.id = id;
+    this.timeoutTimestamp = timeoutTimestamp;
+    this.creationTimestamp = creationTimestamp;
+    this.lastUpdateTimestamp = lastUpdateTimestamp;
+  }
+
+  public String getAccountNumber( ) {
+    return accountNumber;
+  }
+
+  public String getDomainUuid( ) {
+    return domainUuid;
+  }
+
+  public String getRunId( ) {
+    return runId;
+  }
+
+  /**
+   * The identifier within the workflow run, empty for a workflow execution.
+   */
+  public String getId( ) {
+    return id;
+  }
+
+  @Nullable
+  public Date getTimeoutTimestamp( ) {
+    return timeoutTimestamp;
+  }
+
+  public Date getCreationTimestamp( ) {
+    return creationTimestamp;
+  }
+
+  public Date getLastUpdateTimestamp( ) {
+    return lastUpdateTimestamp;
+  }
+}
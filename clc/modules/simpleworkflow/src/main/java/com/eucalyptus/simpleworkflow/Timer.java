@@ -23,11 +23,13 @@ import java.util.Date;
 import java.util.concurrent.TimeUnit;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
 import javax.persistence.PersistenceContext;
 import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
@@ -35,6 +37,7 @@ import javax.persistence.TemporalType;
 import org.hibernate.annotations.Type;
 import com.eucalyptus.entities.AbstractOwnedPersistent;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 import com.eucalyptus.auth.principal.OwnerFullName;
 
 /**
@@ -42,7 +45,9 @@ import com.eucalyptus.auth.principal.OwnerFullName;
  */
 @Entity
 @PersistenceContext( name = "eucalyptus_simpleworkflow" )
-@Table( name = "swf_timer" )
+@Table( name = "swf_timer", indexes = {
+    @Index( name = "swf_timer_last_update_idx", columnList = "last_update_timestamp" )
+} )
 public class Timer extends AbstractOwnedPersistent implements SimpleWorkflowMetadata.ActivityTaskMetadata {
   private static final long serialVersionUID = 1L;
 
@@ -237,5 +242,11 @@ public class Timer extends AbstractOwnedPersistent implements SimpleWorkflowMeta
   protected void updateTimeout( ) {
     updateTimeStamps( );
     setTimeoutTimestamp( calculateTimeout( ) );
+    TimeoutManager.scheduleTimeout( this );
+  }
+
+  @PreRemove
+  protected void removeTimeout( ) {
+    TimeoutManager.cancelTimeout( this );
   }
 }
@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.auth.principal.OwnerFullName;
@@ -35,7 +37,10 @@ public interface Timers {
                              Predicate<? super Timer> filter,
                              Function<? super Timer,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listFired( Function<? super Timer,T> transform ) throws SwfMetadataException;
+  /**
+   * List timer deadlines, only for timers updated since the given time if specified.
+   */
+  List<TimeoutDeadline> listTimeouts( @Nullable Date updatedSince ) throws SwfMetadataException;
 
   <T> T updateByExample( Timer example,
                          OwnerFullName ownerFullName,
@@ -33,6 +33,7 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.Lob;
 import javax.persistence.ManyToOne;
@@ -53,6 +54,7 @@ import com.eucalyptus.entities.UserMetadata;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
 import com.eucalyptus.simpleworkflow.common.model.WorkflowEventAttributes;
+import com.eucalyptus.simpleworkflow.stateful.TimeoutManager;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.auth.principal.FullName;
 import com.eucalyptus.auth.principal.OwnerFullName;
@@ -66,7 +68,9 @@ import com.google.common.collect.Lists;
  */
 @Entity
 @PersistenceContext( name = "eucalyptus_simpleworkflow" )
-@Table( name = "swf_workflow_execution" )
+@Table( name = "swf_workflow_execution", indexes = {
+    @Index( name = "swf_workflow_execution_last_update_idx", columnList = "last_update_timestamp" )
+} )
 @AuxiliaryDatabaseObjects( {
     @AuxiliaryDatabaseObject(
         dialect = "org.hibernate.dialect.PostgreSQLDialect",
@@ -341,11 +345,21 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
   }
 
   public Long addHistoryEvent( final WorkflowHistoryEvent event ) throws WorkflowHistorySizeLimitException {
+    return addHistoryEvent( event, workflowHistory.size( ) );
+  }
+
+  /**
+   * Add an event when the number of events in the history is already known.
+   *
+   * The history is not loaded if it has not been already.
+   */
+  public Long addHistoryEvent( final WorkflowHistoryEvent event,
+                               final long eventCount ) throws WorkflowHistorySizeLimitException {
     // Order would be filled in on save, but we may need the event
     // identifier before the entity is stored
-    event.setEventOrder( (long) workflowHistory.size( ) );
+    event.setEventOrder( eventCount );
     workflowHistory.add( event );
-    if ( workflowHistory.size( ) > SimpleWorkflowProperties.getWorkflowExecutionHistorySize() ) {
+    if ( eventCount + 1 > SimpleWorkflowProperties.getWorkflowExecutionHistorySize() ) {
       throw new WorkflowHistorySizeLimitException( this );
     }
     updateTimeStamps( ); // ensure workflow version incremented
@@ -543,6 +557,7 @@ public class WorkflowExecution extends UserMetadata<WorkflowExecution.ExecutionS
   protected void updateTimeout( ) {
     updateTimeStamps( );
     setTimeoutTimestamp( calculateNextTimeout( ) );
+    TimeoutManager.scheduleTimeout( this );
   }
 
   public static final class WorkflowHistorySizeLimitException extends RuntimeException {
@@ -58,8 +58,12 @@ public interface WorkflowExecutions {
                              Map<String,String> aliases,
                              Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( long timestamp,
-                            Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
+  /**
+   * List open workflow execution deadlines, only for executions updated since the given time if specified.
+   *
+   * The deadline does not include the maximum workflow execution duration.
+   */
+  List<TimeoutDeadline> listTimeouts( @Nullable Date updatedSince ) throws SwfMetadataException;
 
   <T> List<T> listRetentionExpired( long timestamp,
                                     Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
@@ -70,6 +74,33 @@ public interface WorkflowExecutions {
                          Predicate<? super WorkflowExecution> filter,
                          Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
+  /**
+   * List history events for an execution in event id order using a keyset query.
+   *
+   * Events from fromEventId to toEventId (inclusive) are listed, in reverse order if toEventId is less than
+   * fromEventId.
+   */
+  <T> List<T> listHistoryEvents( OwnerFullName ownerFullName,
+                                 String runId,
+                                 long fromEventId,
+                                 long toEventId,
+                                 int maxResults,
+                                 Function<? super WorkflowHistoryEvent,T> transform ) throws SwfMetadataException;
+
+  /**
+   * Find the most recent history event of the given type for an execution.
+   *
+   * The lookup joins any current transaction so it can be used while an execution is being updated.
+   *
+   * @param eventType The event type, null for the most recent event of any type
+   * @return The transformed event or null if the execution has no event of the type
+   */
+  @Nullable
+  <T> T findLatestHistoryEvent( OwnerFullName ownerFullName,
+                                String runId,
+                                @Nullable String eventType,
+                                Function<? super WorkflowHistoryEvent,T> transform ) throws SwfMetadataException;
+
   <T> T updateByExample( WorkflowExecution example,
                          OwnerFullName ownerFullName,
                          String id,
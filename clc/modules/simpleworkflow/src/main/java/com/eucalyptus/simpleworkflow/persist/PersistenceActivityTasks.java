@@ -20,17 +20,16 @@
 package com.eucalyptus.simpleworkflow.persist;
 
 import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.ActivityTaskMetadata;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.simpleworkflow.ActivityTask;
 import com.eucalyptus.simpleworkflow.ActivityTasks;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
+import com.eucalyptus.simpleworkflow.TimeoutDeadline;
 import com.eucalyptus.auth.principal.OwnerFullName;
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 
 /**
  *
@@ -42,13 +41,15 @@ public class PersistenceActivityTasks extends SwfPersistenceSupport<ActivityTask
     super( "activity-task" );
   }
 
-  public <T> List<T> listTimedOut( final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        ActivityTask.exampleWithOwner( null ),
-        Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date( ) ),
-        Collections.<String,String>emptyMap( ),
-        transform );
+  @Override
+  public List<TimeoutDeadline> listTimeouts( @Nullable final Date updatedSince ) throws SwfMetadataException {
+    return listTimeoutDeadlines(
+        ActivityTask.class,
+        "workflowRunId",
+        "scheduledEventId",
+        updatedSince == null ?
+            Restrictions.isNotNull( "timeoutTimestamp" ) :
+            Restrictions.ge( "lastUpdateTimestamp", updatedSince ) );
   }
 
   @Override
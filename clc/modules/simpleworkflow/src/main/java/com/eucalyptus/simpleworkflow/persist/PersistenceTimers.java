@@ -19,18 +19,17 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.persist;
 
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
+import com.eucalyptus.simpleworkflow.TimeoutDeadline;
 import com.eucalyptus.simpleworkflow.Timer;
 import com.eucalyptus.simpleworkflow.Timers;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.auth.principal.OwnerFullName;
-import com.google.common.base.Function;
-import com.google.common.base.Predicates;
 
 /**
  *
@@ -42,13 +41,15 @@ public class PersistenceTimers extends SwfPersistenceSupport<SimpleWorkflowMetad
     super( "timer" );
   }
 
-  public <T> List<T> listFired( final Function<? super Timer,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        Timer.exampleWithOwner( null ),
-        Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date() ),
-        Collections.<String,String>emptyMap(),
-        transform );
+  @Override
+  public List<TimeoutDeadline> listTimeouts( @Nullable final Date updatedSince ) throws SwfMetadataException {
+    return listTimeoutDeadlines(
+        Timer.class,
+        "workflowRunId",
+        "displayName",
+        updatedSince == null ?
+            Restrictions.isNotNull( "timeoutTimestamp" ) :
+            Restrictions.ge( "lastUpdateTimestamp", updatedSince ) );
   }
 
   @Override
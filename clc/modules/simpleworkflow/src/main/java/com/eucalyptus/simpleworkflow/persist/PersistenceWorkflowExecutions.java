@@ -19,20 +19,28 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.persist;
 
-import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getWorkflowExecutionDurationMillis;
 import static com.eucalyptus.simpleworkflow.SimpleWorkflowProperties.getWorkflowExecutionRetentionDurationMillis;
 import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.WorkflowExecutionMetadata;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
+import org.hibernate.Criteria;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
+import com.eucalyptus.simpleworkflow.TimeoutDeadline;
 import com.eucalyptus.simpleworkflow.WorkflowExecution;
 import com.eucalyptus.simpleworkflow.WorkflowExecutions;
+import com.eucalyptus.simpleworkflow.WorkflowHistoryEvent;
 import com.eucalyptus.auth.principal.OwnerFullName;
 import com.google.common.base.Function;
 import com.google.common.base.Predicates;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -44,16 +52,14 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
     super( "workflow-execution" );
   }
 
-  public <T> List<T> listTimedOut( final long time,
-                                   final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
-    return listByExample(
-        WorkflowExecution.exampleForOpenWorkflow(),
-        Predicates.alwaysTrue( ),
-        Restrictions.disjunction( )
-            .add( Restrictions.lt( "timeoutTimestamp", new Date( time ) ) )
-            .add( Restrictions.lt( "creationTimestamp", new Date( time - getWorkflowExecutionDurationMillis() ) ) ),
-        Collections.<String,String>emptyMap( ),
-        transform );
+  @Override
+  public List<TimeoutDeadline> listTimeouts( @Nullable final Date updatedSince ) throws SwfMetadataException {
+    final Conjunction criterion = Restrictions.conjunction( )
+        .add( Restrictions.eq( "state", WorkflowExecution.ExecutionStatus.Open ) );
+    if ( updatedSince != null ) {
+      criterion.add( Restrictions.ge( "lastUpdateTimestamp", updatedSince ) );
+    }
+    return listTimeoutDeadlines( WorkflowExecution.class, "displayName", null, criterion );
   }
 
   public <T> List<T> listRetentionExpired( final long time,
@@ -68,6 +74,52 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
         transform );
   }
 
+  @SuppressWarnings( "unchecked" )
+  @Override
+  public <T> List<T> listHistoryEvents( final OwnerFullName ownerFullName,
+                                        final String runId,
+                                        final long fromEventId,
+                                        final long toEventId,
+                                        final int maxResults,
+                                        final Function<? super WorkflowHistoryEvent,T> transform ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.readOnlyDistinctTransactionFor( WorkflowHistoryEvent.class ) ) {
+      final List<WorkflowHistoryEvent> events = (List<WorkflowHistoryEvent>) Entities.createCriteria( WorkflowHistoryEvent.class )
+          .createAlias( "workflowExecution", "workflowExecution" )
+          .add( Restrictions.eq( "workflowExecution.ownerAccountNumber", ownerFullName.getAccountNumber( ) ) )
+          .add( Restrictions.eq( "workflowExecution.displayName", runId ) )
+          .add( Restrictions.between( "eventOrder", Math.min( fromEventId, toEventId ) - 1, Math.max( fromEventId, toEventId ) - 1 ) )
+          .addOrder( toEventId < fromEventId ? Order.desc( "eventOrder" ) : Order.asc( "eventOrder" ) )
+          .setMaxResults( maxResults )
+          .list( );
+      return Lists.newArrayList( Lists.transform( events, transform ) );
+    } catch ( Exception e ) {
+      throw metadataException( qualifyOwner( "Failed to find history events for workflow execution '" + runId + "'", ownerFullName ), e );
+    }
+  }
+
+  @Override
+  public <T> T findLatestHistoryEvent( final OwnerFullName ownerFullName,
+                                       final String runId,
+                                       final String eventType,
+                                       final Function<? super WorkflowHistoryEvent,T> transform ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.transactionFor( WorkflowHistoryEvent.class ) ) {
+      final Criteria criteria = Entities.createCriteria( WorkflowHistoryEvent.class )
+          .createAlias( "workflowExecution", "workflowExecution" )
+          .add( Restrictions.eq( "workflowExecution.ownerAccountNumber", ownerFullName.getAccountNumber( ) ) )
+          .add( Restrictions.eq( "workflowExecution.displayName", runId ) );
+      if ( eventType != null ) {
+        criteria.add( Restrictions.eq( "eventType", eventType ) );
+      }
+      final WorkflowHistoryEvent event = (WorkflowHistoryEvent) criteria
+          .addOrder( Order.desc( "eventOrder" ) )
+          .setMaxResults( 1 )
+          .uniqueResult( );
+      return event == null ? null : transform.apply( event );
+    } catch ( Exception e ) {
+      throw metadataException( qualifyOwner( "Failed to find history event for workflow execution '" + runId + "'", ownerFullName ), e );
+    }
+  }
+
   @Override
   public long countOpenByDomain( final OwnerFullName ownerFullName,
                                  final String domain ) throws SwfMetadataException {
@@ -19,11 +19,21 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.persist;
 
+import java.util.Date;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.hibernate.criterion.Criterion;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Projections;
 import com.eucalyptus.entities.AbstractPersistent;
 import com.eucalyptus.entities.AbstractPersistentSupport;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.simpleworkflow.SwfMetadataNotFoundException;
+import com.eucalyptus.simpleworkflow.TimeoutDeadline;
 import com.eucalyptus.auth.type.RestrictedType;
+import com.google.common.collect.Lists;
 
 /**
  *
@@ -40,6 +50,50 @@ public abstract class SwfPersistenceSupport<RT extends RestrictedType, AP extend
     return super.withRetries( 50 );
   }
 
+  /**
+   * List timeout deadlines using a projection, entities are not loaded.
+   *
+   * @param runIdProperty The property for the workflow run identifier
+   * @param idProperty The property for the identifier within the workflow run, null for workflow executions
+   */
+  @SuppressWarnings( "unchecked" )
+  protected List<TimeoutDeadline> listTimeoutDeadlines( final Class<AP> entityClass,
+                                                        final String runIdProperty,
+                                                        @Nullable final String idProperty,
+                                                        final Criterion criterion ) throws SwfMetadataException {
+    try ( final TransactionResource tx = Entities.readOnlyDistinctTransactionFor( entityClass ) ) {
+      final ProjectionList projection = Projections.projectionList( )
+          .add( Projections.property( "ownerAccountNumber" ) )
+          .add( Projections.property( "domainUuid" ) )
+          .add( Projections.property( runIdProperty ) )
+          .add( Projections.property( "timeoutTimestamp" ) )
+          .add( Projections.property( "creationTimestamp" ) )
+          .add( Projections.property( "lastUpdateTimestamp" ) );
+      if ( idProperty != null ) {
+        projection.add( Projections.property( idProperty ) );
+      }
+      final List<Object[]> rows = (List<Object[]>) Entities.createCriteria( entityClass )
+          .add( criterion )
+          .setProjection( projection )
+          .setReadOnly( true )
+          .list( );
+      final List<TimeoutDeadline> deadlines = Lists.newArrayListWithCapacity( rows.size( ) );
+      for ( final Object[] row : rows ) {
+        deadlines.add( new TimeoutDeadline(
+            (String) row[0],
+            (String) row[1],
+            (String) row[2],
+            idProperty == null ? "" : String.valueOf( row[6] ),
+            (Date) row[3],
+            (Date) row[4],
+            (Date) row[5] ) );
+      }
+      return deadlines;
+    } catch ( Exception e ) {
+      throw metadataException( "Failed to list " + typeDescription + " timeouts", e );
+    }
+  }
+
   @Override
   protected SwfMetadataException notFoundException( final String message, final Throwable cause ) {
     return new SwfMetadataNotFoundException( message, cause );
@@ -0,0 +1,171 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+
+/**
+ * Details waiting for a poller, in notification order without duplicates.
+ *
+ * Each queued detail is handed to a single poller.
+ */
+final class DispatchQueue {
+  private static final int MAX_QUEUED = 10_000;
+  private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 2 );
+  private static final long DETAILS_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+
+  private final AtomicLong timestamp;
+  private final String channel;
+  private final int capacity;
+  private final LinkedHashMap<String,Long> detailsQueue = new LinkedHashMap<>( );
+
+  DispatchQueue( final String channel ) {
+    this( channel, MAX_QUEUED, System.currentTimeMillis( ) );
+  }
+
+  DispatchQueue( final String channel, final int capacity, final long time ) {
+    this.channel = channel;
+    this.capacity = capacity;
+    this.timestamp = new AtomicLong( time );
+  }
+
+  /**
+   * Waiting pollers for a channel.
+   */
+  interface Pollers {
+    boolean isEmpty( );
+
+    /**
+     * Notify one waiting poller, null details wake the poller to look for work.
+     *
+     * @return True if a poller was notified
+     */
+    boolean notifyPoller( @Nullable String details );
+  }
+
+  public String getChannel( ) {
+    return channel;
+  }
+
+  /**
+   * Hand the details to a waiting poller, or queue them until a poller arrives.
+   *
+   * @return False if the details were dropped because the queue is full
+   */
+  public boolean dispatch( final Pollers pollers, final String details, final long time ) {
+    return pollers.notifyPoller( details ) || offer( details, time );
+  }
+
+  /**
+   * Hand queued details to waiting pollers, one each.
+   *
+   * If nothing is queued but the checker finds work (e.g. after failover) a single poller is woken without details to
+   * look for it, rather than all pollers for the channel.
+   */
+  public void drainTo( final Pollers pollers, final Predicate<? super String> checker, final long time ) {
+    boolean dispatched = false;
+    Map.Entry<String,Long> queued;
+    while ( !pollers.isEmpty( ) && ( queued = poll( time ) ) != null ) {
+      if ( pollers.notifyPoller( queued.getKey( ) ) ) {
+        dispatched = true;
+      } else {
+        restore( queued );
+        break;
+      }
+    }
+    if ( !dispatched && !pollers.isEmpty( ) && isEmpty( ) && checker.apply( channel ) ) {
+      pollers.notifyPoller( null );
+    }
+  }
+
+  public synchronized boolean offer( final String details, final long time ) {
+    timestamp.set( time );
+    if ( detailsQueue.containsKey( details ) ) {
+      return true;
+    }
+    if ( detailsQueue.size( ) >= capacity ) {
+      return false;
+    }
+    detailsQueue.put( details, time );
+    return true;
+  }
+
+  /**
+   * Remove details queued for too long, pollers will be notified without details for any work they describe.
+   */
+  public synchronized void removeExpired( final long time ) {
+    final Iterator<Long> iterator = detailsQueue.values( ).iterator( );
+    while ( iterator.hasNext( ) && ( iterator.next( ) + DETAILS_EXPIRY_MILLIS ) < time ) {
+      iterator.remove( );
+    }
+  }
+
+  public synchronized boolean isEmpty( ) {
+    return detailsQueue.isEmpty( );
+  }
+
+  public synchronized int size( ) {
+    return detailsQueue.size( );
+  }
+
+  public boolean isExpired( final long time ) {
+    return ( timestamp.get( ) + EXPIRY_MILLIS ) < time;
+  }
+
+  /**
+   * Remove the oldest unexpired details along with the time they were queued.
+   */
+  @Nullable
+  private synchronized Map.Entry<String,Long> poll( final long time ) {
+    removeExpired( time );
+    final Iterator<Map.Entry<String,Long>> iterator = detailsQueue.entrySet( ).iterator( );
+    if ( iterator.hasNext( ) ) {
+      final Map.Entry<String,Long> entry = iterator.next( );
+      final Map.Entry<String,Long> queued = new AbstractMap.SimpleImmutableEntry<>( entry );
+      iterator.remove( );
+      return queued;
+    }
+    return null;
+  }
+
+  /**
+   * Put back details that no poller took, at the head of the queue with the original queued time.
+   */
+  private synchronized void restore( final Map.Entry<String,Long> queued ) {
+    if ( !detailsQueue.containsKey( queued.getKey( ) ) ) {
+      final Map<String,Long> remaining = new LinkedHashMap<>( detailsQueue );
+      detailsQueue.clear( );
+      detailsQueue.put( queued.getKey( ), queued.getValue( ) );
+      detailsQueue.putAll( remaining );
+    }
+  }
+
+  public synchronized String toString( ) {
+    return Objects.toStringHelper( this )
+        .add( "channel", getChannel( ) )
+        .add( "queued", detailsQueue.size( ) )
+        .add( "timestamp", timestamp.get( ) )
+        .toString( );
+  }
+}
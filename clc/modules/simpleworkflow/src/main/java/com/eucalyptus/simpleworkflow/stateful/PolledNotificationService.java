@@ -27,7 +27,9 @@ import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 
+import com.eucalyptus.simpleworkflow.common.stateful.NotifyClientUtils;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotificationChecker;
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 import org.apache.log4j.Logger;
@@ -50,7 +52,12 @@ import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 
 /**
+ * Long polling notification service.
  *
+ * Notifications without details wake all pollers for a channel. Notifications with details are dispatched to a single
+ * poller, or queued for the channel until a poller arrives, so each detail is handed to one poller. Dispatch queues are
+ * not replicated, when the service moves to another host pollers are notified using the channel checkers until the
+ * queues are fed again.
  */
 @ComponentNamed
 public class PolledNotificationService {
@@ -59,6 +66,7 @@ public class PolledNotificationService {
   private static final ConcurrentMap<String,Pollers> pollersByChannel = new ConcurrentHashMap<>( );
   private static final ConcurrentMap<String,PendingNotification> pendingNotificationsByChannel =
       new ConcurrentHashMap<>( );
+  private static final ConcurrentMap<String,DispatchQueue> dispatchQueuesByChannel = new ConcurrentHashMap<>( );
   private static final PolledNotificationChecker checker = new PolledNotificationChecker(){
     @Override
     public boolean apply( final String channel ) {
@@ -70,7 +78,9 @@ public class PolledNotificationService {
     final NotifyResponseType response = notify.getReply( );
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
-      if ( !notifyPollers( notify.getChannel( ), notify.getDetails( ) ) ) {
+      if ( notify.getDetails( ) != null ) {
+        dispatch( notify.getChannel( ), notify.getDetails( ) );
+      } else if ( !notifyPollers( notify.getChannel( ), notify.getDetails( ) ) ) {
         pendingNotificationsByChannel.put( notify.getChannel( ), new PendingNotification( notify.getChannel( ), notify.getDetails() ) );
       }
     }
@@ -94,6 +104,11 @@ public class PolledNotificationService {
   }
 
   private static void checkNotify( final String channel ) {
+    final DispatchQueue dispatchQueue = dispatchQueuesByChannel.get( channel );
+    if ( dispatchQueue != null ) {
+      checkDispatch( channel, dispatchQueue );
+      return;
+    }
     final PendingNotification pendingNotification = pendingNotificationsByChannel.remove( channel );
     if ( pendingNotification != null && !pendingNotification.isExpired( System.currentTimeMillis( ) ) ) {
       notifyPollers( channel, pendingNotification.getDetails( ) );
@@ -102,6 +117,24 @@ public class PolledNotificationService {
     }
   }
 
+  private static void checkDispatch( final String channel, final DispatchQueue dispatchQueue ) {
+    dispatchQueue.drainTo( getPollers( channel ), checker, System.currentTimeMillis( ) );
+  }
+
+  private static void dispatch( final String channel, final String details ) {
+    DispatchQueue dispatchQueue = dispatchQueuesByChannel.get( channel );
+    if ( dispatchQueue == null ) {
+      dispatchQueuesByChannel.putIfAbsent( channel, new DispatchQueue( channel ) );
+      dispatchQueue = dispatchQueuesByChannel.get( channel );
+    }
+    final long time = System.currentTimeMillis( );
+    for ( final String taskDetails : NotifyClientUtils.splitDetails( details ) ) {
+      if ( !dispatchQueue.dispatch( getPollers( channel ), taskDetails, time ) ) {
+        logger.debug( "Dispatch queue full for channel " + channel + ", dropping " + taskDetails );
+      }
+    }
+  }
+
   private static boolean notifyPollers( final String channel, final String details ) {
     return getPollers( channel ).notifyPollers( details );
   }
@@ -127,6 +160,7 @@ public class PolledNotificationService {
 
   static void evacuate( ) {
     timeoutPollers( Long.MAX_VALUE );
+    dispatchQueuesByChannel.clear( );
   }
 
   private static void periodicWork( ) {
@@ -134,6 +168,7 @@ public class PolledNotificationService {
     timeoutPollers( time );
     timeoutPollerMetadata( time );
     timeoutPendingNotifications( time );
+    timeoutDispatchQueues( time );
   }
 
   private static void timeoutPollers( final long time ) {
@@ -158,7 +193,16 @@ public class PolledNotificationService {
     }
   }
 
-  private static final class Pollers {
+  private static void timeoutDispatchQueues( final long time ) {
+    for ( final DispatchQueue dispatchQueue : dispatchQueuesByChannel.values( ) ) {
+      dispatchQueue.removeExpired( time );
+      if ( dispatchQueue.isEmpty( ) && dispatchQueue.isExpired( time ) ) {
+        dispatchQueuesByChannel.remove( dispatchQueue.getChannel( ), dispatchQueue );
+      }
+    }
+  }
+
+  private static final class Pollers implements DispatchQueue.Pollers {
     private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 2 );
 
     private final AtomicLong timestamp = new AtomicLong( System.currentTimeMillis( ) );
@@ -190,6 +234,35 @@ public class PolledNotificationService {
       } );
     }
 
+    /**
+     * Notify the first waiting poller that has not expired.
+     */
+    @Override
+    public boolean notifyPoller( @Nullable final String details ) {
+      touch( );
+      final long time = System.currentTimeMillis( );
+      Poller poller;
+      while ( ( poller = pollersQueue.poll( ) ) != null ) {
+        final PollForNotificationResponseType response = new PollForNotificationResponseType( );
+        response.setCorrelationId( poller.getCorrelationId( ) );
+        if ( poller.isExpired( time ) ) {
+          response.setNotified( false );
+        } else {
+          response.setNotified( true );
+          response.setDetails( details );
+        }
+        try {
+          poller.response( response );
+          if ( response.getNotified( ) ) {
+            return true;
+          }
+        } catch ( final Exception e ){
+          logger.error( "Error notifying poller " + poller, e );
+        }
+      }
+      return false;
+    }
+
     public void notifyExpiredPollers( long time ) {
       notifyPollers( expiredPollers( time ), new Predicate<PollForNotificationResponseType>() {
         @Override
@@ -200,6 +273,7 @@ public class PolledNotificationService {
       } );
     }
 
+    @Override
     public boolean isEmpty( ) {
       return pollersQueue.isEmpty( );
     }
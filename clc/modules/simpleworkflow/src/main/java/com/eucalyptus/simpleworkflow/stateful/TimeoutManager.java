@@ -26,11 +26,22 @@ import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Pen
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
 import com.eucalyptus.simpleworkflow.common.stateful.PolledNotifications;
 import org.apache.log4j.Logger;
+import com.eucalyptus.auth.principal.AccountFullName;
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.component.Topology;
 import com.eucalyptus.entities.Entities;
@@ -46,6 +57,7 @@ import com.eucalyptus.simpleworkflow.Domains;
 import com.eucalyptus.simpleworkflow.NotifyClient;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
 import com.eucalyptus.simpleworkflow.SwfMetadataNotFoundException;
+import com.eucalyptus.simpleworkflow.TimeoutDeadline;
 import com.eucalyptus.simpleworkflow.Timer;
 import com.eucalyptus.simpleworkflow.Timers;
 import com.eucalyptus.simpleworkflow.WorkflowExecution;
@@ -67,6 +79,7 @@ import com.eucalyptus.simpleworkflow.persist.PersistenceDomains;
 import com.eucalyptus.simpleworkflow.persist.PersistenceTimers;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowExecutions;
 import com.eucalyptus.simpleworkflow.persist.PersistenceWorkflowTypes;
+import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.CollectionUtils;
 import com.eucalyptus.util.Exceptions;
 import com.eucalyptus.util.Pair;
@@ -75,92 +88,233 @@ import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
 /**
+ * Processes timer, activity task and workflow execution timeouts.
  *
+ * Upcoming deadlines are held in a timing wheel that is loaded when the polled notifications service is enabled
+ * locally. Deadlines are updated as timers, activity tasks and workflow executions are persisted locally and are
+ * synchronized each clock tick from the entities updated since the latest update seen, so changes made on other hosts
+ * are picked up. Synchronization reads only the key and timestamp columns, entities are not loaded. Changes from
+ * persisted entities are applied when the transaction commits, and all deadlines are reloaded periodically to recover
+ * any that were missed. Due deadlines are processed in batches per workflow run, the current deadline is checked when
+ * processing so a deadline that moved later is rescheduled, and a deadline that fails to process for any reason other
+ * than a missing entity is retried with backoff.
  */
 public class TimeoutManager {
 
   private static final Logger logger = Logger.getLogger( TimeoutManager.class );
 
+  private static final long TICK_MILLIS = 100;
+  private static final long SYNC_OVERLAP_MILLIS = TimeUnit.SECONDS.toMillis( 15 );
+  private static final long RECONCILE_MILLIS = TimeUnit.MINUTES.toMillis( 10 );
+  private static final long RETRY_MIN_MILLIS = TimeUnit.SECONDS.toMillis( 1 );
+  private static final long RETRY_MAX_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+  private static final TimeoutWheel<Timeout> wheel = new TimeoutWheel<>( TICK_MILLIS, 8, 4, System.currentTimeMillis( ) );
+  private static final AtomicBoolean tickerStarted = new AtomicBoolean( false );
+  private static final ConcurrentMap<Timeout,Integer> retries = new ConcurrentHashMap<>( );
+  private static volatile boolean loaded = false;
+
   private final WorkflowExecutions workflowExecutions = new PersistenceWorkflowExecutions( );
   private final WorkflowTypes workflowTypes = new PersistenceWorkflowTypes( );
   private final ActivityTasks activityTasks = new PersistenceActivityTasks( );
   private final ActivityTypes activityTypes = new PersistenceActivityTypes( );
   private final Domains domains = new PersistenceDomains( );
   private final Timers timers = new PersistenceTimers( );
+  private long lastReconcile;
+  private long timersUpdated;
+  private long activityTasksUpdated;
+  private long workflowExecutionsUpdated;
 
-  public void doTimeouts( ) {
-    timeoutActivityTasks( );
-    timeoutDecisionTasksAndWorkflows( );
+  /**
+   * Schedule the timeout for a timer once the transaction persisting the timer commits.
+   */
+  public static void scheduleTimeout( final Timer timer ) {
+    scheduleOnCommit( Timer.class, Timeout.of( timer ), timer.getTimeoutTimestamp( ) );
   }
 
-  public void doTimers( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * Schedule the next timeout for an activity task once the transaction persisting the task commits.
+   */
+  public static void scheduleTimeout( final ActivityTask activityTask ) {
+    scheduleOnCommit( ActivityTask.class, Timeout.of( activityTask ), activityTask.getTimeoutTimestamp( ) );
+  }
+
+  /**
+   * Schedule the next timeout for a workflow execution once the transaction persisting the execution commits.
+   */
+  public static void scheduleTimeout( final WorkflowExecution workflowExecution ) {
+    scheduleOnCommit( WorkflowExecution.class, Timeout.of( workflowExecution ), nextTimeout( workflowExecution ) );
+  }
+
+  /**
+   * Cancel the timeout for a timer once the transaction removing the timer commits.
+   */
+  public static void cancelTimeout( final Timer timer ) {
+    scheduleOnCommit( Timer.class, Timeout.of( timer ), null );
+  }
+
+  /**
+   * Cancel the timeout for an activity task once the transaction removing the task commits.
+   */
+  public static void cancelTimeout( final ActivityTask activityTask ) {
+    scheduleOnCommit( ActivityTask.class, Timeout.of( activityTask ), null );
+  }
+
+  @Nullable
+  private static Date nextTimeout( final WorkflowExecution workflowExecution ) {
+    return workflowExecution.getState( ) == WorkflowExecution.ExecutionStatus.Open ?
+        nextTimeout( workflowExecution.calculateNextTimeout( ), workflowExecution.getCreationTimestamp( ) ) :
+        null;
+  }
+
+  /**
+   * The next timeout for an open workflow execution, limited by the maximum workflow execution duration.
+   */
+  @Nullable
+  private static Date nextTimeout( @Nullable final Date calculatedTimeout, @Nullable final Date creationTimestamp ) {
+    Date timeout = calculatedTimeout;
+    final long maximumDurationMillis = getWorkflowExecutionDurationMillis( );
+    if ( maximumDurationMillis > 0 && creationTimestamp != null ) {
+      final long maximumDurationTimeout = creationTimestamp.getTime( ) + maximumDurationMillis;
+      if ( timeout == null || maximumDurationTimeout < timeout.getTime( ) ) {
+        timeout = new Date( maximumDurationTimeout );
+      }
+    }
+    return timeout;
+  }
+
+  /**
+   * Apply the deadline when the transaction for the entity commits so a rolled back change leaves the current deadline
+   * in place. Changes are applied in the order they were made, so a timer that is removed and started again in the
+   * same transaction remains scheduled.
+   */
+  private static void scheduleOnCommit( final Class<?> entityClass,
+                                        final Timeout timeout,
+                                        @Nullable final Date deadline ) {
+    if ( loaded ) {
+      try {
+        Entities.registerSynchronization( entityClass, new Synchronization( ) {
+          @Override
+          public void beforeCompletion( ) {
+          }
+
+          @Override
+          public void afterCompletion( final int status ) {
+            if ( Status.STATUS_COMMITTED == status ) {
+              schedule( timeout, deadline );
+            }
+          }
+        } );
+      } catch ( final NoSuchElementException e ) {
+        // not in a transaction
+        schedule( timeout, deadline );
+      }
+    }
+  }
+
+  private static void schedule( final Timeout timeout, @Nullable final Date deadline ) {
+    if ( loaded ) {
+      if ( deadline == null ) {
+        wheel.cancel( timeout );
+      } else {
+        // processing requires the current time to be after the deadline
+        wheel.schedule( timeout, deadline.getTime( ) + 1 );
+      }
+    }
+  }
+
+  /**
+   * Load all deadlines, or those for entities updated since the latest update seen.
+   *
+   * Each entity type has a high-water mark, the latest last update timestamp read for that type. Synchronization
+   * includes entities updated up to SYNC_OVERLAP_MILLIS before the mark, as the timestamp is set before the
+   * transaction commits, and by the clock of the host making the update.
+   *
+   * All deadlines are reloaded periodically without clearing the wheel. This restores any deadline that was lost,
+   * e.g. one committed later than the overlap allows, or one whose scheduling on commit failed. The reload reads
+   * only the key and timestamp columns. Deadlines for entities that no longer exist are discarded when due.
+   */
+  public void doSync( ) {
+    final long now = System.currentTimeMillis( );
+    final boolean reconcile = loaded && ( lastReconcile + RECONCILE_MILLIS ) < now;
+    final boolean full = !loaded || reconcile;
+    if ( !loaded ) {
+      wheel.clear( now );
+      retries.clear( );
+      timersUpdated = 0;
+      activityTasksUpdated = 0;
+      workflowExecutionsUpdated = 0;
+      loaded = true;
+    }
     try {
-      for ( final Timer timer : timers.listFired( Functions.<Timer>identity( ) ) ) try {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            timer.getOwnerAccountNumber( ),
-            timer.getDomainUuid( ),
-            timer.getWorkflowRunId( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              WorkflowExecution.exampleWithName( timer.getOwner( ), timer.getWorkflowRunId( ) ),
-              timer.getOwner( ),
-              timer.getWorkflowRunId( ),
-              new Function<WorkflowExecution, Void>( ){
-                @Nullable
-                @Override
-                public Void apply( final WorkflowExecution workflowExecution ) {
-                  try {
-                    timers.updateByExample(
-                        timer,
-                        timer.getOwner( ),
-                        timer.getDisplayName( ),
-                        new Function<Timer, Void>( ) {
-                          @Override
-                          public Void apply( final Timer timer ) {
-                            final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
-                            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                workflowExecution,
-                                new TimerFiredEventAttributes( )
-                                    .withStartedEventId( timer.getStartedEventId( ) )
-                                    .withTimerId( timer.getDisplayName( ) )
-                            ) );
-                            if ( workflowExecution.getDecisionStatus() != Pending ) {
-                              workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                                  workflowExecution,
-                                  new DecisionTaskScheduledEventAttributes( )
-                                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                              ) );
-                              if ( workflowExecution.getDecisionStatus() == Idle ) {
-                                workflowExecution.setDecisionStatus( Pending );
-                                workflowExecution.setDecisionTimestamp( new Date( ) );
-                                addToNotifyLists( taskLists, workflowExecution );
-                              }
-                            }
-                            Entities.delete( timer );
-                            return null;
-                          }
-                        } );
-                  } catch ( SwfMetadataException e ) {
-                    throw Exceptions.toUndeclared( e );
-                  }
-                  return null;
-                }
-              }
-          );
-        }
-      } catch ( SwfMetadataException e ) {
-        if ( !handleException( e ) ) {
-          logger.error( "Error processing fired timer: " +  timer.getWorkflowRunId() + "/" + timer.getStartedEventId( ), e );
+      timersUpdated = schedule(
+          Timeout.Type.Timer,
+          timers.listTimeouts( updatedSince( full, timersUpdated ) ),
+          TimeoutDeadline::getTimeoutTimestamp,
+          timersUpdated );
+      activityTasksUpdated = schedule(
+          Timeout.Type.ActivityTask,
+          activityTasks.listTimeouts( updatedSince( full, activityTasksUpdated ) ),
+          TimeoutDeadline::getTimeoutTimestamp,
+          activityTasksUpdated );
+      workflowExecutionsUpdated = schedule(
+          Timeout.Type.WorkflowExecution,
+          workflowExecutions.listTimeouts( updatedSince( full, workflowExecutionsUpdated ) ),
+          deadline -> nextTimeout( deadline.getTimeoutTimestamp( ), deadline.getCreationTimestamp( ) ),
+          workflowExecutionsUpdated );
+      if ( full ) {
+        lastReconcile = now;
+        if ( reconcile ) {
+          logger.debug( "Reconciled " + wheel.size( ) + " timer and timeout deadlines" );
+        } else {
+          logger.info( "Loaded " + wheel.size( ) + " timer and timeout deadlines" );
         }
       }
-    } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing fired timers", e );
+    } catch ( final SwfMetadataException e ) {
+      logger.error( "Error loading timer and timeout deadlines", e );
+      if ( full && !reconcile ) {
+        loaded = false;
+      }
+    }
+  }
+
+  @Nullable
+  private static Date updatedSince( final boolean full, final long updated ) {
+    return full ? null : new Date( updated - SYNC_OVERLAP_MILLIS );
+  }
+
+  /**
+   * Schedule the listed deadlines.
+   *
+   * @return The high-water mark including the listed deadlines
+   */
+  private static long schedule( final Timeout.Type type,
+                                final List<TimeoutDeadline> deadlines,
+                                final Function<TimeoutDeadline,Date> deadlineFunction,
+                                final long updated ) {
+    long latestUpdated = updated;
+    for ( final TimeoutDeadline deadline : deadlines ) {
+      schedule( Timeout.of( type, deadline ), deadlineFunction.apply( deadline ) );
+      if ( deadline.getLastUpdateTimestamp( ) != null ) {
+        latestUpdated = Math.max( latestUpdated, deadline.getLastUpdateTimestamp( ).getTime( ) );
+      }
+    }
+    return latestUpdated;
+  }
+
+  /**
+   * Discard all deadlines, they are loaded again when next synchronized.
+   */
+  public void unload( ) {
+    if ( loaded ) {
+      loaded = false;
+      wheel.clear( System.currentTimeMillis( ) );
+      retries.clear( );
     }
-    notifyLists( taskLists );
   }
 
   public void doExpunge( ) {
@@ -208,132 +362,265 @@ public class TimeoutManager {
     }
   }
 
-  private void timeoutActivityTasks( ) {
+  /**
+   * Process due timers and timeouts, batched by workflow run.
+   */
+  public void doTimeouts( ) {
+    if ( !loaded ) {
+      return;
+    }
+    final long now = System.currentTimeMillis( );
+    final List<Timeout> due = wheel.advance( now );
+    if ( due.isEmpty( ) ) {
+      return;
+    }
     final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
-    try {
-      for ( final ActivityTask task : activityTasks.listTimedOut( Functions.<ActivityTask>identity( ) ) ) {
-        try ( final WorkflowLock lock =
-                  WorkflowLock.lock( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ) ) {
-          activityTasks.withRetries( ).updateByExample(
-              task,
-              task.getOwner( ),
-              task.getDisplayName( ),
-              new Function<ActivityTask, Void>() {
-            @Override
-            public Void apply( final ActivityTask activityTask ) {
-              final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
-              if ( timeout != null ) {
-                final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
-                workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                    workflowExecution,
-                    new ActivityTaskTimedOutEventAttributes()
-                        .withDetails( activityTask.getHeartbeatDetails() )
-                        .withScheduledEventId( activityTask.getScheduledEventId() )
-                        .withStartedEventId( activityTask.getStartedEventId() )
-                        .withTimeoutType( timeout.getLeft() )
-                ) );
-                if ( workflowExecution.getDecisionStatus( ) != Pending ) {
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  if ( workflowExecution.getDecisionStatus() == Idle ) {
-                    workflowExecution.setDecisionStatus( Pending );
-                    workflowExecution.setDecisionTimestamp( new Date( ) );
-                    addToNotifyLists( taskLists, workflowExecution );
-                  }
-                }
-                Entities.delete( activityTask );
-              }
-              return null;
-            }
-          } );
-        } catch ( SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
-              logger.debug( "Activity task not found for timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ) );
-            } else {
-              logger.error( "Error processing activity task timeout: " + task.getWorkflowRunId( ) + "/" + task.getScheduledEventId( ), e );
+    for ( final Map.Entry<Timeout,Collection<Timeout>> runTimeouts : Multimaps.index( due, Timeout::run ).asMap( ).entrySet( ) ) {
+      final Timeout run = runTimeouts.getKey( );
+      final List<Timeout> pending = Ordering.natural( ).onResultOf( Timeout::type ).sortedCopy( runTimeouts.getValue( ) );
+      try ( final WorkflowLock lock = WorkflowLock.lock( run.accountNumber, run.domainUuid, run.runId ) ) {
+        while ( !pending.isEmpty( ) ) {
+          final Timeout timeout = pending.remove( 0 );
+          boolean processed = false;
+          try {
+            switch ( timeout.type ) {
+              case ActivityTask:
+                processed = timeoutActivityTask( timeout, now, taskLists );
+                break;
+              case WorkflowExecution:
+                processed = timeoutDecisionTaskOrWorkflow( timeout, now, taskLists );
+                break;
+              case Timer:
+                processed = fireTimer( timeout, now, taskLists );
+                break;
             }
+          } catch ( final RuntimeException e ) {
+            logger.error( "Error processing timeout: " + timeout, e );
           }
+          if ( processed ) {
+            retries.remove( timeout );
+          } else {
+            retry( timeout, now );
+          }
+        }
+      } catch ( final RuntimeException e ) {
+        logger.error( "Error processing timeouts for run: " + run, e );
+        for ( final Timeout timeout : pending ) {
+          retry( timeout, now );
         }
       }
-    } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing activity task timeouts", e );
     }
     notifyLists( taskLists );
   }
 
-  private void timeoutDecisionTasksAndWorkflows( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * Schedule a timeout that failed to process again, backing off exponentially on repeated failures.
+   */
+  private static void retry( final Timeout timeout, final long now ) {
+    final int attempt = retries.merge( timeout, 1, Integer::sum );
+    if ( loaded ) {
+      wheel.schedule( timeout, now + retryDelay( attempt ) );
+    }
+  }
+
+  private static long retryDelay( final int attempt ) {
+    return Math.min( RETRY_MAX_MILLIS, RETRY_MIN_MILLIS << Math.min( Math.max( attempt - 1, 0 ), 16 ) );
+  }
+
+  /**
+   * @return False if the timeout should be retried
+   */
+  private boolean fireTimer( final Timeout due, final long now, final Set<NotifyTaskList> taskLists ) {
+    final AccountFullName owner = AccountFullName.getInstance( due.accountNumber );
     try {
-      final long now = System.currentTimeMillis();
-      for ( final WorkflowExecution workflowExecution :
-          workflowExecutions.listTimedOut( now, Functions.<WorkflowExecution>identity( ) ) ) {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            workflowExecution.getOwnerAccountNumber( ),
-            workflowExecution.getDomainUuid( ),
-            workflowExecution.getDisplayName( ) ) ) {
-          workflowExecutions.withRetries( ).updateByExample(
-              workflowExecution,
-              workflowExecution.getOwner( ),
-              workflowExecution.getDisplayName( ),
-              new Function<WorkflowExecution, Void>() {
+      workflowExecutions.withRetries( ).updateByExample(
+          WorkflowExecution.exampleWithName( owner, due.runId ),
+          owner,
+          due.runId,
+          new Function<WorkflowExecution, Void>( ){
+            @Nullable
             @Override
             public Void apply( final WorkflowExecution workflowExecution ) {
-              final Date timeout = workflowExecution.calculateNextTimeout( );
-              if ( timeout != null ) {
-                if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
-                  workflowExecution.closeWorkflow(
-                      WorkflowExecution.CloseStatus.Timed_Out,
-                      WorkflowHistoryEvent.create(
-                          workflowExecution,
-                          new WorkflowExecutionTimedOutEventAttributes()
-                              .withTimeoutType( "START_TO_CLOSE" )
-                              .withChildPolicy( workflowExecution.getChildPolicy() )
-                      ) );
-                } else { // decision task timed out
-                  final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
-                  final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
-                  final WorkflowHistoryEvent scheduled = Iterables.find(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
-                      reverseEvents,
-                      CollectionUtils.propertyPredicate( "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskTimedOutEventAttributes( )
-                          .withTimeoutType( "START_TO_CLOSE" )
-                          .withScheduledEventId( scheduled.getEventId( ) )
-                          .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
-                  ) );
-                  workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                      workflowExecution,
-                      new DecisionTaskScheduledEventAttributes( )
-                          .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                          .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                  ) );
-                  workflowExecution.setDecisionStatus( Pending );
-                  workflowExecution.setDecisionTimestamp( new Date( ) );
-                  addToNotifyLists( taskLists, workflowExecution );
-                }
+              try {
+                timers.updateByExample(
+                    Timer.exampleWithUniqueName( owner, due.runId, due.id ),
+                    owner,
+                    due.id,
+                    new Function<Timer, Void>( ) {
+                      @Override
+                      public Void apply( final Timer timer ) {
+                        if ( timer.getTimeoutTimestamp( ).getTime( ) >= now ) {
+                          scheduleTimeout( timer );
+                          return null;
+                        }
+                        final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
+                        workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                            workflowExecution,
+                            new TimerFiredEventAttributes( )
+                                .withStartedEventId( timer.getStartedEventId( ) )
+                                .withTimerId( timer.getDisplayName( ) )
+                        ) );
+                        if ( workflowExecution.getDecisionStatus() != Pending ) {
+                          workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                              workflowExecution,
+                              new DecisionTaskScheduledEventAttributes( )
+                                  .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                                  .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+                          ) );
+                          if ( workflowExecution.getDecisionStatus() == Idle ) {
+                            workflowExecution.setDecisionStatus( Pending );
+                            workflowExecution.setDecisionTimestamp( new Date( ) );
+                            addToNotifyLists( taskLists, workflowExecution );
+                          }
+                        }
+                        Entities.delete( timer );
+                        return null;
+                      }
+                    } );
+              } catch ( SwfMetadataException e ) {
+                throw Exceptions.toUndeclared( e );
               }
               return null;
             }
-          } );
-        } catch ( final SwfMetadataException e ) {
-          if ( !handleException( e ) ) {
-            logger.error( "Error processing workflow execution/decision task timeout: " + workflowExecution.getDisplayName(), e );
           }
+      );
+    } catch ( SwfMetadataException e ) {
+      if ( !handleException( e ) ) {
+        if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
+          logger.debug( "Timer not found for timeout: " + due );
+        } else {
+          logger.error( "Error processing fired timer: " + due, e );
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return False if the timeout should be retried
+   */
+  private boolean timeoutActivityTask( final Timeout due, final long now, final Set<NotifyTaskList> taskLists ) {
+    final AccountFullName owner = AccountFullName.getInstance( due.accountNumber );
+    try {
+      activityTasks.withRetries( ).updateByExample(
+          ActivityTask.exampleWithUniqueName( owner, due.runId, Long.valueOf( due.id ) ),
+          owner,
+          due.id,
+          new Function<ActivityTask, Void>() {
+        @Override
+        public Void apply( final ActivityTask activityTask ) {
+          final Pair<String,Date> timeout = activityTask.calculateNextTimeout( );
+          if ( timeout != null && timeout.getRight( ).getTime( ) < now ) {
+            final WorkflowExecution workflowExecution = activityTask.getWorkflowExecution();
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new ActivityTaskTimedOutEventAttributes()
+                    .withDetails( activityTask.getHeartbeatDetails() )
+                    .withScheduledEventId( activityTask.getScheduledEventId() )
+                    .withStartedEventId( activityTask.getStartedEventId() )
+                    .withTimeoutType( timeout.getLeft() )
+            ) );
+            if ( workflowExecution.getDecisionStatus( ) != Pending ) {
+              workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                  workflowExecution,
+                  new DecisionTaskScheduledEventAttributes( )
+                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+              ) );
+              if ( workflowExecution.getDecisionStatus() == Idle ) {
+                workflowExecution.setDecisionStatus( Pending );
+                workflowExecution.setDecisionTimestamp( new Date( ) );
+                addToNotifyLists( taskLists, workflowExecution );
+              }
+            }
+            Entities.delete( activityTask );
+          } else {
+            scheduleTimeout( activityTask );
+          }
+          return null;
+        }
+      } );
+    } catch ( SwfMetadataException e ) {
+      if ( !handleException( e ) ) {
+        if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
+          logger.debug( "Activity task not found for timeout: " + due );
+        } else {
+          logger.error( "Error processing activity task timeout: " + due, e );
+          return false;
         }
       }
+    }
+    return true;
+  }
+
+  /**
+   * @return False if the timeout should be retried
+   */
+  private boolean timeoutDecisionTaskOrWorkflow( final Timeout due, final long now, final Set<NotifyTaskList> taskLists ) {
+    final AccountFullName owner = AccountFullName.getInstance( due.accountNumber );
+    try {
+      workflowExecutions.withRetries( ).updateByExample(
+          WorkflowExecution.exampleWithName( owner, due.runId ),
+          owner,
+          due.runId,
+          new Function<WorkflowExecution, Void>() {
+        @Override
+        public Void apply( final WorkflowExecution workflowExecution ) {
+          final Date timeout = workflowExecution.calculateNextTimeout( );
+          if ( workflowExecution.getState( ) != WorkflowExecution.ExecutionStatus.Open ) {
+            return null;
+          } else if ( workflowExecution.isWorkflowTimedOut( now, getWorkflowExecutionDurationMillis( ) ) ) {
+            workflowExecution.closeWorkflow(
+                WorkflowExecution.CloseStatus.Timed_Out,
+                WorkflowHistoryEvent.create(
+                    workflowExecution,
+                    new WorkflowExecutionTimedOutEventAttributes()
+                        .withTimeoutType( "START_TO_CLOSE" )
+                        .withChildPolicy( workflowExecution.getChildPolicy() )
+                ) );
+          } else if ( timeout != null && timeout.getTime( ) < now ) { // decision task timed out
+            final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
+            final List<WorkflowHistoryEvent> reverseEvents = Lists.reverse( events );
+            final WorkflowHistoryEvent scheduled = Iterables.find(
+                reverseEvents,
+                CollectionUtils.propertyPredicate( "DecisionTaskScheduled", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
+            final Optional<WorkflowHistoryEvent> previousStarted = Iterables.tryFind(
+                reverseEvents,
+                CollectionUtils.propertyPredicate( "DecisionTaskStarted", WorkflowExecutions.WorkflowHistoryEventStringFunctions.EVENT_TYPE ) );
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new DecisionTaskTimedOutEventAttributes( )
+                    .withTimeoutType( "START_TO_CLOSE" )
+                    .withScheduledEventId( scheduled.getEventId( ) )
+                    .withStartedEventId( previousStarted.transform( WorkflowExecutions.WorkflowHistoryEventLongFunctions.EVENT_ID ).orNull( ) )
+            ) );
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new DecisionTaskScheduledEventAttributes( )
+                    .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                    .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
+            ) );
+            workflowExecution.setDecisionStatus( Pending );
+            workflowExecution.setDecisionTimestamp( new Date( ) );
+            addToNotifyLists( taskLists, workflowExecution );
+          } else {
+            scheduleTimeout( workflowExecution );
+          }
+          return null;
+        }
+      } );
     } catch ( final SwfMetadataException e ) {
-      logger.error( "Error processing workflow execution/decision task timeouts", e );
+      if ( !handleException( e ) ) {
+        if ( Exceptions.isCausedBy( e, SwfMetadataNotFoundException.class ) ) {
+          logger.debug( "Workflow execution not found for timeout: " + due );
+        } else {
+          logger.error( "Error processing workflow execution/decision task timeout: " + due, e );
+          return false;
+        }
+      }
     }
-    notifyLists( taskLists );
+    return true;
   }
 
   private boolean handleException( final Throwable e ) {
@@ -353,11 +640,7 @@ public class TimeoutManager {
 
   private void addToNotifyLists( final Collection<NotifyTaskList> taskLists,
                                  final WorkflowExecution workflowExecution ) {
-    taskLists.add( new NotifyTaskList(
-        workflowExecution.getOwnerAccountNumber( ),
-        workflowExecution.getDomainName( ),
-        "decision",
-        workflowExecution.getTaskList( ) ) );
+    taskLists.add( NotifyTaskList.decision( workflowExecution ) );
   }
 
   private void notifyLists( final Set<NotifyTaskList> taskLists ) {
@@ -366,7 +649,100 @@ public class TimeoutManager {
     }
   }
 
+  private static final class Timeout {
+    private enum Type {
+      ActivityTask,
+      WorkflowExecution,
+      Timer,
+    }
+
+    private final Type type;
+    private final String accountNumber;
+    private final String domainUuid;
+    private final String runId;
+    private final String id;
+
+    private Timeout( final Type type,
+                     final String accountNumber,
+                     final String domainUuid,
+                     final String runId,
+                     final String id ) {
+      this.type = type;
+      this.accountNumber = accountNumber;
+      this.domainUuid = domainUuid;
+      this.runId = runId;
+      this.id = id;
+    }
+
+    static Timeout of( final Type type, final TimeoutDeadline deadline ) {
+      return new Timeout( type, deadline.getAccountNumber( ), deadline.getDomainUuid( ), deadline.getRunId( ),
+          deadline.getId( ) );
+    }
+
+    static Timeout of( final Timer timer ) {
+      return new Timeout( Type.Timer, timer.getOwnerAccountNumber( ), timer.getDomainUuid( ), timer.getWorkflowRunId( ),
+          timer.getDisplayName( ) );
+    }
+
+    static Timeout of( final ActivityTask activityTask ) {
+      return new Timeout( Type.ActivityTask, activityTask.getOwnerAccountNumber( ), activityTask.getDomainUuid( ),
+          activityTask.getWorkflowRunId( ), String.valueOf( activityTask.getScheduledEventId( ) ) );
+    }
+
+    static Timeout of( final WorkflowExecution workflowExecution ) {
+      return new Timeout( Type.WorkflowExecution, workflowExecution.getOwnerAccountNumber( ),
+          workflowExecution.getDomainUuid( ), workflowExecution.getDisplayName( ), "" );
+    }
+
+    /**
+     * The workflow execution timeout for the run, used to batch timeouts by run.
+     */
+    Timeout run( ) {
+      return type == Type.WorkflowExecution ?
+          this :
+          new Timeout( Type.WorkflowExecution, accountNumber, domainUuid, runId, "" );
+    }
+
+    Type type( ) {
+      return type;
+    }
+
+    @SuppressWarnings( "RedundantIfStatement" )
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass() != o.getClass() ) return false;
+
+      final Timeout timeout = (Timeout) o;
+
+      if ( type != timeout.type ) return false;
+      if ( !accountNumber.equals( timeout.accountNumber ) ) return false;
+      if ( !domainUuid.equals( timeout.domainUuid ) ) return false;
+      if ( !runId.equals( timeout.runId ) ) return false;
+      if ( !id.equals( timeout.id ) ) return false;
+
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = type.hashCode();
+      result = 31 * result + accountNumber.hashCode();
+      result = 31 * result + domainUuid.hashCode();
+      result = 31 * result + runId.hashCode();
+      result = 31 * result + id.hashCode();
+      return result;
+    }
+
+    @Override
+    public String toString( ) {
+      return type + " " + runId + ( id.isEmpty( ) ? "" : "/" + id );
+    }
+  }
+
   public static class TimeoutManagerEventListener implements EventListener<ClockTick> {
+    private static final ScheduledExecutorService ticker =
+        Executors.newSingleThreadScheduledExecutor( Threads.threadFactory( "swf-timeout-wheel-%d" ) );
     private final TimeoutManager timeoutManager = new TimeoutManager();
 
     public static void register( ) {
@@ -378,9 +754,21 @@ public class TimeoutManager {
       if ( Bootstrap.isOperational( ) &&
           Topology.isEnabledLocally( PolledNotifications.class ) &&
           Topology.isEnabled( SimpleWorkflow.class ) ) {
-        timeoutManager.doTimeouts( );
-        timeoutManager.doTimers( );
+        timeoutManager.doSync( );
+        if ( tickerStarted.compareAndSet( false, true ) ) {
+          ticker.scheduleWithFixedDelay( this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS );
+        }
         timeoutManager.doExpunge( );
+      } else {
+        timeoutManager.unload( );
+      }
+    }
+
+    private void tick( ) {
+      try {
+        timeoutManager.doTimeouts( );
+      } catch ( final Throwable e ) {
+        logger.error( "Error processing timers and timeouts", e );
       }
     }
   }
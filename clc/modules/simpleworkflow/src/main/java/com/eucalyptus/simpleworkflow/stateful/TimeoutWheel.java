@@ -0,0 +1,200 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical hashed timing wheel of keyed deadlines.
+ *
+ * Each level has 2^bits slots, a slot on the first level covers one tick and a slot on each following level covers a
+ * full rotation of the level below. Deadlines are placed on the lowest level that covers them and cascade down a
+ * level as the wheel reaches their slot, so scheduling, cancelling and expiring an entry are constant time and
+ * advancing only visits the slots passed. Deadlines beyond the highest level are placed in its furthest slot and
+ * placed again when it is reached.
+ *
+ * Scheduling a key that is already present replaces its deadline. Entries never expire before their deadline and
+ * expire within one tick after it.
+ */
+public class TimeoutWheel<K> {
+
+  private final long tickMillis;
+  private final int bits;
+  private final int mask;
+  private final List<Set<Entry<K>>[]> levels;
+  private final Map<K,Entry<K>> entries = new HashMap<>( );
+  private final List<K> expired = new ArrayList<>( );
+  private long tick;
+
+  /**
+   * @param tickMillis duration of a tick
+   * @param bits number of slots for each level as a power of two
+   * @param levelCount number of levels
+   * @param nowMillis current time
+   */
+  @SuppressWarnings( "unchecked" )
+  public TimeoutWheel( final long tickMillis, final int bits, final int levelCount, final long nowMillis ) {
+    if ( tickMillis < 1 || bits < 1 || levelCount < 1 || ( bits * levelCount ) > 62 ) {
+      throw new IllegalArgumentException( "Invalid wheel configuration: tick=" + tickMillis + ", bits=" + bits +
+          ", levels=" + levelCount );
+    }
+    this.tickMillis = tickMillis;
+    this.bits = bits;
+    this.mask = ( 1 << bits ) - 1;
+    this.levels = new ArrayList<>( levelCount );
+    for ( int level = 0; level < levelCount; level++ ) {
+      final Set<Entry<K>>[] slots = new Set[ 1 << bits ];
+      for ( int slot = 0; slot < slots.length; slot++ ) {
+        slots[ slot ] = new LinkedHashSet<>( );
+      }
+      levels.add( slots );
+    }
+    this.tick = nowMillis / tickMillis;
+  }
+
+  /**
+   * Schedule the key to expire at the deadline, replacing any existing deadline for the key.
+   */
+  public synchronized void schedule( final K key, final long deadlineMillis ) {
+    final Entry<K> existing = entries.get( key );
+    if ( existing != null ) {
+      // round up so an entry never expires early
+      if ( existing.tick == ( deadlineMillis + tickMillis - 1 ) / tickMillis ) {
+        return;
+      }
+      remove( existing );
+    }
+    final Entry<K> entry = new Entry<>( key, ( deadlineMillis + tickMillis - 1 ) / tickMillis );
+    entries.put( key, entry );
+    place( entry );
+  }
+
+  /**
+   * Cancel the deadline for the key.
+   *
+   * @return true if the key was scheduled
+   */
+  public synchronized boolean cancel( final K key ) {
+    final Entry<K> entry = entries.remove( key );
+    if ( entry != null ) {
+      remove( entry );
+    }
+    return entry != null;
+  }
+
+  /**
+   * Advance the wheel to the given time, removing and returning the keys that expired.
+   */
+  public synchronized List<K> advance( final long nowMillis ) {
+    final long target = nowMillis / tickMillis;
+    while ( tick < target ) {
+      if ( entries.size( ) == expired.size( ) ) {
+        tick = target;
+        break;
+      }
+      tick++;
+      for ( int level = levels.size( ) - 1; level > 0; level-- ) {
+        if ( ( tick & ( ( 1L << ( bits * level ) ) - 1 ) ) == 0 ) {
+          cascade( level );
+        }
+      }
+      expire( levels.get( 0 )[ (int) ( tick & mask ) ] );
+    }
+    final List<K> keys = new ArrayList<>( expired );
+    expired.clear( );
+    for ( final K key : keys ) {
+      entries.remove( key );
+    }
+    return keys;
+  }
+
+  /**
+   * Remove all entries and move the wheel to the given time.
+   */
+  public synchronized void clear( final long nowMillis ) {
+    for ( final Set<Entry<K>>[] slots : levels ) {
+      for ( final Set<Entry<K>> slot : slots ) {
+        slot.clear( );
+      }
+    }
+    entries.clear( );
+    expired.clear( );
+    tick = nowMillis / tickMillis;
+  }
+
+  public synchronized int size( ) {
+    return entries.size( );
+  }
+
+  private void cascade( final int level ) {
+    final Set<Entry<K>> slot = levels.get( level )[ (int) ( ( tick >>> ( bits * level ) ) & mask ) ];
+    final List<Entry<K>> cascading = new ArrayList<>( slot );
+    slot.clear( );
+    for ( final Entry<K> entry : cascading ) {
+      entry.slot = null;
+      place( entry );
+    }
+  }
+
+  private void expire( final Set<Entry<K>> slot ) {
+    for ( final Entry<K> entry : slot ) {
+      entry.slot = null;
+      expired.add( entry.key );
+    }
+    slot.clear( );
+  }
+
+  private void place( final Entry<K> entry ) {
+    final long delta = entry.tick - tick;
+    if ( delta <= 0 ) {
+      expired.add( entry.key );
+      return;
+    }
+    final int topLevel = levels.size( ) - 1;
+    int level = 0;
+    while ( level < topLevel && delta >= ( 1L << ( bits * ( level + 1 ) ) ) ) {
+      level++;
+    }
+    final long slotTick = Math.min( entry.tick, tick + ( 1L << ( bits * ( topLevel + 1 ) ) ) - 1 );
+    entry.slot = levels.get( level )[ (int) ( ( slotTick >>> ( bits * level ) ) & mask ) ];
+    entry.slot.add( entry );
+  }
+
+  private void remove( final Entry<K> entry ) {
+    if ( entry.slot != null ) {
+      entry.slot.remove( entry );
+      entry.slot = null;
+    } else {
+      expired.remove( entry.key );
+    }
+  }
+
+  private static final class Entry<K> {
+    private final K key;
+    private final long tick;
+    private Set<Entry<K>> slot;
+
+    private Entry( final K key, final long tick ) {
+      this.key = key;
+      this.tick = tick;
+    }
+  }
+}
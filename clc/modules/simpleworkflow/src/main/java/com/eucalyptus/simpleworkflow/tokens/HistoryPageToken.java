@@ -0,0 +1,175 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.tokens;
+
+import java.util.List;
+import javax.annotation.Nullable;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+/**
+ * Position in a workflow execution history for the next page of events.
+ *
+ * Events from nextEventId to lastEventId (inclusive) remain, lastEventId is less than nextEventId for reverse order.
+ */
+public class HistoryPageToken {
+  private final String accountNumber;
+  private final String domainUuid;
+  private final String runId;
+  private final Long nextEventId;
+  private final Long lastEventId;
+  private final Long startedEventId;
+  private final Long previousStartedEventId;
+
+  public HistoryPageToken( final String accountNumber,
+                           final String domainUuid,
+                           final String runId,
+                           final Long nextEventId,
+                           final Long lastEventId,
+                           final Long startedEventId,
+                           final Long previousStartedEventId ) {
+    Preconditions.checkNotNull( accountNumber, "accountNumber is required" );
+    Preconditions.checkNotNull( domainUuid, "domainUuid is required" );
+    Preconditions.checkNotNull( runId, "runId is required" );
+    Preconditions.checkNotNull( nextEventId, "nextEventId is required" );
+    Preconditions.checkNotNull( lastEventId, "lastEventId is required" );
+    Preconditions.checkNotNull( startedEventId, "startedEventId is required" );
+    Preconditions.checkNotNull( previousStartedEventId, "previousStartedEventId is required" );
+    this.accountNumber = accountNumber;
+    this.domainUuid = domainUuid;
+    this.runId = runId;
+    this.nextEventId = nextEventId;
+    this.lastEventId = lastEventId;
+    this.startedEventId = startedEventId;
+    this.previousStartedEventId = previousStartedEventId;
+  }
+
+  /**
+   * Position for the first page of an execution history.
+   */
+  public static HistoryPageToken forExecution( final String accountNumber,
+                                               final String domainUuid,
+                                               final String runId,
+                                               final boolean reverse ) {
+    return new HistoryPageToken(
+        accountNumber,
+        domainUuid,
+        runId,
+        reverse ? Long.MAX_VALUE : 1L,
+        reverse ? 1L : Long.MAX_VALUE,
+        0L,
+        0L );
+  }
+
+  /**
+   * Position for the first page of a decision task history.
+   *
+   * @param incremental True to include only the events after the previous started event
+   */
+  public static HistoryPageToken forDecisionTask( final String accountNumber,
+                                                  final String domainUuid,
+                                                  final String runId,
+                                                  final long startedEventId,
+                                                  final long previousStartedEventId,
+                                                  final boolean incremental,
+                                                  final boolean reverse ) {
+    final long firstEventId = incremental ? previousStartedEventId + 1 : 1L;
+    return new HistoryPageToken(
+        accountNumber,
+        domainUuid,
+        runId,
+        reverse ? startedEventId : firstEventId,
+        reverse ? firstEventId : startedEventId,
+        startedEventId,
+        previousStartedEventId );
+  }
+
+  public String getAccountNumber() {
+    return accountNumber;
+  }
+
+  public String getDomainUuid() {
+    return domainUuid;
+  }
+
+  public String getRunId() {
+    return runId;
+  }
+
+  public Long getNextEventId() {
+    return nextEventId;
+  }
+
+  public Long getLastEventId() {
+    return lastEventId;
+  }
+
+  /**
+   * Started event for a decision task history, zero for an execution history.
+   */
+  public Long getStartedEventId() {
+    return startedEventId;
+  }
+
+  public Long getPreviousStartedEventId() {
+    return previousStartedEventId;
+  }
+
+  public boolean isReverseOrder() {
+    return lastEventId < nextEventId;
+  }
+
+  /**
+   * Lowest event id remaining, regardless of order.
+   */
+  public long getLowerEventId() {
+    return Math.min( nextEventId, lastEventId );
+  }
+
+  /**
+   * Highest event id remaining, regardless of order.
+   */
+  public long getUpperEventId() {
+    return Math.max( nextEventId, lastEventId );
+  }
+
+  /**
+   * Position following a page of events listed from this position.
+   *
+   * @param events Up to pageSize + 1 events in page order, any event after the page is removed
+   * @param pageSize The page size
+   * @param eventId Function for the id of an event
+   * @return The next position or null if no events remain
+   */
+  @Nullable
+  public <T> HistoryPageToken next( final List<T> events,
+                                    final int pageSize,
+                                    final Function<? super T,Long> eventId ) {
+    if ( events.size( ) <= pageSize ) {
+      return null;
+    }
+    final T next = events.get( pageSize );
+    events.subList( pageSize, events.size( ) ).clear( );
+    return new HistoryPageToken(
+        accountNumber,
+        domainUuid,
+        runId,
+        eventId.apply( next ),
+        lastEventId,
+        startedEventId,
+        previousStartedEventId );
+  }
+}
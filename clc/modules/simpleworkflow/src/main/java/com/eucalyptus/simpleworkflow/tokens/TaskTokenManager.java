@@ -79,6 +79,23 @@ public class TaskTokenManager {
     }
   }
 
+  @Nonnull
+  public String encryptPageToken( @Nonnull final HistoryPageToken pageToken ) {
+    final EncryptedPageToken encryptedToken = new EncryptedPageToken( pageToken );
+    return encryptedToken.encrypt( getEncryptionKey( pageToken.getAccountNumber() ) );
+  }
+
+  @Nonnull
+  public HistoryPageToken decryptPageToken( final String accountNumber,
+                                            final String pageToken ) throws TaskTokenException {
+    if ( pageToken == null ) throw new TaskTokenException( "Missing page token" );
+    try {
+      return EncryptedPageToken.decrypt( getEncryptionKey( accountNumber ), pageToken ).getPageToken( );
+    } catch ( GeneralSecurityException e ) {
+      throw new TaskTokenException( "Error decrypting page token", e );
+    }
+  }
+
   protected String getTokenPassword() {
     return securityTokenPasswordSupplier.get( );
   }
@@ -90,6 +107,44 @@ public class TaskTokenManager {
     return new SecretKeySpec( digest.digest(), "AES" );
   }
 
+  private static String encrypt( final SecretKey key,
+                                 final byte[] prefix,
+                                 final byte[] data ) {
+    try {
+      final Cipher cipher = Ciphers.AES_GCM.get();
+      final byte[] iv = new byte[32];
+      randomSupplier.get().nextBytes(iv);
+      cipher.init( Cipher.ENCRYPT_MODE, key, new IvParameterSpec( iv ), randomSupplier.get( ) );
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      out.write( prefix );
+      out.write( iv );
+      out.write( cipher.doFinal( data ) );
+      return B64.standard.encString( out.toByteArray() );
+    } catch ( GeneralSecurityException | IOException e ) {
+      throw Exceptions.toUndeclared( e );
+    }
+  }
+
+  private static byte[] decrypt( final SecretKey key,
+                                 final byte[] prefix,
+                                 final String token ) throws GeneralSecurityException {
+    final Cipher cipher = Ciphers.AES_GCM.get();
+    final byte[] tokenBytes = B64.standard.dec(token);
+    if ( tokenBytes.length < 64 + prefix.length ||
+        !Arrays.equals( prefix, Arrays.copyOf( tokenBytes, prefix.length ) ) ) {
+      throw new GeneralSecurityException("Invalid token format");
+    }
+
+    cipher.init(
+        Cipher.DECRYPT_MODE,
+        key,
+        new IvParameterSpec( tokenBytes, prefix.length, 32 ),
+        randomSupplier.get( )
+    );
+    final int offset = prefix.length + 32;
+    return cipher.doFinal( tokenBytes, offset, tokenBytes.length-offset );
+  }
+
   private static final class EncryptedTaskToken {
     private static final byte[] TOKEN_PREFIX = new byte[]{ 'e', 'u', 's', 'w', 0, 1 };
 
@@ -121,40 +176,13 @@ public class TaskTokenManager {
     }
 
     private String encrypt( final SecretKey key ) {
-      try {
-        final Cipher cipher = Ciphers.AES_GCM.get();
-        final byte[] iv = new byte[32];
-        randomSupplier.get().nextBytes(iv);
-        cipher.init( Cipher.ENCRYPT_MODE, key, new IvParameterSpec( iv ), randomSupplier.get( ) );
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        out.write( TOKEN_PREFIX );
-        out.write( iv );
-        out.write( cipher.doFinal(toBytes()) );
-        return B64.standard.encString( out.toByteArray() );
-      } catch ( GeneralSecurityException | IOException e ) {
-        throw Exceptions.toUndeclared( e );
-      }
+      return TaskTokenManager.encrypt( key, TOKEN_PREFIX, toBytes( ) );
     }
 
     private static EncryptedTaskToken decrypt( final SecretKey key,
                                                final String taskToken ) throws GeneralSecurityException {
       try {
-        final Cipher cipher = Ciphers.AES_GCM.get();
-        final byte[] taskTokenBytes = B64.standard.dec(taskToken);
-        if ( taskTokenBytes.length < 64 + TOKEN_PREFIX.length ||
-            !Arrays.equals( TOKEN_PREFIX, Arrays.copyOf( taskTokenBytes, TOKEN_PREFIX.length ) ) ) {
-          throw new GeneralSecurityException("Invalid token format");
-        }
-
-        cipher.init(
-            Cipher.DECRYPT_MODE,
-            key,
-            new IvParameterSpec( taskTokenBytes, TOKEN_PREFIX.length, 32 ),
-            randomSupplier.get( )
-        );
-        final int offset = TOKEN_PREFIX.length + 32;
-        final TaskTokenInput in = new TaskTokenInput(
-            cipher.doFinal( taskTokenBytes, offset, taskTokenBytes.length-offset ) );
+        final TaskTokenInput in = new TaskTokenInput( TaskTokenManager.decrypt( key, TOKEN_PREFIX, taskToken ) );
         if ( in.readInt() != 1 ) throw new GeneralSecurityException("Invalid token format");
         final String accountNumber = in.readString();
         final String domainUuid = in.readString();
@@ -171,6 +199,60 @@ public class TaskTokenManager {
     }
   }
 
+  private static final class EncryptedPageToken {
+    private static final byte[] TOKEN_PREFIX = new byte[]{ 'e', 'u', 's', 'w', 0, 2 };
+
+    private final HistoryPageToken pageToken;
+
+    private EncryptedPageToken( final HistoryPageToken pageToken ) {
+      this.pageToken = pageToken;
+    }
+
+    public HistoryPageToken getPageToken( ) {
+      return pageToken;
+    }
+
+    private byte[] toBytes( ) {
+      try {
+        final TaskTokenOutput out = new TaskTokenOutput();
+        out.writeInt( 1 ); // format identifier
+        out.writeString( pageToken.getAccountNumber() );
+        out.writeString( pageToken.getDomainUuid() );
+        out.writeString( pageToken.getRunId() );
+        out.writeLong( pageToken.getNextEventId() );
+        out.writeLong( pageToken.getLastEventId() );
+        out.writeLong( pageToken.getStartedEventId() );
+        out.writeLong( pageToken.getPreviousStartedEventId() );
+        return out.toByteArray( );
+      } catch (IOException e) {
+        throw Exceptions.toUndeclared( e );
+      }
+    }
+
+    private String encrypt( final SecretKey key ) {
+      return TaskTokenManager.encrypt( key, TOKEN_PREFIX, toBytes( ) );
+    }
+
+    private static EncryptedPageToken decrypt( final SecretKey key,
+                                               final String pageToken ) throws GeneralSecurityException {
+      try {
+        final TaskTokenInput in = new TaskTokenInput( TaskTokenManager.decrypt( key, TOKEN_PREFIX, pageToken ) );
+        if ( in.readInt() != 1 ) throw new GeneralSecurityException("Invalid token format");
+        final String accountNumber = in.readString();
+        final String domainUuid = in.readString();
+        final String runId = in.readString();
+        final long nextEventId = in.readLong();
+        final long lastEventId = in.readLong();
+        final long startedEventId = in.readLong();
+        final long previousStartedEventId = in.readLong();
+        return new EncryptedPageToken( new HistoryPageToken(
+            accountNumber, domainUuid, runId, nextEventId, lastEventId, startedEventId, previousStartedEventId ) );
+      } catch (IOException e) {
+        throw Exceptions.toUndeclared( e );
+      }
+    }
+  }
+
   private static final class TaskTokenOutput {
     private final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
     private final Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION );
@@ -31,6 +31,7 @@ import com.eucalyptus.simpleworkflow.common.SimpleWorkflow;
 import com.eucalyptus.util.Strings;
 import com.eucalyptus.ws.server.FilteredPipeline;
 import com.eucalyptus.ws.stages.HmacUserAuthenticationStage;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
@@ -72,4 +73,9 @@ public class SimpleWorkflowPipeline extends FilteredPipeline {
     return false;
 
   }
+
+  @Override
+  public Optional<Route> getRoute( ) {
+    return Optional.of( Route.any( servicePathPrefixes ) );
+  }
 }
@@ -0,0 +1,196 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import com.google.common.base.Predicates;
+
+public class DispatchQueueTest {
+
+  private static final String CHANNEL = "123456789012:activity:domain:list";
+
+  @Test
+  public void testDispatchToWaitingPoller( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 2 );
+    assertTrue( queue.dispatch( pollers, "a", 0 ) );
+    assertTrue( queue.dispatch( pollers, "b", 0 ) );
+    assertEquals( Arrays.asList( "a", "b" ), pollers.notified );
+    assertTrue( queue.isEmpty( ) );
+  }
+
+  @Test
+  public void testQueueUntilPoller( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    assertTrue( queue.dispatch( pollers, "a", 0 ) );
+    assertTrue( queue.dispatch( pollers, "b", 0 ) );
+    assertEquals( 2, queue.size( ) );
+
+    // each poller takes one task, in notification order
+    pollers.waiting = 1;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 1 );
+    assertEquals( Collections.singletonList( "a" ), pollers.notified );
+    assertEquals( 1, queue.size( ) );
+    pollers.waiting = 3;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 2 );
+    assertEquals( Arrays.asList( "a", "b" ), pollers.notified );
+    assertTrue( queue.isEmpty( ) );
+    assertEquals( 2, pollers.waiting );
+  }
+
+  @Test
+  public void testDeduplicate( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    queue.dispatch( pollers, "a", 0 );
+    queue.dispatch( pollers, "b", 0 );
+    queue.dispatch( pollers, "a", 1 );
+    assertEquals( 2, queue.size( ) );
+    pollers.waiting = 3;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 2 );
+    assertEquals( Arrays.asList( "a", "b" ), pollers.notified );
+  }
+
+  @Test
+  public void testCapacity( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 2, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    assertTrue( queue.dispatch( pollers, "a", 0 ) );
+    assertTrue( queue.dispatch( pollers, "b", 0 ) );
+    assertFalse( queue.dispatch( pollers, "c", 0 ) );
+    assertTrue( "Duplicate accepted when full", queue.dispatch( pollers, "a", 0 ) );
+    assertEquals( 2, queue.size( ) );
+  }
+
+  @Test
+  public void testExpiry( ) {
+    final long minute = TimeUnit.MINUTES.toMillis( 1 );
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    queue.dispatch( pollers, "a", 0 );
+    queue.dispatch( pollers, "b", minute );
+    queue.removeExpired( minute + 1 );
+    assertEquals( 1, queue.size( ) );
+
+    // expired details are not handed out
+    pollers.waiting = 2;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 2 * minute + 1 );
+    assertEquals( Collections.emptyList( ), pollers.notified );
+    assertTrue( queue.isEmpty( ) );
+
+    assertFalse( queue.isExpired( 2 * minute ) );
+    assertTrue( queue.isExpired( 3 * minute + 1 ) );
+  }
+
+  @Test
+  public void testReofferWhenNotTaken( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    queue.dispatch( pollers, "a", 0 );
+    queue.dispatch( pollers, "b", 10 );
+
+    // the waiting poller expired so the task is put back in its place
+    pollers.waiting = 1;
+    pollers.accepting = false;
+    queue.drainTo( pollers, Predicates.alwaysTrue( ), 20 );
+    assertEquals( Collections.emptyList( ), pollers.notified );
+    assertEquals( 2, queue.size( ) );
+
+    // the original queued time is kept
+    queue.removeExpired( TimeUnit.MINUTES.toMillis( 1 ) + 5 );
+    assertEquals( 1, queue.size( ) );
+
+    pollers.waiting = 1;
+    pollers.accepting = true;
+    queue.drainTo( pollers, Predicates.alwaysTrue( ), TimeUnit.MINUTES.toMillis( 1 ) + 5 );
+    assertEquals( Collections.singletonList( "b" ), pollers.notified );
+  }
+
+  @Test
+  public void testReofferOrder( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 0 );
+    queue.dispatch( pollers, "a", 0 );
+    queue.dispatch( pollers, "b", 0 );
+    pollers.waiting = 1;
+    pollers.accepting = false;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 0 );
+    pollers.waiting = 2;
+    pollers.accepting = true;
+    queue.drainTo( pollers, Predicates.alwaysFalse( ), 0 );
+    assertEquals( Arrays.asList( "a", "b" ), pollers.notified );
+  }
+
+  @Test
+  public void testCheckerFallback( ) {
+    final DispatchQueue queue = new DispatchQueue( CHANNEL, 10, 0 );
+    final TestPollers pollers = new TestPollers( 3 );
+    final List<String> checked = new ArrayList<>( );
+
+    // nothing queued and no work, no poller is woken
+    queue.drainTo( pollers, channel -> { checked.add( channel ); return false; }, 0 );
+    assertEquals( Collections.singletonList( CHANNEL ), checked );
+    assertEquals( Collections.emptyList( ), pollers.notified );
+
+    // nothing queued but work found, a single poller is woken without details
+    queue.drainTo( pollers, Predicates.alwaysTrue( ), 0 );
+    assertEquals( Collections.singletonList( null ), pollers.notified );
+    assertEquals( 2, pollers.waiting );
+
+    // queued details are dispatched without consulting the checker
+    queue.offer( "a", 0 );
+    checked.clear( );
+    queue.drainTo( pollers, channel -> { checked.add( channel ); return true; }, 0 );
+    assertEquals( Arrays.asList( null, "a" ), pollers.notified );
+    assertEquals( Collections.emptyList( ), checked );
+  }
+
+  private static final class TestPollers implements DispatchQueue.Pollers {
+    private final List<String> notified = new ArrayList<>( );
+    private int waiting;
+    private boolean accepting = true;
+
+    private TestPollers( final int waiting ) {
+      this.waiting = waiting;
+    }
+
+    @Override
+    public boolean isEmpty( ) {
+      return waiting == 0;
+    }
+
+    @Override
+    public boolean notifyPoller( final String details ) {
+      if ( waiting == 0 ) {
+        return false;
+      }
+      waiting--;
+      if ( accepting ) {
+        notified.add( details );
+      }
+      return accepting;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+
+public class TimeoutWheelTest {
+
+  @Test
+  public void testExpiry( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 100, 4, 3, 0 );
+    wheel.schedule( "a", 250 );
+    wheel.schedule( "b", 1_000 );
+    wheel.schedule( "c", 100_000 );
+    assertEquals( 3, wheel.size( ) );
+    assertEquals( Collections.emptyList( ), wheel.advance( 200 ) );
+    assertEquals( Collections.singletonList( "a" ), wheel.advance( 300 ) );
+    assertEquals( Collections.singletonList( "b" ), wheel.advance( 1_000 ) );
+    assertEquals( Collections.emptyList( ), wheel.advance( 99_999 ) );
+    assertEquals( Collections.singletonList( "c" ), wheel.advance( 100_000 ) );
+    assertEquals( 0, wheel.size( ) );
+  }
+
+  @Test
+  public void testPastDeadline( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 100, 4, 3, 10_000 );
+    wheel.schedule( "a", 5_000 );
+    assertEquals( Collections.singletonList( "a" ), wheel.advance( 10_000 ) );
+  }
+
+  @Test
+  public void testRescheduleAndCancel( ) {
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 100, 4, 3, 0 );
+    wheel.schedule( "a", 500 );
+    wheel.schedule( "a", 50_000 );
+    wheel.schedule( "b", 500 );
+    assertTrue( wheel.cancel( "b" ) );
+    assertFalse( wheel.cancel( "b" ) );
+    assertEquals( Collections.emptyList( ), wheel.advance( 1_000 ) );
+    assertEquals( Collections.singletonList( "a" ), wheel.advance( 50_000 ) );
+  }
+
+  @Test
+  public void testBeyondWheel( ) {
+    // 3 levels of 16 slots at 100ms cover 409.6s
+    final TimeoutWheel<String> wheel = new TimeoutWheel<>( 100, 4, 3, 0 );
+    wheel.schedule( "a", 1_000_000 );
+    assertEquals( Collections.emptyList( ), wheel.advance( 999_900 ) );
+    assertEquals( Collections.singletonList( "a" ), wheel.advance( 1_000_000 ) );
+  }
+
+  @Test
+  public void testRandomDeadlines( ) {
+    final Random random = new Random( 7 );
+    final TimeoutWheel<Integer> wheel = new TimeoutWheel<>( 10, 3, 4, 0 );
+    final Map<Integer,Long> deadlines = new HashMap<>( );
+    for ( int i = 0; i < 5_000; i++ ) {
+      final long deadline = random.nextInt( 100_000 );
+      deadlines.put( i, deadline );
+      wheel.schedule( i, deadline );
+    }
+    for ( long now = 0; now <= 100_000; now += 1 + random.nextInt( 500 ) ) {
+      final List<Integer> expired = wheel.advance( now );
+      for ( final Integer key : expired ) {
+        final long deadline = deadlines.remove( key );
+        assertTrue( "Expired early " + key, deadline <= now );
+      }
+      for ( final Map.Entry<Integer,Long> entry : deadlines.entrySet( ) ) {
+        assertTrue( "Expired late " + entry.getKey( ), entry.getValue( ) > now - 10 );
+      }
+    }
+    for ( final Integer key : wheel.advance( 100_010 ) ) {
+      deadlines.remove( key );
+    }
+    assertEquals( Collections.emptyMap( ), deadlines );
+    assertEquals( 0, wheel.size( ) );
+  }
+}
@@ -0,0 +1,156 @@
+/*************************************************************************
+ * (c) Copyright 2017 Hewlett Packard Enterprise Development Company LP
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.tokens;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import com.google.common.base.Functions;
+import com.google.common.collect.ContiguousSet;
+import com.google.common.collect.DiscreteDomain;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+
+public class HistoryPageTokenTest {
+
+  private static final String ACCOUNT = "123456789012";
+  private static final String DOMAIN = "c5e4b1a2-8f39-4d6e-9a0b-2b7c3d4e5f60";
+  private static final String RUN = "0f1e2d3c-4b5a-6978-8796-a5b4c3d2e1f0";
+
+  @Test
+  public void testExecutionForward( ) {
+    final HistoryPageToken first = HistoryPageToken.forExecution( ACCOUNT, DOMAIN, RUN, false );
+    assertFalse( "Reverse order", first.isReverseOrder( ) );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 1L, 2L, 3L ),
+        Lists.newArrayList( 4L, 5L, 6L ),
+        Lists.newArrayList( 7L ) ), pages( events( 7 ), first, 3 ) );
+  }
+
+  @Test
+  public void testExecutionReverse( ) {
+    final HistoryPageToken first = HistoryPageToken.forExecution( ACCOUNT, DOMAIN, RUN, true );
+    assertTrue( "Reverse order", first.isReverseOrder( ) );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 7L, 6L, 5L ),
+        Lists.newArrayList( 4L, 3L, 2L ),
+        Lists.newArrayList( 1L ) ), pages( events( 7 ), first, 3 ) );
+  }
+
+  @Test
+  public void testExactPages( ) {
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 1L, 2L, 3L ),
+        Lists.newArrayList( 4L, 5L, 6L ) ),
+        pages( events( 6 ), HistoryPageToken.forExecution( ACCOUNT, DOMAIN, RUN, false ), 3 ) );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 6L, 5L, 4L ),
+        Lists.newArrayList( 3L, 2L, 1L ) ),
+        pages( events( 6 ), HistoryPageToken.forExecution( ACCOUNT, DOMAIN, RUN, true ), 3 ) );
+  }
+
+  @Test
+  public void testDecisionTaskForward( ) {
+    // events after the started event belong to a later decision task
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 8L, 3L, false, false );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 1L, 2L, 3L, 4L, 5L ),
+        Lists.newArrayList( 6L, 7L, 8L ) ), pages( events( 10 ), first, 5 ) );
+  }
+
+  @Test
+  public void testDecisionTaskReverse( ) {
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 8L, 3L, false, true );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 8L, 7L, 6L, 5L, 4L ),
+        Lists.newArrayList( 3L, 2L, 1L ) ), pages( events( 10 ), first, 5 ) );
+  }
+
+  @Test
+  public void testDecisionTaskIncrementalForward( ) {
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 8L, 3L, true, false );
+    assertEquals( "Lower event id", 4L, first.getLowerEventId( ) );
+    assertEquals( "Upper event id", 8L, first.getUpperEventId( ) );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 4L, 5L ),
+        Lists.newArrayList( 6L, 7L ),
+        Lists.newArrayList( 8L ) ), pages( events( 10 ), first, 2 ) );
+  }
+
+  @Test
+  public void testDecisionTaskIncrementalReverse( ) {
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 8L, 3L, true, true );
+    assertEquals( "Lower event id", 4L, first.getLowerEventId( ) );
+    assertEquals( "Upper event id", 8L, first.getUpperEventId( ) );
+    assertEquals( "Pages", Lists.newArrayList(
+        Lists.newArrayList( 8L, 7L ),
+        Lists.newArrayList( 6L, 5L ),
+        Lists.newArrayList( 4L ) ), pages( events( 10 ), first, 2 ) );
+  }
+
+  @Test
+  public void testDecisionTaskIncrementalFirstTask( ) {
+    // no previous started event, the whole history up to the started event is included
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 3L, 0L, true, false );
+    assertEquals( "Pages", Collections.singletonList(
+        Lists.newArrayList( 1L, 2L, 3L ) ), pages( events( 3 ), first, 5 ) );
+  }
+
+  @Test
+  public void testNextKeepsTask( ) {
+    final HistoryPageToken first = HistoryPageToken.forDecisionTask( ACCOUNT, DOMAIN, RUN, 8L, 3L, true, true );
+    final List<Long> page = Lists.newArrayList( 8L, 7L, 6L );
+    final HistoryPageToken next = first.next( page, 2, Functions.<Long>identity( ) );
+    assertEquals( "Page", Lists.newArrayList( 8L, 7L ), page );
+    assertEquals( "Account number", ACCOUNT, next.getAccountNumber( ) );
+    assertEquals( "Domain UUID", DOMAIN, next.getDomainUuid( ) );
+    assertEquals( "Run ID", RUN, next.getRunId( ) );
+    assertEquals( "Next event id", 6L, (long) next.getNextEventId( ) );
+    assertEquals( "Last event id", 4L, (long) next.getLastEventId( ) );
+    assertEquals( "Started event id", 8L, (long) next.getStartedEventId( ) );
+    assertEquals( "Previous started event id", 3L, (long) next.getPreviousStartedEventId( ) );
+    assertNull( "Last page", next.next( Lists.newArrayList( 6L, 5L ), 2, Functions.<Long>identity( ) ) );
+  }
+
+  private static List<Long> events( final int count ) {
+    return Lists.newArrayList( ContiguousSet.create( Range.closed( 1L, (long) count ), DiscreteDomain.longs( ) ) );
+  }
+
+  /**
+   * List events as the keyset query would and follow the page tokens to the end.
+   */
+  private static List<List<Long>> pages( final List<Long> history, final HistoryPageToken first, final int pageSize ) {
+    final List<List<Long>> pages = new ArrayList<>( );
+    HistoryPageToken position = first;
+    while ( position != null ) {
+      final List<Long> events = new ArrayList<>( );
+      for ( final Long eventId : position.isReverseOrder( ) ? Lists.reverse( history ) : history ) {
+        if ( eventId >= position.getLowerEventId( ) && eventId <= position.getUpperEventId( ) && events.size( ) <= pageSize ) {
+          events.add( eventId );
+        }
+      }
+      position = position.next( events, pageSize, Functions.<Long>identity( ) );
+      pages.add( events );
+      assertTrue( "Page limit", pages.size( ) <= history.size( ) );
+    }
+    return pages;
+  }
+}
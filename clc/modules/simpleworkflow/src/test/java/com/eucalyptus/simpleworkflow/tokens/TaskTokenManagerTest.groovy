@@ -84,4 +84,45 @@ class TaskTokenManagerTest {
     assertEquals( "Expires Timestamp", token.expires, result.expires )
   }
 
+  @Test
+  void testPageTokenRoundTrip( ) {
+    TaskTokenManager manager = new TaskTokenManager( ) {
+      @Override
+      protected String getTokenPassword( ) {
+        'Open Sesame'
+      }
+    }
+
+    String accountNumber = '123456789012'
+    String domainUuid = UUID.randomUUID( ).toString( )
+    String runId = UUID.randomUUID( ).toString( )
+    HistoryPageToken token = new HistoryPageToken( accountNumber, domainUuid, runId, 1001L, 1L, 1200L, 900L )
+
+    String encryptedToken = manager.encryptPageToken( token )
+    assertTrue( "Token length", encryptedToken.length( ) <= 2048 )
+
+    HistoryPageToken result = manager.decryptPageToken( accountNumber, encryptedToken )
+    assertEquals( "Account number", token.accountNumber, result.accountNumber )
+    assertEquals( "Domain UUID", token.domainUuid, result.domainUuid )
+    assertEquals( "Run ID", token.runId, result.runId )
+    assertEquals( "Next Event ID", token.nextEventId, result.nextEventId )
+    assertEquals( "Last Event ID", token.lastEventId, result.lastEventId )
+    assertEquals( "Started Event ID", token.startedEventId, result.startedEventId )
+    assertEquals( "Previous Started Event ID", token.previousStartedEventId, result.previousStartedEventId )
+    assertTrue( "Reverse order", result.reverseOrder )
+  }
+
+  @Test( expected = TaskTokenException )
+  void testTaskTokenNotPageToken( ) {
+    TaskTokenManager manager = new TaskTokenManager( ) {
+      @Override
+      protected String getTokenPassword( ) {
+        'Open Sesame'
+      }
+    }
+
+    String accountNumber = '123456789012'
+    TaskToken token = new TaskToken( accountNumber, UUID.randomUUID( ).toString( ), UUID.randomUUID( ).toString( ), 1L, 3L, 0L, 0L )
+    manager.decryptPageToken( accountNumber, manager.encryptTaskToken( token ) )
+  }
 }
@@ -72,8 +72,40 @@ import edu.ucsb.eucalyptus.constants.IsData;
 
 public class ChunkedDataFile extends ChunkedFile implements IsData {
   private static Logger LOG = Logger.getLogger(ChunkedDataFile.class);
+  private static final int MIN_CHUNK_SIZE = 8192;
+  private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+  private final RandomAccessFile file;
+  private final long offset;
+  private final long length;
 
   public ChunkedDataFile(RandomAccessFile file, long offset, long length, int chunkSize) throws IOException {
     super(file, offset, length, chunkSize);
+    this.file = file;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  /**
+   * Chunk size for sending the given number of bytes. Small transfers use 8KB chunks, larger transfers use larger chunks (up to 256KB) to
+   * reduce the number of reads and writes per transfer.
+   */
+  public static int chunkSize(long length) {
+    if (length <= MIN_CHUNK_SIZE) {
+      return (int) Math.max(1, length);
+    }
+    long chunkSize = MIN_CHUNK_SIZE;
+    while (chunkSize < MAX_CHUNK_SIZE && chunkSize * 128 < length) {
+      chunkSize *= 2;
+    }
+    return (int) chunkSize;
+  }
+
+  /**
+   * Region for the same file data, for transfer using FileChannel#transferTo where the channel does not need to see the content (no SSL).
+   * Releasing the region closes the file.
+   */
+  public DataFileRegion toFileRegion() {
+    return new DataFileRegion(file.getChannel(), offset, length);
   }
 }
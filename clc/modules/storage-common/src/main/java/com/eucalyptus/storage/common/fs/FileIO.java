@@ -74,6 +74,11 @@ public abstract class FileIO {
 
   public abstract void write(byte[] bytes) throws IOException;
 
+  /**
+   * Write all remaining bytes of the given buffers, in order.
+   */
+  public abstract void write(ByteBuffer... buffers) throws IOException;
+
   public abstract ByteBuffer getBuffer();
 
   public abstract void finish();
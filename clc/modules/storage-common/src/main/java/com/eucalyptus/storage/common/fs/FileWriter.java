@@ -91,6 +91,16 @@ public class FileWriter extends FileIO {
     channel.write(buffer);
   }
 
+  public void write(ByteBuffer... buffers) throws IOException {
+    long remaining = 0;
+    for (ByteBuffer buffer : buffers) {
+      remaining += buffer.remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(buffers);
+    }
+  }
+
   public ByteBuffer getBuffer() {
     return null;
   }
@@ -64,9 +64,12 @@ package com.eucalyptus.walrus.msgs;
 
 import java.nio.ByteBuffer;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+
 public class WalrusDataMessage {
   private Header header;
   private byte[] payload;
+  private ChannelBuffer buffer;
   private static final String DELIMITER = "/";
 
   public enum Header {
@@ -89,6 +92,13 @@ public class WalrusDataMessage {
     this.payload = payload;
   }
 
+  /**
+   * Data received from the channel, set instead of the payload for data messages that reference the request content without copying it.
+   */
+  public ChannelBuffer getBuffer() {
+    return buffer;
+  }
+
   public WalrusDataMessage(Header header, byte[] payload) {
     this.header = header;
     this.payload = payload;
@@ -124,6 +134,12 @@ public class WalrusDataMessage {
     return new WalrusDataMessage(Header.DATA, bytes);
   }
 
+  public static WalrusDataMessage DataMessage(ChannelBuffer buffer) {
+    WalrusDataMessage message = new WalrusDataMessage(Header.DATA, null);
+    message.buffer = buffer;
+    return message;
+  }
+
   public static boolean isStart(WalrusDataMessage message) {
     if (Header.START.equals(message.header)) {
       return true;
@@ -165,6 +165,7 @@ import org.hibernate.criterion.Example;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
 import java.io.File;
@@ -548,19 +549,8 @@ public class WalrusFSManager extends WalrusManager {
           break;
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
-          byte[] data = dataMessage.getPayload();
-          // start writing object (but do not commit yet)
-          try {
-            if (fileIO != null)
-              fileIO.write(data);
-          } catch (IOException ex) {
-            LOG.error(ex);
-          }
-          // calculate md5 on the fly
-          size += data.length;
-          if (digest != null) {
-            digest.update(data);
-          }
+          // start writing object (but do not commit yet) and calculate md5 on the fly
+          size += writeData(dataMessage, fileIO, digest);
         }
       }
       if (dataMessage == null) {
@@ -587,6 +577,41 @@ public class WalrusFSManager extends WalrusManager {
     return reply;
   }
 
+  /**
+   * Write the data in the message to the file and digest, returning the data length. Data received as a channel buffer is written from
+   * the buffer's memory without copying.
+   */
+  private static long writeData(WalrusDataMessage dataMessage, FileIO fileIO, MessageDigest digest) {
+    ChannelBuffer buffer = dataMessage.getBuffer();
+    if (buffer == null) {
+      byte[] data = dataMessage.getPayload();
+      try {
+        if (fileIO != null)
+          fileIO.write(data);
+      } catch (IOException ex) {
+        LOG.error(ex);
+      }
+      if (digest != null) {
+        digest.update(data);
+      }
+      return data.length;
+    }
+    int length = buffer.readableBytes();
+    ByteBuffer[] data = buffer.toByteBuffers(buffer.readerIndex(), length);
+    if (digest != null) {
+      for (ByteBuffer byteBuffer : data) {
+        digest.update(byteBuffer.duplicate());
+      }
+    }
+    try {
+      if (fileIO != null)
+        fileIO.write(data);
+    } catch (IOException ex) {
+      LOG.error(ex);
+    }
+    return length;
+  }
+
   private void cleanupTempObject(String bucketName, String tempObjectName) {
     ObjectDeleter objectDeleter = new ObjectDeleter(bucketName, tempObjectName, null, null);
     Threads.lookup(WalrusBackend.class, WalrusFSManager.ObjectDeleter.class).limitTo(10).submit(objectDeleter);
@@ -1653,19 +1678,8 @@ public class WalrusFSManager extends WalrusManager {
           break;
         } else {
           assert (WalrusDataMessage.isData(dataMessage));
-          byte[] data = dataMessage.getPayload();
-          // start writing object (but do not commit yet)
-          try {
-            if (fileIO != null)
-              fileIO.write(data);
-          } catch (IOException ex) {
-            LOG.error(ex);
-          }
-          // calculate md5 on the fly
-          size += data.length;
-          if (digest != null) {
-            digest.update(data);
-          }
+          // start writing object (but do not commit yet) and calculate md5 on the fly
+          size += writeData(dataMessage, fileIO, digest);
         }
       }
     } catch (InterruptedException e) {
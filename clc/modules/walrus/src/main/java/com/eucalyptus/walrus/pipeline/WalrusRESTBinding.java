@@ -1305,10 +1305,9 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
   private void handleHttpChunk(HttpChunk httpChunk) throws Exception {
     ChannelBuffer buffer = httpChunk.getContent();
     try {
-      buffer.markReaderIndex();
-      byte[] read = new byte[buffer.readableBytes()];
-      buffer.readBytes(read);
-      while ((putQueue != null) && (!putQueue.offer(WalrusDataMessage.DataMessage(read), 500, TimeUnit.MILLISECONDS)));
+      // the chunk content is not reused by the decoder so pass it on without copying
+      ChannelBuffer data = buffer.readSlice(buffer.readableBytes());
+      while ((putQueue != null) && (!putQueue.offer(WalrusDataMessage.DataMessage(data), 500, TimeUnit.MILLISECONDS)));
       if (httpChunk.isLast()) {
         while ((putQueue != null) && (!putQueue.offer(WalrusDataMessage.EOF(), 1000, TimeUnit.MILLISECONDS)));
       }
@@ -1321,10 +1320,7 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
     ChannelBuffer buffer = httpRequest.getContent();
     try {
       putQueue.put(WalrusDataMessage.StartOfData(dataLength));
-      buffer.markReaderIndex();
-      byte[] read = new byte[buffer.readableBytes()];
-      buffer.readBytes(read);
-      putQueue.put(WalrusDataMessage.DataMessage(read));
+      putQueue.put(WalrusDataMessage.DataMessage(buffer.readSlice(buffer.readableBytes())));
       if (!httpRequest.isChunked())
         putQueue.put(WalrusDataMessage.EOF());
     } catch (Exception ex) {
@@ -1336,9 +1332,7 @@ public class WalrusRESTBinding extends RestfulMarshallingHandler {
   private void handleFirstChunk(MappingHttpRequest httpRequest, ChannelBuffer firstChunk, long dataLength) throws Exception {
     try {
       putQueue.put(WalrusDataMessage.StartOfData(dataLength));
-      byte[] read = new byte[firstChunk.readableBytes()];
-      firstChunk.readBytes(read);
-      putQueue.put(WalrusDataMessage.DataMessage(read));
+      putQueue.put(WalrusDataMessage.DataMessage(firstChunk.readSlice(firstChunk.readableBytes())));
       if (!httpRequest.isChunked())
         putQueue.put(WalrusDataMessage.EOF());
     } catch (Exception ex) {
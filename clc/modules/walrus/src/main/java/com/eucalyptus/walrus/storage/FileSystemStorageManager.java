@@ -411,7 +411,7 @@ public class FileSystemStorageManager implements StorageManager {
       if (isCompressed) {
         file = new CompressedChunkedFile(raf, size);
       } else {
-        file = new ChunkedDataFile(raf, 0, size, 8192);
+        file = new ChunkedDataFile(raf, 0, size, ChunkedDataFile.chunkSize(size));
       }
       List<ChunkedInput> dataStreams = new ArrayList<ChunkedInput>();
       dataStreams.add(file);
@@ -431,7 +431,7 @@ public class FileSystemStorageManager implements StorageManager {
       if (isCompressed) {
         file = new CompressedChunkedFile(raf, byteRangeStart, byteRangeEnd, (int) Math.min((byteRangeEnd - byteRangeStart), 8192));
       } else {
-        file = new ChunkedDataFile(raf, byteRangeStart, (int) (byteRangeEnd - byteRangeStart), (int) Math.min((byteRangeEnd - byteRangeStart), 8192));
+        file = new ChunkedDataFile(raf, byteRangeStart, byteRangeEnd - byteRangeStart, ChunkedDataFile.chunkSize(byteRangeEnd - byteRangeStart));
       }
       List<ChunkedInput> dataStreams = new ArrayList<>();
       dataStreams.add(file);
@@ -452,7 +452,7 @@ public class FileSystemStorageManager implements StorageManager {
         if (isCompressed) {
           file = new CompressedChunkedFile(raf, part.getSize());
         } else {
-          file = new ChunkedDataFile(raf, 0, part.getSize(), 8192);
+          file = new ChunkedDataFile(raf, 0, part.getSize(), ChunkedDataFile.chunkSize(part.getSize()));
         }
         dataStreams.add(file);
       }
@@ -506,7 +506,7 @@ public class FileSystemStorageManager implements StorageManager {
         if (isCompressed) {
           file = new CompressedChunkedFile(raf, startMarker, tempLength, (int) Math.min(tempLength, 8192));
         } else {
-          file = new ChunkedDataFile(raf, startMarker, tempLength, (int) Math.min(tempLength, 8192));
+          file = new ChunkedDataFile(raf, startMarker, tempLength, ChunkedDataFile.chunkSize(tempLength));
         }
 
         dataStreams.add(file);
@@ -0,0 +1,202 @@
+/*************************************************************************
+ * Copyright 2009-2016 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.walrus.tests;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.eucalyptus.crypto.Digest;
+import com.eucalyptus.storage.common.ChunkedDataFile;
+import com.eucalyptus.storage.common.fs.FileWriter;
+
+/**
+ * Local throughput of the Walrus data path for a 512MB object: PUT chunks written with and without copying to a byte array, and GETs sent
+ * over loopback as 8KB chunks, adaptive chunks, and with FileChannel#transferTo.
+ */
+@Ignore("Manual benchmark")
+public class WalrusDataPathBenchmark {
+
+  private static final long MB = 1024l * 1024l;
+  private static final long OBJECT_SIZE = 512 * MB;
+  private static final int PUT_CHUNK_SIZE = 64 * 1024;
+  private static final int ITERATIONS = 3;
+
+  private static File directory;
+  private static File object;
+  private static ChannelBuffer[] chunks;
+  private static ExecutorService executor;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    directory = File.createTempFile("walrus-benchmark", "");
+    directory.delete();
+    directory.mkdirs();
+    Random random = new Random(OBJECT_SIZE);
+    chunks = new ChannelBuffer[(int) (OBJECT_SIZE / PUT_CHUNK_SIZE)];
+    byte[] data = new byte[PUT_CHUNK_SIZE];
+    object = new File(directory, "object");
+    try (RandomAccessFile raf = new RandomAccessFile(object, "rw")) {
+      for (int i = 0; i < chunks.length; i++) {
+        random.nextBytes(data);
+        raf.write(data);
+        chunks[i] = ChannelBuffers.copiedBuffer(data);
+      }
+    }
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    executor.shutdownNow();
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  private interface Transfer {
+    void run() throws Exception;
+  }
+
+  private static void report(String name, Transfer transfer) throws Exception {
+    transfer.run(); // warm up
+    long total = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      long before = System.nanoTime();
+      transfer.run();
+      total += System.nanoTime() - before;
+    }
+    long millis = TimeUnit.NANOSECONDS.toMillis(total / ITERATIONS);
+    System.out.println(name + ": " + millis + "ms, " + (OBJECT_SIZE / MB * 1000 / Math.max(1, millis)) + "MB/s");
+  }
+
+  @Test
+  public void benchmarkPut() throws Exception {
+    report("PUT byte[] copy", () -> {
+      FileWriter writer = new FileWriter(new File(directory, "put").getAbsolutePath());
+      MessageDigest digest = Digest.MD5.get();
+      try {
+        for (ChannelBuffer chunk : chunks) {
+          byte[] read = new byte[chunk.readableBytes()];
+          chunk.getBytes(chunk.readerIndex(), read);
+          writer.write(read);
+          digest.update(read);
+        }
+      } finally {
+        writer.finish();
+      }
+    });
+    report("PUT buffer", () -> {
+      FileWriter writer = new FileWriter(new File(directory, "put").getAbsolutePath());
+      MessageDigest digest = Digest.MD5.get();
+      try {
+        for (ChannelBuffer chunk : chunks) {
+          ByteBuffer[] buffers = chunk.toByteBuffers(chunk.readerIndex(), chunk.readableBytes());
+          for (ByteBuffer buffer : buffers) {
+            digest.update(buffer.duplicate());
+          }
+          writer.write(buffers);
+        }
+      } finally {
+        writer.finish();
+      }
+    });
+  }
+
+  private interface Sender {
+    void send(SocketChannel out) throws Exception;
+  }
+
+  /**
+   * Send to a loopback connection that discards what it reads.
+   */
+  private static void send(Sender sender) throws Exception {
+    try (ServerSocketChannel server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress("127.0.0.1", 0));
+      final SocketChannel client = SocketChannel.open(server.getLocalAddress());
+      Future<Long> drained = executor.submit(() -> {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        long total = 0;
+        try (SocketChannel in = client) {
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            total += read;
+            buffer.clear();
+          }
+        }
+        return total;
+      });
+      try (SocketChannel out = server.accept()) {
+        sender.send(out);
+      }
+      if (drained.get() != OBJECT_SIZE) {
+        throw new IllegalStateException("Unexpected size " + drained.get());
+      }
+    }
+  }
+
+  private static void sendChunks(SocketChannel out, int chunkSize) throws Exception {
+    ChunkedDataFile file = new ChunkedDataFile(new RandomAccessFile(object, "r"), 0, OBJECT_SIZE, chunkSize);
+    try {
+      while (file.hasNextChunk()) {
+        ByteBuffer buffer = ((ChannelBuffer) file.nextChunk()).toByteBuffer();
+        while (buffer.hasRemaining()) {
+          out.write(buffer);
+        }
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  private static void sendRegion(SocketChannel out) throws Exception {
+    try (FileChannel channel = new RandomAccessFile(object, "r").getChannel()) {
+      long position = 0;
+      while (position < OBJECT_SIZE) {
+        position += channel.transferTo(position, OBJECT_SIZE - position, out);
+      }
+    }
+  }
+
+  @Test
+  public void benchmarkGet() throws Exception {
+    report("GET 8KB chunks", () -> send(out -> sendChunks(out, 8192)));
+    report("GET adaptive chunks", () -> send(out -> sendChunks(out, ChunkedDataFile.chunkSize(OBJECT_SIZE))));
+    report("GET transferTo", () -> send(WalrusDataPathBenchmark::sendRegion));
+  }
+}
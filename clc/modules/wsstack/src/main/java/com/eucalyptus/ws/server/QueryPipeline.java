@@ -39,6 +39,7 @@ import com.eucalyptus.util.Strings;
 import com.eucalyptus.ws.stages.HmacUserAuthenticationStage;
 import com.eucalyptus.ws.stages.UnrollableStage;
 import com.eucalyptus.ws.util.HmacUtils.SignatureVersion;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
@@ -148,6 +149,11 @@ public abstract class QueryPipeline extends FilteredPipeline {
     return name;
   }
 
+  @Override
+  public Optional<Route> getRoute( ) {
+    return Optional.of( Route.query( servicePathPrefixes ) );
+  }
+
   /**
    * Is the non-prefixed path one handled by this service.
    *
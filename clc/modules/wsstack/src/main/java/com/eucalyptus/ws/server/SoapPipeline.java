@@ -35,6 +35,7 @@ import com.eucalyptus.ws.handlers.BindingHandler;
 import com.eucalyptus.ws.handlers.MessageStackHandler;
 import com.eucalyptus.ws.stages.SoapUserAuthenticationStage;
 import com.eucalyptus.ws.stages.UnrollableStage;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
@@ -88,6 +89,11 @@ public abstract class SoapPipeline extends FilteredPipeline {
     return name;
   }
 
+  @Override
+  public Optional<Route> getRoute( ) {
+    return Optional.of( Route.soap( servicePaths ) );
+  }
+
   @Override
   public ChannelPipeline addHandlers( ChannelPipeline pipeline ) {
     if ( !WebServices.isSoapEnabled( component ) ) {
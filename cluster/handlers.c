@@ -130,6 +130,7 @@
 #define SUPERUSER                                "eucalyptus"
 #define POLL_INTERVAL_MINIMUM_SEC                6
 #define STATS_INTERVAL_SEC                       60
+#define NETWORK_INFO_PREFIX_LEN                  256    //!< Length of encoded network information decoded to find the root element
 
 /*----------------------------------------------------------------------------*\
  |                                                                            |
@@ -227,6 +228,8 @@ static int schedule_instance_migration(ncInstance * instance, char **includeNode
                                        ccResourceCache * resourceCacheLocal, char **replyString);
 static int migration_handler(ccInstance * myInstance, char *host, char *src, char *dst, migration_states migration_state, char **node, char **instance, char **action);
 static int populateOutboundMeta(ncMetadata * pMeta);
+static boolean is_network_info_delta(char *networkInfo);
+static int apply_network_info_delta(char *networkInfoDelta);
 static int initialize_stats_system(int interval_sec);
 static json_object **message_stats_getter();
 static void message_stats_setter();
@@ -1663,14 +1666,93 @@ int doBroadcastNetworkInfo(ncMetadata * pMeta, char *networkInfo)
 
     sem_mywait(GLOBALNETWORKINFO);
 
-    // populate globalnetworkinfo
-    snprintf(globalnetworkinfo->networkInfo, MAX_NETWORK_INFO_LEN, "%s", networkInfo);
-    config->kick_broadcast_network_info = 1;
+    // populate globalnetworkinfo, changes are applied to the current network information
+    if (is_network_info_delta(networkInfo)) {
+        rc = apply_network_info_delta(networkInfo);
+    } else {
+        snprintf(globalnetworkinfo->networkInfo, MAX_NETWORK_INFO_LEN, "%s", networkInfo);
+    }
+    if (!rc) {
+        config->kick_broadcast_network_info = 1;
+    }
 
     sem_mypost(GLOBALNETWORKINFO);
 
     LOGTRACE("done.\n");
-    return (0);
+    return (rc);
+}
+
+//!
+//! Determines if the encoded network information holds changes (a network-data-delta
+//! document) rather than the full network information (a network-data document)
+//!
+//! @param[in] networkInfo the base64 encoded network information
+//!
+//! @return TRUE if the network information holds changes, FALSE otherwise
+//!
+//! @note only the start of the document is decoded, the root element follows the XML declaration
+//!
+static boolean is_network_info_delta(char *networkInfo)
+{
+    int len = 0;
+    char *prefix = NULL;
+    boolean delta = FALSE;
+
+    if ((len = strlen(networkInfo)) > NETWORK_INFO_PREFIX_LEN) {
+        len = NETWORK_INFO_PREFIX_LEN;
+    }
+    if ((prefix = base64_dec((unsigned char *)networkInfo, len)) != NULL) {
+        delta = (strstr(prefix, "<network-data-delta") != NULL);
+        EUCA_FREE(prefix);
+    }
+    return (delta);
+}
+
+//!
+//! Applies network information changes to the current global network information
+//!
+//! @param[in] networkInfoDelta the base64 encoded network information changes
+//!
+//! @return 0 on success or 1 on failure
+//!
+//! @pre the GLOBALNETWORKINFO lock must be held
+//!
+//! @note fails if the changes are not based on the current network information, the CLC
+//!       then sends the full network information with the next broadcast
+//!
+static int apply_network_info_delta(char *networkInfoDelta)
+{
+    int ret = 1;
+    char *xmlbuf = NULL;
+    char *deltabuf = NULL;
+    char *mergedbuf = NULL;
+    char *encoded = NULL;
+
+    if (!strlen(globalnetworkinfo->networkInfo)) {
+        LOGDEBUG("no network information to apply changes to\n");
+        return (1);
+    }
+
+    xmlbuf = base64_dec((unsigned char *)globalnetworkinfo->networkInfo, strlen(globalnetworkinfo->networkInfo));
+    deltabuf = base64_dec((unsigned char *)networkInfoDelta, strlen(networkInfoDelta));
+    if (!xmlbuf || !deltabuf) {
+        LOGERROR("failed to decode network information\n");
+    } else if (gni_apply_delta(xmlbuf, deltabuf, &mergedbuf)) {
+        LOGDEBUG("failed to apply network information changes\n");
+    } else if ((encoded = base64_enc((unsigned char *)mergedbuf, strlen(mergedbuf))) == NULL) {
+        LOGERROR("failed to encode network information\n");
+    } else if (strlen(encoded) >= MAX_NETWORK_INFO_LEN) {
+        LOGERROR("network information exceeds maximum length (%d)\n", MAX_NETWORK_INFO_LEN);
+    } else {
+        snprintf(globalnetworkinfo->networkInfo, MAX_NETWORK_INFO_LEN, "%s", encoded);
+        ret = 0;
+    }
+
+    EUCA_FREE(xmlbuf);
+    EUCA_FREE(deltabuf);
+    EUCA_FREE(mergedbuf);
+    EUCA_FREE(encoded);
+    return (ret);
 }
 
 //!
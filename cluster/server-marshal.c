@@ -805,8 +805,9 @@ adb_BroadcastNetworkInfoResponse_t *BroadcastNetworkInfoMarshal(adb_BroadcastNet
         unset_corrid(corr_id);
         if (rc) {
             // doBroadcastNetworkInfo returns failure in disable state, skipping logging the error since networkInfo can be long
+            // changes that do not apply to the current network information are rejected, the CLC then sends the full network information
             if (!ccIsEnabled()){
-                LOGERROR("doBroadcastNetworkInfo() failed: %d (%s)\n", rc, networkInfo);
+                LOGWARN("doBroadcastNetworkInfo() failed: %d (%.16s)\n", rc, SP(networkInfo));
             }
             status = AXIS2_FALSE;
             snprintf(statusMessage, 255, "ERROR");
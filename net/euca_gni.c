@@ -2199,6 +2199,206 @@ gni_xpath_node_type gni_xmlstr2type(const xmlChar *nodename) {
     return (GNI_XPATH_INVALID);
 }
 
+/**
+ * Finds the item with the given name in a GNI top level xml node (i.e., vpcs,
+ * instances, dhcpOptionSets, internetGateways, securityGroups).
+ * @param container [in] top level xml node of interest.
+ * @param name [in] name of the item of interest.
+ * @return pointer to the item xml node or NULL if not found.
+ */
+static xmlNodePtr gni_delta_find_item(xmlNodePtr container, const xmlChar *name) {
+    xmlNodePtr item = NULL;
+    xmlChar *itemname = NULL;
+    int found = 0;
+
+    for (item = container->children; item; item = item->next) {
+        if (item->type != XML_ELEMENT_NODE) {
+            continue;
+        }
+        itemname = xmlGetProp(item, (const xmlChar *) "name");
+        found = (itemname && !xmlStrcmp(itemname, name));
+        xmlFree(itemname);
+        if (found) {
+            return (item);
+        }
+    }
+    return (NULL);
+}
+
+/**
+ * Copies a version attribute from the network-data-delta node to the network-data node,
+ * removing the attribute if it is not present in the delta.
+ * @param root [in] network-data xml node.
+ * @param deltaroot [in] network-data-delta xml node.
+ * @param attribute [in] name of the attribute to copy.
+ */
+static void gni_delta_copy_attribute(xmlNodePtr root, xmlNodePtr deltaroot, const char *attribute) {
+    xmlChar *value = xmlGetProp(deltaroot, (const xmlChar *) attribute);
+    if (value) {
+        xmlSetProp(root, (const xmlChar *) attribute, value);
+        xmlFree(value);
+    } else {
+        xmlUnsetProp(root, (const xmlChar *) attribute);
+    }
+}
+
+/**
+ * Applies network information changes (a network-data-delta document) to the network
+ * information (a network-data document) they were computed from.
+ *
+ * The changes are rejected if their base-version does not match the version of the
+ * network information, the sender then falls back to sending the full network information.
+ * Top level items (vpcs, instances, dhcpOptionSets, internetGateways and securityGroups)
+ * are added or replaced by name and removed by name. The configuration is replaced when
+ * present and the version attributes are taken from the changes.
+ *
+ * @param xmlbuf [in] network-data XML
+ * @param deltabuf [in] network-data-delta XML
+ * @param outxmlbuf [out] a pointer to the resulting network-data XML (caller must free)
+ * @return 0 on success or 1 on failure (including a version mismatch)
+ */
+int gni_apply_delta(const char *xmlbuf, const char *deltabuf, char **outxmlbuf) {
+    int ret = 1;
+    int type = 0;
+    int len = 0;
+    xmlDocPtr docptr = NULL;
+    xmlDocPtr deltaptr = NULL;
+    xmlNodePtr root = NULL;
+    xmlNodePtr deltaroot = NULL;
+    xmlNodePtr node = NULL;
+    xmlNodePtr item = NULL;
+    xmlNodePtr copy = NULL;
+    xmlNodePtr existing = NULL;
+    xmlNodePtr removed = NULL;
+    xmlChar *version = NULL;
+    xmlChar *baseversion = NULL;
+    xmlChar *name = NULL;
+    xmlChar *outbuf = NULL;
+    xmlNode *gni_nodes[GNI_XPATH_INVALID] = {0};
+
+    if (!xmlbuf || !deltabuf || !outxmlbuf) {
+        LOGERROR("invalid input\n");
+        return (1);
+    }
+    *outxmlbuf = NULL;
+
+    XML_INIT();
+    LIBXML_TEST_VERSION
+    if ((docptr = xmlReadMemory(xmlbuf, strlen(xmlbuf), NULL, NULL, XML_PARSE_NONET)) == NULL) {
+        LOGERROR("unable to parse network information XML\n");
+        goto cleanup;
+    }
+    if ((deltaptr = xmlReadMemory(deltabuf, strlen(deltabuf), NULL, NULL, XML_PARSE_NONET)) == NULL) {
+        LOGERROR("unable to parse network information changes XML\n");
+        goto cleanup;
+    }
+
+    root = xmlDocGetRootElement(docptr);
+    deltaroot = xmlDocGetRootElement(deltaptr);
+    if (!root || !deltaroot || xmlStrcmp(deltaroot->name, (const xmlChar *) "network-data-delta")) {
+        LOGERROR("network-data-delta node not found in network information changes xml\n");
+        goto cleanup;
+    }
+    if (gni_populate_xpathnodes(docptr, gni_nodes)) {
+        goto cleanup;
+    }
+
+    version = xmlGetProp(root, (const xmlChar *) "version");
+    baseversion = xmlGetProp(deltaroot, (const xmlChar *) "base-version");
+    if (!version || !baseversion || xmlStrcmp(version, baseversion)) {
+        LOGDEBUG("network information changes for version %s do not apply to version %s\n", SP((char *) baseversion), SP((char *) version));
+        goto cleanup;
+    }
+
+    for (node = deltaroot->children; node; node = node->next) {
+        if (node->type != XML_ELEMENT_NODE) {
+            continue;
+        }
+        if (!xmlStrcmp(node->name, (const xmlChar *) "removed")) {
+            removed = node;
+            continue;
+        }
+        type = gni_xmlstr2type(node->name);
+        if (type == GNI_XPATH_INVALID) {
+            LOGTRACE("Unknown GNI delta xml node %s\n", node->name);
+        } else if (type == GNI_XPATH_CONFIGURATION) {
+            copy = xmlDocCopyNode(node, docptr, 1);
+            if (gni_nodes[type]) {
+                xmlReplaceNode(gni_nodes[type], copy);
+                xmlFreeNode(gni_nodes[type]);
+            } else {
+                xmlAddChild(root, copy);
+            }
+            gni_nodes[type] = copy;
+        } else {
+            if (!gni_nodes[type]) {
+                gni_nodes[type] = xmlNewChild(root, NULL, node->name, NULL);
+            }
+            for (item = node->children; item; item = item->next) {
+                if (item->type != XML_ELEMENT_NODE) {
+                    continue;
+                }
+                // replace in place so the order of unchanged items is kept
+                copy = xmlDocCopyNode(item, docptr, 1);
+                existing = NULL;
+                if ((name = xmlGetProp(item, (const xmlChar *) "name")) != NULL) {
+                    existing = gni_delta_find_item(gni_nodes[type], name);
+                    xmlFree(name);
+                }
+                if (existing) {
+                    xmlReplaceNode(existing, copy);
+                    xmlFreeNode(existing);
+                } else {
+                    xmlAddChild(gni_nodes[type], copy);
+                }
+            }
+        }
+    }
+
+    for (node = (removed ? removed->children : NULL); node; node = node->next) {
+        if ((node->type != XML_ELEMENT_NODE) || ((type = gni_xmlstr2type(node->name)) == GNI_XPATH_INVALID) || !gni_nodes[type]) {
+            continue;
+        }
+        for (item = node->children; item; item = item->next) {
+            if (item->type != XML_ELEMENT_NODE) {
+                continue;
+            }
+            if ((name = xmlNodeGetContent(item)) != NULL) {
+                if ((existing = gni_delta_find_item(gni_nodes[type], name)) != NULL) {
+                    xmlUnlinkNode(existing);
+                    xmlFreeNode(existing);
+                } else {
+                    LOGTRACE("removed GNI item %s not found in %s\n", name, node->name);
+                }
+                xmlFree(name);
+            }
+        }
+    }
+
+    gni_delta_copy_attribute(root, deltaroot, "version");
+    gni_delta_copy_attribute(root, deltaroot, "applied-version");
+    gni_delta_copy_attribute(root, deltaroot, "applied-time");
+
+    xmlDocDumpMemoryEnc(docptr, &outbuf, &len, "UTF-8");
+    if (outbuf && ((*outxmlbuf = strdup((char *) outbuf)) != NULL)) {
+        ret = 0;
+    } else {
+        LOGERROR("unable to serialize network information XML\n");
+    }
+
+cleanup:
+    xmlFree(outbuf);
+    xmlFree(version);
+    xmlFree(baseversion);
+    if (deltaptr) {
+        xmlFreeDoc(deltaptr);
+    }
+    if (docptr) {
+        xmlFreeDoc(docptr);
+    }
+    return (ret);
+}
+
 /**
  * Populates globalNetworkInfo data from the content of an XML
  * file (xmlXPathContext is expected).
@@ -385,6 +385,7 @@ int gni_populate(globalNetworkInfo *gni, gni_hostname_info *host_info, char *xml
 int gni_populate_v(int mode, globalNetworkInfo *gni, gni_hostname_info *host_info, char *xmlpath);
 int gni_populate_xpathnodes(xmlDocPtr doc, xmlNode **gni_nodes);
 gni_xpath_node_type gni_xmlstr2type(const xmlChar *nodename);
+int gni_apply_delta(const char *xmlbuf, const char *deltabuf, char **outxmlbuf);
 int gni_populate_gnidata(globalNetworkInfo *gni, xmlNodePtr xmlnode, xmlXPathContextPtr ctxptr, xmlDocPtr doc);
 int gni_populate_configuration(globalNetworkInfo *gni, gni_hostname_info *host_info, xmlNodePtr xmlnode, xmlXPathContextPtr ctxptr, xmlDocPtr doc);
 int gni_populate_instances(globalNetworkInfo *gni, xmlNodePtr xmlnode, xmlXPathContextPtr ctxptr, xmlDocPtr doc);